@@ -38,10 +38,12 @@ import org.jenkinsci.plugins.p4.browsers.SwarmBrowser;
 import org.jenkinsci.plugins.p4.build.ExecutorHelper;
 import org.jenkinsci.plugins.p4.build.NodeHelper;
 import org.jenkinsci.plugins.p4.build.P4EnvironmentContributor;
+import org.jenkinsci.plugins.p4.changes.P4ChangeCounter;
 import org.jenkinsci.plugins.p4.changes.P4ChangeEntry;
+import org.jenkinsci.plugins.p4.changes.P4ChangeFeed;
 import org.jenkinsci.plugins.p4.changes.P4ChangeParser;
 import org.jenkinsci.plugins.p4.changes.P4ChangeRef;
-import org.jenkinsci.plugins.p4.changes.P4ChangeSet;
+import org.jenkinsci.plugins.p4.changes.P4ChangeWriter;
 import org.jenkinsci.plugins.p4.changes.P4GraphRef;
 import org.jenkinsci.plugins.p4.changes.P4LabelRef;
 import org.jenkinsci.plugins.p4.changes.P4Ref;
@@ -57,9 +59,11 @@ import org.jenkinsci.plugins.p4.populate.Populate;
 import org.jenkinsci.plugins.p4.review.P4Review;
 import org.jenkinsci.plugins.p4.review.ReviewProp;
 import org.jenkinsci.plugins.p4.scm.AbstractP4ScmSource;
+import org.jenkinsci.plugins.p4.scm.P4LibraryCache;
 import org.jenkinsci.plugins.p4.scm.P4Path;
 import org.jenkinsci.plugins.p4.tagging.TagAction;
 import org.jenkinsci.plugins.p4.tasks.CheckoutStatus;
+import org.jenkinsci.plugins.p4.tasks.AbstractTask;
 import org.jenkinsci.plugins.p4.tasks.CheckoutTask;
 import org.jenkinsci.plugins.p4.tasks.PollTask;
 import org.jenkinsci.plugins.p4.tasks.RemoveClientTask;
@@ -84,11 +88,14 @@ import org.kohsuke.stapler.StaplerRequest;
 import java.io.File;
 import java.io.IOException;
 import java.io.PrintStream;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Consumer;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -109,6 +116,8 @@ public class PerforceScm extends SCM {
 	private transient TagAction tagAction = null;
 	private transient P4Ref parentChange;
 	private transient P4Review review;
+	private transient String libraryPath;
+	private transient P4Ref libraryRef;
 
 	public static final int DEFAULT_FILE_LIMIT = 50;
 	public static final int DEFAULT_CHANGE_LIMIT = 20;
@@ -143,6 +152,18 @@ public class PerforceScm extends SCM {
 		this.review = review;
 	}
 
+	/**
+	 * Mark this SCM as a global library load, served from the
+	 * {@link P4LibraryCache} when the revision is a change.
+	 *
+	 * @param path library depot path
+	 * @param ref  library revision
+	 */
+	public void setLibrary(String path, P4Ref ref) {
+		this.libraryPath = path;
+		this.libraryRef = ref;
+	}
+
 	/**
 	 * Helper function for converting an SCM object into a
 	 * PerforceScm object when appropriate.
@@ -352,6 +373,13 @@ public class PerforceScm extends SCM {
 
 		}
 
+		// Skip the poll if nothing was submitted since the last build
+		if (isChangeCounterBuilt(job, lastRun, listener)) {
+			listener.getLogger().println("P4: Polling no changes found (change counter).");
+			logger.finer("P4: polling[" + jobName + "] exit (counter): " + state.change);
+			return PollingResult.NO_CHANGES;
+		}
+
 		// Build workspace is often null as requiresWorkspaceForPolling() returns false as a checked out workspace is
 		// not needed, but we still need a client and artificial root for the view.
 		// JENKINS-46908
@@ -398,6 +426,52 @@ public class PerforceScm extends SCM {
 		return state;
 	}
 
+	/**
+	 * Check the server's change counter against the changes synced by the
+	 * last build, without a workspace or agent.
+	 *
+	 * @param job      the job being polled
+	 * @param lastRun  the last build
+	 * @param listener for logging
+	 * @return true if no change can have been submitted after the last build
+	 */
+	private boolean isChangeCounterBuilt(Job<?, ?> job, Run<?, ?> lastRun, TaskListener listener) {
+		if (lastRun == null) {
+			return false;
+		}
+
+		// a pinned label or counter may move without new changes
+		String pin = populate.getPin();
+		if (pin != null && !pin.isEmpty()) {
+			return false;
+		}
+
+		// the oldest change synced with this credential in the last build
+		long last = Long.MAX_VALUE;
+		for (TagAction action : lastRun.getActions(TagAction.class)) {
+			if (credential == null || !credential.equals(action.getCredential())) {
+				continue;
+			}
+			List<P4Ref> refs = action.getRefChanges();
+			if (refs == null || refs.isEmpty()) {
+				return false;
+			}
+			for (P4Ref ref : refs) {
+				// labels and graph commits are not covered by the change counter
+				if (!(ref instanceof P4ChangeRef) || ref.getChange() <= 0) {
+					return false;
+				}
+				last = Math.min(last, ref.getChange());
+			}
+		}
+		if (last == Long.MAX_VALUE) {
+			return false;
+		}
+
+		long counter = P4ChangeCounter.getChange(job, credential, listener);
+		return counter >= 0 && counter <= last;
+	}
+
 	private boolean isConcurrentBuild(Job<?, ?> job) {
 		return job instanceof AbstractProject ? ((AbstractProject) job).isConcurrentBuild() :
 				job.getProperty(DisableConcurrentBuildsJobProperty.class) == null;
@@ -500,6 +574,14 @@ public class PerforceScm extends SCM {
 			return null;
 		}
 
+		// Use the shared change feed for the server, if it can answer for this workspace
+		if (pin == null || pin.isEmpty()) {
+			List<P4Ref> changes = P4ChangeFeed.poll(lastRun, credential, ws, lastRefs, filter, listener);
+			if (changes != null) {
+				return changes;
+			}
+		}
+
 		// Create task
 		PollTask task = new PollTask(credential, lastRun, listener, filter, lastRefs);
 		task.setWorkspace(ws);
@@ -525,6 +607,13 @@ public class PerforceScm extends SCM {
 		PrintStream log = listener.getLogger();
 		boolean success = true;
 
+		// Global libraries are copied from the library cache
+		if (libraryPath != null && P4LibraryCache.isCached(libraryRef)) {
+			checkoutLibrary(run, buildWorkspace, listener, changelogFile);
+			logger.finer("P4: checkout[" + jobName + "] finished from library cache.");
+			return;
+		}
+
 		// Create task
 		CheckoutTask task = new CheckoutTask(credential, run, listener, populate);
 
@@ -640,8 +729,9 @@ public class PerforceScm extends SCM {
 		if (changelogFile != null) {
 			// Calculate changes prior to build (based on last build)
 			listener.getLogger().println("P4: saving built changes.");
-			List<P4ChangeEntry> changes = calculateChanges(run, task);
-			P4ChangeSet.store(changelogFile, changes);
+			try (P4ChangeWriter writer = new P4ChangeWriter(changelogFile, task.getSwarm())) {
+				calculateChanges(run, task, writer);
+			}
 			listener.getLogger().println("... done\n");
 		} else {
 			logger.fine("P4: unable to save changes, null changelogFile.");
@@ -653,6 +743,37 @@ public class PerforceScm extends SCM {
 		logger.finer("P4: checkout[" + jobName + "] finished.");
 	}
 
+	private void checkoutLibrary(Run<?, ?> run, FilePath buildWorkspace, TaskListener listener, File changelogFile)
+			throws IOException, InterruptedException {
+
+		P4LibraryCache.checkout(run, credential, libraryPath, libraryRef, buildWorkspace, listener);
+
+		// Add tagging action to build, as for a synced library.
+		Workspace ws = AbstractTask.setup(run, workspace, buildWorkspace, listener);
+		TagAction tag = new TagAction(run, credential);
+		tag.setWorkspace(ws);
+		tag.setRefChanges(Collections.singletonList(libraryRef));
+		tag.setChangelog(changelogFile);
+		tagAction = tag;
+		run.addAction(tag);
+
+		// Write change log, based on the library changes of the last build
+		if (changelogFile != null) {
+			listener.getLogger().println("P4: saving built changes.");
+			Run<?, ?> lastBuild = getChangelogBase(run);
+			List<P4Ref> lastRefs = TagAction.getLastChange(lastBuild, listener, ws.getSyncID());
+			try (P4ChangeWriter writer = new P4ChangeWriter(changelogFile, null)) {
+				P4LibraryCache.writeChanges(run, credential, libraryPath, lastRefs, libraryRef, writer, listener);
+
+				// No previous build, so add current
+				if (lastBuild == null && writer.getCount() == 0) {
+					writer.write(P4LibraryCache.getChange(run, credential, libraryPath, libraryRef, listener));
+				}
+			}
+			listener.getLogger().println("... done\n");
+		}
+	}
+
 	private String getScriptPath(Run<?, ?> run) {
 		if (script != null) {
 			return script;
@@ -726,43 +847,56 @@ public class PerforceScm extends SCM {
 		}
 	}
 
-	private List<P4ChangeEntry> calculateChanges(Run<?, ?> run, CheckoutTask task) {
-		List<P4ChangeEntry> list = new ArrayList<P4ChangeEntry>();
-
-		Run<?, ?> lastBuild;
+	/**
+	 * @param run current build
+	 * @return the build whose changes the changelog starts after, or null.
+	 */
+	private Run<?, ?> getChangelogBase(Run<?, ?> run) {
 		PerforceScm.DescriptorImpl scm = getDescriptor();
 		if (scm != null && scm.isLastSuccess()) {
 			// JENKINS-64030 Include changes since last successful build
-			lastBuild = run.getPreviousSuccessfulBuild();
-		} else {
-			// JENKINS-40747 Look for all changes since the last (completed) build.
-			// The lastBuild from getPreviousBuild() may be in progress or blocked.
-			lastBuild = run.getPreviousCompletedBuild();
+			return run.getPreviousSuccessfulBuild();
 		}
+		// JENKINS-40747 Look for all changes since the last (completed) build.
+		// The lastBuild from getPreviousBuild() may be in progress or blocked.
+		return run.getPreviousCompletedBuild();
+	}
+
+	private void calculateChanges(Run<?, ?> run, CheckoutTask task, P4ChangeWriter writer) throws IOException {
+		// Stream entries to the changelog as they are fetched
+		Consumer<P4ChangeEntry> consumer = entry -> {
+			try {
+				writer.write(entry);
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		};
+
+		Run<?, ?> lastBuild = getChangelogBase(run);
 
 		String syncID = task.getSyncID();
 		List<P4Ref> lastRefs = TagAction.getLastChange(lastBuild, task.getListener(), syncID);
 
-		if (lastRefs != null && !lastRefs.isEmpty()) {
-			list.addAll(task.getChangesFull(lastRefs));
-		}
+		try {
+			if (lastRefs != null && !lastRefs.isEmpty()) {
+				task.getChangesFull(lastRefs, consumer);
+			}
 
-		// if empty, look for shelves in current build. The latest change
-		// will not get listed as 'p4 changes n,n' will return no change
-		if (list.isEmpty()) {
-			List<P4Ref> lastRevisions = new ArrayList<>();
-			lastRevisions.add(task.getBuildChange());
-			if (lastRevisions != null && !lastRevisions.isEmpty()) {
-				list.addAll(task.getChangesFull(lastRevisions));
+			// if empty, look for shelves in current build. The latest change
+			// will not get listed as 'p4 changes n,n' will return no change
+			if (writer.getCount() == 0) {
+				List<P4Ref> lastRevisions = new ArrayList<>();
+				lastRevisions.add(task.getBuildChange());
+				task.getChangesFull(lastRevisions, consumer);
 			}
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
 		}
 
 		// still empty! No previous build, so add current
-		if ((lastBuild == null) && list.isEmpty()) {
-			list.add(task.getCurrentChange());
+		if ((lastBuild == null) && writer.getCount() == 0) {
+			writer.write(task.getCurrentChange());
 		}
-
-		return list;
 	}
 
 	// Post Jenkins 2.60 JENKINS-37584 JENKINS-40885 JENKINS-52806 JENKINS-60074
@@ -0,0 +1,148 @@
+package org.jenkinsci.plugins.p4.changes;
+
+import com.perforce.p4java.core.IChangelistSummary;
+import com.perforce.p4java.core.IFix;
+import com.perforce.p4java.core.file.IFileSpec;
+import org.jenkinsci.plugins.p4.client.ClientHelper;
+import org.jenkinsci.plugins.p4.email.P4UserCache;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.logging.Logger;
+
+/**
+ * Builds changelog entries for a list of submitted changes using a fixed
+ * number of server commands per chunk of changes: a 'p4 changes -l', a
+ * 'p4 fixes' and a 'p4 describe -s' over the chunk's range. Author e-mails
+ * are served from the P4UserCache, prefilled with a 'p4 users' per chunk.
+ */
+public class P4ChangeBatch {
+
+	private static Logger logger = Logger.getLogger(P4ChangeBatch.class.getName());
+
+	// Number of changes summarised and described per chunk
+	private static int chunkSize = Integer.getInteger(P4ChangeBatch.class.getName() + ".chunk", 50);
+
+	private final ClientHelper p4;
+
+	public P4ChangeBatch(ClientHelper p4) {
+		this.p4 = p4;
+	}
+
+	/**
+	 * Set the number of changes fetched per chunk (for tests and the script
+	 * console).
+	 *
+	 * @param size changes per chunk
+	 */
+	public static void setChunkSize(int size) {
+		chunkSize = size;
+	}
+
+	/**
+	 * Build changelog entries for the given changes, in the same order.
+	 * Labels and commits fall back to fetching each entry individually.
+	 *
+	 * @param refs list of changes (as returned by ClientHelper.listChanges)
+	 * @return list of change entries
+	 * @throws Exception push up stack
+	 */
+	public List<P4ChangeEntry> getChangeEntries(List<P4Ref> refs) throws Exception {
+		List<P4ChangeEntry> entries = new ArrayList<>();
+		getChangeEntries(refs, entries::add);
+		return entries;
+	}
+
+	/**
+	 * Build changelog entries for the given changes, in the same order, passing
+	 * each entry to the consumer as soon as its chunk has been described.
+	 *
+	 * @param refs     list of changes (as returned by ClientHelper.listChanges)
+	 * @param consumer receives each change entry
+	 * @throws Exception push up stack
+	 */
+	public void getChangeEntries(List<P4Ref> refs, Consumer<P4ChangeEntry> consumer) throws Exception {
+
+		List<Long> ids = new ArrayList<>();
+		for (P4Ref ref : refs) {
+			if (ref instanceof P4ChangeRef) {
+				ids.add(ref.getChange());
+			}
+		}
+
+		if (ids.size() < 2) {
+			for (P4Ref ref : refs) {
+				consumer.accept(ref.getChangeEntry(p4));
+			}
+			return;
+		}
+
+		// per chunk: 'p4 changes -l', 'p4 fixes' and 'p4 describe -s' over the
+		// chunk's range, entries are emitted per chunk
+		String client = p4.getClient().getName();
+		P4ChangeEntry template = new P4ChangeEntry();
+		int limit = template.getMaxLimit() + 1;
+		for (int i = 0; i < refs.size(); i += chunkSize) {
+			List<P4Ref> chunk = refs.subList(i, Math.min(i + chunkSize, refs.size()));
+
+			List<Long> chunkIds = new ArrayList<>();
+			for (P4Ref ref : chunk) {
+				if (ref instanceof P4ChangeRef) {
+					chunkIds.add(ref.getChange());
+				}
+			}
+
+			Map<Long, IChangelistSummary> summaries = new HashMap<>();
+			Map<Long, List<IFix>> fixes = new HashMap<>();
+			Map<Long, List<IFileSpec>> files = new HashMap<>();
+			if (!chunkIds.isEmpty()) {
+				long min = Collections.min(chunkIds);
+				long max = Collections.max(chunkIds);
+				String path = "//" + client + "/...@" + min + "," + max;
+
+				for (IChangelistSummary summary : p4.getChangeSummaries(path, chunkIds.size())) {
+					if (summary != null) {
+						summaries.put((long) summary.getId(), summary);
+					}
+				}
+
+				for (IFix fix : p4.getJobs(path)) {
+					long id = fix.getChangelistId();
+					fixes.computeIfAbsent(id, k -> new ArrayList<>()).add(fix);
+				}
+
+				// emails: one 'p4 users' for authors not already cached
+				Set<String> users = new HashSet<>();
+				for (IChangelistSummary summary : summaries.values()) {
+					users.add(summary.getUsername());
+				}
+				P4UserCache.prefill(p4, users);
+
+				chunkIds.retainAll(summaries.keySet());
+				files = p4.getChangeFiles(chunkIds, limit);
+			}
+
+			for (P4Ref ref : chunk) {
+				long id = ref.getChange();
+				IChangelistSummary summary = summaries.get(id);
+				if (!(ref instanceof P4ChangeRef) || summary == null || !files.containsKey(id)) {
+					logger.fine("P4ChangeBatch: fetching change individually: " + ref);
+					consumer.accept(ref.getChangeEntry(p4));
+					continue;
+				}
+
+				String email = p4.getEmail(summary.getUsername());
+
+				P4ChangeEntry entry = new P4ChangeEntry();
+				entry.setChange(summary, email, files.get(id), fixes.get(id), false);
+				consumer.accept(entry);
+			}
+		}
+	}
+}
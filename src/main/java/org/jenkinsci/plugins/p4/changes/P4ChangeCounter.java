@@ -0,0 +1,102 @@
+package org.jenkinsci.plugins.p4.changes;
+
+import hudson.model.Item;
+import hudson.model.TaskListener;
+import org.jenkinsci.plugins.p4.client.ConnectionHelper;
+import org.jenkinsci.plugins.p4.credentials.P4BaseCredentials;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Cached value of the Perforce 'change' counter per server, fetched at most
+ * once per interval with whichever credential asks first. The counter is
+ * never lower than the newest submitted change, so a job whose last build
+ * synced a change at or above the counter has nothing new to poll. The
+ * {@link P4ChangeFeed} tails the same value.
+ */
+public final class P4ChangeCounter {
+
+	private static Logger logger = Logger.getLogger(P4ChangeCounter.class.getName());
+
+	private static final String PREFIX = P4ChangeCounter.class.getName();
+
+	// Minimum time between server fetches
+	private static long interval = TimeUnit.SECONDS.toMillis(Long.getLong(PREFIX + ".interval", 10L));
+
+	private static final ConcurrentMap<String, Counter> counters = new ConcurrentHashMap<>();
+
+	private P4ChangeCounter() {
+	}
+
+	/**
+	 * Get the 'change' counter, fetching it from the server if the cached
+	 * value is older than the interval. Concurrent callers share one fetch.
+	 *
+	 * @param item       job used to find the credentials
+	 * @param credential credentials ID
+	 * @param listener   for logging
+	 * @return change counter, or -1 if it could not be fetched
+	 */
+	public static long getChange(Item item, String credential, TaskListener listener) {
+		try {
+			P4BaseCredentials credentials = ConnectionHelper.findCredential(credential, item);
+			if (credentials == null) {
+				return -1;
+			}
+			return getChange(credentials, listener);
+		} catch (Exception e) {
+			logger.fine("P4ChangeCounter: unable to fetch change counter: " + e.getMessage());
+			return -1;
+		}
+	}
+
+	/**
+	 * Get the 'change' counter for the server of a credential, fetching it
+	 * if the cached value is older than the interval.
+	 *
+	 * @param credentials Perforce credentials
+	 * @param listener    for logging
+	 * @return change counter
+	 * @throws Exception push up stack
+	 */
+	public static long getChange(P4BaseCredentials credentials, TaskListener listener) throws Exception {
+		Counter counter = counters.computeIfAbsent(credentials.getFullP4port(), k -> new Counter());
+		return counter.get(credentials, listener);
+	}
+
+	/**
+	 * Set the minimum time between server fetches (for tests and the script
+	 * console).
+	 *
+	 * @param seconds fetch interval, 0 to fetch on every call
+	 */
+	public static void setInterval(long seconds) {
+		interval = TimeUnit.SECONDS.toMillis(seconds);
+	}
+
+	public static void clear() {
+		counters.clear();
+	}
+
+	private static final class Counter {
+
+		private long change = -1;
+		private long fetched = 0;
+
+		private synchronized long get(P4BaseCredentials credentials, TaskListener listener) throws Exception {
+			long now = System.currentTimeMillis();
+			if (change >= 0 && now - fetched < interval) {
+				return change;
+			}
+
+			try (ConnectionHelper p4 = new ConnectionHelper(credentials, listener)) {
+				change = Long.parseLong(p4.getCounter("change"));
+			}
+			fetched = System.currentTimeMillis();
+			return change;
+		}
+	}
+}
@@ -17,6 +17,7 @@ import org.jenkinsci.plugins.p4.client.ConnectionHelper;
 import org.jenkinsci.plugins.p4.email.P4UserProperty;
 import org.kohsuke.stapler.export.Exported;
 
+import java.io.IOException;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
@@ -59,6 +60,36 @@ public class P4ChangeEntry extends ChangeLogSet.Entry {
 
 	public void setChange(ConnectionHelper p4, IChangelistSummary changelist) throws Exception {
 
+		int changeId = changelist.getId();
+		String email = p4.getEmail(changelist.getUsername());
+
+		// set list of file revisions in change
+		List<IFileSpec> files;
+		boolean pending = changelist.getStatus() == ChangelistStatus.PENDING;
+		if (pending) {
+			files = p4.getShelvedFiles(changeId);
+		} else {
+			files = p4.getChangeFiles(changeId, fileCountLimit + 1);
+		}
+
+		// set list of jobs in change
+		List<IFix> fixes = p4.getJobs(changeId);
+
+		setChange(changelist, email, files, fixes, pending);
+	}
+
+	/**
+	 * Populate the entry from pre-fetched change data (used by P4ChangeBatch).
+	 *
+	 * @param changelist Change summary
+	 * @param email      Email address for the change author
+	 * @param files      Files in the change (describe or shelved)
+	 * @param fixes      Jobs fixed by the change
+	 * @param shelved    true if the change is a shelf
+	 */
+	public void setChange(IChangelistSummary changelist, String email, List<IFileSpec> files, List<IFix> fixes,
+	                      boolean shelved) throws IOException {
+
 		// set id
 		int changeId = changelist.getId();
 		id = new P4ChangeRef(changeId);
@@ -67,9 +98,10 @@ public class P4ChangeEntry extends ChangeLogSet.Entry {
 		String user = changelist.getUsername();
 		author = User.get(user);
 
-		// set email property on user
-		String email = p4.getEmail(user);
-		if (email != null && !email.isEmpty()) {
+		// set email property on user (skip the save if unchanged)
+		P4UserProperty current = author.getProperty(P4UserProperty.class);
+		boolean known = current != null && email != null && email.equals(current.getStoredEmail());
+		if (email != null && !email.isEmpty() && !known) {
 			P4UserProperty p4prop = new P4UserProperty(email);
 			author.addProperty(p4prop);
 			logger.fine("Setting email for user: " + user + ":" + email);
@@ -93,14 +125,7 @@ public class P4ChangeEntry extends ChangeLogSet.Entry {
 		msg = changelist.getDescription();
 
 		// set list of file revisions in change
-		List<IFileSpec> files;
-		if (changelist.getStatus() == ChangelistStatus.PENDING) {
-			files = p4.getShelvedFiles(changeId);
-			shelved = true;
-		} else {
-			files = p4.getChangeFiles(changeId, fileCountLimit + 1);
-			shelved = false;
-		}
+		this.shelved = shelved;
 		if (files != null && files.size() > fileCountLimit) {
 			fileLimit = true;
 			files = files.subList(0, fileCountLimit);
@@ -115,7 +140,7 @@ public class P4ChangeEntry extends ChangeLogSet.Entry {
 		}
 
 		// set list of jobs in change
-		this.jobs = p4.getJobs(changeId);
+		this.jobs = (fixes != null) ? fixes : new ArrayList<IFix>();
 	}
 
 	public void setLabel(ConnectionHelper p4, String labelId) throws Exception {
@@ -298,6 +323,10 @@ public class P4ChangeEntry extends ChangeLogSet.Entry {
 		return fileLimit;
 	}
 
+	public void setFileLimit(boolean value) {
+		fileLimit = value;
+	}
+
 	public String getAction(IFileSpec file) {
 		FileAction action = file.getAction();
 		String s = action.name();
@@ -0,0 +1,479 @@
+package org.jenkinsci.plugins.p4.changes;
+
+import com.perforce.p4java.client.IClient;
+import com.perforce.p4java.core.IChangelistSummary;
+import com.perforce.p4java.core.IRepo;
+import com.perforce.p4java.core.file.IFileSpec;
+import hudson.model.Descriptor;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+import jenkins.model.Jenkins;
+import org.jenkinsci.plugins.p4.PerforceScm;
+import org.jenkinsci.plugins.p4.client.ConnectionHelper;
+import org.jenkinsci.plugins.p4.client.ViewMatcher;
+import org.jenkinsci.plugins.p4.credentials.P4BaseCredentials;
+import org.jenkinsci.plugins.p4.filters.Filter;
+import org.jenkinsci.plugins.p4.filters.FilterEngine;
+import org.jenkinsci.plugins.p4.workspace.ManualWorkspaceImpl;
+import org.jenkinsci.plugins.p4.workspace.StaticWorkspaceImpl;
+import org.jenkinsci.plugins.p4.workspace.StreamWorkspaceImpl;
+import org.jenkinsci.plugins.p4.workspace.TemplateWorkspaceImpl;
+import org.jenkinsci.plugins.p4.workspace.Workspace;
+import org.jenkinsci.plugins.p4.workspace.WorkspaceSpec;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Shared feed of submitted changes for one Perforce server and credential.
+ * <p>
+ * Instead of every job running 'p4 changes' against its own client, the feed
+ * tails the 'change' counter (shared per server with {@link P4ChangeCounter})
+ * at most once per interval and keeps a window of recent submitted changes
+ * with their user and depot paths. A change still being submitted keeps a
+ * number below later submits, so missing numbers near the head are fetched
+ * again on every refresh. Polling a job is
+ * then a local match of those paths against the job's client view (fetched
+ * from the server and cached) followed by the job's filters.
+ * <p>
+ * When the feed cannot give the same answer as a regular poll (the last built
+ * change is older than the window or among missing numbers near the head, a
+ * pinned change, graph repos, ChangeView
+ * or spec file workspaces, truncated file lists, or the first poll after the
+ * workspace configuration changed) it returns null and the caller falls back
+ * to a PollTask.
+ */
+public class P4ChangeFeed {
+
+	private static Logger logger = Logger.getLogger(P4ChangeFeed.class.getName());
+
+	private static final String PREFIX = P4ChangeFeed.class.getName();
+
+	private static final boolean DISABLED = Boolean.getBoolean(PREFIX + ".disabled");
+
+	// Minimum time between server refreshes
+	private static long interval = TimeUnit.SECONDS.toMillis(Long.getLong(PREFIX + ".interval", 10L));
+
+	// Max changes held in the window
+	private static final int WINDOW = Integer.getInteger(PREFIX + ".window", 5000);
+
+	// Changes fetched when the feed is first used
+	private static int backfill = Integer.getInteger(PREFIX + ".backfill", 500);
+
+	// Change numbers below the head that are not yet trusted to be complete
+	private static final int RESCAN = Integer.getInteger(PREFIX + ".rescan", 10);
+
+	// Max depot paths kept per change; larger changes are marked truncated
+	private static final int FILE_LIMIT = Integer.getInteger(PREFIX + ".fileLimit", 1000);
+
+	// How long a client view is trusted before it is fetched again
+	private static final long VIEW_TTL = TimeUnit.SECONDS.toMillis(Long.getLong(PREFIX + ".viewTtl", 300L));
+
+	// Number of changes described per 'p4 describe -s' command
+	private static final int CHUNK = Integer.getInteger(PREFIX + ".chunk", 50);
+
+	// Max client views cached per feed, least recently used are dropped
+	private static final int MAX_VIEWS = Integer.getInteger(PREFIX + ".maxViews", 1000);
+
+	private static final ConcurrentMap<String, P4ChangeFeed> feeds = new ConcurrentHashMap<>();
+
+	private final String key;
+
+	// window of submitted changes, covering the range (base, head]
+	private final TreeMap<Long, Change> changes = new TreeMap<>();
+	private long base = -1;
+	private long head = -1;
+	private long refreshed = 0;
+
+	// client name to view, bounded as clients of deleted or renamed jobs are never removed
+	private final Map<String, View> views = Collections.synchronizedMap(
+			new LinkedHashMap<String, View>(16, 0.75f, true) {
+				@Override
+				protected boolean removeEldestEntry(Map.Entry<String, View> eldest) {
+					return size() > MAX_VIEWS;
+				}
+			});
+
+	private P4ChangeFeed(String key) {
+		this.key = key;
+	}
+
+	public static boolean isEnabled() {
+		return !DISABLED;
+	}
+
+	/**
+	 * Get the feed for the server and user of a credential.
+	 *
+	 * @param credentials Perforce credentials
+	 * @return shared change feed
+	 */
+	public static P4ChangeFeed get(P4BaseCredentials credentials) {
+		String key = credentials.getId() + "/" + credentials.getUsername() + "@" + credentials.getFullP4port();
+		return feeds.computeIfAbsent(key, P4ChangeFeed::new);
+	}
+
+	/**
+	 * Set the minimum time between server refreshes (for tests and the
+	 * script console).
+	 *
+	 * @param seconds refresh interval, 0 to refresh on every poll
+	 */
+	public static void setInterval(long seconds) {
+		interval = TimeUnit.SECONDS.toMillis(seconds);
+	}
+
+	/**
+	 * Set the number of changes fetched when a feed is first used (for tests
+	 * and the script console).
+	 *
+	 * @param changes changes before the counter
+	 */
+	public static void setBackfill(int changes) {
+		backfill = changes;
+	}
+
+	/**
+	 * Drop all feeds; the next poll starts a new window.
+	 */
+	public static void clear() {
+		feeds.clear();
+	}
+
+	/**
+	 * Find unbuilt changes for a workspace from the shared feed, with the
+	 * same result as a PollTask.
+	 *
+	 * @param run        last build, used to find the credentials
+	 * @param credential credentials ID
+	 * @param ws         expanded workspace
+	 * @param lastRefs   changes synced by the last build
+	 * @param filter     polling filters
+	 * @param listener   for logging
+	 * @return list of changes, newest first, or null if the job must poll the server
+	 */
+	public static List<P4Ref> poll(Run<?, ?> run, String credential, Workspace ws, List<P4Ref> lastRefs,
+								   List<Filter> filter, TaskListener listener) {
+		if (!isEnabled()) {
+			return null;
+		}
+
+		try {
+			P4BaseCredentials credentials = ConnectionHelper.findCredential(credential, run);
+			if (credentials == null) {
+				return null;
+			}
+			return get(credentials).poll(credentials, ws, lastRefs, filter, listener);
+		} catch (Exception e) {
+			logger.fine("P4ChangeFeed: poll failed, falling back: " + e.getMessage());
+			return null;
+		}
+	}
+
+	private List<P4Ref> poll(P4BaseCredentials credentials, Workspace ws, List<P4Ref> lastRefs,
+							  List<Filter> filter, TaskListener listener) throws Exception {
+
+		// only a single change baseline is supported (no labels or graph commits)
+		if (lastRefs.size() != 1 || !(lastRefs.get(0) instanceof P4ChangeRef)) {
+			return null;
+		}
+		long from = lastRefs.get(0).getChange();
+		if (from <= 0) {
+			return null;
+		}
+
+		ViewMatcher view = getView(credentials, ws, listener);
+		if (view == null) {
+			return null;
+		}
+
+		refresh(credentials, listener);
+
+		FilterEngine engine = new FilterEngine(filter);
+		List<Change> candidates = new ArrayList<>();
+		long to;
+		synchronized (this) {
+			if (from < base) {
+				return null;
+			}
+			// a missing change after the last build may still be submitting
+			if (from > head - RESCAN && hasGaps(from, head)) {
+				return null;
+			}
+			to = head;
+
+			int limit = getMaxChangeLimit();
+			NavigableMap<Long, Change> range = changes.tailMap(from, false).descendingMap();
+			for (Change change : range.values()) {
+				if (change.paths == null) {
+					return null;
+				}
+				if (view.matchesAny(change.paths)) {
+					candidates.add(change);
+				} else if (change.truncated) {
+					return null;
+				}
+				if (candidates.size() >= limit) {
+					break;
+				}
+			}
+		}
+
+		listener.getLogger().println("P4: Polling with change feed: " + from + "," + to);
+
+		List<P4Ref> result = new ArrayList<>();
+		for (Change change : candidates) {
+			if (engine.isUserFiltered(change.user)) {
+				continue;
+			}
+			if (engine.hasFileFilter()) {
+				if (change.truncated) {
+					return null;
+				}
+				if (engine.isFileFiltered(change.paths)) {
+					continue;
+				}
+			}
+			result.add(new P4ChangeRef(change.id));
+			listener.getLogger().println("... found change: " + change.id);
+		}
+		return result;
+	}
+
+	/**
+	 * Get the view for a workspace from the cache, fetching the client from
+	 * the server once the cached view has expired.
+	 *
+	 * @return view matcher or null if the feed cannot be used for the workspace
+	 */
+	private ViewMatcher getView(P4BaseCredentials credentials, Workspace ws, TaskListener listener) throws Exception {
+		String name = ws.getFullName();
+		String config = getConfigKey(ws);
+		if (config == null) {
+			return null;
+		}
+
+		// the first poll after a configuration change updates the client spec
+		View view = views.get(name);
+		if (view == null || !view.config.equals(config)) {
+			views.put(name, new View(config, null, 0));
+			return null;
+		}
+
+		if (System.currentTimeMillis() - view.fetched < VIEW_TTL) {
+			return view.matcher;
+		}
+
+		String clientName = name;
+		if (ws instanceof TemplateWorkspaceImpl) {
+			clientName = ws.getExpand().format(((TemplateWorkspaceImpl) ws).getTemplateName(), false);
+		}
+
+		ViewMatcher matcher = null;
+		try (ConnectionHelper p4 = new ConnectionHelper(credentials, listener)) {
+			IClient client = p4.getConnection().getClient(clientName);
+			if (client != null && isSupported(p4, client)) {
+				matcher = new ViewMatcher(client.getClientView(), p4.getConnection().isCaseSensitive());
+			}
+		}
+		if (matcher != null && matcher.isEmpty()) {
+			matcher = null;
+		}
+
+		views.put(name, new View(config, matcher, System.currentTimeMillis()));
+		return matcher;
+	}
+
+	private boolean isSupported(ConnectionHelper p4, IClient client) throws Exception {
+		List<String> changeView = client.getChangeView();
+		if (changeView != null && !changeView.isEmpty()) {
+			return false;
+		}
+		if (p4.checkVersion(20171)) {
+			List<IRepo> repos = client.getRepos();
+			if (repos != null && !repos.isEmpty()) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Fetch the changes submitted since the last refresh and any missing
+	 * changes near the head, at most once per interval. Concurrent polls wait
+	 * for and share a single refresh.
+	 */
+	private synchronized void refresh(P4BaseCredentials credentials, TaskListener listener) throws Exception {
+		long now = System.currentTimeMillis();
+		if (now - refreshed < interval) {
+			return;
+		}
+
+		long counter = P4ChangeCounter.getChange(credentials, listener);
+		long settled = Math.max(base, head - RESCAN);
+		if (head < 0 || counter > head || hasGaps(settled, head)) {
+			try (ConnectionHelper p4 = new ConnectionHelper(credentials, listener)) {
+				if (head < 0) {
+					base = Math.max(0, counter - backfill);
+					head = base;
+					fetch(p4, base, counter, backfill);
+				} else {
+					fetch(p4, settled, counter, WINDOW);
+				}
+			}
+		}
+		refreshed = System.currentTimeMillis();
+	}
+
+	/**
+	 * @return true if a change number in the range (from, to] is not in the
+	 * window; pending, deleted or still submitting.
+	 */
+	private boolean hasGaps(long from, long to) {
+		for (long id = from + 1; id <= to; id++) {
+			if (!changes.containsKey(id)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Add the submitted changes in the range (from, to] to the window; changes
+	 * already in the window are not described again.
+	 */
+	private void fetch(ConnectionHelper p4, long from, long to, int max) throws Exception {
+		String path = "//...@" + (from + 1) + "," + to;
+		List<IChangelistSummary> summaries = p4.getChangeSummaries(path, max, false);
+
+		List<Long> ids = new ArrayList<>();
+		Map<Long, String> users = new HashMap<>();
+		if (summaries != null) {
+			for (IChangelistSummary summary : summaries) {
+				if (summary != null && summary.getId() > 0) {
+					ids.add((long) summary.getId());
+					users.put((long) summary.getId(), summary.getUsername());
+				}
+			}
+		}
+		Collections.sort(ids);
+
+		// too many changes to hold; restart the window after the gap
+		if (ids.size() >= max) {
+			changes.clear();
+			base = ids.get(0) - 1;
+		}
+
+		List<Long> added = new ArrayList<>();
+		for (Long id : ids) {
+			if (!changes.containsKey(id)) {
+				added.add(id);
+			}
+		}
+		for (int i = 0; i < added.size(); i += CHUNK) {
+			List<Long> chunk = added.subList(i, Math.min(i + CHUNK, added.size()));
+			Map<Long, List<IFileSpec>> files = p4.getChangeFiles(chunk, FILE_LIMIT + 1);
+			for (Long id : chunk) {
+				changes.put(id, new Change(id, users.get(id), files.get(id)));
+			}
+		}
+
+		// Missing numbers up to the head are fetched again while they are
+		// within RESCAN of the head.
+		head = Math.max(head, to);
+
+		while (changes.size() > WINDOW) {
+			base = changes.pollFirstEntry().getKey();
+		}
+		logger.fine("P4ChangeFeed: " + key + " window (" + base + "," + head + "] " + changes.size() + " changes");
+	}
+
+	/**
+	 * @return a key that changes whenever the workspace configuration
+	 * affects the client view, or null if the view cannot be cached.
+	 */
+	private static String getConfigKey(Workspace ws) {
+		StringBuilder sb = new StringBuilder();
+		sb.append(ws.getClass().getName()).append("\n");
+		sb.append(ws.getFullName()).append("\n");
+
+		if (ws instanceof ManualWorkspaceImpl) {
+			WorkspaceSpec spec = ((ManualWorkspaceImpl) ws).getSpec();
+			sb.append(ws.getExpand().format(spec.getView(), false)).append("\n");
+			sb.append(spec.getStreamName()).append("\n");
+			sb.append(spec.getChangeView()).append("\n");
+			sb.append(spec.getType()).append("\n");
+		} else if (ws instanceof StreamWorkspaceImpl) {
+			sb.append(ws.getExpand().format(((StreamWorkspaceImpl) ws).getStreamName(), false));
+		} else if (ws instanceof TemplateWorkspaceImpl) {
+			sb.append(ws.getExpand().format(((TemplateWorkspaceImpl) ws).getTemplateName(), false));
+		} else if (!(ws instanceof StaticWorkspaceImpl)) {
+			// spec file workspaces may change the view on every poll
+			return null;
+		}
+		return sb.toString();
+	}
+
+	private static int getMaxChangeLimit() {
+		int max = 0;
+		Jenkins j = Jenkins.getInstance();
+		if (j != null) {
+			Descriptor dsc = j.getDescriptor(PerforceScm.class);
+			if (dsc instanceof PerforceScm.DescriptorImpl) {
+				max = ((PerforceScm.DescriptorImpl) dsc).getMaxChanges();
+			}
+		}
+		return (max > 0) ? max : PerforceScm.DEFAULT_CHANGE_LIMIT;
+	}
+
+	private static final class Change {
+
+		private final long id;
+		private final String user;
+		private final List<String> paths;
+		private final boolean truncated;
+
+		private Change(long id, String user, List<IFileSpec> files) {
+			this.id = id;
+			this.user = user;
+			if (files == null) {
+				this.paths = null;
+				this.truncated = false;
+				return;
+			}
+
+			List<String> list = new ArrayList<>();
+			for (IFileSpec file : files) {
+				if (list.size() >= FILE_LIMIT) {
+					break;
+				}
+				list.add(file.getDepotPathString());
+			}
+			this.paths = list;
+			this.truncated = files.size() > FILE_LIMIT;
+		}
+	}
+
+	private static final class View {
+
+		private final String config;
+		private final ViewMatcher matcher;
+		private final long fetched;
+
+		private View(String config, ViewMatcher matcher, long fetched) {
+			this.config = config;
+			this.matcher = matcher;
+			this.fetched = fetched;
+		}
+	}
+}
@@ -31,6 +31,10 @@ import java.util.logging.Logger;
 /**
  * Uses the "index.jelly" view to render the changelist details and use the
  * "digest.jelly" view of to render the summary page.
+ * <p>
+ * Versioned changelogs (see {@link P4ChangeSet#VERSION}) are rebuilt purely
+ * from the file; a Perforce connection is only opened for older formats that
+ * do not carry all the details.
  */
 public class P4ChangeParser extends ChangeLogParser {
 
@@ -46,15 +50,17 @@ public class P4ChangeParser extends ChangeLogParser {
 	@Override
 	public ChangeLogSet<? extends Entry> parse(Run run, RepositoryBrowser<?> browser, File file)
 			throws IOException, SAXException {
-		try (ConnectionHelper p4 = new ConnectionHelper(run, credential, null)) {
+		ChangeLogHandler handler = new ChangeLogHandler(run, browser, credential);
+		try {
 			SAXParserFactory factory = SAXParserFactory.newInstance();
 			SAXParser parser = factory.newSAXParser();
-			ChangeLogHandler handler = new ChangeLogHandler(run, browser, p4);
 			parser.parse(file, handler);
 			P4ChangeSet changeSet = handler.getChangeLogSet();
 			return changeSet;
 		} catch (Exception e) {
 			logger.severe("Could not parse Perforce changelog: " + file.toString());
+		} finally {
+			handler.close();
 		}
 		return new P4ChangeSet(run, browser, new ArrayList<>());
 	}
@@ -68,23 +74,55 @@ public class P4ChangeParser extends ChangeLogParser {
 		private Run<?, ?> run;
 		private RepositoryBrowser<?> browser;
 		private ConnectionHelper p4;
-
-		public ChangeLogHandler(Run<?, ?> run, RepositoryBrowser<?> browser, ConnectionHelper p4) throws P4JavaException {
+		private String credential;
+		private int version = 0;
+		private long commitDate = 0L;
+
+		/**
+		 * Handler that only connects to Perforce if the changelog is in an
+		 * older format that needs server lookups.
+		 *
+		 * @param run        Jenkins Run
+		 * @param browser    Repository browser (may be null)
+		 * @param credential Credential ID for legacy lookups
+		 */
+		public ChangeLogHandler(Run<?, ?> run, RepositoryBrowser<?> browser, String credential) {
 			this.run = run;
 			this.browser = browser;
-			this.p4 = p4;
+			this.credential = credential;
+		}
 
-			if (browser == null) {
+		private ConnectionHelper getConnection() throws IOException {
+			if (p4 == null) {
+				p4 = new ConnectionHelper(run, credential, null);
+			}
+			return p4;
+		}
+
+		private static RepositoryBrowser<?> getSwarmBrowser(ConnectionHelper p4) throws P4JavaException {
+			try {
+				String url = p4.getSwarm();
+				if (url != null) {
+					return new SwarmBrowser(url);
+				}
+			} catch (RequestException re) {
+				if (re.getMessage() != null && !re.getMessage().contains("Unknown command")) {
+					throw re;
+				}
+				// else : Ignore, the command is not supported by older P4 versions
+			}
+			return null;
+		}
+
+		/**
+		 * Close the connection if one was opened by this handler.
+		 */
+		public void close() {
+			if (p4 != null && credential != null) {
 				try {
-					String url = p4.getSwarm();
-					if (url != null) {
-						this.browser = new SwarmBrowser(url);
-					}
-				} catch (RequestException re) {
-					if (re.getMessage() != null && !re.getMessage().contains("Unknown command")) {
-						throw re;
-					}
-					// else : Ignore, the command is not supported by older P4 versions
+					p4.close();
+				} catch (Exception e) {
+					logger.fine("Unable to close connection: " + e.getMessage());
 				}
 			}
 		}
@@ -97,11 +135,40 @@ public class P4ChangeParser extends ChangeLogParser {
 		@Override
 		public void startDocument() throws SAXException {
 			changeEntries = new ArrayList<P4ChangeEntry>();
-			changeSet = new P4ChangeSet(run, browser, changeEntries);
 		}
 
 		@Override
 		public void endDocument() throws SAXException {
+			if (changeSet == null) {
+				changeSet = new P4ChangeSet(run, browser, changeEntries);
+			}
+		}
+
+		private void startChangelog(Attributes attributes) throws SAXException {
+			String ver = attributes.getValue("version");
+			if (ver != null) {
+				try {
+					version = Integer.parseInt(ver);
+				} catch (NumberFormatException e) {
+					version = 0;
+				}
+			}
+
+			if (browser == null) {
+				String swarm = attributes.getValue("swarm");
+				if (swarm != null && !swarm.isEmpty()) {
+					browser = new SwarmBrowser(swarm);
+				} else if (version < P4ChangeSet.VERSION && credential != null) {
+					// legacy changelog; look up Swarm on the server
+					try {
+						browser = getSwarmBrowser(getConnection());
+					} catch (Exception e) {
+						throw new SAXException(e);
+					}
+				}
+			}
+
+			changeSet = new P4ChangeSet(run, browser, changeEntries);
 		}
 
 		@Override
@@ -109,7 +176,8 @@ public class P4ChangeParser extends ChangeLogParser {
 				throws SAXException {
 
 			if (qName.equalsIgnoreCase("changelog")) {
-				// this is the root, so don't do anything
+				// this is the root, read the format version and Swarm URL
+				startChangelog(attributes);
 				text.setLength(0);
 				return;
 			}
@@ -139,6 +207,13 @@ public class P4ChangeParser extends ChangeLogParser {
 						return;
 					}
 
+					if (qName.equalsIgnoreCase("changeInfo")) {
+						String date = attributes.getValue("date");
+						commitDate = (date != null) ? Long.parseLong(date) : 0L;
+						text.setLength(0);
+						return;
+					}
+
 					if (qName.equalsIgnoreCase("job")) {
 						IFix temp = new Fix();
 
@@ -184,6 +259,9 @@ public class P4ChangeParser extends ChangeLogParser {
 							|| qName.equalsIgnoreCase("label")
 							|| qName.equalsIgnoreCase("commit"))) {
 
+						// Legacy formats only stored the id; fetch details from the server.
+						ConnectionHelper p4 = getConnection();
+
 						// Add changelist to entry
 						if (qName.equalsIgnoreCase("changenumber")) {
 							int id = Integer.parseInt(text.toString());
@@ -208,15 +286,19 @@ public class P4ChangeParser extends ChangeLogParser {
 
 						if (qName.equalsIgnoreCase("changeInfo")) {
 							if (elementText.contains("@")) {
-								entry.setId(new P4GraphRef(p4, elementText));
-								text.setLength(0);
-								return;
-							} else {
-								int id = Integer.parseInt(elementText);
+								if (version >= P4ChangeSet.VERSION) {
+									entry.setId(new P4GraphRef(elementText, commitDate));
+								} else {
+									entry.setId(new P4GraphRef(getConnection(), elementText));
+								}
+							} else if (!elementText.isEmpty() && elementText.chars().allMatch(Character::isDigit)) {
+								long id = Long.parseLong(elementText);
 								entry.setId(new P4ChangeRef(id));
-								text.setLength(0);
-								return;
+							} else {
+								entry.setId(new P4LabelRef(elementText));
 							}
+							text.setLength(0);
+							return;
 						}
 
 						if (qName.equalsIgnoreCase("shelved")) {
@@ -243,6 +325,19 @@ public class P4ChangeParser extends ChangeLogParser {
 							return;
 						}
 
+						// Perforce user id (takes precedence over the display name)
+						if (qName.equalsIgnoreCase("changeUserId")) {
+							entry.setAuthor(elementText);
+							text.setLength(0);
+							return;
+						}
+
+						if (qName.equalsIgnoreCase("fileLimit")) {
+							entry.setFileLimit(elementText.equals("true"));
+							text.setLength(0);
+							return;
+						}
+
 						if (qName.equalsIgnoreCase("changeTime")) {
 							entry.setDate(elementText);
 							text.setLength(0);
@@ -0,0 +1,188 @@
+package org.jenkinsci.plugins.p4.changes;
+
+import com.perforce.p4java.core.IFix;
+import org.apache.commons.lang.StringEscapeUtils;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Streams changelog entries to changelog.xml as they are fetched, so memory
+ * use does not grow with the number of changes or files. The file is written
+ * to a temporary file in the same directory and moved into place on close;
+ * after a failed write the temporary file is deleted instead, so a truncated
+ * changelog is never published.
+ */
+public class P4ChangeWriter implements Closeable {
+
+	private final Path target;
+	private final Path temp;
+	private final Writer out;
+
+	private int count = 0;
+	private boolean closed = false;
+	private boolean failed = false;
+
+	public P4ChangeWriter(File file, String swarm) throws IOException {
+		this.target = file.toPath();
+		File dir = file.getAbsoluteFile().getParentFile();
+		this.temp = File.createTempFile(file.getName(), ".tmp", dir).toPath();
+		this.out = new BufferedWriter(new OutputStreamWriter(Files.newOutputStream(temp), StandardCharsets.UTF_8));
+
+		out.write("<?xml version='1.0' encoding='UTF-8'?>\n");
+		out.write("<changelog version=\"");
+		out.write(String.valueOf(P4ChangeSet.VERSION));
+		out.write("\"");
+		if (swarm != null && !swarm.isEmpty()) {
+			out.write(" swarm=\"");
+			out.write(escape(swarm));
+			out.write("\"");
+		}
+		out.write(">\n");
+	}
+
+	/**
+	 * Append a change entry to the changelog.
+	 *
+	 * @param cl change entry
+	 * @throws IOException push up stack
+	 */
+	public void write(P4ChangeEntry cl) throws IOException {
+		try {
+			writeEntry(cl);
+			count++;
+		} catch (IOException | RuntimeException e) {
+			failed = true;
+			throw e;
+		}
+	}
+
+	private void writeEntry(P4ChangeEntry cl) throws IOException {
+		out.write("\t<entry>\n");
+
+		out.write("\t\t<changenumber><changeInfo");
+		if (cl.getId() instanceof P4GraphRef) {
+			out.write(" date=\"");
+			out.write(String.valueOf(((P4GraphRef) cl.getId()).getDate()));
+			out.write("\"");
+		}
+		out.write(">");
+		out.write(escape(String.valueOf(cl.getId())));
+		out.write("</changeInfo>\n");
+
+		element("clientId", escape(cl.getClientId()));
+		element("msg", P4Escaper.filter().translate(escape(cl.getMsg())));
+		element("changeUser", escape(cl.getAuthor().getDisplayName()));
+		element("changeUserId", escape(cl.getAuthor().getId()));
+		element("changeTime", escape(cl.getChangeTime()));
+		element("shelved", String.valueOf(cl.isShelved()));
+		element("fileLimit", String.valueOf(cl.isFileLimit()));
+
+		out.write("\t\t<files>\n");
+		Collection<P4AffectedFile> files = cl.getAffectedFiles();
+		if (files != null) {
+			for (P4AffectedFile f : files) {
+				// URL encode depot path
+				String safePath = URLEncoder.encode(f.getPath(), "UTF-8");
+
+				out.write("\t\t<file endRevision=\"");
+				out.write(f.getRevision());
+				out.write("\" action=\"");
+				out.write(f.getAction());
+				out.write("\" depot=\"");
+				out.write(safePath);
+				out.write("\" />\n");
+			}
+		}
+		out.write("\t\t</files>\n");
+
+		out.write("\t\t<jobs>\n");
+		List<IFix> jobs = cl.getJobs();
+		if (jobs != null) {
+			for (IFix job : jobs) {
+				out.write("\t\t<job id=\"");
+				out.write(escape(job.getJobId()));
+				out.write("\" status=\"");
+				out.write(escape(job.getStatus()));
+				out.write("\" />\n");
+			}
+		}
+		out.write("\t\t</jobs>\n");
+
+		out.write("\t\t</changenumber>\n");
+		out.write("\t</entry>\n");
+	}
+
+	/**
+	 * @return number of entries written so far.
+	 */
+	public int getCount() {
+		return count;
+	}
+
+	/**
+	 * Finish the changelog and atomically replace the target file, or
+	 * discard it if a write failed.
+	 *
+	 * @throws IOException push up stack
+	 */
+	@Override
+	public void close() throws IOException {
+		if (closed) {
+			return;
+		}
+		closed = true;
+
+		if (failed) {
+			try {
+				out.close();
+			} finally {
+				Files.deleteIfExists(temp);
+			}
+			return;
+		}
+
+		try {
+			out.write("</changelog>\n");
+			out.close();
+		} catch (IOException e) {
+			Files.deleteIfExists(temp);
+			throw e;
+		}
+
+		try {
+			Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+		} catch (AtomicMoveNotSupportedException e) {
+			Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+
+	private void element(String name, String value) throws IOException {
+		out.write("\t\t<");
+		out.write(name);
+		out.write(">");
+		out.write(value);
+		out.write("</");
+		out.write(name);
+		out.write(">\n");
+	}
+
+	private static String escape(String value) {
+		if (value == null) {
+			return "null";
+		}
+		return StringEscapeUtils.escapeXml(value);
+	}
+}
@@ -38,6 +38,26 @@ public class P4GraphRef implements P4Ref {
 		this.sha = null;
 	}
 
+	/**
+	 * Rebuild a graph reference from a stored 'repo@sha' id without
+	 * contacting the server (the commit object is not available).
+	 *
+	 * @param id   Graph id 'repo@sha'
+	 * @param date Committer date in milliseconds
+	 */
+	public P4GraphRef(String id, long date) {
+		String[] parts = (id != null) ? id.split("@") : new String[0];
+		if (parts.length == 2) {
+			this.repo = parts[0];
+			this.sha = parts[1];
+		} else {
+			this.repo = null;
+			this.sha = null;
+		}
+		this.commit = null;
+		this.date = date;
+	}
+
 	public P4GraphRef(String repo, ICommit commit) {
 		this.repo = repo;
 		this.commit = commit;
@@ -31,8 +31,9 @@ import com.perforce.p4java.option.server.GetChangelistsOptions;
 import com.perforce.p4java.option.server.GetFileContentsOptions;
 import com.perforce.p4java.option.server.OpenedFilesOptions;
 import com.perforce.p4java.server.CmdSpec;
-import com.perforce.p4java.server.IServerInfo;
+import com.perforce.p4java.server.IOptionsServer;
 import hudson.AbortException;
+import hudson.Util;
 import hudson.model.Item;
 import hudson.model.ItemGroup;
 import hudson.model.TaskListener;
@@ -75,8 +76,10 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.WeakHashMap;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
 
@@ -87,6 +90,10 @@ public class ClientHelper extends ConnectionHelper {
 
 	private static Logger logger = Logger.getLogger(ClientHelper.class.getName());
 
+	// Server info and services do not change for the life of a (pooled) connection
+	private static final Map<IOptionsServer, Map<String, Object>> serverInfo =
+			Collections.synchronizedMap(new WeakHashMap<>());
+
 	private IClient iclient;
 
 	public ClientHelper(ItemGroup context, String credential, TaskListener listener, Workspace workspace) throws IOException {
@@ -158,9 +165,9 @@ public class ClientHelper extends ConnectionHelper {
 			// Set client Server ID if not already defined in the client spec.
 			String serverId = iclient.getServerId();
 			if (serverId == null || serverId.isEmpty()) {
-				IServerInfo info = getConnection().getServerInfo();
-				String services = getServerServices();
-				serverId = info.getServerId();
+				Map<String, Object> info = getServerInfo();
+				String services = (String) info.get("serverServices");
+				serverId = (String) info.get("serverID");
 				if (serverId != null && !serverId.isEmpty() && isEdgeType(services)) {
 					iclient.setServerId(serverId);
 				}
@@ -181,13 +188,21 @@ public class ClientHelper extends ConnectionHelper {
 
 	private void updateClient() throws Exception {
 
-		// exit early if no change
+		// exit early if the server still holds the spec last saved
 		String clientName = iclient.getName();
+		String digest = getDigest(iclient);
+		if (ClientSpecCache.isCurrent(getPort(), clientName, digest, iclient.getUpdated())) {
+			return;
+		}
+
+		// exit early if no change
 		IClient original = getConnection().getClient(clientName);
 		if (diffClient(original, iclient)) {
+			ClientSpecCache.put(getPort(), clientName, digest, original.getUpdated());
 			return;
 		}
 
+		ClientSpecCache.remove(getPort(), clientName);
 		iclient.update();
 		ClientView clientView = iclient.getClientView();
 
@@ -232,6 +247,15 @@ public class ClientHelper extends ConnectionHelper {
 		return valuesA.equals(valuesB);
 	}
 
+	private String getDigest(IClient client) {
+		if (client == null) {
+			return null;
+		}
+		Map<String, Object> map = InputMapper.map(client);
+		List<String> values = cleanMap(map);
+		return Util.getDigestOf(values.toString());
+	}
+
 	private List<String> cleanMap(Map<String, Object> map) {
 
 		// remove empty fields
@@ -272,15 +296,23 @@ public class ClientHelper extends ConnectionHelper {
 		return false;
 	}
 
-	// TODO remove when P4Java has support for 'serverServices'
-	private String getServerServices() throws ConnectionException, AccessException {
-		List<Map<String, Object>> mapList = getConnection().execMapCmdList(CmdSpec.INFO, new String[]{}, null);
+	// 'p4 info' fields per connection; P4Java has no support for 'serverServices'
+	private Map<String, Object> getServerInfo() throws ConnectionException, AccessException {
+		IOptionsServer connection = getConnection();
+		Map<String, Object> info = serverInfo.get(connection);
+		if (info != null) {
+			return info;
+		}
+
+		info = new HashMap<>();
+		List<Map<String, Object>> mapList = connection.execMapCmdList(CmdSpec.INFO, new String[]{}, null);
 		for (Map<String, Object> map : mapList) {
-			if (map.containsKey("serverServices")) {
-				return (String) map.get("serverServices");
+			if (map != null) {
+				info.putAll(map);
 			}
 		}
-		return "";
+		serverInfo.put(connection, info);
+		return info;
 	}
 
 	/**
@@ -0,0 +1,92 @@
+package org.jenkinsci.plugins.p4.client;
+
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Remembers the last client spec saved (or found unchanged) on the server,
+ * keyed by P4PORT and client name. A spec is known to be current when the
+ * server's 'Update' time still matches and the digest of the wanted spec is
+ * the same, in which case the re-fetch, diff and 'p4 client -i' can be
+ * skipped.
+ */
+public final class ClientSpecCache {
+
+	private static final String PREFIX = ClientSpecCache.class.getName();
+
+	private static final int MAX_SIZE = Integer.getInteger(PREFIX + ".maxSize", 1024);
+
+	private static final Map<String, Entry> cache = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+			return size() > MAX_SIZE;
+		}
+	};
+
+	private ClientSpecCache() {
+	}
+
+	/**
+	 * @param port    P4PORT
+	 * @param client  client name
+	 * @param digest  digest of the wanted client spec
+	 * @param updated 'Update' time of the client as fetched from the server
+	 * @return true if the server already holds the wanted spec.
+	 */
+	public static boolean isCurrent(String port, String client, String digest, Date updated) {
+		if (digest == null || updated == null) {
+			return false;
+		}
+		Entry entry;
+		synchronized (cache) {
+			entry = cache.get(key(port, client));
+		}
+		return entry != null && entry.digest.equals(digest) && entry.updated == updated.getTime();
+	}
+
+	/**
+	 * Record the spec held by the server.
+	 *
+	 * @param port    P4PORT
+	 * @param client  client name
+	 * @param digest  digest of the client spec
+	 * @param updated 'Update' time of the client on the server
+	 */
+	public static void put(String port, String client, String digest, Date updated) {
+		if (digest == null || updated == null) {
+			remove(port, client);
+			return;
+		}
+		synchronized (cache) {
+			cache.put(key(port, client), new Entry(digest, updated.getTime()));
+		}
+	}
+
+	public static void remove(String port, String client) {
+		synchronized (cache) {
+			cache.remove(key(port, client));
+		}
+	}
+
+	public static void clear() {
+		synchronized (cache) {
+			cache.clear();
+		}
+	}
+
+	private static String key(String port, String client) {
+		return port + "/" + client;
+	}
+
+	private static final class Entry {
+
+		private final String digest;
+		private final long updated;
+
+		private Entry(String digest, long updated) {
+			this.digest = digest;
+			this.updated = updated;
+		}
+	}
+}
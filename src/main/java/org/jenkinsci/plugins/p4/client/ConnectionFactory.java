@@ -23,17 +23,6 @@ public class ConnectionFactory {
 
 	private static Logger logger = Logger.getLogger(ConnectionFactory.class.getName());
 
-	private static IOptionsServer currentP4;
-
-	/**
-	 * Returns existing connection
-	 *
-	 * @return Server connection object
-	 */
-	public static IOptionsServer getConnection() {
-		return currentP4;
-	}
-
 	/**
 	 * Creates a server connection; provides a connection to the Perforce
 	 * Server, initially client is undefined.
@@ -47,7 +36,7 @@ public class ConnectionFactory {
 
 		IOptionsServer iserver = getRawConnection(config);
 
-		// Connect and update current P4 connection
+		// Connect
 		try {
 			iserver.connect();
 		} catch (ConnectionException e) {
@@ -58,10 +47,61 @@ public class ConnectionFactory {
 				throw e;
 			}
 		}
-		currentP4 = iserver;
 		return iserver;
 	}
 
+	/**
+	 * Borrows a pooled connection for the credential, or creates a new server
+	 * connection if no idle connection is available. Waits if the credential
+	 * has reached the connection pool limit.
+	 *
+	 * @param config Connection configuration
+	 * @param owner  Credential ID owning the connection
+	 * @return Server connection object
+	 * @throws Exception push up stack
+	 */
+	public static IOptionsServer getConnection(ConnectionConfig config, String owner)
+			throws Exception {
+
+		return ConnectionPool.borrow(getPoolKey(config, owner), () -> getConnection(config));
+	}
+
+	/**
+	 * Returns a connection to the pool; the connection is closed if the pool
+	 * is full or the connection is no longer usable.
+	 *
+	 * @param config  Connection configuration
+	 * @param owner   Credential ID owning the connection
+	 * @param iserver Server connection object
+	 * @throws Exception push up stack
+	 */
+	public static void releaseConnection(ConnectionConfig config, String owner, IOptionsServer iserver)
+			throws Exception {
+
+		if (!ConnectionPool.release(getPoolKey(config, owner), iserver)) {
+			iserver.disconnect();
+		}
+	}
+
+	/**
+	 * Closes a borrowed connection without returning it to the pool.
+	 *
+	 * @param config  Connection configuration
+	 * @param owner   Credential ID owning the connection
+	 * @param iserver Server connection object
+	 * @throws Exception push up stack
+	 */
+	public static void closeConnection(ConnectionConfig config, String owner, IOptionsServer iserver)
+			throws Exception {
+
+		ConnectionPool.discard(getPoolKey(config, owner), iserver);
+		iserver.disconnect();
+	}
+
+	private static String getPoolKey(ConnectionConfig config, String owner) {
+		return owner + "@" + config.getServerUri() + ":" + config.getP4Host();
+	}
+
 	// Add trust for SSL connections
 	private static void addTrust(IOptionsServer iserver, ConnectionConfig config) throws P4JavaException {
 		String serverTrust = iserver.getTrust();
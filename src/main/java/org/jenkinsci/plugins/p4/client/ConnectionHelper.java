@@ -2,6 +2,7 @@ package org.jenkinsci.plugins.p4.client;
 
 import com.perforce.p4java.admin.IProperty;
 import com.perforce.p4java.client.IClient;
+import com.perforce.p4java.core.IChangelist;
 import com.perforce.p4java.core.IChangelistSummary;
 import com.perforce.p4java.core.IDepot;
 import com.perforce.p4java.core.IFix;
@@ -10,6 +11,7 @@ import com.perforce.p4java.core.IRepo;
 import com.perforce.p4java.core.IStreamSummary;
 import com.perforce.p4java.core.IUser;
 import com.perforce.p4java.core.file.FileSpecBuilder;
+import com.perforce.p4java.core.file.FileSpecOpStatus;
 import com.perforce.p4java.core.file.IFileSpec;
 import com.perforce.p4java.exception.AccessException;
 import com.perforce.p4java.exception.ConnectionException;
@@ -49,6 +51,7 @@ import org.jenkinsci.plugins.p4.changes.P4Ref;
 import org.jenkinsci.plugins.p4.console.P4Logging;
 import org.jenkinsci.plugins.p4.console.P4Progress;
 import org.jenkinsci.plugins.p4.credentials.P4BaseCredentials;
+import org.jenkinsci.plugins.p4.email.P4UserCache;
 
 import java.io.IOException;
 import java.util.ArrayList;
@@ -91,6 +94,10 @@ public class ConnectionHelper extends SessionHelper implements AutoCloseable {
 		super(credential, listener);
 	}
 
+	ConnectionHelper(P4BaseCredentials credential, TaskListener listener, String poolId) throws IOException {
+		super(credential, listener, poolId);
+	}
+
 	public ConnectionHelper(P4BaseCredentials credential) throws IOException {
 		super(credential, new LogTaskListener(logger, Level.INFO));
 	}
@@ -169,6 +176,38 @@ public class ConnectionHelper extends SessionHelper implements AutoCloseable {
 		return summary.get(0);
 	}
 
+	/**
+	 * List submitted change summaries (p4 changes -l) for a revision range.
+	 *
+	 * @param revisionPath Perforce path and range e.g. //client/...@1,10
+	 * @param max          Max results (-m value)
+	 * @return list of change summaries
+	 * @throws P4JavaException push up stack
+	 */
+	public List<IChangelistSummary> getChangeSummaries(String revisionPath, int max) throws P4JavaException {
+		return getChangeSummaries(revisionPath, max, true);
+	}
+
+	/**
+	 * List submitted change summaries for a revision range. Without the long
+	 * description the server returns only the first 31 characters, enough
+	 * for lookups that need the change number and user.
+	 *
+	 * @param revisionPath Perforce path and range e.g. //client/...@1,10
+	 * @param max          Max results (-m value)
+	 * @param longDesc     true for the full description (-l)
+	 * @return list of change summaries
+	 * @throws P4JavaException push up stack
+	 */
+	public List<IChangelistSummary> getChangeSummaries(String revisionPath, int max, boolean longDesc) throws P4JavaException {
+		List<IFileSpec> spec = FileSpecBuilder.makeFileSpecList(revisionPath);
+		GetChangelistsOptions cngOpts = new GetChangelistsOptions();
+		cngOpts.setLongDesc(longDesc);
+		cngOpts.setType(IChangelist.Type.SUBMITTED);
+		cngOpts.setMaxMostRecent(max);
+		return getConnection().getChangelists(spec, cngOpts);
+	}
+
 	public List<IFix> getJobs(int id) throws P4JavaException {
 		GetFixesOptions opts = new GetFixesOptions();
 		opts.setChangelistId(id);
@@ -176,6 +215,20 @@ public class ConnectionHelper extends SessionHelper implements AutoCloseable {
 		return fixes;
 	}
 
+	/**
+	 * List all fixes (p4 fixes) for changes affecting a revision range.
+	 *
+	 * @param revisionPath Perforce path and range e.g. //client/...@1,10
+	 * @return list of fixes
+	 * @throws P4JavaException push up stack
+	 */
+	public List<IFix> getJobs(String revisionPath) throws P4JavaException {
+		List<IFileSpec> spec = FileSpecBuilder.makeFileSpecList(revisionPath);
+		GetFixesOptions opts = new GetFixesOptions();
+		List<IFix> fixes = getConnection().getFixes(spec, opts);
+		return fixes;
+	}
+
 	/**
 	 * Test if given name is a counter
 	 *
@@ -304,9 +357,28 @@ public class ConnectionHelper extends SessionHelper implements AutoCloseable {
 	public void deleteClient(String name) throws Exception {
 		DeleteClientOptions opts = new DeleteClientOptions();
 		getConnection().deleteClient(name, opts);
+		ClientSpecCache.remove(getPort(), name);
 	}
 
+	/**
+	 * Get the email address for a Perforce user (cached per P4PORT).
+	 *
+	 * @param userName Perforce user name
+	 * @return email address or empty string
+	 * @throws Exception push up stack
+	 */
 	public String getEmail(String userName) throws Exception {
+		return P4UserCache.getEmail(this, userName);
+	}
+
+	/**
+	 * Fetch the email address for a Perforce user from the server (p4 user -o).
+	 *
+	 * @param userName Perforce user name
+	 * @return email address or empty string
+	 * @throws Exception push up stack
+	 */
+	public String fetchEmail(String userName) throws Exception {
 		IUser user = getConnection().getUser(userName);
 		if (user != null) {
 			String email = user.getEmail();
@@ -370,6 +442,54 @@ public class ConnectionHelper extends SessionHelper implements AutoCloseable {
 		return files;
 	}
 
+	/**
+	 * Describe a batch of submitted changes with a single 'p4 describe -s'.
+	 *
+	 * @param ids   Change numbers
+	 * @param limit Max files per change (-m value), or 0 for all files
+	 * @return Map of change number to the files in that change
+	 * @throws Exception push up stack
+	 */
+	public Map<Long, List<IFileSpec>> getChangeFiles(List<Long> ids, int limit) throws Exception {
+		Map<Long, List<IFileSpec>> results = new HashMap<>();
+		if (ids == null || ids.isEmpty()) {
+			return results;
+		}
+
+		List<String> args = new ArrayList<>();
+		args.add("-s");
+		// Avoid describe -m for old servers JENKINS-48433
+		if (limit > 0 && checkVersion(20141)) {
+			args.add("-m");
+			args.add(String.valueOf(limit));
+		}
+		for (Long id : ids) {
+			args.add(String.valueOf(id));
+		}
+
+		String cmd = CmdSpec.DESCRIBE.name();
+		List<Map<String, Object>> resultMaps;
+		resultMaps = getConnection().execMapCmdList(cmd, args.toArray(new String[0]), null);
+		if (resultMaps == null) {
+			return results;
+		}
+
+		for (Map<String, Object> map : resultMaps) {
+			if (map == null || map.get("change") == null) {
+				continue;
+			}
+			int id = Integer.parseInt((String) map.get("change"));
+			List<IFileSpec> list = new ArrayList<IFileSpec>();
+			for (int i = 0; map.get("rev" + i) != null; i++) {
+				FileSpec fSpec = new FileSpec(map, getConnection(), i);
+				fSpec.setChangelistId(id);
+				list.add(fSpec);
+			}
+			results.put((long) id, list);
+		}
+		return results;
+	}
+
 	/**
 	 * Find all files within a shelf.
 	 *
@@ -441,6 +561,38 @@ public class ConnectionHelper extends SessionHelper implements AutoCloseable {
 		return -1;
 	}
 
+	/**
+	 * Get the latest change on any of the given paths, using a single
+	 * 'p4 changes -m1' command.
+	 *
+	 * @param paths Perforce depot paths //foo/...
+	 * @param from  From revision (change or label)
+	 * @param to    To revision (change or label)
+	 * @return change number or -1 if no changes
+	 * @throws Exception push up stack
+	 */
+	public long getHead(List<String> paths, P4Ref from, P4Ref to) throws Exception {
+		if (paths == null || paths.isEmpty()) {
+			return -1;
+		}
+
+		List<String> revisionPaths = new ArrayList<>();
+		for (String path : paths) {
+			revisionPaths.add(buildRevisionLimit(path, from, to));
+		}
+		logger.info("getHead: p4 changes " + revisionPaths);
+		List<IFileSpec> spec = FileSpecBuilder.makeFileSpecList(revisionPaths);
+
+		GetChangelistsOptions opts = new GetChangelistsOptions();
+		opts.setMaxMostRecent(1);
+		List<IChangelistSummary> changes = getConnection().getChangelists(spec, opts);
+
+		if (!changes.isEmpty() && changes.get(0) != null) {
+			return changes.get(0).getId();
+		}
+		return -1;
+	}
+
 	/**
 	 * Build a revision limit spec.
 	 *
@@ -490,6 +642,35 @@ public class ConnectionHelper extends SessionHelper implements AutoCloseable {
 		return getValidate().checkCatch(specs, "");
 	}
 
+	/**
+	 * Check which of the given depot files exist (not deleted at head), using
+	 * a single 'p4 files -e' command.
+	 *
+	 * @param depotPaths Perforce depot file paths
+	 * @return the depot paths of the files that exist
+	 * @throws Exception push up stack
+	 */
+	public List<String> findFiles(List<String> depotPaths) throws Exception {
+		List<String> found = new ArrayList<>();
+		if (depotPaths == null || depotPaths.isEmpty()) {
+			return found;
+		}
+
+		List<IFileSpec> files = FileSpecBuilder.makeFileSpecList(depotPaths);
+		GetDepotFilesOptions opts = new GetDepotFilesOptions("-e");
+		List<IFileSpec> specs = getConnection().getDepotFiles(files, opts);
+		if (specs == null) {
+			return found;
+		}
+
+		for (IFileSpec spec : specs) {
+			if (spec != null && spec.getOpStatus() == FileSpecOpStatus.VALID && spec.getDepotPathString() != null) {
+				found.add(spec.getDepotPathString());
+			}
+		}
+		return found;
+	}
+
 	public ICommit getGraphCommit(String sha, String repo) throws P4JavaException {
 		return getConnection().getCommitObject(sha, repo);
 	}
@@ -0,0 +1,379 @@
+package org.jenkinsci.plugins.p4.client;
+
+import com.cloudbees.plugins.credentials.SystemCredentialsProvider;
+import com.perforce.p4java.exception.ConnectionException;
+import com.perforce.p4java.server.CmdSpec;
+import com.perforce.p4java.server.IOptionsServer;
+import hudson.Extension;
+import hudson.XmlFile;
+import hudson.model.Saveable;
+import hudson.model.listeners.SaveableListener;
+
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Connection Pool
+ * <p>
+ * Holds idle, logged in connections keyed by credential, P4USER and P4PORT
+ * so that helpers can borrow an open connection instead of connecting per
+ * task. A helper that finds no idle connection opens a new one, unless the
+ * key already has the maximum number of connections open (in use and idle);
+ * then it waits for one to be released, up to the wait timeout.
+ * Connections released while the idle cache is full are closed.
+ * <p>
+ * Idle connections are validated before reuse and evicted when broken,
+ * unused for longer than the idle timeout, or when the system credentials
+ * are saved (a credential was updated or removed).
+ *
+ * @author pallen
+ */
+public class ConnectionPool {
+
+	private static Logger logger = Logger.getLogger(ConnectionPool.class.getName());
+
+	private static final String PREFIX = ConnectionPool.class.getName();
+
+	// Maximum idle connections kept per key, connections in use are not counted (0 disables pooling)
+	private static final int MAX_IDLE = Integer.getInteger(PREFIX + ".maxIdle", 8);
+
+	// Idle connections older than this are closed
+	private static final long IDLE_TIMEOUT = TimeUnit.SECONDS.toMillis(Long.getLong(PREFIX + ".idleTimeout", 300L));
+
+	// Idle connections older than this are checked with 'p4 info -s' before reuse
+	private static final long VALIDATE_AFTER = TimeUnit.SECONDS.toMillis(Long.getLong(PREFIX + ".validateAfter", 30L));
+
+	// Maximum connections open per key, in use and idle (0 for no limit)
+	private static int maxTotal = Integer.getInteger(PREFIX + ".maxTotal", 32);
+
+	// How long a helper waits for a connection when the key is at its limit
+	private static long waitTimeout = TimeUnit.SECONDS.toMillis(Long.getLong(PREFIX + ".waitTimeout", 300L));
+
+	private static final ConcurrentMap<String, KeyPool> pool = new ConcurrentHashMap<>();
+
+	private static long lastSweep = System.currentTimeMillis();
+
+	private ConnectionPool() {
+	}
+
+	/**
+	 * Borrow an idle connection for the given key, or open a new one if the
+	 * key is below its connection limit. Waits for a connection to be
+	 * released when the limit is reached.
+	 *
+	 * @param key     Pool key (credential, P4USER and P4PORT)
+	 * @param factory opens a new connection
+	 * @return a validated or new connection
+	 * @throws Exception push up stack
+	 */
+	public static IOptionsServer borrow(String key, Callable<IOptionsServer> factory) throws Exception {
+		sweep();
+
+		KeyPool keyPool = pool.computeIfAbsent(key, k -> new KeyPool());
+		long deadline = System.currentTimeMillis() + waitTimeout;
+
+		while (true) {
+			PooledConnection pooled;
+			synchronized (keyPool) {
+				while (true) {
+					pooled = keyPool.idle.pollFirst();
+					if (pooled != null || maxTotal <= 0 || keyPool.getOpen() < maxTotal) {
+						break;
+					}
+					long remain = deadline - System.currentTimeMillis();
+					if (remain <= 0) {
+						throw new ConnectionException("P4: timed out waiting for a connection, "
+								+ keyPool.getOpen() + " open for: " + key);
+					}
+					// wake up now and then, leaked connections are dropped by the garbage collector
+					keyPool.wait(Math.min(remain, 1000L));
+				}
+				if (pooled == null) {
+					keyPool.opening++;
+				} else {
+					keyPool.inUse.put(pooled.getServer(), Boolean.TRUE);
+				}
+			}
+
+			if (pooled == null) {
+				return open(keyPool, factory);
+			}
+			if (isValid(pooled)) {
+				logger.fine("P4: borrowed pooled connection: " + key);
+				return pooled.getServer();
+			}
+			discard(key, pooled.getServer());
+			close(pooled.getServer());
+		}
+	}
+
+	/**
+	 * Return a connection to the pool. Per-borrow state (client, charset and
+	 * callbacks) is reset before the connection is made available again.
+	 *
+	 * @param key     Pool key (credential, P4USER and P4PORT)
+	 * @param iserver Server connection
+	 * @return true if pooled, false if the caller should disconnect
+	 */
+	public static boolean release(String key, IOptionsServer iserver) {
+		if (iserver == null) {
+			return false;
+		}
+		if (MAX_IDLE <= 0 || !iserver.isConnected() || !reset(iserver)) {
+			discard(key, iserver);
+			return false;
+		}
+
+		KeyPool keyPool = pool.computeIfAbsent(key, k -> new KeyPool());
+		synchronized (keyPool) {
+			for (PooledConnection pooled : keyPool.idle) {
+				if (pooled.getServer() == iserver) {
+					return true;
+				}
+			}
+			keyPool.inUse.remove(iserver);
+			keyPool.notifyAll();
+			if (keyPool.idle.size() >= MAX_IDLE) {
+				return false;
+			}
+			keyPool.idle.addFirst(new PooledConnection(iserver));
+		}
+		logger.fine("P4: released pooled connection: " + key);
+		return true;
+	}
+
+	/**
+	 * Stop counting a borrowed connection that the caller closes itself.
+	 *
+	 * @param key     Pool key (credential, P4USER and P4PORT)
+	 * @param iserver Server connection
+	 */
+	public static void discard(String key, IOptionsServer iserver) {
+		KeyPool keyPool = pool.get(key);
+		if (keyPool == null || iserver == null) {
+			return;
+		}
+		synchronized (keyPool) {
+			keyPool.inUse.remove(iserver);
+			keyPool.notifyAll();
+		}
+	}
+
+	/**
+	 * Close all idle connections for the given key.
+	 *
+	 * @param key Pool key (credential, P4USER and P4PORT)
+	 */
+	public static void evict(String key) {
+		KeyPool keyPool = pool.get(key);
+		if (keyPool == null) {
+			return;
+		}
+		List<PooledConnection> list;
+		synchronized (keyPool) {
+			list = new ArrayList<>(keyPool.idle);
+			keyPool.idle.clear();
+			keyPool.notifyAll();
+		}
+		for (PooledConnection pooled : list) {
+			close(pooled.getServer());
+		}
+	}
+
+	/**
+	 * Close all idle connections held by the pool.
+	 */
+	public static void clear() {
+		for (String key : new ArrayList<>(pool.keySet())) {
+			evict(key);
+		}
+	}
+
+	/**
+	 * Close idle connections that have exceeded the idle timeout.
+	 */
+	public static void sweep() {
+		long now = System.currentTimeMillis();
+		synchronized (ConnectionPool.class) {
+			if (now - lastSweep < VALIDATE_AFTER) {
+				return;
+			}
+			lastSweep = now;
+		}
+
+		List<PooledConnection> expired = new ArrayList<>();
+		for (Map.Entry<String, KeyPool> entry : pool.entrySet()) {
+			KeyPool keyPool = entry.getValue();
+			synchronized (keyPool) {
+				Iterator<PooledConnection> it = keyPool.idle.iterator();
+				while (it.hasNext()) {
+					PooledConnection pooled = it.next();
+					if (now - pooled.getReleased() > IDLE_TIMEOUT || !pooled.getServer().isConnected()) {
+						it.remove();
+						expired.add(pooled);
+					}
+				}
+				keyPool.notifyAll();
+			}
+		}
+
+		for (PooledConnection pooled : expired) {
+			close(pooled.getServer());
+		}
+	}
+
+	/**
+	 * @return the number of idle connections held by the pool.
+	 */
+	public static int getIdleCount() {
+		int count = 0;
+		for (KeyPool keyPool : pool.values()) {
+			synchronized (keyPool) {
+				count += keyPool.idle.size();
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Set the maximum connections open per key (for tests and the script
+	 * console).
+	 *
+	 * @param max connections in use and idle, 0 for no limit
+	 */
+	public static void setMaxTotal(int max) {
+		maxTotal = max;
+	}
+
+	/**
+	 * Set how long a helper waits for a connection (for tests and the script
+	 * console).
+	 *
+	 * @param seconds wait timeout
+	 */
+	public static void setWaitTimeout(long seconds) {
+		waitTimeout = TimeUnit.SECONDS.toMillis(seconds);
+	}
+
+	private static IOptionsServer open(KeyPool keyPool, Callable<IOptionsServer> factory) throws Exception {
+		IOptionsServer iserver = null;
+		try {
+			iserver = factory.call();
+			return iserver;
+		} finally {
+			synchronized (keyPool) {
+				keyPool.opening--;
+				if (iserver != null) {
+					keyPool.inUse.put(iserver, Boolean.TRUE);
+				}
+				keyPool.notifyAll();
+			}
+		}
+	}
+
+	private static boolean isValid(PooledConnection pooled) {
+		IOptionsServer iserver = pooled.getServer();
+		if (!iserver.isConnected()) {
+			return false;
+		}
+
+		long age = System.currentTimeMillis() - pooled.getReleased();
+		if (age > IDLE_TIMEOUT) {
+			return false;
+		}
+		if (age < VALIDATE_AFTER) {
+			return true;
+		}
+
+		// Health check for connections that have been idle for a while
+		try {
+			iserver.execMapCmdList(CmdSpec.INFO, new String[]{"-s"}, null);
+			return iserver.isConnected();
+		} catch (Exception e) {
+			logger.fine("P4: pooled connection failed health check: " + e.getMessage());
+			return false;
+		}
+	}
+
+	private static boolean reset(IOptionsServer iserver) {
+		try {
+			iserver.setCurrentClient(null);
+			iserver.setCharsetName(null);
+			iserver.registerCallback(null);
+			iserver.registerProgressCallback(null);
+			return true;
+		} catch (Exception e) {
+			logger.fine("P4: unable to reset pooled connection: " + e.getMessage());
+			return false;
+		}
+	}
+
+	private static void close(IOptionsServer iserver) {
+		try {
+			iserver.disconnect();
+		} catch (Exception e) {
+			logger.fine("P4: unable to close pooled connection: " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Close idle connections when the system credentials are saved, so an
+	 * updated or removed credential is not used by a pooled connection.
+	 * Folder credentials are kept apart by P4USER in the key and expire with
+	 * the idle timeout.
+	 */
+	@Extension
+	public static class CredentialsListener extends SaveableListener {
+
+		@Override
+		public void onChange(Saveable o, XmlFile file) {
+			if (o instanceof SystemCredentialsProvider) {
+				clear();
+			}
+		}
+	}
+
+	private static final class KeyPool {
+
+		private final Deque<PooledConnection> idle = new LinkedList<>();
+
+		// Borrowed connections; a helper that is never closed stops counting once collected
+		private final Map<IOptionsServer, Boolean> inUse = new WeakHashMap<>();
+
+		// Connections being opened
+		private int opening = 0;
+
+		private int getOpen() {
+			return idle.size() + inUse.size() + opening;
+		}
+	}
+
+	private static final class PooledConnection {
+
+		private final IOptionsServer server;
+		private final long released;
+
+		private PooledConnection(IOptionsServer server) {
+			this.server = server;
+			this.released = System.currentTimeMillis();
+		}
+
+		private IOptionsServer getServer() {
+			return server;
+		}
+
+		private long getReleased() {
+			return released;
+		}
+	}
+}
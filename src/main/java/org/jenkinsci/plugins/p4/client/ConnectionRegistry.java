@@ -0,0 +1,181 @@
+package org.jenkinsci.plugins.p4.client;
+
+import com.perforce.p4java.server.IOptionsServer;
+import jenkins.model.Jenkins;
+import org.jenkinsci.plugins.p4.credentials.P4BaseCredentials;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Connection Registry
+ * <p>
+ * Serves UI calls (auto-completion, form validation and spec lookups) that
+ * have no credential of their own. The credential last validated by each
+ * user is remembered, and calls run on a small pool of connections kept
+ * apart from the build connections for that credential, so a form can
+ * never use or disconnect a connection owned by a running build.
+ * <p>
+ * Auto-completion results are cached for a short time per credential and
+ * Perforce user.
+ */
+public final class ConnectionRegistry {
+
+	private static Logger logger = Logger.getLogger(ConnectionRegistry.class.getName());
+
+	private static final String PREFIX = ConnectionRegistry.class.getName();
+
+	// Concurrent UI connections per credential
+	private static final int POOL_SIZE = Integer.getInteger(PREFIX + ".poolSize", 2);
+
+	// How long a UI call waits for a connection
+	private static final long WAIT = Long.getLong(PREFIX + ".wait", 10L);
+
+	private static final int MAX_SIZE = Integer.getInteger(PREFIX + ".maxSize", 512);
+
+	// How long auto-completion results are reused
+	private static long ttl = TimeUnit.SECONDS.toMillis(Long.getLong(PREFIX + ".ttl", 30L));
+
+	// Jenkins user to selected credential
+	private static final ConcurrentMap<String, P4BaseCredentials> selected = new ConcurrentHashMap<>();
+
+	// credential/user to connection permits
+	private static final ConcurrentMap<String, Semaphore> permits = new ConcurrentHashMap<>();
+
+	private static final Map<String, Cached> cache = new LinkedHashMap<String, Cached>(16, 0.75f, true) {
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, Cached> eldest) {
+			return size() > MAX_SIZE;
+		}
+	};
+
+	private ConnectionRegistry() {
+	}
+
+	/**
+	 * A call made with a UI connection.
+	 *
+	 * @param <T> result type
+	 */
+	public interface Query<T> {
+		T query(IOptionsServer p4) throws Exception;
+	}
+
+	/**
+	 * Remember the credential used by the current user's form.
+	 *
+	 * @param credential Perforce credential
+	 */
+	public static void select(P4BaseCredentials credential) {
+		if (credential != null) {
+			selected.put(getUser(), credential);
+		}
+	}
+
+	/**
+	 * @return the credential last used by the current user's form, or null.
+	 */
+	public static P4BaseCredentials getSelected() {
+		return selected.get(getUser());
+	}
+
+	/**
+	 * Run a call on a UI connection for the current user's credential.
+	 *
+	 * @param query call to run
+	 * @param <T>   result type
+	 * @return result or null if no credential is selected or no connection
+	 * is available.
+	 * @throws Exception push up stack
+	 */
+	public static <T> T query(Query<T> query) throws Exception {
+		P4BaseCredentials credential = getSelected();
+		if (credential == null) {
+			return null;
+		}
+
+		String id = credential.getId() + "/" + credential.getUsername();
+		Semaphore permit = permits.computeIfAbsent(id, k -> new Semaphore(Math.max(1, POOL_SIZE)));
+		if (!permit.tryAcquire(WAIT, TimeUnit.SECONDS)) {
+			logger.fine("P4: no UI connection available for: " + id);
+			return null;
+		}
+		try (ConnectionHelper p4 = new ConnectionHelper(credential, null, "ui/" + credential.getId())) {
+			return query.query(p4.getConnection());
+		} finally {
+			permit.release();
+		}
+	}
+
+	/**
+	 * Run a call on a UI connection, reusing a recent result for the same
+	 * credential, kind and value.
+	 *
+	 * @param kind  kind of result, e.g. "clients"
+	 * @param value value the result depends on
+	 * @param query call to run
+	 * @param <T>   result type; must not be modified by callers
+	 * @return result or null if no credential is selected or no connection
+	 * is available.
+	 * @throws Exception push up stack
+	 */
+	@SuppressWarnings("unchecked")
+	public static <T> T cached(String kind, String value, Query<T> query) throws Exception {
+		P4BaseCredentials credential = getSelected();
+		if (credential == null) {
+			return null;
+		}
+
+		String key = credential.getId() + "/" + credential.getUsername() + "@" + credential.getFullP4port() + "/" + kind + ":" + value;
+		synchronized (cache) {
+			Cached entry = cache.get(key);
+			if (entry != null && System.currentTimeMillis() - entry.created < ttl) {
+				return (T) entry.value;
+			}
+		}
+
+		T result = query(query);
+		if (result != null) {
+			synchronized (cache) {
+				cache.put(key, new Cached(result));
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Set how long auto-completion results are reused (for tests and the
+	 * script console).
+	 *
+	 * @param seconds time to live, 0 to always query
+	 */
+	public static void setTtl(long seconds) {
+		ttl = TimeUnit.SECONDS.toMillis(seconds);
+	}
+
+	public static void clear() {
+		synchronized (cache) {
+			cache.clear();
+		}
+		selected.clear();
+	}
+
+	private static String getUser() {
+		return Jenkins.getAuthentication().getName();
+	}
+
+	private static final class Cached {
+
+		private final long created = System.currentTimeMillis();
+		private final Object value;
+
+		private Cached(Object value) {
+			this.value = value;
+		}
+	}
+}
@@ -0,0 +1,375 @@
+package org.jenkinsci.plugins.p4.client;
+
+import com.perforce.p4java.core.IDepot;
+import com.perforce.p4java.core.file.FileAction;
+import com.perforce.p4java.core.file.FileSpecBuilder;
+import com.perforce.p4java.core.file.FileSpecOpStatus;
+import com.perforce.p4java.core.file.IFileSpec;
+import com.perforce.p4java.exception.P4JavaException;
+import com.perforce.p4java.option.server.GetDepotFilesOptions;
+import com.perforce.p4java.option.server.GetDirectoriesOptions;
+import com.perforce.p4java.server.IOptionsServer;
+import org.jenkinsci.plugins.p4.credentials.P4BaseCredentials;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Directory Tree Cache
+ * <p>
+ * Complete listings of depot or client directories, shared by
+ * {@link NavigateHelper} (auto-completion) and the SCM file system. Entries
+ * are scoped by P4PORT and user, filled one directory at a time with a
+ * 'p4 dirs' and 'p4 files' pair, or for a whole subtree with a single
+ * 'p4 files' when the subtree is small enough. Listings are at head and
+ * expire after a short time. Directories found to be over a limit are
+ * remembered for a shorter time, so they are not listed on every keystroke.
+ */
+public final class DirectoryTreeCache {
+
+	private static Logger logger = Logger.getLogger(DirectoryTreeCache.class.getName());
+
+	private static final String PREFIX = DirectoryTreeCache.class.getName();
+
+	private static final int MAX_SIZE = Integer.getInteger(PREFIX + ".maxSize", 4096);
+
+	// Largest subtree (in files) loaded by a prefetch
+	private static final int PREFETCH_LIMIT = Integer.getInteger(PREFIX + ".prefetchLimit", 1000);
+
+	// How long listings are reused
+	private static long ttl = TimeUnit.SECONDS.toMillis(Long.getLong(PREFIX + ".ttl", 60L));
+
+	// How long a directory over the list or prefetch limit is not listed again
+	private static final long TOO_LARGE_TTL = TimeUnit.SECONDS.toMillis(Long.getLong(PREFIX + ".tooLargeTtl", 15L));
+
+	private static final Map<String, Entry> cache = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+			return size() > MAX_SIZE;
+		}
+	};
+
+	private DirectoryTreeCache() {
+	}
+
+	/**
+	 * Listings are scoped by P4PORT and user, as protections differ per user.
+	 *
+	 * @param credential Perforce credential
+	 * @return cache scope
+	 */
+	public static String getScope(P4BaseCredentials credential) {
+		return credential.getFullP4port() + "/" + credential.getUsername();
+	}
+
+	/**
+	 * @param scope cache scope
+	 * @param dir   directory path ending in '/', e.g. //depot/projA/
+	 * @return the cached listing or null.
+	 */
+	public static Listing get(String scope, String dir) {
+		Entry entry = getEntry(scope + "|" + dir);
+		return (entry == null || !(entry.value instanceof Listing)) ? null : (Listing) entry.value;
+	}
+
+	/**
+	 * List a directory, using the cache if possible.
+	 *
+	 * @param p4    connection
+	 * @param scope cache scope, or null to bypass the cache
+	 * @param dir   directory path ending in '/'
+	 * @param limit give up if the directory holds more entries, 0 for no limit
+	 * @return the listing or null if over the limit.
+	 * @throws P4JavaException push up stack
+	 */
+	public static Listing list(IOptionsServer p4, String scope, String dir, int limit) throws P4JavaException {
+		if (scope != null) {
+			Entry entry = getEntry(scope + "|" + dir);
+			if (entry != null && entry.value instanceof Listing) {
+				return (Listing) entry.value;
+			}
+			// too large for a higher limit, so also for this one
+			if (entry != null && limit > 0 && limit <= ((TooLarge) entry.value).limit) {
+				return null;
+			}
+		}
+
+		List<IFileSpec> spec = FileSpecBuilder.makeFileSpecList(dir + "*");
+
+		List<String> dirs = new ArrayList<>();
+		List<IFileSpec> dirList = p4.getDirectories(spec, new GetDirectoriesOptions());
+		if (dirList != null) {
+			for (IFileSpec d : dirList) {
+				if (d.getOriginalPathString() != null) {
+					dirs.add(d.getOriginalPathString());
+				}
+			}
+		}
+		if (limit > 0 && dirs.size() > limit) {
+			return tooLarge(scope, dir, limit);
+		}
+
+		GetDepotFilesOptions opts = new GetDepotFilesOptions();
+		if (limit > 0) {
+			opts.setMaxResults(limit + 1);
+		}
+		List<String> files = new ArrayList<>();
+		for (IFileSpec f : p4.getDepotFiles(spec, opts)) {
+			if (f.getOpStatus().equals(FileSpecOpStatus.VALID)) {
+				files.add(f.getDepotPathString());
+			}
+		}
+		if (limit > 0 && files.size() > limit) {
+			return tooLarge(scope, dir, limit);
+		}
+
+		Listing listing = new Listing(dirs, files, p4.isCaseSensitive());
+		if (scope != null) {
+			put(scope + "|" + dir, listing);
+		}
+		return listing;
+	}
+
+	/**
+	 * Load every directory below a depot path with one 'p4 files' command.
+	 * Directories are derived from the files that are not deleted at head,
+	 * as 'p4 dirs' would report them.
+	 *
+	 * @param p4    connection
+	 * @param scope cache scope
+	 * @param dir   depot directory ending in '/'
+	 * @return false if the subtree is too large or could not be listed.
+	 */
+	public static boolean prefetch(IOptionsServer p4, String scope, String dir) {
+		if (PREFETCH_LIMIT <= 0 || getEntry(scope + "|" + dir + "...") != null) {
+			return false;
+		}
+
+		List<IFileSpec> files;
+		try {
+			GetDepotFilesOptions opts = new GetDepotFilesOptions();
+			opts.setMaxResults(PREFETCH_LIMIT + 1);
+			files = p4.getDepotFiles(FileSpecBuilder.makeFileSpecList(dir + "..."), opts);
+		} catch (P4JavaException e) {
+			logger.fine("P4: prefetch failed for " + dir + ": " + e.getMessage());
+			return false;
+		}
+		if (files == null) {
+			return false;
+		}
+		if (files.size() > PREFETCH_LIMIT) {
+			put(scope + "|" + dir + "...", new TooLarge(PREFETCH_LIMIT), TOO_LARGE_TTL);
+			return false;
+		}
+
+		Map<String, TreeSet<String>> dirs = new LinkedHashMap<>();
+		Map<String, List<String>> names = new LinkedHashMap<>();
+		dirs.put(dir, new TreeSet<>());
+		names.put(dir, new ArrayList<>());
+
+		for (IFileSpec f : files) {
+			if (!f.getOpStatus().equals(FileSpecOpStatus.VALID)) {
+				continue;
+			}
+			String path = f.getDepotPathString();
+			if (path == null || !path.startsWith(dir)) {
+				// different case on a case-insensitive server
+				return false;
+			}
+
+			String parent = path.substring(0, path.lastIndexOf('/') + 1);
+			names.computeIfAbsent(parent, k -> new ArrayList<>()).add(path);
+			dirs.computeIfAbsent(parent, k -> new TreeSet<>());
+
+			if (isDeleted(f.getAction())) {
+				continue;
+			}
+
+			// add each directory between dir and parent to its own parent
+			String sub = parent;
+			while (sub.length() > dir.length()) {
+				String up = sub.substring(0, sub.lastIndexOf('/', sub.length() - 2) + 1);
+				dirs.computeIfAbsent(up, k -> new TreeSet<>()).add(sub.substring(0, sub.length() - 1));
+				names.computeIfAbsent(up, k -> new ArrayList<>());
+				sub = up;
+			}
+		}
+
+		boolean caseSensitive = p4.isCaseSensitive();
+		for (Map.Entry<String, TreeSet<String>> entry : dirs.entrySet()) {
+			String key = entry.getKey();
+			List<String> list = names.get(key);
+			Collections.sort(list);
+			put(scope + "|" + key, new Listing(new ArrayList<>(entry.getValue()), list, caseSensitive));
+		}
+		logger.fine("P4: prefetched " + dirs.size() + " directories under: " + dir);
+		return true;
+	}
+
+	private static Listing tooLarge(String scope, String dir, int limit) {
+		if (scope != null) {
+			put(scope + "|" + dir, new TooLarge(limit), TOO_LARGE_TTL);
+		}
+		return null;
+	}
+
+	private static boolean isDeleted(FileAction action) {
+		return action == FileAction.DELETE || action == FileAction.MOVE_DELETE
+				|| action == FileAction.PURGE || action == FileAction.ARCHIVE;
+	}
+
+	/**
+	 * @param p4    connection
+	 * @param scope cache scope, or null to bypass the cache
+	 * @return depot names.
+	 * @throws P4JavaException push up stack
+	 */
+	@SuppressWarnings("unchecked")
+	public static List<String> getDepots(IOptionsServer p4, String scope) throws P4JavaException {
+		if (scope != null) {
+			Entry entry = getEntry(scope + "|depots");
+			if (entry != null) {
+				return (List<String>) entry.value;
+			}
+		}
+
+		List<String> depots = new ArrayList<>();
+		for (IDepot d : p4.getDepots()) {
+			depots.add(d.getName());
+		}
+		depots = Collections.unmodifiableList(depots);
+		if (scope != null) {
+			put(scope + "|depots", depots);
+		}
+		return depots;
+	}
+
+	/**
+	 * Drop all listings under a path (e.g. a temporary client root).
+	 *
+	 * @param scope cache scope
+	 * @param path  path prefix
+	 */
+	public static void evict(String scope, String path) {
+		String prefix = scope + "|" + path;
+		synchronized (cache) {
+			cache.keySet().removeIf(k -> k.startsWith(prefix));
+		}
+	}
+
+	/**
+	 * Set how long listings are reused (for tests and the script console).
+	 *
+	 * @param seconds time to live, 0 to always list
+	 */
+	public static void setTtl(long seconds) {
+		ttl = TimeUnit.SECONDS.toMillis(seconds);
+	}
+
+	public static void clear() {
+		synchronized (cache) {
+			cache.clear();
+		}
+	}
+
+	private static Entry getEntry(String key) {
+		synchronized (cache) {
+			Entry entry = cache.get(key);
+			if (entry == null) {
+				return null;
+			}
+			long age = System.currentTimeMillis() - entry.created;
+			if (age >= ttl || age >= entry.maxAge) {
+				cache.remove(key);
+				return null;
+			}
+			return entry;
+		}
+	}
+
+	private static void put(String key, Object value) {
+		put(key, value, ttl);
+	}
+
+	private static void put(String key, Object value, long maxAge) {
+		if (ttl <= 0) {
+			return;
+		}
+		synchronized (cache) {
+			cache.put(key, new Entry(value, maxAge));
+		}
+	}
+
+	/**
+	 * Sub-directories and files of a directory.
+	 */
+	public static final class Listing {
+
+		private final List<String> dirs;
+		private final List<String> files;
+		private final boolean caseSensitive;
+
+		private Listing(List<String> dirs, List<String> files, boolean caseSensitive) {
+			this.dirs = Collections.unmodifiableList(dirs);
+			this.files = Collections.unmodifiableList(files);
+			this.caseSensitive = caseSensitive;
+		}
+
+		/**
+		 * @return sub-directory paths, without a trailing '/'.
+		 */
+		public List<String> getDirs() {
+			return dirs;
+		}
+
+		/**
+		 * @return file depot paths.
+		 */
+		public List<String> getFiles() {
+			return files;
+		}
+
+		/**
+		 * @param path  directory or file path
+		 * @param start leading characters of the name
+		 * @return true if the last part of the path starts with 'start'.
+		 */
+		public boolean matches(String path, String start) {
+			if (start.isEmpty()) {
+				return true;
+			}
+			String name = path.substring(path.lastIndexOf('/') + 1);
+			return name.regionMatches(!caseSensitive, 0, start, 0, start.length());
+		}
+	}
+
+	/**
+	 * Marks a directory (or a subtree, for prefetch) as over a limit.
+	 */
+	private static final class TooLarge {
+
+		private final int limit;
+
+		private TooLarge(int limit) {
+			this.limit = limit;
+		}
+	}
+
+	private static final class Entry {
+
+		private final long created = System.currentTimeMillis();
+		private final Object value;
+		private final long maxAge;
+
+		private Entry(Object value, long maxAge) {
+			this.value = value;
+			this.maxAge = maxAge;
+		}
+	}
+}
@@ -1,6 +1,5 @@
 package org.jenkinsci.plugins.p4.client;
 
-import com.perforce.p4java.core.IDepot;
 import com.perforce.p4java.core.file.FileSpecBuilder;
 import com.perforce.p4java.core.file.FileSpecOpStatus;
 import com.perforce.p4java.core.file.IFileSpec;
@@ -11,6 +10,7 @@ import com.perforce.p4java.option.server.GetDepotFilesOptions;
 import com.perforce.p4java.option.server.GetDirectoriesOptions;
 import com.perforce.p4java.server.IOptionsServer;
 import hudson.model.AutoCompletionCandidates;
+import org.jenkinsci.plugins.p4.credentials.P4BaseCredentials;
 
 import java.io.Closeable;
 import java.io.IOException;
@@ -18,28 +18,68 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.logging.Logger;
 
+/**
+ * Lists depot paths for auto-completion and {@link org.jenkinsci.plugins.p4.scm.P4SCMFile} children.
+ * <p>
+ * The helper never owns a connection: either the caller passes one in, or
+ * the UI connection registry is used for each lookup. Directory listings
+ * are shared through the {@link DirectoryTreeCache}; auto-completion below a
+ * depot prefetches small subtrees so that typing further down the tree is
+ * answered without a connection.
+ */
 public class NavigateHelper implements Closeable {
 
 	private static Logger logger = Logger.getLogger(NavigateHelper.class.getName());
 
+	private static final String PREFIX = NavigateHelper.class.getName();
+
+	// Larger directories are matched on the server for each auto-completion
+	private static final int LIST_LIMIT = Integer.getInteger(PREFIX + ".listLimit", 1000);
+
 	private final int max;
 	private final IOptionsServer p4;
 	private final String root;
+	private final String scope;
 
-	private List<Node> nodes;
-
+	/**
+	 * Uncached listing of the connection's current client.
+	 *
+	 * @param p4 connection with a current client
+	 */
 	public NavigateHelper(IOptionsServer p4) {
 		this.max = 0;
 		this.p4 = p4;
 
 		String client = p4.getCurrentClient().getName();
 		this.root = "//" + client + "/";
+		this.scope = null;
+	}
+
+	/**
+	 * Cached listing of the connection's current client.
+	 *
+	 * @param p4 connection with a current client
+	 */
+	public NavigateHelper(ConnectionHelper p4) {
+		this.max = 0;
+		this.p4 = p4.getConnection();
+
+		String client = this.p4.getCurrentClient().getName();
+		this.root = "//" + client + "/";
+		this.scope = DirectoryTreeCache.getScope(p4.getCredential());
 	}
 
+	/**
+	 * Auto-completion for UI forms; uses the {@link ConnectionRegistry} and
+	 * the {@link DirectoryTreeCache}.
+	 *
+	 * @param max maximum results
+	 */
 	public NavigateHelper(int max) {
 		this.max = max;
-		p4 = ConnectionFactory.getConnection();
-		root = "";
+		this.p4 = null;
+		this.root = "";
+		this.scope = null;
 	}
 
 	/**
@@ -49,9 +89,7 @@ public class NavigateHelper implements Closeable {
 	 * @return matches for the depot path e.g. //depot/projA
 	 */
 	public AutoCompletionCandidates getCandidates(String depotPath) {
-		nodes = new ArrayList<>();
-		buildPaths(depotPath);
-		return getCandidates();
+		return getCandidates(getPaths(depotPath));
 	}
 
 	/**
@@ -61,40 +99,144 @@ public class NavigateHelper implements Closeable {
 	 * @return list of nodes
 	 */
 	public List<Node> getNodes(String localPath) {
-		nodes = new ArrayList<>();
-
 		String path = root + localPath;
 		if (!path.isEmpty() && !path.endsWith("/")) {
 			path = path + "/";
 		}
-		buildPaths(path);
-
-		return nodes;
+		return getPaths(path);
 	}
 
-	private void buildPaths(String value) {
+	private List<Node> getPaths(String value) {
+		String user = null;
 		try {
-			if (!value.startsWith("//")) {
-				value = "//" + value;
+			if (p4 != null) {
+				user = p4.getUserName();
+				return buildPaths(p4, scope, value);
 			}
 
-			// remove leading '//' markers for depot matching
-			String depot = value.substring(2);
-			if (!depot.contains("/")) {
-				if (!listDepots(depot)) {
-					return;
-				}
+			P4BaseCredentials credential = ConnectionRegistry.getSelected();
+			if (credential == null) {
+				return new ArrayList<>();
 			}
-
-			listDirs(value);
-			listFiles(value);
+			String uiScope = DirectoryTreeCache.getScope(credential);
+			List<Node> nodes = getCached(uiScope, value);
+			if (nodes == null) {
+				nodes = ConnectionRegistry.query(conn -> buildPaths(conn, uiScope, value));
+			}
+			return (nodes == null) ? new ArrayList<>() : nodes;
 		} catch (RequestException | AccessException e) {
-			String user = p4.getUserName();
-			logger.info("Removing loginCache entry for: " + user);
-			ConnectionHelper.invalidateSession(user);
-		} catch (P4JavaException e) {
+			if (user == null) {
+				P4BaseCredentials credential = ConnectionRegistry.getSelected();
+				user = (credential == null) ? null : credential.getUsername();
+			}
+			if (user != null) {
+				logger.info("Removing loginCache entry for: " + user);
+				ConnectionHelper.invalidateSession(user);
+			}
+		} catch (Exception e) {
 			logger.warning(e.getMessage());
 		}
+		return new ArrayList<>();
+	}
+
+	/**
+	 * @return matches from a cached directory listing, or null if not cached.
+	 */
+	private List<Node> getCached(String scope, String value) {
+		if (!value.startsWith("//")) {
+			value = "//" + value;
+		}
+		int slash = value.lastIndexOf('/');
+		if (value.length() <= 4 || slash < 2) {
+			return null;
+		}
+
+		DirectoryTreeCache.Listing listing = DirectoryTreeCache.get(scope, value.substring(0, slash + 1));
+		if (listing == null) {
+			return null;
+		}
+		List<Node> nodes = new ArrayList<>();
+		listMatches(listing, value.substring(slash + 1), nodes);
+		return nodes;
+	}
+
+	private List<Node> buildPaths(IOptionsServer p4, String scope, String value) throws P4JavaException {
+		List<Node> nodes = new ArrayList<>();
+		if (!value.startsWith("//")) {
+			value = "//" + value;
+		}
+
+		// remove leading '//' markers for depot matching
+		String depot = value.substring(2);
+		if (!depot.contains("/")) {
+			if (!listDepots(p4, scope, depot, nodes)) {
+				return nodes;
+			}
+			// complete match
+			nodes.clear();
+		}
+
+		int slash = value.lastIndexOf('/');
+		if (value.length() > 4 && slash >= 2) {
+			DirectoryTreeCache.Listing listing = getListing(p4, scope, value.substring(0, slash + 1));
+			if (listing != null) {
+				listMatches(listing, value.substring(slash + 1), nodes);
+				return nodes;
+			}
+		}
+
+		listDirs(p4, value, nodes);
+		listFiles(p4, value, nodes);
+		return nodes;
+	}
+
+	/**
+	 * @return the listing of a directory, or null if it is too large to list
+	 * for auto-completion.
+	 */
+	private DirectoryTreeCache.Listing getListing(IOptionsServer p4, String scope, String dir) throws P4JavaException {
+		// prefetch depot subtrees (client paths are listed as depot paths by 'p4 files')
+		if (scope != null && max > 0 && getDepth(dir) >= 2 && DirectoryTreeCache.get(scope, dir) == null) {
+			DirectoryTreeCache.prefetch(p4, scope, dir);
+		}
+		return DirectoryTreeCache.list(p4, scope, dir, (max > 0) ? LIST_LIMIT : 0);
+	}
+
+	private void listMatches(DirectoryTreeCache.Listing listing, String start, List<Node> nodes) {
+		int count = 0;
+		for (String dir : listing.getDirs()) {
+			if (max > 0 && count >= max) {
+				break;
+			}
+			if (listing.matches(dir, start)) {
+				nodes.add(new Node(dir, true));
+				count++;
+			}
+		}
+
+		count = 0;
+		for (String file : listing.getFiles()) {
+			if (max > 0 && count >= max) {
+				break;
+			}
+			if (listing.matches(file, start)) {
+				nodes.add(new Node(file, false));
+				count++;
+			}
+		}
+	}
+
+	/**
+	 * @return number of directories below the root, e.g. 2 for //depot/projA/
+	 */
+	private static int getDepth(String dir) {
+		int depth = 0;
+		for (int i = 2; i < dir.length(); i++) {
+			if (dir.charAt(i) == '/') {
+				depth++;
+			}
+		}
+		return depth;
 	}
 
 	/**
@@ -103,25 +245,22 @@ public class NavigateHelper implements Closeable {
 	 * for 'dep' as it is only partial match to 'depot', even thought there may be only one match.
 	 * @throws P4JavaException
 	 */
-	private boolean listDepots(String value) throws P4JavaException {
-		if (p4 != null) {
-			List<IDepot> list = p4.getDepots();
-			for (IDepot l : list) {
-				if (l.getName().equals(value)) {
-					// complete match, return early
-					nodes = new ArrayList<>();
-					return true;
-				}
-				if (l.getName().startsWith(value)) {
-					nodes.add(new Node("//" + l.getName(), true));
-				}
+	private boolean listDepots(IOptionsServer p4, String scope, String value, List<Node> nodes) throws P4JavaException {
+		List<String> list = DirectoryTreeCache.getDepots(p4, scope);
+		for (String name : list) {
+			if (name.equals(value)) {
+				// complete match, return early
+				return true;
+			}
+			if (name.startsWith(value)) {
+				nodes.add(new Node("//" + name, true));
 			}
 		}
 		return false;
 	}
 
-	private void listDirs(String value) throws P4JavaException {
-		if (p4 != null && value.length() > 4) {
+	private void listDirs(IOptionsServer p4, String value, List<Node> nodes) throws P4JavaException {
+		if (value.length() > 4) {
 
 			List<IFileSpec> dirs = specBuilder(value);
 
@@ -144,8 +283,8 @@ public class NavigateHelper implements Closeable {
 		}
 	}
 
-	private void listFiles(String value) throws P4JavaException {
-		if (p4 != null && value.length() > 4) {
+	private void listFiles(IOptionsServer p4, String value, List<Node> nodes) throws P4JavaException {
+		if (value.length() > 4) {
 
 			List<IFileSpec> files = specBuilder(value);
 
@@ -169,7 +308,7 @@ public class NavigateHelper implements Closeable {
 		return files;
 	}
 
-	private AutoCompletionCandidates getCandidates() {
+	private AutoCompletionCandidates getCandidates(List<Node> nodes) {
 		AutoCompletionCandidates c = new AutoCompletionCandidates();
 		for (Node node : nodes) {
 			c.add(node.getDepotPath());
@@ -177,13 +316,11 @@ public class NavigateHelper implements Closeable {
 		return c;
 	}
 
+	/**
+	 * Connections are owned by the caller or the registry; nothing to close.
+	 */
 	@Override
 	public void close() throws IOException {
-		try {
-			p4.disconnect();
-		} catch (P4JavaException e) {
-			throw new IOException(e);
-		}
 	}
 
 	public static final class Node {
@@ -0,0 +1,391 @@
+package org.jenkinsci.plugins.p4.client;
+
+import com.perforce.p4java.client.IClientSummary;
+import com.perforce.p4java.option.server.GetClientsOptions;
+import hudson.Util;
+import hudson.model.TaskListener;
+import hudson.util.LogTaskListener;
+import jenkins.model.Jenkins;
+import jenkins.util.Timer;
+import org.jenkinsci.plugins.p4.credentials.P4BaseCredentials;
+import org.jenkinsci.plugins.p4.workspace.ManualWorkspaceImpl;
+import org.jenkinsci.plugins.p4.workspace.StreamWorkspaceImpl;
+import org.jenkinsci.plugins.p4.workspace.Workspace;
+import org.jenkinsci.plugins.p4.workspace.WorkspaceSpec;
+
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Scan Client Pool
+ * <p>
+ * Long-lived temporary clients for multibranch scans, lightweight checkouts
+ * and library lookups, kept per credential, P4USER and P4PORT. A client is leased
+ * for a scan and its view is swapped in place, so a scan writes at most one
+ * client spec per head instead of creating and deleting a client. Idle
+ * clients remember the view they hold; a lease for the same view reuses
+ * that client and, with the {@link ClientSpecCache}, writes nothing.
+ * <p>
+ * Client names are derived from the Jenkins instance, credential and user so they
+ * are reused after a restart. A janitor deletes clients left idle for longer
+ * than the idle timeout. Clients the pool does not know (left by a restart)
+ * are judged by their server Access and Update times; the server only
+ * updates the Access time once per access interval, so such clients must
+ * also be older than the access lag.
+ */
+public final class ScanClientPool {
+
+	private static Logger logger = Logger.getLogger(ScanClientPool.class.getName());
+
+	private static final String PREFIX = ScanClientPool.class.getName();
+
+	public static final String CLIENT_PREFIX = "jenkinsTemp-";
+
+	// Clients kept per credential (0 creates and deletes a client per lease)
+	private static int maxClients = Integer.getInteger(PREFIX + ".maxClients", 32);
+
+	// Idle clients older than this are deleted by the janitor
+	private static long idleTimeout = TimeUnit.SECONDS.toMillis(Long.getLong(PREFIX + ".idleTimeout", 3600L));
+
+	// How stale a server Access time may be (the server's access update interval)
+	private static long accessLag = TimeUnit.SECONDS.toMillis(Long.getLong(PREFIX + ".accessLag", 43200L));
+
+	// How often the janitor runs
+	private static final long JANITOR_INTERVAL = TimeUnit.SECONDS.toMillis(Long.getLong(PREFIX + ".janitorInterval", 600L));
+
+	private static final ConcurrentMap<String, Pool> pools = new ConcurrentHashMap<>();
+
+	private static boolean janitor = false;
+
+	private ScanClientPool() {
+	}
+
+	/**
+	 * Lease a client, preferring an idle client that already holds the view.
+	 *
+	 * @param credential Perforce credential
+	 * @param affinity   view the client is wanted for, see {@link #getAffinity(Workspace)}
+	 * @return a client lease, released with {@link #release(Lease)}.
+	 */
+	public static Lease lease(P4BaseCredentials credential, String affinity) {
+		String key = credential.getId() + "/" + credential.getUsername() + "@" + credential.getFullP4port();
+		Pool pool = pools.computeIfAbsent(key, k -> new Pool(credential));
+		pool.credential = credential;
+		startJanitor();
+		return pool.lease(affinity);
+	}
+
+	/**
+	 * Return a client to the pool.
+	 *
+	 * @param lease client lease
+	 * @return true if pooled, false if the caller should delete the client
+	 */
+	public static boolean release(Lease lease) {
+		if (lease == null) {
+			return false;
+		}
+		return lease.pool.release(lease);
+	}
+
+	/**
+	 * Identify the view of a workspace, independent of the client name.
+	 *
+	 * @param workspace workspace before it is renamed for the lease
+	 * @return view identity or null if unknown
+	 */
+	public static String getAffinity(Workspace workspace) {
+		if (workspace == null) {
+			return null;
+		}
+		String name = workspace.getName();
+		if (workspace instanceof ManualWorkspaceImpl) {
+			WorkspaceSpec spec = ((ManualWorkspaceImpl) workspace).getSpec();
+			String view = (spec.getView() == null) ? "" : spec.getView();
+			if (name != null && !name.isEmpty()) {
+				view = view.replace(name, "${P4_CLIENT}");
+			}
+			return "manual:" + spec.getStreamName() + ":" + spec.getChangeView() + ":" + view;
+		}
+		if (workspace instanceof StreamWorkspaceImpl) {
+			return "stream:" + ((StreamWorkspaceImpl) workspace).getStreamName();
+		}
+		return null;
+	}
+
+	/**
+	 * Delete clients left idle for longer than the idle timeout.
+	 */
+	public static void sweep() {
+		long now = System.currentTimeMillis();
+		for (Pool pool : pools.values()) {
+			List<String> expired = pool.expire(now);
+			pool.delete(expired, now);
+		}
+	}
+
+	/**
+	 * @return number of clients held for all credentials (leased and idle).
+	 */
+	public static int getCount() {
+		int count = 0;
+		for (Pool pool : pools.values()) {
+			synchronized (pool) {
+				count += pool.idle.size() + pool.leased.size();
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Set the number of clients kept per credential (for tests and the
+	 * script console).
+	 *
+	 * @param max clients per credential, 0 to delete every client on release
+	 */
+	public static void setMaxClients(int max) {
+		maxClients = max;
+	}
+
+	/**
+	 * Set how long idle clients are kept (for tests and the script console).
+	 *
+	 * @param seconds idle timeout
+	 */
+	public static void setIdleTimeout(long seconds) {
+		idleTimeout = TimeUnit.SECONDS.toMillis(seconds);
+	}
+
+	/**
+	 * Set how stale the server Access time of a client may be (for tests
+	 * and the script console).
+	 *
+	 * @param seconds access update interval of the server
+	 */
+	public static void setAccessLag(long seconds) {
+		accessLag = TimeUnit.SECONDS.toMillis(seconds);
+	}
+
+	/**
+	 * Forget all pooled clients (for tests); clients are left on the server.
+	 */
+	public static void clear() {
+		pools.clear();
+	}
+
+	private static synchronized void startJanitor() {
+		if (janitor || JANITOR_INTERVAL <= 0) {
+			return;
+		}
+		janitor = true;
+		Timer.get().scheduleWithFixedDelay(() -> {
+			try {
+				sweep();
+			} catch (RuntimeException e) {
+				logger.warning("P4: scan client janitor failed: " + e.getMessage());
+			}
+		}, JANITOR_INTERVAL, JANITOR_INTERVAL, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * A leased client.
+	 */
+	public static final class Lease {
+
+		private final Pool pool;
+		private final String name;
+		private String affinity;
+		private long released;
+
+		private Lease(Pool pool, String name) {
+			this.pool = pool;
+			this.name = name;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		/**
+		 * @param affinity wanted view
+		 * @return true if the client already holds the view.
+		 */
+		public boolean holds(String affinity) {
+			return affinity != null && affinity.equals(this.affinity);
+		}
+
+		/**
+		 * Record the view now saved in the client spec.
+		 *
+		 * @param affinity view identity, or null if unknown
+		 */
+		public void setAffinity(String affinity) {
+			this.affinity = affinity;
+		}
+	}
+
+	private static final class Pool {
+
+		// latest credential, used by the janitor
+		private volatile P4BaseCredentials credential;
+		private final String prefix;
+
+		// idle clients, most recently used first
+		private final Deque<Lease> idle = new LinkedList<>();
+		private final Set<String> leased = new HashSet<>();
+
+		// clients being deleted, not reused until the janitor is done
+		private final Set<String> deleting = new HashSet<>();
+
+		private Pool(P4BaseCredentials credential) {
+			this.credential = credential;
+			String id = Jenkins.getInstance().getLegacyInstanceId() + "|" + credential.getId() + "|" + credential.getUsername();
+			this.prefix = CLIENT_PREFIX + Util.getDigestOf(id).substring(0, 12) + "-";
+		}
+
+		private synchronized Lease lease(String affinity) {
+			// reuse the client holding the view
+			if (affinity != null) {
+				Iterator<Lease> it = idle.iterator();
+				while (it.hasNext()) {
+					Lease lease = it.next();
+					if (lease.holds(affinity)) {
+						it.remove();
+						leased.add(lease.name);
+						return lease;
+					}
+				}
+			}
+
+			// create a client while below the limit, else swap the view of the oldest
+			Lease lease = null;
+			if (idle.size() + leased.size() >= maxClients) {
+				lease = idle.pollLast();
+			}
+			if (lease == null) {
+				lease = new Lease(this, nextName());
+			}
+			leased.add(lease.name);
+			return lease;
+		}
+
+		private String nextName() {
+			Set<String> used = new HashSet<>(leased);
+			used.addAll(deleting);
+			for (Lease lease : idle) {
+				used.add(lease.name);
+			}
+			for (int i = 0; ; i++) {
+				String name = prefix + i;
+				if (!used.contains(name)) {
+					return name;
+				}
+			}
+		}
+
+		private synchronized boolean release(Lease lease) {
+			leased.remove(lease.name);
+			if (idle.contains(lease)) {
+				return true;
+			}
+			if (idle.size() + leased.size() >= maxClients) {
+				return false;
+			}
+			lease.released = System.currentTimeMillis();
+			idle.addFirst(lease);
+			return true;
+		}
+
+		private synchronized List<String> expire(long now) {
+			List<String> expired = new ArrayList<>();
+			Iterator<Lease> it = idle.iterator();
+			while (it.hasNext()) {
+				Lease lease = it.next();
+				if (now - lease.released > idleTimeout) {
+					it.remove();
+					expired.add(lease.name);
+					deleting.add(lease.name);
+				}
+			}
+			return expired;
+		}
+
+		/**
+		 * Hold an unknown client for deletion, unless it is pooled.
+		 *
+		 * @param name client name
+		 * @return true if the client may be deleted.
+		 */
+		private synchronized boolean reserve(String name) {
+			if (leased.contains(name) || deleting.contains(name)) {
+				return false;
+			}
+			for (Lease lease : idle) {
+				if (lease.name.equals(name)) {
+					return false;
+				}
+			}
+			deleting.add(name);
+			return true;
+		}
+
+		private synchronized void deleted(List<String> names) {
+			deleting.removeAll(names);
+		}
+
+		/**
+		 * Delete expired clients, and clients with this pool's prefix that
+		 * are unknown (e.g. left by a restart) and were not used recently.
+		 */
+		private void delete(List<String> expired, long now) {
+			TaskListener listener = new LogTaskListener(logger, Level.FINE);
+			try (ConnectionHelper p4 = new ConnectionHelper(credential, listener)) {
+				GetClientsOptions opts = new GetClientsOptions();
+				opts.setNameFilter(prefix + "*");
+				for (IClientSummary summary : p4.getConnection().getClients(opts)) {
+					String name = summary.getName();
+					if (!expired.contains(name) && isStale(summary, now) && reserve(name)) {
+						expired.add(name);
+					}
+				}
+				for (String name : expired) {
+					try {
+						p4.deleteClient(name);
+						logger.fine("P4: deleted idle scan client: " + name);
+					} catch (Exception e) {
+						logger.fine("P4: unable to delete scan client " + name + ": " + e.getMessage());
+					}
+				}
+			} catch (Exception e) {
+				logger.fine("P4: unable to delete idle scan clients: " + e.getMessage());
+			} finally {
+				deleted(expired);
+			}
+		}
+
+		/**
+		 * A view swap updates the spec, but the Access time lags use by up to
+		 * the server's access update interval.
+		 */
+		private boolean isStale(IClientSummary summary, long now) {
+			long used = 0;
+			if (summary.getAccessed() != null) {
+				used = summary.getAccessed().getTime();
+			}
+			if (summary.getUpdated() != null) {
+				used = Math.max(used, summary.getUpdated().getTime());
+			}
+			return now - used > idleTimeout + accessLag;
+		}
+	}
+}
@@ -37,18 +37,32 @@ public class SessionHelper extends CredentialsHelper {
 	private final ConnectionConfig connectionConfig;
 	private final Validate validate;
 	private final String sessionId;
+	private final String poolId;
 	private final long sessionLife;
 	private final boolean sessionEnabled;
 
 	private IOptionsServer connection;
 	private boolean abort = false;
+	private boolean released = false;
 
 	private static ConcurrentMap<String, SessionEntry> loginCache = new ConcurrentHashMap<>();
 
 	public SessionHelper(P4BaseCredentials credential, TaskListener listener) throws IOException {
+		this(credential, listener, credential.getId());
+	}
+
+	/**
+	 * @param credential Perforce credential
+	 * @param listener   task listener
+	 * @param poolId     connection pool owner, keeps connections apart from
+	 *                   the credential's build connections
+	 * @throws IOException push up stack
+	 */
+	SessionHelper(P4BaseCredentials credential, TaskListener listener, String poolId) throws IOException {
 		super(credential, listener);
 		this.connectionConfig = new ConnectionConfig(getCredential());
 		this.sessionId = credential.getId();
+		this.poolId = getPoolId(poolId, credential);
 		this.sessionLife = credential.getSessionLife();
 		this.sessionEnabled = credential.isSessionEnabled();
 		connectionRetry();
@@ -59,12 +73,21 @@ public class SessionHelper extends CredentialsHelper {
 		super(credentialID, listener);
 		this.connectionConfig = new ConnectionConfig(getCredential());
 		this.sessionId = credentialID;
+		this.poolId = getPoolId(credentialID, getCredential());
 		this.sessionLife = getCredential().getSessionLife();
 		this.sessionEnabled = getCredential().isSessionEnabled();
 		connectionRetry();
 		validate = new Validate(listener);
 	}
 
+	/**
+	 * Pooled connections are kept apart by P4USER, so a credential updated
+	 * with a new user never borrows a connection of the old one.
+	 */
+	private static String getPoolId(String owner, P4BaseCredentials credential) {
+		return owner + "/" + credential.getUsername();
+	}
+
 	public void invalidateSession() {
 		loginCache.remove(sessionId);
 	}
@@ -187,11 +210,21 @@ public class SessionHelper extends CredentialsHelper {
 	}
 
 	/**
-	 * Disconnect from the Perforce Server.
+	 * Disconnect from the Perforce Server; healthy connections are returned to
+	 * the connection pool for reuse.
 	 */
 	protected void disconnect() {
+		if (connection == null || released) {
+			return;
+		}
+		released = true;
+
 		try {
-			getConnection().disconnect();
+			if (hasAborted()) {
+				ConnectionFactory.closeConnection(connectionConfig, poolId, connection);
+			} else {
+				ConnectionFactory.releaseConnection(connectionConfig, poolId, connection);
+			}
 			logger.fine("P4: closed connection OK");
 		} catch (Exception e) {
 			String err = "P4: Unable to close Perforce connection.";
@@ -260,7 +293,7 @@ public class SessionHelper extends CredentialsHelper {
 	 */
 	private boolean connect() throws Exception {
 		// Connect to the Perforce server
-		this.connection = ConnectionFactory.getConnection(connectionConfig);
+		this.connection = ConnectionFactory.getConnection(connectionConfig, poolId);
 		logger.fine("P4: opened connection OK");
 
 		// Login to Perforce
@@ -270,6 +303,7 @@ public class SessionHelper extends CredentialsHelper {
 			String err = "P4: Unable to login: " + e;
 			logger.severe(err);
 			log(err);
+			ConnectionFactory.closeConnection(connectionConfig, poolId, this.connection);
 			return false;
 		}
 
@@ -9,19 +9,22 @@ import org.jenkinsci.plugins.p4.workspace.WorkspaceSpec;
 
 import java.io.Closeable;
 import java.io.IOException;
-import java.util.UUID;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+/**
+ * Client helper for scans and lightweight checkouts, using a client leased
+ * from the {@link ScanClientPool}. The client is returned to the pool on
+ * close and only deleted if the pool is full.
+ */
 public class TempClientHelper extends ClientHelper implements Closeable {
 
 	private static final Logger LOGGER = Logger.getLogger(TempClientHelper.class.getName());
 
-	private final String clientUUID;
+	private ScanClientPool.Lease lease;
 
 	public TempClientHelper(Item context, String credential, TaskListener listener, Workspace workspace) throws Exception {
 		super(context, credential, listener);
-		this.clientUUID = "jenkinsTemp-" + UUID.randomUUID().toString();
 		if (workspace != null) {
 			update(workspace);
 		}
@@ -29,32 +32,59 @@ public class TempClientHelper extends ClientHelper implements Closeable {
 
 	@Override
 	public void close() throws IOException {
-		try {
-			deleteClient(clientUUID);
-		} catch (Exception e) {
-			LOGGER.log(Level.INFO, "Unable to remove temporary client: " + clientUUID);
+		if (lease != null) {
+			String name = lease.getName();
+			// client-less scans never create the client
+			if (getClient() == null) {
+				lease.setAffinity(null);
+			}
+			if (!ScanClientPool.release(lease) && getClient() != null) {
+				try {
+					deleteClient(name);
+				} catch (Exception e) {
+					LOGGER.log(Level.INFO, "Unable to remove temporary client: " + name);
+				}
+			}
+			lease = null;
 		}
 		disconnect();
 	}
 
-	public String getClientUUID() {
-		return clientUUID;
+	public synchronized String getClientUUID() {
+		if (lease == null) {
+			lease = ScanClientPool.lease(getCredential(), null);
+		}
+		return lease.getName();
 	}
 
-	public void update(Workspace workspace) throws AbortException {
+	public synchronized void update(Workspace workspace) throws AbortException {
+		String affinity = ScanClientPool.getAffinity(workspace);
+		if (lease == null) {
+			lease = ScanClientPool.lease(getCredential(), affinity);
+		}
+
 		String oldName = workspace.getName();
-		workspace.setName(clientUUID);
+		String clientName = lease.getName();
+		workspace.setName(clientName);
 
 		// Update view with new name
 		if (workspace instanceof ManualWorkspaceImpl) {
 			ManualWorkspaceImpl manual = (ManualWorkspaceImpl) workspace;
 			WorkspaceSpec spec = manual.getSpec();
 			String view = spec.getView();
-			view = view.replace(oldName, clientUUID);
+			view = view.replace(oldName, clientName);
 			spec.setView(view);
 			manual.setSpec(spec);
 		}
 
+		// forget the view (and listings of the old view) until the client is saved
+		if (!lease.holds(affinity)) {
+			DirectoryTreeCache.evict(DirectoryTreeCache.getScope(getCredential()), "//" + clientName + "/");
+		}
+		lease.setAffinity(null);
 		clientLogin(workspace);
+		if (getClient() != null) {
+			lease.setAffinity(affinity);
+		}
 	}
 }
@@ -0,0 +1,169 @@
+package org.jenkinsci.plugins.p4.client;
+
+import com.perforce.p4java.client.IClientViewMapping;
+import com.perforce.p4java.core.IMapEntry.EntryType;
+import com.perforce.p4java.impl.generic.client.ClientView;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Matches depot paths against the depot side of a client view. Later view
+ * lines override earlier ones, so the last line that matches a path decides
+ * whether it is mapped; an exclude ('-') line unmaps it.
+ * <p>
+ * Wildcards: '...' matches any characters, '*' and '%%n' match any
+ * characters within a directory.
+ */
+public class ViewMatcher {
+
+	private final List<Entry> entries = new ArrayList<>();
+
+	/**
+	 * @param view          client view
+	 * @param caseSensitive false for case-insensitive servers
+	 */
+	public ViewMatcher(ClientView view, boolean caseSensitive) {
+		if (view == null) {
+			return;
+		}
+		for (IClientViewMapping entry : view) {
+			boolean exclude = entry.getType() == EntryType.EXCLUDE;
+			add(entry.getLeft(), exclude, caseSensitive);
+		}
+	}
+
+	/**
+	 * @param lines         depot side of each view line, prefixed with '-'
+	 *                      for exclude and '+' for overlay lines
+	 * @param caseSensitive false for case-insensitive servers
+	 */
+	public ViewMatcher(List<String> lines, boolean caseSensitive) {
+		for (String line : lines) {
+			String left = line.trim();
+			boolean exclude = left.startsWith("-") || left.startsWith("\"-");
+			add(left, exclude, caseSensitive);
+		}
+	}
+
+	/**
+	 * @param path depot path
+	 * @return true if the path is mapped by the view.
+	 */
+	public boolean matches(String path) {
+		if (path == null) {
+			return false;
+		}
+		for (int i = entries.size() - 1; i >= 0; i--) {
+			Entry entry = entries.get(i);
+			if (entry.matches(path)) {
+				return !entry.exclude;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @param paths depot paths
+	 * @return true if any path is mapped by the view.
+	 */
+	public boolean matchesAny(List<String> paths) {
+		for (String path : paths) {
+			if (matches(path)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @return true if the view has no lines.
+	 */
+	public boolean isEmpty() {
+		return entries.isEmpty();
+	}
+
+	private void add(String left, boolean exclude, boolean caseSensitive) {
+		if (left == null) {
+			return;
+		}
+		String path = left.replace("\"", "");
+		if (path.startsWith("-") || path.startsWith("+")) {
+			path = path.substring(1);
+		}
+		if (path.isEmpty()) {
+			return;
+		}
+		entries.add(new Entry(path, exclude, caseSensitive));
+	}
+
+	private static final class Entry {
+
+		private final boolean exclude;
+		private final String prefix;
+		private final Pattern pattern;
+
+		private Entry(String path, boolean exclude, boolean caseSensitive) {
+			this.exclude = exclude;
+
+			// plain '//depot/path/...' lines only need a prefix check
+			String head = path.endsWith("...") ? path.substring(0, path.length() - 3) : null;
+			if (caseSensitive && head != null && !hasWildcard(head)) {
+				prefix = head;
+				pattern = null;
+				return;
+			}
+
+			prefix = null;
+			int flags = (caseSensitive) ? 0 : Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE;
+			pattern = Pattern.compile(toRegex(path), flags | Pattern.DOTALL);
+		}
+
+		private boolean matches(String path) {
+			if (prefix != null) {
+				return path.startsWith(prefix);
+			}
+			return pattern.matcher(path).matches();
+		}
+
+		private static boolean hasWildcard(String path) {
+			return path.contains("*") || path.contains("...") || path.contains("%%");
+		}
+
+		private static String toRegex(String path) {
+			StringBuilder sb = new StringBuilder();
+			StringBuilder literal = new StringBuilder();
+			int i = 0;
+			while (i < path.length()) {
+				String wildcard = null;
+				int skip = 1;
+				if (path.startsWith("...", i)) {
+					wildcard = ".*";
+					skip = 3;
+				} else if (path.charAt(i) == '*') {
+					wildcard = "[^/]*";
+				} else if (path.startsWith("%%", i) && i + 2 < path.length()
+						&& Character.isDigit(path.charAt(i + 2))) {
+					wildcard = "[^/]*";
+					skip = 3;
+				}
+
+				if (wildcard == null) {
+					literal.append(path.charAt(i));
+				} else {
+					if (literal.length() > 0) {
+						sb.append(Pattern.quote(literal.toString()));
+						literal.setLength(0);
+					}
+					sb.append(wildcard);
+				}
+				i += skip;
+			}
+			if (literal.length() > 0) {
+				sb.append(Pattern.quote(literal.toString()));
+			}
+			return sb.toString();
+		}
+	}
+}
@@ -14,6 +14,7 @@ import hudson.util.ListBoxModel;
 import jenkins.model.Jenkins;
 import org.acegisecurity.Authentication;
 import org.jenkinsci.plugins.p4.client.ConnectionHelper;
+import org.jenkinsci.plugins.p4.client.ConnectionRegistry;
 import org.kohsuke.stapler.QueryParameter;
 
 import java.util.Collections;
@@ -75,8 +76,7 @@ public class P4CredentialsImpl {
 		if (value == null) {
 			return FormValidation.ok();
 		}
-		try {
-			ConnectionHelper p4 = new ConnectionHelper(value, null);
+		try (ConnectionHelper p4 = new ConnectionHelper(value, null)) {
 			if (!p4.login()) {
 				return FormValidation
 						.error("Authentication Error: Unable to login.");
@@ -85,6 +85,9 @@ public class P4CredentialsImpl {
 				return FormValidation
 						.error("Server version is too old (min 2012.1)");
 			}
+
+			// used by auto-completion and validation on the same form
+			ConnectionRegistry.select(p4.getCredential());
 			return FormValidation.ok();
 		} catch (Exception e) {
 			return FormValidation.error(e.getMessage());
@@ -95,8 +98,7 @@ public class P4CredentialsImpl {
 		if (value == null) {
 			return FormValidation.ok();
 		}
-		try {
-			ConnectionHelper p4 = new ConnectionHelper(project, value, null);
+		try (ConnectionHelper p4 = new ConnectionHelper(project, value, null)) {
 			if (!p4.login()) {
 				return FormValidation
 						.error("Authentication Error: Unable to login.");
@@ -105,6 +107,9 @@ public class P4CredentialsImpl {
 				return FormValidation
 						.error("Server version is too old (min 2012.1)");
 			}
+
+			// used by auto-completion and validation on the same form
+			ConnectionRegistry.select(p4.getCredential());
 			return FormValidation.ok();
 		} catch (Exception e) {
 			return FormValidation.error(e.getMessage());
@@ -16,13 +16,19 @@ public class P4AddressResolver extends MailAddressResolver {
 
 	@Override
 	public String findMailAddressFor(User user) {
+		String id = user.getId();
 		P4UserProperty prop = user.getProperty(P4UserProperty.class);
-		if (prop != null) {
-			String id = user.getId();
+		if (prop != null && prop.getEmail() != null) {
 			String email = prop.getEmail();
 			logger.fine("MailAddressResolver: " + id + ":" + email);
 			return email;
 		}
-		return null;
+
+		// Fall back to addresses already fetched from Perforce
+		String email = P4UserCache.findEmail(id);
+		if (email != null) {
+			logger.fine("MailAddressResolver (cache): " + id + ":" + email);
+		}
+		return email;
 	}
 }
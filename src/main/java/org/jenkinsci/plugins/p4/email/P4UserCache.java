@@ -0,0 +1,231 @@
+package org.jenkinsci.plugins.p4.email;
+
+import com.perforce.p4java.core.IUserSummary;
+import com.perforce.p4java.option.server.GetUsersOptions;
+import org.jenkinsci.plugins.p4.client.ConnectionHelper;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+/**
+ * Process-wide cache of Perforce user e-mail addresses, keyed by P4PORT and
+ * user. Entries expire after a TTL and the least recently used entries are
+ * dropped once the cache is full. An index of the servers each user is
+ * cached for answers lookups by user name alone.
+ */
+public final class P4UserCache {
+
+	private static Logger logger = Logger.getLogger(P4UserCache.class.getName());
+
+	private static final String PREFIX = P4UserCache.class.getName();
+
+	private static final long TTL = TimeUnit.SECONDS.toMillis(Long.getLong(PREFIX + ".ttl", 3600L));
+
+	private static final int MAX_SIZE = Integer.getInteger(PREFIX + ".maxSize", 10000);
+
+	private static final Map<String, Entry> cache = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+			if (size() > MAX_SIZE) {
+				unindex(eldest.getKey());
+				return true;
+			}
+			return false;
+		}
+	};
+
+	// user to the P4PORTs it is cached for
+	private static final Map<String, Set<String>> users = new HashMap<>();
+
+	private static final AtomicLong hits = new AtomicLong();
+	private static final AtomicLong misses = new AtomicLong();
+
+	private P4UserCache() {
+	}
+
+	/**
+	 * Get the e-mail address for a user, running 'p4 user -o' on a miss.
+	 *
+	 * @param p4   Perforce connection
+	 * @param user Perforce user name
+	 * @return e-mail address or empty string if the user has none
+	 * @throws Exception push up stack
+	 */
+	public static String getEmail(ConnectionHelper p4, String user) throws Exception {
+		String key = getKey(p4.getPort(), user);
+		String email = get(key);
+		if (email != null) {
+			hits.incrementAndGet();
+			return email;
+		}
+
+		misses.incrementAndGet();
+		email = p4.fetchEmail(user);
+		put(key, email);
+		return email;
+	}
+
+	/**
+	 * Fill the cache for several users with a single 'p4 users' command. Users
+	 * already in the cache are skipped; a null list fetches all users.
+	 *
+	 * @param p4    Perforce connection
+	 * @param users Perforce user names, or null for all users
+	 * @throws Exception push up stack
+	 */
+	public static void prefill(ConnectionHelper p4, Collection<String> users) throws Exception {
+		String port = p4.getPort();
+
+		Set<String> missing = null;
+		if (users != null) {
+			missing = new LinkedHashSet<>();
+			for (String user : users) {
+				if (user != null && get(getKey(port, user)) == null) {
+					missing.add(user);
+				}
+			}
+			if (missing.isEmpty()) {
+				return;
+			}
+		}
+
+		List<String> names = (missing == null) ? null : new ArrayList<>(missing);
+		List<IUserSummary> summaries = p4.getConnection().getUsers(names, new GetUsersOptions());
+		if (summaries == null) {
+			return;
+		}
+		for (IUserSummary summary : summaries) {
+			String email = summary.getEmail();
+			put(getKey(port, summary.getLoginName()), (email != null) ? email : "");
+		}
+		logger.fine("P4UserCache: prefilled " + summaries.size() + " users for " + port);
+	}
+
+	/**
+	 * Find a cached e-mail address for a user, by user name alone; never
+	 * contacts the server. The address is only returned if every server the
+	 * user is cached for agrees on it, as the same name on two servers may
+	 * be two people.
+	 *
+	 * @param user Perforce user name
+	 * @return e-mail address or null if not cached or ambiguous
+	 */
+	public static String findEmail(String user) {
+		if (user == null) {
+			return null;
+		}
+		long now = System.currentTimeMillis();
+		synchronized (cache) {
+			Set<String> ports = users.get(user);
+			if (ports == null) {
+				return null;
+			}
+			String found = null;
+			for (String port : ports) {
+				Entry value = cache.get(getKey(port, user));
+				if (value == null || value.isExpired(now) || value.getEmail().isEmpty()) {
+					continue;
+				}
+				if (found != null && !found.equals(value.getEmail())) {
+					return null;
+				}
+				found = value.getEmail();
+			}
+			return found;
+		}
+	}
+
+	public static long getHits() {
+		return hits.get();
+	}
+
+	public static long getMisses() {
+		return misses.get();
+	}
+
+	public static int size() {
+		synchronized (cache) {
+			return cache.size();
+		}
+	}
+
+	public static void clear() {
+		synchronized (cache) {
+			cache.clear();
+			users.clear();
+		}
+		hits.set(0);
+		misses.set(0);
+	}
+
+	private static String getKey(String port, String user) {
+		return port + "@" + user;
+	}
+
+	private static String get(String key) {
+		synchronized (cache) {
+			Entry entry = cache.get(key);
+			if (entry == null) {
+				return null;
+			}
+			if (entry.isExpired(System.currentTimeMillis())) {
+				cache.remove(key);
+				unindex(key);
+				return null;
+			}
+			return entry.getEmail();
+		}
+	}
+
+	private static void put(String key, String email) {
+		synchronized (cache) {
+			int at = key.lastIndexOf('@');
+			users.computeIfAbsent(key.substring(at + 1), k -> new HashSet<>()).add(key.substring(0, at));
+			cache.put(key, new Entry(email));
+		}
+	}
+
+	/**
+	 * Remove a key from the user index; user names cannot contain '@'.
+	 */
+	private static void unindex(String key) {
+		int at = key.lastIndexOf('@');
+		String user = key.substring(at + 1);
+		Set<String> ports = users.get(user);
+		if (ports != null) {
+			ports.remove(key.substring(0, at));
+			if (ports.isEmpty()) {
+				users.remove(user);
+			}
+		}
+	}
+
+	private static final class Entry {
+
+		private final String email;
+		private final long created;
+
+		private Entry(String email) {
+			this.email = (email != null) ? email : "";
+			this.created = System.currentTimeMillis();
+		}
+
+		private String getEmail() {
+			return email;
+		}
+
+		private boolean isExpired(long now) {
+			return now - created > TTL;
+		}
+	}
+}
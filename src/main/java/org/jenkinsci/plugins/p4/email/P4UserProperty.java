@@ -42,8 +42,21 @@ public class P4UserProperty extends UserProperty {
 		}
 	}
 
+	/**
+	 * Get the user's email; falls back to the Perforce user cache if no
+	 * address has been stored on the user.
+	 *
+	 * @return email address or null
+	 */
 	@Exported
 	public String getEmail() {
+		if (email == null && user != null) {
+			return P4UserCache.findEmail(user.getId());
+		}
+		return email;
+	}
+
+	public String getStoredEmail() {
 		return email;
 	}
 }
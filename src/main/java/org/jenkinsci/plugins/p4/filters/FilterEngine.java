@@ -0,0 +1,216 @@
+package org.jenkinsci.plugins.p4.filters;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Evaluates the polling filters for a job against changes. The filters are
+ * applied in order, giving the same result as checking each filter against
+ * a full describe of the change. View masks and pattern lists use the
+ * matchers compiled once per filter configuration; adjacent path filters are
+ * merged into a single prefix trie.
+ * <p>
+ * User filters that come before the first pattern list filter decide the
+ * result on their own, so they can be checked before any files are fetched.
+ * User filters after a pattern list filter are never reached.
+ */
+public class FilterEngine {
+
+	private final List<Rule> rules = new ArrayList<>();
+	private final List<String> users = new ArrayList<>();
+
+	public FilterEngine(List<Filter> filters) {
+		if (filters == null) {
+			return;
+		}
+
+		boolean pattern = false;
+		for (Filter f : filters) {
+			if (f instanceof FilterUserImpl) {
+				String u = ((FilterUserImpl) f).getUser();
+				if (!pattern && u != null) {
+					users.add(u);
+				}
+			}
+			if (f instanceof FilterPathImpl && !pattern) {
+				String path = ((FilterPathImpl) f).getPath();
+				Rule last = (rules.isEmpty()) ? null : rules.get(rules.size() - 1);
+				if (last instanceof PathRule) {
+					// removing files for each path in turn is the same as removing them for any path
+					((PathRule) last).add(path);
+				} else {
+					rules.add(new PathRule(path));
+				}
+			}
+			if (f instanceof FilterViewMaskImpl && !pattern) {
+				rules.add(new ViewMaskRule(((FilterViewMaskImpl) f).getMatcher()));
+			}
+			if (f instanceof FilterPatternListImpl && !pattern) {
+				rules.add(new PatternRule(((FilterPatternListImpl) f).getMatcher()));
+				// the first pattern list filter always decides the result
+				pattern = true;
+			}
+		}
+	}
+
+	/**
+	 * @return true if no filter can exclude a change.
+	 */
+	public boolean isEmpty() {
+		return rules.isEmpty() && users.isEmpty();
+	}
+
+	/**
+	 * @return true if a user filter is evaluated.
+	 */
+	public boolean hasUserFilter() {
+		return !users.isEmpty();
+	}
+
+	/**
+	 * @return true if the files in a change are needed to evaluate the filters.
+	 */
+	public boolean hasFileFilter() {
+		return !rules.isEmpty();
+	}
+
+	/**
+	 * Check the user filters only; no files are needed.
+	 *
+	 * @param user Perforce user that submitted the change
+	 * @return true if the change should be filtered
+	 */
+	public boolean isUserFiltered(String user) {
+		for (String u : users) {
+			if (u.equalsIgnoreCase(user)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Check the path, view mask and pattern list filters.
+	 *
+	 * @param paths depot paths of the files in the change
+	 * @return true if the change should be filtered
+	 */
+	public boolean isFileFiltered(List<String> paths) {
+		List<String> files = paths;
+		for (Rule rule : rules) {
+			Boolean result = rule.apply(files);
+			if (result != null) {
+				return result;
+			}
+			files = rule.remainder(files);
+		}
+		return false;
+	}
+
+	/**
+	 * Check all filters.
+	 *
+	 * @param user  Perforce user that submitted the change
+	 * @param paths depot paths of the files in the change
+	 * @return true if the change should be filtered
+	 */
+	public boolean isFiltered(String user, List<String> paths) {
+		return isUserFiltered(user) || isFileFiltered(paths);
+	}
+
+	private interface Rule {
+
+		/**
+		 * @return true to filter the change, false to keep it, or null to
+		 * continue with the next rule.
+		 */
+		Boolean apply(List<String> files);
+
+		List<String> remainder(List<String> files);
+	}
+
+	private static final class PathRule implements Rule {
+
+		private final PrefixTrie paths = new PrefixTrie();
+
+		private PathRule(String path) {
+			add(path);
+		}
+
+		private void add(String path) {
+			paths.put(path, 0);
+		}
+
+		@Override
+		public Boolean apply(List<String> files) {
+			for (String p : files) {
+				if (p != null && !paths.matches(p)) {
+					return null;
+				}
+			}
+			// all files are removed then remove change
+			return true;
+		}
+
+		@Override
+		public List<String> remainder(List<String> files) {
+			List<String> remainder = new ArrayList<>();
+			for (String p : files) {
+				if (p != null && !paths.matches(p)) {
+					remainder.add(p);
+				}
+			}
+			return remainder;
+		}
+	}
+
+	private static final class ViewMaskRule implements Rule {
+
+		private final ViewMaskMatcher matcher;
+
+		private ViewMaskRule(ViewMaskMatcher matcher) {
+			this.matcher = matcher;
+		}
+
+		@Override
+		public Boolean apply(List<String> files) {
+			// at least one file in the change must be contained in the view mask
+			for (String p : files) {
+				if (p != null && matcher.contains(p)) {
+					return null;
+				}
+			}
+			return true;
+		}
+
+		@Override
+		public List<String> remainder(List<String> files) {
+			return files;
+		}
+	}
+
+	private static final class PatternRule implements Rule {
+
+		private final PatternListMatcher matcher;
+
+		private PatternRule(PatternListMatcher matcher) {
+			this.matcher = matcher;
+		}
+
+		@Override
+		public Boolean apply(List<String> files) {
+			for (String p : files) {
+				if (p != null && matcher.matches(p)) {
+					// found a change matching one of our patterns, do not filter
+					return false;
+				}
+			}
+			return true;
+		}
+
+		@Override
+		public List<String> remainder(List<String> files) {
+			return files;
+		}
+	}
+}
@@ -20,6 +20,8 @@ public class FilterPatternListImpl extends Filter implements Serializable {
 	private final String patternText;
 	private final boolean caseSensitive;
 
+	private transient PatternListMatcher matcher;
+
 	@DataBoundConstructor
 	public FilterPatternListImpl(String patternText, boolean caseSensitive) {
 		this.patternText = patternText;
@@ -59,6 +61,16 @@ public class FilterPatternListImpl extends Filter implements Serializable {
 		return patternList;
 	}
 
+	/**
+	 * @return the compiled pattern list, built once per pattern text.
+	 */
+	public PatternListMatcher getMatcher() {
+		if (matcher == null) {
+			matcher = PatternListMatcher.compile(this);
+		}
+		return matcher;
+	}
+
 	@Extension
 	@Symbol("viewPattern")
 	public static final class DescriptorImpl extends FilterDescriptor {
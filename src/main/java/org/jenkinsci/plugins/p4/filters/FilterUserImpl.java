@@ -1,11 +1,10 @@
 package org.jenkinsci.plugins.p4.filters;
 
 import com.perforce.p4java.core.IUserSummary;
-import com.perforce.p4java.server.IOptionsServer;
 import hudson.Extension;
 import hudson.model.AutoCompletionCandidates;
 import org.jenkinsci.Symbol;
-import org.jenkinsci.plugins.p4.client.ConnectionFactory;
+import org.jenkinsci.plugins.p4.client.ConnectionRegistry;
 import org.kohsuke.stapler.DataBoundConstructor;
 import org.kohsuke.stapler.QueryParameter;
 
@@ -42,14 +41,20 @@ public class FilterUserImpl extends Filter implements Serializable {
 
 			AutoCompletionCandidates c = new AutoCompletionCandidates();
 			try {
-				IOptionsServer iserver = ConnectionFactory.getConnection();
-				if (iserver != null && value.length() > 0) {
-					List<String> users = new ArrayList<String>();
-					users.add(value + "*");
-					List<IUserSummary> list;
-					list = iserver.getUsers(users, 10);
-					for (IUserSummary l : list) {
-						c.add(l.getLoginName());
+				if (value.length() > 0) {
+					List<String> names = ConnectionRegistry.cached("users", value, p4 -> {
+						List<String> users = new ArrayList<String>();
+						users.add(value + "*");
+						List<String> found = new ArrayList<>();
+						for (IUserSummary l : p4.getUsers(users, 10)) {
+							found.add(l.getLoginName());
+						}
+						return found;
+					});
+					if (names != null) {
+						for (String name : names) {
+							c.add(name);
+						}
 					}
 				}
 			} catch (Exception e) {
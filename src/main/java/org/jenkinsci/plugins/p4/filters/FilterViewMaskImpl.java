@@ -12,6 +12,8 @@ public class FilterViewMaskImpl extends Filter implements Serializable {
 
 	private final String viewMask;
 
+	private transient ViewMaskMatcher matcher;
+
 	@DataBoundConstructor
 	public FilterViewMaskImpl(String viewMask) {
 		this.viewMask = viewMask;
@@ -21,6 +23,16 @@ public class FilterViewMaskImpl extends Filter implements Serializable {
 		return viewMask;
 	}
 
+	/**
+	 * @return the compiled view mask, built once per mask.
+	 */
+	public ViewMaskMatcher getMatcher() {
+		if (matcher == null) {
+			matcher = ViewMaskMatcher.compile(viewMask);
+		}
+		return matcher;
+	}
+
 	@Extension
 	@Symbol("viewFilter")
 	public static final class DescriptorImpl extends FilterDescriptor {
@@ -0,0 +1,153 @@
+package org.jenkinsci.plugins.p4.filters;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Compiled pattern list. A path matches if it fully matches any pattern in
+ * the list.
+ * <p>
+ * Case sensitive patterns of the form 'literal.*' are held in a prefix trie;
+ * the other patterns are joined into a single alternation so a path is
+ * checked with one regex match rather than one per pattern. Patterns that
+ * cannot be safely joined (back references, quoting, comments) are matched
+ * on their own.
+ */
+public final class PatternListMatcher {
+
+	private static Logger logger = Logger.getLogger(PatternListMatcher.class.getName());
+
+	private static final int MAX_SIZE = Integer.getInteger(PatternListMatcher.class.getName() + ".maxSize", 256);
+
+	private static final Map<String, PatternListMatcher> cache = Collections.synchronizedMap(
+			new LinkedHashMap<String, PatternListMatcher>(16, 0.75f, true) {
+				@Override
+				protected boolean removeEldestEntry(Map.Entry<String, PatternListMatcher> eldest) {
+					return size() > MAX_SIZE;
+				}
+			});
+
+	private static final String META = "\\[](){}.*+?^$|";
+
+	private static final Pattern UNSAFE = Pattern.compile("\\\\[0-9kQ]|\\(\\?[a-zA-Z-]*x");
+
+	private final List<Pattern> patterns;
+	private final PrefixTrie prefixes = new PrefixTrie();
+	private final List<Pattern> others = new ArrayList<>();
+	private Pattern combined;
+
+	private PatternListMatcher(List<Pattern> patterns, boolean caseSensitive) {
+		this.patterns = patterns;
+
+		StringBuilder sb = new StringBuilder();
+		for (Pattern pattern : patterns) {
+			String regex = pattern.pattern();
+			String prefix = getLiteralPrefix(regex);
+			if (caseSensitive && prefix != null) {
+				prefixes.put(prefix, 0);
+			} else if (UNSAFE.matcher(regex).find()) {
+				others.add(pattern);
+			} else {
+				if (sb.length() > 0) {
+					sb.append("|");
+				}
+				sb.append("(?:").append(regex).append(")");
+			}
+		}
+
+		if (sb.length() > 0) {
+			int caseFlag = (caseSensitive) ? 0 : Pattern.CASE_INSENSITIVE;
+			try {
+				combined = Pattern.compile(sb.toString(), caseFlag);
+			} catch (PatternSyntaxException e) {
+				logger.fine("Unable to combine patterns, matching individually: " + e.getMessage());
+				combined = null;
+				others.clear();
+				for (Pattern pattern : patterns) {
+					if (caseSensitive && getLiteralPrefix(pattern.pattern()) != null) {
+						continue;
+					}
+					others.add(pattern);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Get the compiled matcher for a list of patterns, shared by all filters
+	 * with the same patterns.
+	 *
+	 * @param filter pattern list filter
+	 * @return compiled matcher
+	 */
+	public static PatternListMatcher compile(FilterPatternListImpl filter) {
+		String key = filter.isCaseSensitive() + ":" + filter.getPatternText();
+		PatternListMatcher matcher = cache.get(key);
+		if (matcher == null) {
+			matcher = new PatternListMatcher(filter.getPatternList(), filter.isCaseSensitive());
+			cache.put(key, matcher);
+		}
+		return matcher;
+	}
+
+	/**
+	 * @param path depot path
+	 * @return true if the path fully matches any pattern.
+	 */
+	public boolean matches(String path) {
+		// '.' does not match line terminators; depot paths never contain them
+		if (hasLineTerminator(path)) {
+			for (Pattern pattern : patterns) {
+				if (pattern.matcher(path).matches()) {
+					return true;
+				}
+			}
+			return false;
+		}
+
+		if (prefixes.matches(path)) {
+			return true;
+		}
+		if (combined != null && combined.matcher(path).matches()) {
+			return true;
+		}
+		for (Pattern pattern : others) {
+			if (pattern.matcher(path).matches()) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @return the literal text of a 'literal.*' pattern, or null.
+	 */
+	private static String getLiteralPrefix(String regex) {
+		if (!regex.endsWith(".*")) {
+			return null;
+		}
+		String prefix = regex.substring(0, regex.length() - 2);
+		for (int i = 0; i < prefix.length(); i++) {
+			if (META.indexOf(prefix.charAt(i)) >= 0) {
+				return null;
+			}
+		}
+		return prefix;
+	}
+
+	private static boolean hasLineTerminator(String path) {
+		for (int i = 0; i < path.length(); i++) {
+			char c = path.charAt(i);
+			if (c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029') {
+				return true;
+			}
+		}
+		return false;
+	}
+}
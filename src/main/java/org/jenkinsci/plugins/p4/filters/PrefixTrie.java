@@ -0,0 +1,86 @@
+package org.jenkinsci.plugins.p4.filters;
+
+import java.util.Arrays;
+
+/**
+ * Character trie of path prefixes. Each prefix carries an int value; a
+ * lookup walks the path once and returns the largest value of all prefixes
+ * of the path. Built once, then read-only and safe to share between threads.
+ */
+class PrefixTrie {
+
+	private final Node root = new Node();
+
+	/**
+	 * Add a prefix; if it is already present the larger value is kept.
+	 *
+	 * @param prefix path prefix (may be empty, matching every path)
+	 * @param value  non-negative value
+	 */
+	void put(String prefix, int value) {
+		Node node = root;
+		for (int i = 0; i < prefix.length(); i++) {
+			node = node.add(prefix.charAt(i));
+		}
+		node.value = Math.max(node.value, value);
+	}
+
+	/**
+	 * @param path depot path
+	 * @return the largest value of all prefixes of the path, or -1 if none.
+	 */
+	int max(String path) {
+		Node node = root;
+		int max = node.value;
+		for (int i = 0; i < path.length(); i++) {
+			node = node.get(path.charAt(i));
+			if (node == null) {
+				break;
+			}
+			max = Math.max(max, node.value);
+		}
+		return max;
+	}
+
+	/**
+	 * @param path depot path
+	 * @return true if any prefix in the trie is a prefix of the path.
+	 */
+	boolean matches(String path) {
+		return max(path) >= 0;
+	}
+
+	private static final class Node {
+
+		private char[] keys = new char[0];
+		private Node[] children = new Node[0];
+		private int value = -1;
+
+		private Node get(char c) {
+			int i = Arrays.binarySearch(keys, c);
+			return (i < 0) ? null : children[i];
+		}
+
+		private Node add(char c) {
+			int i = Arrays.binarySearch(keys, c);
+			if (i >= 0) {
+				return children[i];
+			}
+
+			// keep keys sorted for the binary search
+			int pos = -(i + 1);
+			char[] k = new char[keys.length + 1];
+			Node[] n = new Node[children.length + 1];
+			System.arraycopy(keys, 0, k, 0, pos);
+			System.arraycopy(children, 0, n, 0, pos);
+			System.arraycopy(keys, pos, k, pos + 1, keys.length - pos);
+			System.arraycopy(children, pos, n, pos + 1, children.length - pos);
+			k[pos] = c;
+			n[pos] = new Node();
+
+			keys = k;
+			children = n;
+			return n[pos];
+		}
+	}
+}
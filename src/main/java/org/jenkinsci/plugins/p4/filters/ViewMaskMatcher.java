@@ -0,0 +1,67 @@
+package org.jenkinsci.plugins.p4.filters;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Compiled view mask. Each mask line includes paths starting with the line;
+ * a line starting with '-' also excludes paths starting with the rest of the
+ * line. The last line that matches a path decides, so the include and
+ * exclude lines are held in two prefix tries keyed by line number and a path
+ * is checked with a single walk of each trie.
+ */
+public final class ViewMaskMatcher {
+
+	private static final int MAX_SIZE = Integer.getInteger(ViewMaskMatcher.class.getName() + ".maxSize", 256);
+
+	private static final Map<String, ViewMaskMatcher> cache = Collections.synchronizedMap(
+			new LinkedHashMap<String, ViewMaskMatcher>(16, 0.75f, true) {
+				@Override
+				protected boolean removeEldestEntry(Map.Entry<String, ViewMaskMatcher> eldest) {
+					return size() > MAX_SIZE;
+				}
+			});
+
+	private final PrefixTrie include = new PrefixTrie();
+	private final PrefixTrie exclude = new PrefixTrie();
+
+	private ViewMaskMatcher(String viewMask) {
+		String[] lines = viewMask.split("\\R");
+		for (int i = 0; i < lines.length; i++) {
+			include.put(lines[i], i);
+			if (lines[i].startsWith("-")) {
+				exclude.put(lines[i].substring(1), i);
+			}
+		}
+	}
+
+	/**
+	 * Get the compiled matcher for a view mask, shared by all filters with
+	 * the same mask.
+	 *
+	 * @param viewMask view mask, one path per line
+	 * @return compiled matcher
+	 */
+	public static ViewMaskMatcher compile(String viewMask) {
+		ViewMaskMatcher matcher = cache.get(viewMask);
+		if (matcher == null) {
+			matcher = new ViewMaskMatcher(viewMask);
+			cache.put(viewMask, matcher);
+		}
+		return matcher;
+	}
+
+	/**
+	 * @param path depot path
+	 * @return true if the path is contained in the view mask.
+	 */
+	public boolean contains(String path) {
+		int in = include.max(path);
+		if (in < 0) {
+			return false;
+		}
+		// an exclude on the same line is applied after its include
+		return in > exclude.max(path);
+	}
+}
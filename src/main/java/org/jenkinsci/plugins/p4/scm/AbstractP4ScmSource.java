@@ -5,6 +5,8 @@ import edu.umd.cs.findbugs.annotations.NonNull;
 import hudson.Util;
 import hudson.model.Action;
 import hudson.model.TaskListener;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
 import jenkins.branch.BranchProjectFactory;
 import jenkins.scm.api.SCMHead;
 import jenkins.scm.api.SCMHeadCategory;
@@ -30,6 +32,7 @@ import org.jenkinsci.plugins.p4.changes.P4RefBuilder;
 import org.jenkinsci.plugins.p4.client.ClientHelper;
 import org.jenkinsci.plugins.p4.client.ConnectionHelper;
 import org.jenkinsci.plugins.p4.client.TempClientHelper;
+import org.jenkinsci.plugins.p4.client.ViewMatcher;
 import org.jenkinsci.plugins.p4.credentials.P4BaseCredentials;
 import org.jenkinsci.plugins.p4.filters.Filter;
 import org.jenkinsci.plugins.p4.filters.FilterPerChangeImpl;
@@ -48,6 +51,16 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.logging.Logger;
 
 import static org.jenkinsci.plugins.p4.review.ReviewProp.P4_CHANGE;
@@ -58,6 +71,9 @@ public abstract class AbstractP4ScmSource extends SCMSource {
 
 	public static final String defaultExcludes = "a^"; // matches nothing
 
+	// Heads scanned in parallel when not set on the source
+	private static final int SCAN_THREADS = Integer.getInteger(AbstractP4ScmSource.class.getName() + ".scanThreads", 4);
+
 	protected final String credential;
 
 	private List<SCMSourceTrait> traits = new ArrayList<>();
@@ -69,6 +85,10 @@ public abstract class AbstractP4ScmSource extends SCMSource {
 	private String format;
 	private Populate populate;
 	private List<Filter> filter;
+	private int scanThreads;
+
+	// file names probed by branch criteria, prefetched for all heads on the next scan
+	private transient Set<String> probeNames;
 
 	public AbstractP4ScmSource(String credential) {
 		this.credential = credential;
@@ -109,6 +129,11 @@ public abstract class AbstractP4ScmSource extends SCMSource {
 		this.filter = filter;
 	}
 
+	@DataBoundSetter
+	public void setScanThreads(int scanThreads) {
+		this.scanThreads = scanThreads;
+	}
+
 	public String getCredential() {
 		return credential;
 	}
@@ -147,6 +172,13 @@ public abstract class AbstractP4ScmSource extends SCMSource {
 		return filter;
 	}
 
+	/**
+	 * @return number of heads scanned in parallel, 0 for the global default.
+	 */
+	public int getScanThreads() {
+		return scanThreads;
+	}
+
 	public abstract P4Browser getBrowser();
 
 	public abstract List<P4SCMHead> getHeads(@NonNull TaskListener listener) throws Exception;
@@ -174,20 +206,108 @@ public abstract class AbstractP4ScmSource extends SCMSource {
 			List<P4SCMHead> heads = getHeads(listener);
 			List<P4SCMHead> tags = getTags(listener);
 			heads.addAll(tags);
+			heads = getObservedHeads(heads, observer, event);
+			P4ProbeSnapshot snapshot = (criteria == null) ? null : getProbeSnapshot(p4, heads);
+
+			int threads = Math.min(getScanThreadsOrDefault(), heads.size());
+			if (threads <= 1) {
+				for (P4SCMHead head : heads) {
+					logger.fine("SCM: retrieve Head: " + head);
+					observe(observer, retrieveHead(p4, head, criteria, event, snapshot));
+					if (!observer.isObserving()) {
+						return;
+					}
+					// check for user abort
+					checkInterrupt();
+				}
+				return;
+			}
 
-			for (P4SCMHead head : heads) {
-				logger.fine("SCM: retrieve Head: " + head);
-				retrieveHead(p4, head, criteria, observer, event);
+			// scan helpers are opened here so the connections use this thread's context
+			BlockingQueue<TempClientHelper> helpers = new LinkedBlockingQueue<>();
+			helpers.add(p4);
+			try {
+				for (int i = 1; i < threads; i++) {
+					helpers.add(new TempClientHelper(getOwner(), credential, listener, null));
+				}
+				retrieveParallel(helpers, threads, heads, criteria, observer, event, snapshot);
+			} finally {
+				helpers.remove(p4);
+				for (TempClientHelper helper : helpers) {
+					helper.close();
+				}
 			}
+		} catch (InterruptedException e) {
+			throw e;
 		} catch (Exception e) {
 			throw new IOException(e);
 		}
 	}
 
-	private void retrieveHead(TempClientHelper p4, P4SCMHead head, SCMSourceCriteria criteria, SCMHeadObserver observer, SCMHeadEvent<?> event) throws Exception {
+	/**
+	 * Scan heads on a bounded pool; each task borrows a scan client, so no
+	 * two tasks share a client view. Results are observed on the calling
+	 * thread in head order, so the SCMHeadObserver is never called
+	 * concurrently.
+	 */
+	private void retrieveParallel(BlockingQueue<TempClientHelper> helpers, int threads, List<P4SCMHead> heads,
+	                              SCMSourceCriteria criteria, SCMHeadObserver observer, SCMHeadEvent<?> event,
+	                              P4ProbeSnapshot snapshot) throws Exception {
+
+		ExecutorService executor = Executors.newFixedThreadPool(threads,
+				new NamingThreadFactory(new DaemonThreadFactory(), "P4 scan " + getId()));
+		try {
+			List<Future<Observation>> futures = new ArrayList<>();
+			for (P4SCMHead head : heads) {
+				futures.add(executor.submit(() -> {
+					TempClientHelper p4 = helpers.take();
+					try {
+						logger.fine("SCM: retrieve Head: " + head);
+						return retrieveHead(p4, head, criteria, event, snapshot);
+					} finally {
+						helpers.add(p4);
+					}
+				}));
+			}
+
+			for (Future<Observation> future : futures) {
+				observe(observer, await(future));
+				if (!observer.isObserving()) {
+					return;
+				}
+			}
+		} finally {
+			executor.shutdownNow();
+			if (!executor.awaitTermination(30, TimeUnit.SECONDS)) {
+				logger.warning("SCM: scan threads still running for: " + getId());
+			}
+		}
+	}
+
+	private static <T> T await(Future<T> future) throws Exception {
+		while (true) {
+			// check for user abort
+			checkInterrupt();
+			try {
+				return future.get(1, TimeUnit.SECONDS);
+			} catch (TimeoutException e) {
+				// still scanning
+			} catch (ExecutionException e) {
+				Throwable cause = e.getCause();
+				throw (cause instanceof Exception) ? (Exception) cause : e;
+			}
+		}
+	}
+
+	private Observation retrieveHead(TempClientHelper p4, P4SCMHead head, SCMSourceCriteria criteria,
+	                                 SCMHeadEvent<?> event, P4ProbeSnapshot snapshot) throws Exception {
+		// heads with depot side paths need no client workspace for the revision
 		P4Path p4Path = head.getPath();
-		Workspace workspace = getWorkspace(p4Path);
-		p4.update(workspace);
+		List<String> headPaths = getHeadPaths(p4Path);
+		if (headPaths == null) {
+			Workspace workspace = getWorkspace(p4Path);
+			p4.update(workspace);
+		}
 
 		// get SCMRevision from payload if trigger event, else build from head (latest)
 		SCMRevision revision = getEventRevision(head, event);
@@ -198,19 +318,87 @@ public abstract class AbstractP4ScmSource extends SCMSource {
 		// null criteria means that all branches match.
 		if (criteria == null) {
 			// get revision and add observe
-			observer.observe(head, revision);
-		} else {
-			SCMSourceCriteria.Probe probe = new P4SCMProbe(p4, head);
-			if (criteria.isHead(probe, p4.getListener())) {
-				logger.fine("SCM: observer head: " + head + " revision: " + revision);
-				if (revision != null) {
-					observer.observe(revision.getHead(), revision);
-				}
+			return new Observation(head, revision);
+		}
+
+		// the probe reuses the revision's change for lastModified()
+		long change = (revision instanceof P4SCMRevision) ? ((P4SCMRevision) revision).getRef().getChange() : 0L;
+		SCMSourceCriteria.Probe probe = new P4SCMProbe(p4, head, change, snapshot);
+		if (criteria.isHead(probe, p4.getListener())) {
+			logger.fine("SCM: observer head: " + head + " revision: " + revision);
+			if (revision != null) {
+				return new Observation(revision.getHead(), revision);
+			}
+		}
+		return null;
+	}
+
+	private void observe(SCMHeadObserver observer, Observation observation) throws IOException, InterruptedException {
+		if (observation != null) {
+			observer.observe(observation.head, observation.revision);
+		}
+	}
+
+	/**
+	 * Skip heads the observer is not interested in (e.g. fetching a single
+	 * head). Event revisions may be observed against a different head, so
+	 * all heads are scanned for events.
+	 */
+	private List<P4SCMHead> getObservedHeads(List<P4SCMHead> heads, SCMHeadObserver observer, SCMHeadEvent<?> event) {
+		Set<SCMHead> includes = observer.getIncludes();
+		if (includes == null || event != null) {
+			return heads;
+		}
+		List<P4SCMHead> list = new ArrayList<>();
+		for (P4SCMHead head : heads) {
+			if (includes.contains(head)) {
+				list.add(head);
+			}
+		}
+		return list;
+	}
+
+	/**
+	 * Check the probed files of all heads with depot paths in a few commands,
+	 * before the criteria run. Stream heads are probed with client syntax
+	 * and are left to the probe.
+	 */
+	private P4ProbeSnapshot getProbeSnapshot(TempClientHelper p4, List<P4SCMHead> heads) {
+		synchronized (this) {
+			if (probeNames == null) {
+				probeNames = ConcurrentHashMap.newKeySet();
+				probeNames.add(getScriptPathOrDefault());
+			}
+		}
+
+		List<P4Path> paths = new ArrayList<>();
+		for (P4SCMHead head : heads) {
+			P4Path path = head.getPath();
+			if (path.getRevision() == null && getHeadPaths(path) != null) {
+				paths.add(path);
 			}
 		}
-		// check for user abort
-		checkInterrupt();
 
+		P4ProbeSnapshot snapshot = new P4ProbeSnapshot(probeNames);
+		if (paths.size() > 1) {
+			snapshot.prefetch(p4, paths);
+		}
+		return snapshot;
+	}
+
+	private int getScanThreadsOrDefault() {
+		return (scanThreads > 0) ? scanThreads : SCAN_THREADS;
+	}
+
+	private static final class Observation {
+
+		private final SCMHead head;
+		private final SCMRevision revision;
+
+		private Observation(SCMHead head, SCMRevision revision) {
+			this.head = head;
+			this.revision = revision;
+		}
 	}
 
 	/**
@@ -322,6 +510,48 @@ public abstract class AbstractP4ScmSource extends SCMSource {
 		return true;
 	}
 
+	/**
+	 * Depot paths used to find the latest change for a head without a client
+	 * workspace, the same as the depot side of the head's workspace view.
+	 * Sources return null when a client is required (e.g. streams, where the
+	 * view is generated by the server).
+	 *
+	 * @param path the head's path
+	 * @return depot paths or null to use a temporary client
+	 */
+	protected List<String> getHeadPaths(P4Path path) {
+		return null;
+	}
+
+	/**
+	 * Depot side of a view built from the Jenkinsfile path and the head's
+	 * mappings. Excluded mappings are not listed, as changes under the
+	 * other mappings are counted in full; a client is used if an excluded
+	 * mapping hides the Jenkinsfile.
+	 *
+	 * @param path the head's path
+	 * @return depot paths or null to use a temporary client
+	 */
+	protected List<String> getMappedHeadPaths(P4Path path) {
+		List<String> paths = new ArrayList<>();
+		String script = path.getPath() + "/" + getScriptPathOrDefault();
+		paths.add(script);
+
+		List<String> excludes = new ArrayList<>();
+		for (String map : path.getMappings()) {
+			if (map.startsWith("-")) {
+				excludes.add(map.substring(1));
+			} else {
+				paths.add(map.startsWith("+") ? map.substring(1) : map);
+			}
+		}
+
+		if (!excludes.isEmpty() && new ViewMatcher(excludes, false).matches(script)) {
+			return null;
+		}
+		return paths;
+	}
+
 	public List<String> getIncludePaths() {
 		return toLines(includes);
 	}
@@ -351,6 +581,7 @@ public abstract class AbstractP4ScmSource extends SCMSource {
 
 		long change;
 		P4Path path = head.getPath();
+		List<String> paths = getHeadPaths(path);
 
 		// Fetch last scan
 		P4SCMRevision last = getLastScan(head);
@@ -362,14 +593,14 @@ public abstract class AbstractP4ScmSource extends SCMSource {
 		 */
 		if (last == null) {
 			// possibly a new project or broken configuration...
-			change = findLatestChange(p4, path);
+			change = findLatestChange(p4, path, paths);
 			if (change == 0) {
 				// no changes? - use the latest and trigger a build
-				change = p4.getClientHead();
+				change = (paths == null) ? p4.getClientHead() : findHead(p4, paths);
 			}
 		} else if (!perChange) {
 			// Typical case...
-			change = findLatestChange(p4, path);
+			change = findLatestChange(p4, path, paths);
 			if (change == 0) {
 				// JENKINS-63494 and JENKINS-64193
 				// dormant project outside the change limits; use last built change
@@ -383,7 +614,7 @@ public abstract class AbstractP4ScmSource extends SCMSource {
 		return new P4SCMRevision(head, new P4ChangeRef(change));
 	}
 
-	private long findLatestChange(ClientHelper p4, P4Path path) throws Exception {
+	private long findLatestChange(ClientHelper p4, P4Path path, List<String> paths) throws Exception {
 		// Changelist 'to' limit (report up to this change)
 		long to = getToLimit(p4, path.getRevision());
 		P4Ref toRef = new P4ChangeRef(to);
@@ -392,6 +623,12 @@ public abstract class AbstractP4ScmSource extends SCMSource {
 		long rangeLimit = to - p4.getHeadLimit();
 		P4Ref fromRef = (rangeLimit > 0) ? new P4ChangeRef(rangeLimit) : null;
 
+		// Use depot paths in one query, no client spec update needed
+		if (paths != null) {
+			long change = p4.getHead(paths, fromRef, toRef);
+			return (change > 0) ? change : 0L;
+		}
+
 		// Use temp client to map branches/streams when calculating change
 		long change = p4.getClientHead(fromRef, toRef);
 
@@ -408,6 +645,16 @@ public abstract class AbstractP4ScmSource extends SCMSource {
 		return change;
 	}
 
+	/**
+	 * Client-less equivalent of {@link ClientHelper#getClientHead()}: the last
+	 * change on the paths, or the latest change if there are none.
+	 */
+	private long findHead(ConnectionHelper p4, List<String> paths) throws Exception {
+		long latest = Long.parseLong(p4.getCounter("change"));
+		long head = p4.getHead(paths, null, new P4ChangeRef(latest));
+		return (head > 0) ? head : latest;
+	}
+
 	private long getToLimit(ConnectionHelper p4, String to) throws Exception {
 		String counter = p4.getCounter("change");
 		long change = Long.parseLong(counter);
@@ -153,6 +153,11 @@ public class BranchesScmSource extends AbstractP4ScmSource {
 		return ws;
 	}
 
+	@Override
+	protected List<String> getHeadPaths(P4Path path) {
+		return getMappedHeadPaths(path);
+	}
+
 	private List<String> getViewMappings() {
 		return toLines(getMappings());
 	}
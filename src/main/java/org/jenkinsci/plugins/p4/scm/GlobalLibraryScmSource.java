@@ -91,6 +91,9 @@ public class GlobalLibraryScmSource extends AbstractP4ScmSource {
 			String pin = perforceRevision.getRef().toString();
 			Populate populate = new GraphHybridImpl(true, pin, null);
 			PerforceScm scm = new PerforceScm(getCredential(), workspace, null, populate, getBrowser());
+
+			// Serve the library from the controller-side cache when pinned to a change
+			scm.setLibrary(path.getPath(), perforceRevision.getRef());
 			return scm;
 		} else {
 			throw new IllegalArgumentException("SCMHead and/or SCMRevision not a Perforce instance!");
@@ -0,0 +1,260 @@
+package org.jenkinsci.plugins.p4.scm;
+
+import hudson.Util;
+import jenkins.model.Jenkins;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+
+/**
+ * Content Cache
+ * <p>
+ * File contents read by lightweight checkouts, stored under
+ * JENKINS_HOME/caches/p4-content so they survive a restart. Contents are
+ * addressed by their SHA-256 and bounded by total bytes, least recently
+ * used first. Keys point at contents and are either a depot path at a
+ * revision (P4PORT|//depot/path#rev) or a file in a pinned client view at a
+ * change for a P4USER; both are immutable, so entries never need to be
+ * revalidated.
+ */
+public final class P4ContentCache {
+
+	private static Logger logger = Logger.getLogger(P4ContentCache.class.getName());
+
+	private static final String PREFIX = P4ContentCache.class.getName();
+
+	// Larger files are always read from the server
+	private static final int MAX_ENTRY = Integer.getInteger(PREFIX + ".maxEntry", 1024 * 1024);
+
+	private static final int MAX_KEYS = Integer.getInteger(PREFIX + ".maxKeys", 10000);
+
+	// Total size of cached contents
+	private static long maxBytes = Long.getLong(PREFIX + ".maxBytes", 64L * 1024 * 1024);
+
+	private static File root = null;
+	private static long bytes = 0;
+
+	// content hash to size, least recently used first
+	private static final Map<String, Long> objects = new LinkedHashMap<>(16, 0.75f, true);
+
+	// key to content hash
+	private static final Map<String, String> keys = new LinkedHashMap<String, String>(16, 0.75f, true) {
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+			if (size() > MAX_KEYS) {
+				delete(getKeyFile(eldest.getKey()));
+				return true;
+			}
+			return false;
+		}
+	};
+
+	private P4ContentCache() {
+	}
+
+	/**
+	 * @param key content key
+	 * @return the cached content or null.
+	 */
+	public static synchronized byte[] get(String key) {
+		load();
+		String hash = keys.get(key);
+		if (hash == null) {
+			return null;
+		}
+		// get() moves the content to the most recently used end
+		if (objects.get(hash) == null) {
+			// content was evicted
+			keys.remove(key);
+			delete(getKeyFile(key));
+			return null;
+		}
+
+		File file = getObjectFile(hash);
+		try {
+			byte[] content = Files.readAllBytes(file.toPath());
+			file.setLastModified(System.currentTimeMillis());
+			return content;
+		} catch (IOException e) {
+			logger.fine("P4: unable to read cached content: " + e.getMessage());
+			keys.remove(key);
+			bytes -= objects.remove(hash);
+			return null;
+		}
+	}
+
+	/**
+	 * Cache content; contents larger than the entry limit are ignored.
+	 *
+	 * @param key     content key
+	 * @param content file content
+	 */
+	public static synchronized void put(String key, byte[] content) {
+		if (content == null || content.length > MAX_ENTRY || maxBytes <= 0) {
+			return;
+		}
+		load();
+
+		String hash = sha256(content);
+		try {
+			if (!objects.containsKey(hash)) {
+				write(getObjectFile(hash), content);
+				objects.put(hash, (long) content.length);
+				bytes += content.length;
+			}
+			if (!hash.equals(keys.get(key))) {
+				write(getKeyFile(key), (key + "\n" + hash).getBytes(StandardCharsets.UTF_8));
+				keys.put(key, hash);
+			}
+		} catch (IOException e) {
+			logger.fine("P4: unable to cache content: " + e.getMessage());
+		}
+		trim();
+	}
+
+	/**
+	 * @return size of the largest content that is cached.
+	 */
+	public static int getMaxEntry() {
+		return MAX_ENTRY;
+	}
+
+	/**
+	 * Set the total size of cached contents (for tests and the script
+	 * console).
+	 *
+	 * @param max bytes, 0 to disable the cache
+	 */
+	public static synchronized void setMaxBytes(long max) {
+		maxBytes = max;
+		trim();
+	}
+
+	/**
+	 * Remove all cached contents, in memory and on disk.
+	 */
+	public static synchronized void clear() {
+		if (root != null) {
+			deleteAll(new File(root, "objects"));
+			deleteAll(new File(root, "keys"));
+		}
+		objects.clear();
+		keys.clear();
+		bytes = 0;
+		root = null;
+	}
+
+	/**
+	 * Read the index from JENKINS_HOME on first use.
+	 */
+	private static void load() {
+		if (root != null) {
+			return;
+		}
+		root = new File(Jenkins.getInstance().getRootDir(), "caches/p4-content");
+
+		for (File file : list(new File(root, "objects"))) {
+			if (file.getName().endsWith(".tmp")) {
+				// interrupted write
+				delete(file);
+				continue;
+			}
+			objects.put(file.getName(), file.length());
+			bytes += file.length();
+		}
+		for (File file : list(new File(root, "keys"))) {
+			try {
+				List<String> lines = Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+				if (lines.size() == 2 && objects.containsKey(lines.get(1))) {
+					keys.put(lines.get(0), lines.get(1));
+					continue;
+				}
+			} catch (IOException e) {
+				logger.fine("P4: unable to read cache key: " + e.getMessage());
+			}
+			delete(file);
+		}
+		trim();
+		logger.fine("P4: loaded " + objects.size() + " cached contents (" + bytes + " bytes)");
+	}
+
+	private static void trim() {
+		Iterator<Map.Entry<String, Long>> it = objects.entrySet().iterator();
+		while (bytes > maxBytes && it.hasNext()) {
+			Map.Entry<String, Long> eldest = it.next();
+			delete(getObjectFile(eldest.getKey()));
+			bytes -= eldest.getValue();
+			it.remove();
+		}
+	}
+
+	/**
+	 * @return files in a directory, least recently used first.
+	 */
+	private static List<File> list(File dir) {
+		File[] files = dir.listFiles();
+		if (files == null) {
+			return Collections.emptyList();
+		}
+		Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+		return Arrays.asList(files);
+	}
+
+	private static void write(File file, byte[] content) throws IOException {
+		File dir = file.getParentFile();
+		if (!dir.isDirectory() && !dir.mkdirs()) {
+			throw new IOException("Unable to create: " + dir);
+		}
+		File tmp = File.createTempFile(file.getName(), ".tmp", dir);
+		try {
+			Files.write(tmp.toPath(), content);
+			Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			delete(tmp);
+		}
+	}
+
+	private static void delete(File file) {
+		try {
+			Files.deleteIfExists(file.toPath());
+		} catch (IOException e) {
+			logger.fine("P4: unable to delete: " + file);
+		}
+	}
+
+	private static void deleteAll(File dir) {
+		for (File file : list(dir)) {
+			delete(file);
+		}
+	}
+
+	private static File getObjectFile(String hash) {
+		return new File(new File(root, "objects"), hash);
+	}
+
+	private static File getKeyFile(String key) {
+		return new File(new File(root, "keys"), sha256(key.getBytes(StandardCharsets.UTF_8)));
+	}
+
+	private static String sha256(byte[] content) {
+		try {
+			MessageDigest md = MessageDigest.getInstance("SHA-256");
+			return Util.toHexString(md.digest(content));
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+}
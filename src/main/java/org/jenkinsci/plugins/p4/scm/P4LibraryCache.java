@@ -0,0 +1,404 @@
+package org.jenkinsci.plugins.p4.scm;
+
+import hudson.AbortException;
+import hudson.FilePath;
+import hudson.Util;
+import hudson.model.Item;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+import hudson.security.ACL;
+import hudson.security.ACLContext;
+import hudson.util.LogTaskListener;
+import jenkins.model.Jenkins;
+import org.jenkinsci.plugins.p4.changes.P4ChangeBatch;
+import org.jenkinsci.plugins.p4.changes.P4ChangeEntry;
+import org.jenkinsci.plugins.p4.changes.P4ChangeRef;
+import org.jenkinsci.plugins.p4.changes.P4ChangeWriter;
+import org.jenkinsci.plugins.p4.changes.P4Ref;
+import org.jenkinsci.plugins.p4.client.ClientHelper;
+import org.jenkinsci.plugins.p4.client.ConnectionHelper;
+import org.jenkinsci.plugins.p4.client.ViewMapHelper;
+import org.jenkinsci.plugins.p4.credentials.P4BaseCredentials;
+import org.jenkinsci.plugins.p4.populate.Populate;
+import org.jenkinsci.plugins.p4.populate.SyncOnlyImpl;
+import org.jenkinsci.plugins.p4.workspace.ManualWorkspaceImpl;
+import org.jenkinsci.plugins.p4.workspace.WorkspaceSpec;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+/**
+ * Library Cache
+ * <p>
+ * Keeps one copy of each global library (per credential, P4PORT and depot
+ * path) under JENKINS_HOME/caches/p4-libs, synced by a long-lived client so
+ * that moving to a new change only transfers the files that changed. Each
+ * credential has its own copy and client. Library loads copy
+ * the cached files into their workspace instead of creating, force syncing
+ * and deleting a client each time. Entries are evicted when unused for
+ * longer than the maximum age or when the cache grows over its size limit.
+ */
+public final class P4LibraryCache {
+
+	private static Logger logger = Logger.getLogger(P4LibraryCache.class.getName());
+
+	private static final String PREFIX = P4LibraryCache.class.getName();
+
+	public static final String CLIENT_PREFIX = "jenkins-libcache-";
+
+	// Unused entries are removed after this long
+	private static final long MAX_AGE = TimeUnit.DAYS.toMillis(Long.getLong(PREFIX + ".maxAge", 7L));
+
+	// Total size of cached libraries, 0 to disable the cache
+	private static long maxBytes = Long.getLong(PREFIX + ".maxBytes", 1024L * 1024 * 1024);
+
+	// Minimum time between eviction sweeps
+	private static final long TRIM_INTERVAL = TimeUnit.MINUTES.toMillis(10);
+
+	private static final String FILES = "files";
+	private static final String CHANGE = "change";
+	private static final String CREDENTIAL = "credential";
+	private static final String JOB = "job";
+
+	private static final ConcurrentMap<String, ReentrantLock> locks = new ConcurrentHashMap<>();
+
+	private static long lastTrim = 0;
+
+	private P4LibraryCache() {
+	}
+
+	/**
+	 * @param ref library revision
+	 * @return true if the library can be served from the cache.
+	 */
+	public static boolean isCached(P4Ref ref) {
+		// labels and graph commits are not fixed to a change
+		return maxBytes > 0 && ref instanceof P4ChangeRef;
+	}
+
+	/**
+	 * Sync the cached library to a change, then copy it into the target.
+	 *
+	 * @param run        build loading the library
+	 * @param credential credential ID
+	 * @param depotPath  library depot path e.g. //depot/libs/...
+	 * @param ref        library change
+	 * @param target     library workspace
+	 * @param listener   for logging
+	 * @throws IOException          push up stack
+	 * @throws InterruptedException push up stack
+	 */
+	public static void checkout(Run<?, ?> run, String credential, String depotPath, P4Ref ref,
+								FilePath target, TaskListener listener) throws IOException, InterruptedException {
+
+		P4BaseCredentials p4credential = ConnectionHelper.findCredential(credential, run);
+		if (p4credential == null) {
+			throw new AbortException("P4: Unable to find credential: " + credential);
+		}
+
+		String key = getKey(p4credential, depotPath);
+		File dir = new File(getRoot(), key);
+
+		ReentrantLock lock = lock(key);
+		try {
+			File files = new File(dir, FILES);
+			String synced = read(new File(dir, CHANGE));
+			if (ref.toString().equals(synced)) {
+				listener.getLogger().println("P4: library " + depotPath + "@" + ref + " found in cache.");
+			} else {
+				listener.getLogger().println("P4: updating library cache " + depotPath + " from @" + synced + " to @" + ref);
+				if (!dir.isDirectory() && !dir.mkdirs()) {
+					throw new IOException("Unable to create: " + dir);
+				}
+				write(new File(dir, CREDENTIAL), credential);
+				write(new File(dir, JOB), run.getParent().getFullName());
+				Files.deleteIfExists(new File(dir, CHANGE).toPath());
+				sync(run, credential, key, depotPath, ref, files, listener);
+				write(new File(dir, CHANGE), ref.toString());
+			}
+
+			target.deleteContents();
+			new FilePath(files).copyRecursiveTo(target);
+			dir.setLastModified(System.currentTimeMillis());
+		} finally {
+			lock.unlock();
+		}
+
+		trim(key);
+	}
+
+	/**
+	 * Write the library changes after the last build's refs, up to the
+	 * library change, using the view of the cache client.
+	 *
+	 * @param run        build loading the library
+	 * @param credential credential ID
+	 * @param depotPath  library depot path e.g. //depot/libs/...
+	 * @param lastRefs   library refs of the last build, may be null or empty
+	 * @param ref        library change
+	 * @param writer     changelog
+	 * @param listener   for logging
+	 * @throws IOException push up stack
+	 */
+	public static void writeChanges(Run<?, ?> run, String credential, String depotPath, List<P4Ref> lastRefs,
+									P4Ref ref, P4ChangeWriter writer, TaskListener listener) throws IOException {
+		if (lastRefs == null || lastRefs.stream().allMatch(P4Ref::isCommit)) {
+			return;
+		}
+		for (P4ChangeEntry entry : getChanges(run, credential, depotPath, lastRefs, ref, listener)) {
+			writer.write(entry);
+		}
+	}
+
+	/**
+	 * @param run        build loading the library
+	 * @param credential credential ID
+	 * @param depotPath  library depot path e.g. //depot/libs/...
+	 * @param ref        library change
+	 * @param listener   for logging
+	 * @return the change entry for the library change.
+	 * @throws IOException push up stack
+	 */
+	public static P4ChangeEntry getChange(Run<?, ?> run, String credential, String depotPath, P4Ref ref,
+										  TaskListener listener) throws IOException {
+		List<P4ChangeEntry> entries = getChanges(run, credential, depotPath, null, ref, listener);
+		return entries.get(0);
+	}
+
+	private static List<P4ChangeEntry> getChanges(Run<?, ?> run, String credential, String depotPath,
+												  List<P4Ref> lastRefs, P4Ref ref, TaskListener listener) throws IOException {
+
+		P4BaseCredentials p4credential = ConnectionHelper.findCredential(credential, run);
+		if (p4credential == null) {
+			throw new AbortException("P4: Unable to find credential: " + credential);
+		}
+
+		String key = getKey(p4credential, depotPath);
+		File files = new File(new File(getRoot(), key), FILES);
+
+		ReentrantLock lock = lock(key);
+		try {
+			ManualWorkspaceImpl ws = getWorkspace(key, depotPath, files);
+			try (ClientHelper p4 = new ClientHelper(run.getParent(), credential, listener, ws)) {
+				List<P4ChangeEntry> entries = new ArrayList<>();
+				if (lastRefs == null) {
+					entries.add(ref.getChangeEntry(p4));
+					return entries;
+				}
+				List<P4Ref> changes = p4.listChanges(lastRefs, ref);
+				return new P4ChangeBatch(p4).getChangeEntries(changes);
+			} catch (IOException e) {
+				throw e;
+			} catch (Exception e) {
+				throw new IOException(e);
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Set the total size of cached libraries (for tests and the script
+	 * console).
+	 *
+	 * @param max bytes, 0 to disable the cache
+	 */
+	public static void setMaxBytes(long max) {
+		maxBytes = max;
+	}
+
+	/**
+	 * Remove all cached libraries and their clients.
+	 */
+	public static void clear() {
+		for (File dir : list()) {
+			evict(dir);
+		}
+		lastTrim = 0;
+	}
+
+	private static void sync(Run<?, ?> run, String credential, String key, String depotPath, P4Ref ref,
+							 File files, TaskListener listener) throws IOException {
+
+		if (!files.isDirectory() && !files.mkdirs()) {
+			throw new IOException("Unable to create: " + files);
+		}
+
+		ManualWorkspaceImpl ws = getWorkspace(key, depotPath, files);
+
+		// sync using the have list of the cache client
+		Populate populate = new SyncOnlyImpl(false, true, false, true, null, null);
+		try (ClientHelper p4 = new ClientHelper(run.getParent(), credential, listener, ws)) {
+			p4.syncFiles(ref, populate);
+		} catch (IOException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new IOException(e);
+		}
+	}
+
+	/**
+	 * @return the cache client workspace, the same for sync and change lookups
+	 * so the client spec is only written once.
+	 */
+	private static ManualWorkspaceImpl getWorkspace(String key, String depotPath, File files) {
+		String depotView = depotPath;
+		if (!depotView.endsWith("/...")) {
+			depotView += "/...";
+		}
+		String client = CLIENT_PREFIX + key;
+		String view = ViewMapHelper.getClientView(depotView, client, true);
+		WorkspaceSpec spec = new WorkspaceSpec(false, true, false, false, false, false,
+				null, "LOCAL", view, null, null, null, true);
+		ManualWorkspaceImpl ws = new ManualWorkspaceImpl("none", false, client, spec, false);
+		ws.setExpand(new HashMap<String, String>());
+		ws.setRootPath(files.getAbsolutePath());
+		return ws;
+	}
+
+	/**
+	 * Entries are not shared between credentials, so a load only sees files
+	 * its own user can sync.
+	 */
+	private static String getKey(P4BaseCredentials credential, String depotPath) {
+		String id = credential.getId() + "|" + credential.getUsername();
+		return Util.getDigestOf(credential.getFullP4port() + "|" + id + "|" + depotPath);
+	}
+
+	/**
+	 * Remove entries that are too old, then the least recently used entries
+	 * until the cache fits.
+	 */
+	private static synchronized void trim(String current) {
+		long now = System.currentTimeMillis();
+		if (now - lastTrim < TRIM_INTERVAL) {
+			return;
+		}
+		lastTrim = now;
+
+		List<File> dirs = list();
+		dirs.sort(Comparator.comparingLong(File::lastModified));
+
+		long total = 0;
+		List<File> keep = new ArrayList<>();
+		for (File dir : dirs) {
+			if (!dir.getName().equals(current) && now - dir.lastModified() > MAX_AGE) {
+				evict(dir);
+			} else {
+				keep.add(dir);
+				total += size(dir);
+			}
+		}
+
+		for (File dir : keep) {
+			if (total <= maxBytes) {
+				break;
+			}
+			if (!dir.getName().equals(current)) {
+				total -= size(dir);
+				evict(dir);
+			}
+		}
+	}
+
+	private static void evict(File dir) {
+		String key = dir.getName();
+		ReentrantLock lock = lock(key);
+		try {
+			P4BaseCredentials credential = findCredential(dir);
+			if (credential != null) {
+				TaskListener listener = new LogTaskListener(logger, Level.FINE);
+				try (ConnectionHelper p4 = new ConnectionHelper(credential, listener)) {
+					p4.deleteClient(CLIENT_PREFIX + key);
+				} catch (Exception e) {
+					logger.fine("P4: unable to remove library cache client: " + e.getMessage());
+				}
+			}
+			try {
+				new FilePath(dir).deleteRecursive();
+				logger.fine("P4: evicted library cache: " + key);
+			} catch (IOException | InterruptedException e) {
+				logger.warning("P4: unable to remove library cache " + dir + ": " + e.getMessage());
+			}
+			locks.remove(key, lock);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Resolve the credential in the context of the job that last loaded the
+	 * entry, so folder credentials are found; global credentials are used if
+	 * the job no longer exists.
+	 */
+	private static P4BaseCredentials findCredential(File dir) {
+		String credential = read(new File(dir, CREDENTIAL));
+		if (credential == null) {
+			return null;
+		}
+		String job = read(new File(dir, JOB));
+		try (ACLContext ctx = ACL.as(ACL.SYSTEM)) {
+			Item item = (job == null) ? null : Jenkins.getInstance().getItemByFullName(job);
+			return ConnectionHelper.findCredential(credential, item);
+		}
+	}
+
+	/**
+	 * @return the held lock for an entry; a lock dropped by an eviction while
+	 * waiting is not used, so a key never has two owners.
+	 */
+	private static ReentrantLock lock(String key) {
+		while (true) {
+			ReentrantLock lock = locks.computeIfAbsent(key, k -> new ReentrantLock());
+			lock.lock();
+			if (locks.get(key) == lock) {
+				return lock;
+			}
+			lock.unlock();
+		}
+	}
+
+	private static List<File> list() {
+		File[] dirs = getRoot().listFiles(File::isDirectory);
+		return (dirs == null) ? new ArrayList<>() : new ArrayList<>(Arrays.asList(dirs));
+	}
+
+	private static long size(File dir) {
+		try (Stream<Path> paths = Files.walk(dir.toPath())) {
+			return paths.filter(Files::isRegularFile).mapToLong(p -> p.toFile().length()).sum();
+		} catch (IOException e) {
+			return 0;
+		}
+	}
+
+	private static File getRoot() {
+		return new File(Jenkins.getInstance().getRootDir(), "caches/p4-libs");
+	}
+
+	private static String read(File file) {
+		try {
+			return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8).trim();
+		} catch (IOException e) {
+			return null;
+		}
+	}
+
+	private static void write(File file, String value) throws IOException {
+		Files.write(file.toPath(), value.getBytes(StandardCharsets.UTF_8));
+	}
+}
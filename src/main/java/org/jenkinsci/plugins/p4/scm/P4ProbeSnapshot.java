@@ -0,0 +1,106 @@
+package org.jenkinsci.plugins.p4.scm;
+
+import org.jenkinsci.plugins.p4.client.ConnectionHelper;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.logging.Logger;
+
+/**
+ * Probe Snapshot
+ * <p>
+ * Existence of the files that branch criteria probe for (the Jenkinsfile
+ * and any marker files probed by earlier scans), fetched for all heads of a
+ * scan with a few multi-argument 'p4 files -e' commands before the criteria
+ * run. {@link P4SCMProbe} answers from the snapshot and only checks paths
+ * outside it on the server.
+ */
+public final class P4ProbeSnapshot {
+
+	private static Logger logger = Logger.getLogger(P4ProbeSnapshot.class.getName());
+
+	private static final String PREFIX = P4ProbeSnapshot.class.getName();
+
+	// Paths per 'p4 files' command
+	private static final int BATCH_SIZE = Integer.getInteger(PREFIX + ".batchSize", 500);
+
+	// Probed names remembered per source
+	private static final int MAX_NAMES = Integer.getInteger(PREFIX + ".maxNames", 16);
+
+	private final Set<String> names;
+	private final Set<String> checked = new HashSet<>();
+	private final Set<String> found = new HashSet<>();
+	private boolean caseSensitive = true;
+
+	/**
+	 * @param names file names probed by earlier scans (shared, thread safe)
+	 */
+	P4ProbeSnapshot(Set<String> names) {
+		this.names = names;
+	}
+
+	/**
+	 * Check every known name under each head path.
+	 *
+	 * @param p4    connection
+	 * @param paths head paths with depot syntax
+	 */
+	void prefetch(ConnectionHelper p4, List<P4Path> paths) {
+		List<String> candidates = new ArrayList<>();
+		for (P4Path path : paths) {
+			for (String name : names) {
+				candidates.add(path.getPathBuilder(name));
+			}
+		}
+		if (candidates.isEmpty()) {
+			return;
+		}
+
+		caseSensitive = p4.getConnection().isCaseSensitive();
+		for (int i = 0; i < candidates.size(); i += BATCH_SIZE) {
+			List<String> batch = candidates.subList(i, Math.min(i + BATCH_SIZE, candidates.size()));
+			try {
+				for (String file : p4.findFiles(batch)) {
+					found.add(key(file));
+				}
+				for (String file : batch) {
+					checked.add(key(file));
+				}
+			} catch (Exception e) {
+				// unchecked paths are probed one at a time
+				logger.fine("P4: probe prefetch failed: " + e.getMessage());
+			}
+		}
+		logger.fine("P4: prefetched " + checked.size() + " probe paths, found " + found.size());
+	}
+
+	/**
+	 * Remember a probed name for the next scan.
+	 *
+	 * @param name file name relative to the head
+	 */
+	void probed(String name) {
+		if (names.size() < MAX_NAMES) {
+			names.add(name);
+		}
+	}
+
+	/**
+	 * @param depotPath file path with depot syntax
+	 * @return true if the file exists, or null if not in the snapshot.
+	 */
+	Boolean exists(String depotPath) {
+		String key = key(depotPath);
+		if (!checked.contains(key)) {
+			return null;
+		}
+		return found.contains(key);
+	}
+
+	private String key(String path) {
+		return caseSensitive ? path : path.toLowerCase(Locale.ENGLISH);
+	}
+}
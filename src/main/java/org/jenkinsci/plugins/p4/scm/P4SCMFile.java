@@ -1,21 +1,20 @@
 package org.jenkinsci.plugins.p4.scm;
 
 import com.perforce.p4java.core.file.FileSpecBuilder;
-import com.perforce.p4java.core.file.FileSpecOpStatus;
-import com.perforce.p4java.core.file.IExtendedFileSpec;
 import com.perforce.p4java.core.file.IFileSpec;
 import com.perforce.p4java.exception.P4JavaException;
-import com.perforce.p4java.option.server.GetExtendedFilesOptions;
 import com.perforce.p4java.option.server.GetFileContentsOptions;
 import edu.umd.cs.findbugs.annotations.NonNull;
 import jenkins.scm.api.SCMFile;
 import org.jenkinsci.plugins.p4.client.ConnectionHelper;
 import org.jenkinsci.plugins.p4.client.NavigateHelper;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.SequenceInputStream;
 import java.util.ArrayList;
-import java.util.Date;
 import java.util.List;
 
 public class P4SCMFile extends SCMFile {
@@ -52,7 +51,7 @@ public class P4SCMFile extends SCMFile {
 		String path = getPath();
 
 		ConnectionHelper p4 = fs.getConnection();
-		NavigateHelper nav = new NavigateHelper(p4.getConnection());
+		NavigateHelper nav = new NavigateHelper(p4);
 
 		List<SCMFile> list = new ArrayList<>();
 		List<NavigateHelper.Node> nodes = nav.getNodes(path);
@@ -73,21 +72,12 @@ public class P4SCMFile extends SCMFile {
 	 */
 	@Override
 	public long lastModified() throws IOException, InterruptedException {
-
-		ConnectionHelper p4 = fs.getConnection();
-		List<IFileSpec> file = getFileSpec();
-
-		GetExtendedFilesOptions exOpts = new GetExtendedFilesOptions();
-		try {
-			List<IExtendedFileSpec> fstat = p4.getConnection().getExtendedFiles(file, exOpts);
-			if(fstat.get(0).getOpStatus().equals(FileSpecOpStatus.VALID)) {
-				Date date = fstat.get(0).getHeadModTime();
-				return date.getTime();
-			}
-		} catch (P4JavaException e) {
-			throw new IOException(e);
+		if (isDir) {
+			return 0;
 		}
-		return 0;
+
+		P4SCMFileSystem.Stat stat = fs.getStat(getClientPath());
+		return (stat == null) ? 0 : stat.getHeadTime();
 	}
 
 	/**
@@ -105,24 +95,14 @@ public class P4SCMFile extends SCMFile {
 			return Type.DIRECTORY;
 		}
 
-		ConnectionHelper p4 = fs.getConnection();
-		List<IFileSpec> file = getFileSpec();
-
-		GetExtendedFilesOptions exOpts = new GetExtendedFilesOptions();
-		try {
-			List<IExtendedFileSpec> fstat = p4.getConnection().getExtendedFiles(file, exOpts);
-			if(fstat.get(0).getOpStatus().equals(FileSpecOpStatus.VALID)) {
-				String type = fstat.get(0).getHeadType();
-				if(type.startsWith("symlink")) {
-					return Type.LINK;
-				}
-				return Type.REGULAR_FILE;
-			}
-		} catch (P4JavaException e) {
-			throw new IOException(e);
+		P4SCMFileSystem.Stat stat = fs.getStat(getClientPath());
+		if (stat == null) {
+			return Type.NONEXISTENT;
 		}
-
-		return Type.NONEXISTENT;
+		if (stat.getHeadType() != null && stat.getHeadType().startsWith("symlink")) {
+			return Type.LINK;
+		}
+		return Type.REGULAR_FILE;
 	}
 
 	/**
@@ -135,27 +115,77 @@ public class P4SCMFile extends SCMFile {
 	 */
 	@Override
 	public InputStream content() throws IOException, InterruptedException {
-		ConnectionHelper p4 = fs.getConnection();
-		List<IFileSpec> file = getFileSpec();
+		// a file in a pinned view needs no connection once cached
+		String pinned = fs.getPinnedKey(getPath());
+		byte[] bytes = (pinned == null) ? null : P4ContentCache.get(pinned);
+		if (bytes != null) {
+			return new ByteArrayInputStream(bytes);
+		}
+
+		P4SCMFileSystem.Stat stat = fs.getStat(getClientPath());
+		if (stat == null) {
+			return print(FileSpecBuilder.makeFileSpecList(getClientPath() + fs.getRevisionSpec()));
+		}
+
+		String key = fs.getContentKey(stat);
+		bytes = (key == null) ? null : P4ContentCache.get(key);
+		if (bytes == null) {
+			// print the revision found by fstat, without mapping through the client again
+			InputStream in = print(FileSpecBuilder.makeFileSpecList(stat.getDepotPath() + "#" + stat.getHeadRev()));
+			if (in == null || key == null) {
+				return in;
+			}
+			return cache(in, key, pinned);
+		}
+		if (pinned != null) {
+			P4ContentCache.put(pinned, bytes);
+		}
+		return new ByteArrayInputStream(bytes);
+	}
 
+	private InputStream print(List<IFileSpec> file) throws IOException {
 		GetFileContentsOptions printOpts = new GetFileContentsOptions();
 		printOpts.setNoHeaderLine(true);
 
 		try {
-			return p4.getConnection().getFileContents(file, printOpts);
+			return fs.getConnection().getConnection().getFileContents(file, printOpts);
 		} catch (P4JavaException e) {
 			throw new IOException(e);
 		}
 	}
 
-	private List<IFileSpec> getFileSpec() {
+	/**
+	 * Read a printed file into the content cache; files too large to cache
+	 * are streamed.
+	 */
+	private InputStream cache(InputStream in, String key, String pinned) throws IOException {
+		int limit = P4ContentCache.getMaxEntry();
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		byte[] buf = new byte[8192];
+		int n;
+		while ((n = in.read(buf)) != -1) {
+			out.write(buf, 0, n);
+			if (out.size() > limit) {
+				return new SequenceInputStream(new ByteArrayInputStream(out.toByteArray()), in);
+			}
+		}
+		in.close();
+
+		byte[] bytes = out.toByteArray();
+		P4ContentCache.put(key, bytes);
+		if (pinned != null) {
+			P4ContentCache.put(pinned, bytes);
+		}
+		return new ByteArrayInputStream(bytes);
+	}
+
+	private String getClientPath() throws IOException {
 		String clientPath = "//" + fs.getConnection().getClientUUID() + "/";
 
 		String path = getPath();
 		if (!path.startsWith(clientPath)) {
 			path = clientPath + path;
 		}
-		List<IFileSpec> file = FileSpecBuilder.makeFileSpecList(path);
-		return file;
+		return path;
 	}
 }
@@ -1,9 +1,16 @@
 package org.jenkinsci.plugins.p4.scm;
 
+import com.perforce.p4java.core.file.FileSpecBuilder;
+import com.perforce.p4java.core.file.FileSpecOpStatus;
+import com.perforce.p4java.core.file.IExtendedFileSpec;
+import com.perforce.p4java.core.file.IFileSpec;
+import com.perforce.p4java.exception.P4JavaException;
+import com.perforce.p4java.option.server.GetExtendedFilesOptions;
 import edu.umd.cs.findbugs.annotations.CheckForNull;
 import edu.umd.cs.findbugs.annotations.NonNull;
 import hudson.EnvVars;
 import hudson.Extension;
+import hudson.Util;
 import hudson.model.Item;
 import hudson.model.Run;
 import hudson.scm.SCM;
@@ -13,11 +20,24 @@ import jenkins.scm.api.SCMFileSystem;
 import jenkins.scm.api.SCMRevision;
 import jenkins.scm.api.SCMSource;
 import org.jenkinsci.plugins.p4.PerforceScm;
+import org.jenkinsci.plugins.p4.changes.P4ChangeRef;
+import org.jenkinsci.plugins.p4.client.ConnectionHelper;
+import org.jenkinsci.plugins.p4.client.DirectoryTreeCache;
 import org.jenkinsci.plugins.p4.client.TempClientHelper;
+import org.jenkinsci.plugins.p4.credentials.P4BaseCredentials;
+import org.jenkinsci.plugins.p4.workspace.ManualWorkspaceImpl;
 import org.jenkinsci.plugins.p4.workspace.Workspace;
+import org.jenkinsci.plugins.p4.workspace.WorkspaceSpec;
 import org.jenkinsci.plugins.workflow.job.WorkflowJob;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -25,12 +45,34 @@ public class P4SCMFileSystem extends SCMFileSystem {
 
 	private static Logger logger = Logger.getLogger(P4SCMFileSystem.class.getName());
 
+	// Larger directories are not fetched in one batch
+	private static final int BATCH_LIMIT = Integer.getInteger(P4SCMFileSystem.class.getName() + ".batchLimit", 500);
+
+	private final Item owner;
+	private final String credential;
+	private final Workspace ws;
+
+	// P4PORT for content keys, or null if the credential is not found
+	private final String port;
+
+	// change the files are read at, or 0 for head
+	private final long change;
+
+	// content key prefix for a pinned view, or null
+	private final String pinned;
+
+	// temporary client, created on first use
 	private TempClientHelper p4;
 
+	// client path to file metadata, filled a directory at a time
+	private final Map<String, Stat> stats = new HashMap<>();
+	private final Set<String> dirs = new HashSet<>();
+
 	protected P4SCMFileSystem(@NonNull Item owner, @NonNull PerforceScm scm, @CheckForNull P4SCMRevision rev) throws Exception {
 		super(rev);
-		String credential = scm.getCredential();
-		Workspace ws = scm.getWorkspace().deepClone();
+		this.owner = owner;
+		this.credential = scm.getCredential();
+		this.ws = scm.getWorkspace().deepClone();
 
 		// Set environment in Workspace
 		if (owner instanceof WorkflowJob) {
@@ -40,11 +82,59 @@ public class P4SCMFileSystem extends SCMFileSystem {
 			ws.setExpand(env);
 		}
 
-		this.p4 = new TempClientHelper(owner, credential, null, ws);
+		P4BaseCredentials p4credential = ConnectionHelper.findCredential(credential, owner);
+		this.port = (p4credential == null) ? null : p4credential.getFullP4port();
+		this.change = getChange(rev);
+		this.pinned = (p4credential == null) ? null : getPinned(DirectoryTreeCache.getScope(p4credential), ws, change);
+	}
+
+	/**
+	 * @return the submitted change of a revision; reviews are read at head.
+	 */
+	private static long getChange(P4SCMRevision rev) {
+		if (rev == null || rev.getHead() instanceof P4ChangeRequestSCMHead) {
+			return 0;
+		}
+		if (rev.getRef() instanceof P4ChangeRef) {
+			return ((P4ChangeRef) rev.getRef()).getChange();
+		}
+		return 0;
+	}
+
+	/**
+	 * A file at a change is fixed when the client view is given in full (no
+	 * stream or change view), so its content can be found without a client.
+	 * As the server is not asked, keys are scoped by user; another user may
+	 * not be allowed to read the file.
+	 *
+	 * @param scope P4PORT and user, see {@link DirectoryTreeCache#getScope}
+	 * @return the content key prefix or null.
+	 */
+	private static String getPinned(String scope, Workspace ws, long change) {
+		if (change <= 0 || !(ws instanceof ManualWorkspaceImpl)) {
+			return null;
+		}
+		WorkspaceSpec spec = ((ManualWorkspaceImpl) ws).getSpec();
+		if (spec == null || spec.getView() == null
+				|| (spec.getStreamName() != null && !spec.getStreamName().isEmpty())
+				|| (spec.getChangeView() != null && !spec.getChangeView().isEmpty())) {
+			return null;
+		}
+		String view = ws.getExpand().format(spec.getView(), false);
+		return scope + "|" + Util.getDigestOf(view) + "@" + change + "|";
 	}
 
 	@Override
 	public void close() throws IOException {
+		synchronized (stats) {
+			stats.clear();
+			dirs.clear();
+		}
+		if (p4 == null) {
+			return;
+		}
+		// listings of the temporary client are not shared
+		DirectoryTreeCache.evict(DirectoryTreeCache.getScope(p4.getCredential()), "//" + p4.getClientUUID() + "/");
 		p4.close();
 	}
 
@@ -97,7 +187,150 @@ public class P4SCMFileSystem extends SCMFileSystem {
 		}
 	}
 
-	public TempClientHelper getConnection() {
+	/**
+	 * @return the temporary client, created on first use.
+	 * @throws IOException push up stack
+	 */
+	public synchronized TempClientHelper getConnection() throws IOException {
+		if (p4 == null) {
+			try {
+				p4 = new TempClientHelper(owner, credential, null, ws);
+			} catch (IOException e) {
+				throw e;
+			} catch (Exception e) {
+				throw new IOException(e);
+			}
+		}
 		return p4;
 	}
+
+	/**
+	 * @return revision specifier for reads, e.g. "@1234", or "" for head.
+	 */
+	String getRevisionSpec() {
+		return (change > 0) ? "@" + change : "";
+	}
+
+	/**
+	 * @param path path relative to the client root
+	 * @return content key of the file in the pinned view, or null if the
+	 * view or change is not fixed.
+	 */
+	String getPinnedKey(String path) {
+		return (pinned == null) ? null : pinned + path;
+	}
+
+	/**
+	 * @param stat file metadata
+	 * @return content key of the file revision, or null.
+	 */
+	String getContentKey(Stat stat) {
+		return (port == null) ? null : port + "|" + stat.getDepotPath() + "#" + stat.getHeadRev();
+	}
+
+	/**
+	 * Metadata for a file in the temporary client, at head or at the pinned
+	 * change. The first lookup in a directory runs one fstat for all of its
+	 * files, keyed by the client file fstat reports so files renamed by the
+	 * view are found; files not found in the batch are looked up on their
+	 * own.
+	 *
+	 * @param path client path e.g. //jenkinsTemp-UUID/projA/Jenkinsfile
+	 * @return metadata, or null if the file does not exist.
+	 * @throws IOException push up stack
+	 */
+	Stat getStat(String path) throws IOException {
+		synchronized (stats) {
+			if (stats.containsKey(path)) {
+				return stats.get(path);
+			}
+
+			String dir = path.substring(0, path.lastIndexOf('/') + 1);
+			if (dirs.add(dir)) {
+				for (IExtendedFileSpec spec : fstat(dir + "*" + getRevisionSpec(), BATCH_LIMIT)) {
+					// all results are in the client directory, under the name the view maps them to
+					String name = getClientName(spec);
+					if (name != null) {
+						stats.put(dir + name, new Stat(spec));
+					}
+				}
+				if (stats.containsKey(path)) {
+					return stats.get(path);
+				}
+			}
+
+			List<IExtendedFileSpec> list = fstat(path + getRevisionSpec(), 0);
+			Stat stat = (list.isEmpty()) ? null : new Stat(list.get(0));
+			stats.put(path, stat);
+			return stat;
+		}
+	}
+
+	/**
+	 * @return the file name in the client (the view may rename files), or
+	 * null if fstat did not report the client file.
+	 */
+	private static String getClientName(IExtendedFileSpec spec) {
+		String clientFile = spec.getClientPathString();
+		if (clientFile == null || clientFile.isEmpty()) {
+			return null;
+		}
+		int index = Math.max(clientFile.lastIndexOf('/'), clientFile.lastIndexOf('\\'));
+		return clientFile.substring(index + 1);
+	}
+
+	private List<IExtendedFileSpec> fstat(String path, int max) throws IOException {
+		GetExtendedFilesOptions exOpts = new GetExtendedFilesOptions();
+		if (max > 0) {
+			exOpts.setMaxResults(max);
+		}
+
+		List<IExtendedFileSpec> list = new ArrayList<>();
+		try {
+			List<IFileSpec> file = FileSpecBuilder.makeFileSpecList(path);
+			for (IExtendedFileSpec spec : getConnection().getConnection().getExtendedFiles(file, exOpts)) {
+				if (spec.getOpStatus().equals(FileSpecOpStatus.VALID) && spec.getDepotPathString() != null) {
+					list.add(spec);
+				}
+			}
+		} catch (P4JavaException e) {
+			throw new IOException(e);
+		}
+		return list;
+	}
+
+	/**
+	 * Metadata of a file revision.
+	 */
+	static final class Stat {
+
+		private final String depotPath;
+		private final int headRev;
+		private final String headType;
+		private final long headTime;
+
+		private Stat(IExtendedFileSpec spec) {
+			this.depotPath = spec.getDepotPathString();
+			this.headRev = spec.getHeadRev();
+			this.headType = spec.getHeadType();
+			Date date = spec.getHeadModTime();
+			this.headTime = (date == null) ? 0 : date.getTime();
+		}
+
+		String getDepotPath() {
+			return depotPath;
+		}
+
+		int getHeadRev() {
+			return headRev;
+		}
+
+		String getHeadType() {
+			return headType;
+		}
+
+		long getHeadTime() {
+			return headTime;
+		}
+	}
 }
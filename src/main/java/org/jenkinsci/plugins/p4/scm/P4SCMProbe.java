@@ -1,5 +1,6 @@
 package org.jenkinsci.plugins.p4.scm;
 
+import com.perforce.p4java.client.IClient;
 import edu.umd.cs.findbugs.annotations.NonNull;
 import hudson.init.InitMilestone;
 import hudson.init.Initializer;
@@ -24,11 +25,38 @@ public class P4SCMProbe extends SCMProbe {
 	private final static Logger logger = Logger.getLogger(P4SCMProbe.class.getName());
 
 	private final P4SCMHead head;
+	private final long change;
 	private transient TempClientHelper p4 = null;
+	private transient P4ProbeSnapshot snapshot = null;
 
 	public P4SCMProbe(TempClientHelper p4, P4SCMHead head) {
+		this(p4, head, 0L);
+	}
+
+	/**
+	 * Probe for a head whose revision is already known.
+	 *
+	 * @param p4     connection
+	 * @param head   the head to probe
+	 * @param change change of the head's revision, or 0 to look it up
+	 */
+	public P4SCMProbe(TempClientHelper p4, P4SCMHead head, long change) {
+		this(p4, head, change, null);
+	}
+
+	/**
+	 * Probe answering from a snapshot fetched for all heads of a scan.
+	 *
+	 * @param p4       connection
+	 * @param head     the head to probe
+	 * @param change   change of the head's revision, or 0 to look it up
+	 * @param snapshot probe snapshot or null
+	 */
+	public P4SCMProbe(TempClientHelper p4, P4SCMHead head, long change, P4ProbeSnapshot snapshot) {
 		this.head = head;
+		this.change = change;
 		this.p4 = p4;
+		this.snapshot = snapshot;
 	}
 
 	@Override
@@ -39,6 +67,9 @@ public class P4SCMProbe extends SCMProbe {
 	@Override
 	public long lastModified() {
 		long last = 0L;
+		if (change > 0) {
+			return change;
+		}
 		try {
 			// use temp workspace and client syntax to get changes
 			long change = p4.getClientHead();
@@ -58,10 +89,19 @@ public class P4SCMProbe extends SCMProbe {
 			P4Path path = head.getPath();
 			String filePath = path.getPathBuilder(file); // Depot Path syntax
 
+			if (snapshot != null) {
+				snapshot.probed(file);
+				Boolean exists = snapshot.exists(filePath);
+				if (exists != null) {
+					return SCMProbeStat.fromType(exists ? SCMFile.Type.REGULAR_FILE : SCMFile.Type.NONEXISTENT);
+				}
+			}
+
 			// When probing Streams, switch to use client path syntax.  This works for
 			// all streams, including virtual streams(JENKINS-62699).
 			p4.log("Scanning for " + filePath);
-			String clientStream = p4.getClient().getStream();
+			IClient client = p4.getClient();
+			String clientStream = (client == null) ? null : client.getStream();
 			if ( clientStream != null ) {
 				filePath = filePath.replaceFirst(clientStream, "//" + p4.getClientUUID());
 			}
@@ -0,0 +1,82 @@
+package org.jenkinsci.plugins.p4.scm;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import org.jenkinsci.plugins.p4.swarmAPI.SwarmReviewsAPI;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.logging.Logger;
+
+/**
+ * Open reviews seen by the last scan of a {@link SwarmScmSource}, with the
+ * Swarm time of the most recent update. Incremental scans only fetch the
+ * details of reviews updated since then. Stored as JSON next to the
+ * owning project's config so it survives a restart.
+ */
+final class SwarmReviewState {
+
+	private static Logger logger = Logger.getLogger(SwarmReviewState.class.getName());
+
+	// Swarm time (seconds since the epoch) of the newest update seen
+	private long lastScan;
+
+	private Map<String, SwarmReviewsAPI.Reviews> reviews = new LinkedHashMap<>();
+
+	long getLastScan() {
+		return lastScan;
+	}
+
+	SwarmReviewsAPI.Reviews get(String id) {
+		return reviews.get(id);
+	}
+
+	/**
+	 * @param reviews  open reviews with their details
+	 * @param lastScan Swarm time of the newest update
+	 */
+	void update(Map<String, SwarmReviewsAPI.Reviews> reviews, long lastScan) {
+		this.reviews = reviews;
+		this.lastScan = lastScan;
+	}
+
+	/**
+	 * @param file state file, or null to start empty
+	 * @return the stored state or an empty state.
+	 */
+	static SwarmReviewState load(File file) {
+		if (file != null && file.isFile()) {
+			try {
+				String json = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+				SwarmReviewState state = new Gson().fromJson(json, SwarmReviewState.class);
+				if (state != null && state.reviews != null) {
+					return state;
+				}
+			} catch (IOException | JsonParseException e) {
+				logger.fine("Swarm: unable to read review state " + file + ": " + e.getMessage());
+			}
+		}
+		return new SwarmReviewState();
+	}
+
+	/**
+	 * @param file state file, or null to keep the state in memory only
+	 */
+	void save(File file) {
+		if (file == null) {
+			return;
+		}
+		try {
+			File tmp = new File(file.getPath() + ".tmp");
+			Files.write(tmp.toPath(), new Gson().toJson(this).getBytes(StandardCharsets.UTF_8));
+			Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException e) {
+			logger.warning("Swarm: unable to save review state " + file + ": " + e.getMessage());
+		}
+	}
+}
@@ -1,12 +1,19 @@
 package org.jenkinsci.plugins.p4.scm;
 
+import edu.umd.cs.findbugs.annotations.CheckForNull;
 import edu.umd.cs.findbugs.annotations.NonNull;
 import hudson.Extension;
+import hudson.Util;
 import hudson.model.Action;
 import hudson.model.TaskListener;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
 import jenkins.scm.api.SCMHead;
 import jenkins.scm.api.SCMHeadCategory;
 import jenkins.scm.api.SCMHeadEvent;
+import jenkins.scm.api.SCMHeadObserver;
+import jenkins.scm.api.SCMSourceCriteria;
+import jenkins.scm.api.SCMSourceOwner;
 import jenkins.scm.api.metadata.ContributorMetadataAction;
 import jenkins.scm.api.metadata.ObjectMetadataAction;
 import jenkins.scm.api.mixin.ChangeRequestSCMHead;
@@ -35,10 +42,17 @@ import org.jenkinsci.plugins.p4.workspace.WorkspaceSpec;
 import org.kohsuke.stapler.DataBoundConstructor;
 import org.kohsuke.stapler.DataBoundSetter;
 
+import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.logging.Logger;
 import java.util.regex.Pattern;
 
@@ -53,10 +67,20 @@ public class SwarmScmSource extends AbstractP4ScmSource {
 
 	private static Logger logger = Logger.getLogger(SwarmScmSource.class.getName());
 
+	// Review details fetched in parallel by incremental scans
+	private static final int DETAIL_THREADS = Integer.getInteger(SwarmScmSource.class.getName() + ".detailThreads", 4);
+
 	private String project;
 
+	private boolean incremental;
+
 	transient private SwarmHelper swarm;
 
+	transient private SwarmReviewState reviewState;
+
+	// changes of the active reviews, from the review list of the current scan
+	transient private volatile Map<String, List<Long>> reviewChanges;
+
 	@DataBoundConstructor
 	public SwarmScmSource(String credential, String charset, String format) throws Exception {
 		super(credential);
@@ -74,6 +98,18 @@ public class SwarmScmSource extends AbstractP4ScmSource {
 		return project;
 	}
 
+	/**
+	 * @param incremental only fetch reviews updated since the last scan
+	 */
+	@DataBoundSetter
+	public void setIncremental(boolean incremental) {
+		this.incremental = incremental;
+	}
+
+	public boolean isIncremental() {
+		return incremental;
+	}
+
 	public SwarmHelper getSwarm() throws Exception {
 		if (swarm == null) {
 			try (ConnectionHelper p4 = new ConnectionHelper(getOwner(), credential, null)) {
@@ -96,6 +132,13 @@ public class SwarmScmSource extends AbstractP4ScmSource {
 		}
 	}
 
+	@Override
+	protected void retrieve(@CheckForNull SCMSourceCriteria criteria, @NonNull SCMHeadObserver observer, @CheckForNull SCMHeadEvent<?> event, @NonNull TaskListener listener) throws IOException, InterruptedException {
+		// review changes from an earlier scan may be stale
+		reviewChanges = null;
+		super.retrieve(criteria, observer, event, listener);
+	}
+
 	@Override
 	protected List<Action> retrieveActions(SCMHead head, SCMHeadEvent event, TaskListener listener) throws IOException, InterruptedException {
 		List<Action> actions = super.retrieveActions(head, event, listener);
@@ -122,11 +165,17 @@ public class SwarmScmSource extends AbstractP4ScmSource {
 
 		List<P4SCMHead> list = new ArrayList<>();
 
-		List<SwarmReviewsAPI.Reviews> reviews = getSwarm().getActiveReviews(project);
+		List<SwarmReviewsAPI.Reviews> reviews = (incremental) ? getUpdatedReviews(listener) : getSwarm().getActiveReviews(project);
+		List<SwarmProjectAPI.Branch> projectBranches = null;
+		Map<String, List<Long>> changes = new HashMap<>();
 		for (SwarmReviewsAPI.Reviews review : reviews) {
 			String reviewID = String.valueOf(review.getId());
+			changes.put(reviewID, review.getChanges());
 
-			List<String> branches = getBranchesInReview(reviewID, project);
+			List<String> branches = getBranchesInReview(review, project);
+			if (branches == null) {
+				continue;
+			}
 			for (String branch : branches) {
 				// check the excludes
 				if (excludesPattern.matcher(branch).matches()) {
@@ -134,7 +183,10 @@ public class SwarmScmSource extends AbstractP4ScmSource {
 				}
 
 				// Get first Swarm path; it MUST include the Jenkinsfile
-				P4Path p4Path = getPathsInBranch(branch, project);
+				if (projectBranches == null) {
+					projectBranches = getSwarm().getBranchesInProject(project);
+				}
+				P4Path p4Path = getPathsInBranch(branch, projectBranches);
 				if (p4Path != null) {
 					p4Path.setRevision(reviewID);
 
@@ -144,6 +196,7 @@ public class SwarmScmSource extends AbstractP4ScmSource {
 				}
 			}
 		}
+		reviewChanges = changes;
 
 		return list;
 	}
@@ -287,23 +340,124 @@ public class SwarmScmSource extends AbstractP4ScmSource {
 		return new ManualWorkspaceImpl(getCharset(), false, client, spec, false);
 	}
 
+	@Override
+	protected List<String> getHeadPaths(P4Path path) {
+		return getMappedHeadPaths(path);
+	}
+
 	protected boolean isCategoryEnabled(@NonNull SCMHeadCategory category) {
 		return true;
 	}
 
-	private List<String> getBranchesInReview(String review, String project) throws Exception {
-		SwarmReviewAPI api = getSwarm().getSwarmReview(review);
+	/**
+	 * List the open reviews by their update time, then fetch the details of
+	 * the reviews updated since the last scan on a bounded pool. Details of
+	 * other reviews are taken from the last scan.
+	 */
+	private synchronized List<SwarmReviewsAPI.Reviews> getUpdatedReviews(TaskListener listener) throws Exception {
+		File file = getReviewStateFile();
+		if (reviewState == null) {
+			reviewState = SwarmReviewState.load(file);
+		}
+		long lastScan = reviewState.getLastScan();
+
+		List<SwarmReviewsAPI.Reviews> listed = getSwarm().getActiveReviews(project, SwarmHelper.REVIEW_UPDATES);
+		Map<String, SwarmReviewsAPI.Reviews> reviews = new LinkedHashMap<>();
+		List<String> updated = new ArrayList<>();
+		long newest = lastScan;
+		for (SwarmReviewsAPI.Reviews review : listed) {
+			String id = String.valueOf(review.getId());
+			SwarmReviewsAPI.Reviews known = reviewState.get(id);
+			// reviews without an update time are always fetched
+			if (known == null || review.getUpdated() == 0 || review.getUpdated() > lastScan
+					|| review.getUpdated() != known.getUpdated()) {
+				updated.add(id);
+			}
+			reviews.put(id, known);
+			newest = Math.max(newest, review.getUpdated());
+		}
+
+		listener.getLogger().println("Swarm: " + listed.size() + " open reviews, " + updated.size() + " updated since last scan.");
+		Map<String, SwarmReviewAPI> details = getSwarmReviews(updated, listener);
+		for (SwarmReviewsAPI.Reviews review : listed) {
+			String id = String.valueOf(review.getId());
+			SwarmReviewAPI api = details.get(id);
+			if (api != null && api.getReview() != null) {
+				SwarmReviewAPI.Review r = api.getReview();
+				reviews.put(id, new SwarmReviewsAPI.Reviews(review.getId(), r.getChanges(), r.getAuthor(),
+						r.getProjects(), review.getUpdated()));
+			}
+		}
+
+		// reviews without details keep the entry of the last scan and are fetched
+		// again next scan; new reviews without details are dropped until then
+		reviews.values().removeIf(review -> review == null);
+		reviewState.update(reviews, newest);
+		reviewState.save(file);
+		return new ArrayList<>(reviews.values());
+	}
+
+	private Map<String, SwarmReviewAPI> getSwarmReviews(List<String> ids, TaskListener listener) throws Exception {
+		Map<String, SwarmReviewAPI> details = new HashMap<>();
+		if (ids.isEmpty()) {
+			return details;
+		}
+
+		int threads = Math.min(DETAIL_THREADS, ids.size());
+		ExecutorService executor = Executors.newFixedThreadPool(threads,
+				new NamingThreadFactory(new DaemonThreadFactory(), "Swarm reviews " + getId()));
+		try {
+			Map<String, Future<SwarmReviewAPI>> futures = new LinkedHashMap<>();
+			SwarmHelper helper = getSwarm();
+			for (String id : ids) {
+				futures.put(id, executor.submit(() -> helper.getSwarmReview(id, true)));
+			}
+			for (Map.Entry<String, Future<SwarmReviewAPI>> entry : futures.entrySet()) {
+				try {
+					details.put(entry.getKey(), entry.getValue().get());
+				} catch (ExecutionException e) {
+					// closed since it was listed or a transient error
+					listener.getLogger().println("Swarm: unable to fetch review " + entry.getKey() + ": " + e.getCause().getMessage());
+				}
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+		return details;
+	}
+
+	/**
+	 * @return file for the review state in the owner's directory, or null if
+	 * there is no owner.
+	 */
+	private File getReviewStateFile() {
+		SCMSourceOwner owner = getOwner();
+		if (owner == null) {
+			return null;
+		}
+		return new File(owner.getRootDir(), "p4-swarm-reviews-" + Util.getDigestOf(getId()) + ".json");
+	}
 
-		HashMap<String, List<String>> projects = api.getReview().getProjects();
-		List<String> branches = projects.get(project);
+	private List<String> getBranchesInReview(SwarmReviewsAPI.Reviews review, String project) throws Exception {
+		HashMap<String, List<String>> projects = review.getProjects();
 
-		return branches;
+		// older Swarm versions do not list projects with the reviews
+		if (projects == null) {
+			SwarmReviewAPI api = getSwarm().getSwarmReview(String.valueOf(review.getId()));
+			projects = api.getReview().getProjects();
+		}
+
+		return (projects == null) ? null : projects.get(project);
 	}
 
 	private long getLastChangeInReview(String review) throws Exception {
-		SwarmReviewAPI api = getSwarm().getSwarmReview(review);
-
-		List<Long> changes = api.getReview().getChanges();
+		// use the review list of this scan, else fetch the review
+		Map<String, List<Long>> scanned = reviewChanges;
+		List<Long> changes = (scanned == null) ? null : scanned.get(review);
+		if (changes == null || changes.isEmpty()) {
+			SwarmReviewAPI api = getSwarm().getSwarmReview(review);
+			changes = api.getReview().getChanges();
+		}
 
 		long lastChange = 0;
 		for (Long change : changes) {
@@ -314,10 +468,7 @@ public class SwarmScmSource extends AbstractP4ScmSource {
 		return lastChange;
 	}
 
-	private P4Path getPathsInBranch(String id, String project) throws Exception {
-
-		List<SwarmProjectAPI.Branch> branches = getSwarm().getBranchesInProject(project);
-
+	private P4Path getPathsInBranch(String id, List<SwarmProjectAPI.Branch> branches) {
 		for (SwarmProjectAPI.Branch branch : branches) {
 			if (id.equals(branch.getId())) {
 				P4Path swarmPath = branch.getPath();
@@ -14,13 +14,40 @@ import org.jenkinsci.plugins.p4.review.ReviewProp;
 import org.jenkinsci.plugins.p4.scm.AbstractP4ScmSource;
 import org.jenkinsci.plugins.p4.scm.P4SCMRevision;
 
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 public class P4BranchSCMHeadEvent extends SCMHeadEvent<JSONObject> {
 
+	// coalesced payloads, highest change first
+	private final List<JSONObject> payloads;
+
 	public P4BranchSCMHeadEvent(@NonNull Type type, JSONObject payload, String origin) {
 		super(type, payload, origin);
+		this.payloads = Collections.singletonList(payload);
+	}
+
+	/**
+	 * An event for a range of submitted changes that only differ by change
+	 * number; each head is given the highest change that maps to it.
+	 *
+	 * @param type     event type
+	 * @param payloads payloads ordered by change, highest first
+	 * @param origin   event origin
+	 */
+	public P4BranchSCMHeadEvent(@NonNull Type type, @NonNull List<JSONObject> payloads, String origin) {
+		super(type, payloads.get(0), origin);
+		this.payloads = Collections.unmodifiableList(new ArrayList<>(payloads));
+	}
+
+	/**
+	 * @return the payloads merged into this event, highest change first.
+	 */
+	public List<JSONObject> getPayloads() {
+		return payloads;
 	}
 
 	@NonNull
@@ -50,12 +77,23 @@ public class P4BranchSCMHeadEvent extends SCMHeadEvent<JSONObject> {
 			return Collections.emptyMap();
 		}
 
-		P4SCMRevision revision = source.getRevision(getPayload());
-		if(revision == null) {
-			return Collections.emptyMap();
+		if (payloads.size() == 1) {
+			P4SCMRevision revision = source.getRevision(getPayload());
+			if (revision == null) {
+				return Collections.emptyMap();
+			}
+			return Collections.singletonMap(revision.getHead(), revision);
 		}
 
-		return Collections.singletonMap(revision.getHead(), revision);
+		// changes may be on different branches; keep the highest per head
+		Map<SCMHead, SCMRevision> heads = new HashMap<>();
+		for (JSONObject payload : payloads) {
+			P4SCMRevision revision = source.getRevision(payload);
+			if (revision != null) {
+				heads.putIfAbsent(revision.getHead(), revision);
+			}
+		}
+		return heads;
 	}
 
 	@Override
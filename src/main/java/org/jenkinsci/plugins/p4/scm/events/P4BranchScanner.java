@@ -8,15 +8,41 @@ import org.jenkinsci.plugins.p4.client.ConnectionHelper;
 import org.jenkinsci.plugins.p4.client.ViewMapHelper;
 import org.jenkinsci.plugins.p4.credentials.P4BaseCredentials;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+/**
+ * Finds the branch of a submitted change by walking up the path of its
+ * first file looking for the Jenkinsfile.
+ * <p>
+ * An event is handled by every multibranch source, so results are shared
+ * per P4PORT, user, change and script path for a short time; concurrent
+ * sources wait for a single scan.
+ */
 public class P4BranchScanner {
 
 	private static Logger logger = Logger.getLogger(P4BranchScanner.class.getName());
 
+	private static final String PREFIX = P4BranchScanner.class.getName();
+
+	private static final int MAX_SIZE = Integer.getInteger(PREFIX + ".maxSize", 256);
+
+	// How long a scan result is reused
+	private static long ttl = TimeUnit.SECONDS.toMillis(Long.getLong(PREFIX + ".ttl", 60L));
+
+	private static final Map<String, Result> cache = new LinkedHashMap<String, Result>(16, 0.75f, true) {
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, Result> eldest) {
+			return size() > MAX_SIZE;
+		}
+	};
+
 	private final P4BaseCredentials credential;
 	private final P4Ref change;
 	private final String file;
@@ -29,11 +55,9 @@ public class P4BranchScanner {
 		this.change = change;
 		this.file = file;
 
-		try {
-			scan();
-		} catch (Exception e) {
-			logger.severe(e.getMessage());
-		}
+		Result result = getResult();
+		branch = result.branch;
+		projectRoot = result.projectRoot;
 	}
 
 	public String getBranch() {
@@ -48,7 +72,44 @@ public class P4BranchScanner {
 		return change;
 	}
 
-	private void scan() throws Exception {
+	/**
+	 * Set how long scan results are reused (for tests and the script
+	 * console).
+	 *
+	 * @param seconds time to live, 0 to scan on every call
+	 */
+	public static void setTtl(long seconds) {
+		ttl = TimeUnit.SECONDS.toMillis(seconds);
+	}
+
+	public static void clear() {
+		synchronized (cache) {
+			cache.clear();
+		}
+	}
+
+	private Result getResult() {
+		String key = credential.getFullP4port() + "/" + credential.getUsername() + "@" + change + ":" + file;
+
+		Result result;
+		synchronized (cache) {
+			result = cache.get(key);
+			if (result == null || result.isExpired()) {
+				result = new Result();
+				cache.put(key, result);
+			}
+		}
+
+		if (!result.scan(this)) {
+			// don't share failures; the next source will try again
+			synchronized (cache) {
+				cache.remove(key, result);
+			}
+		}
+		return result;
+	}
+
+	private void scan(Result result) throws Exception {
 		try (ConnectionHelper p4 = new ConnectionHelper(credential, getListener())) {
 			List<IFileSpec> files = change.getFiles(p4, 1);
 			if (files == null || files.isEmpty() || files.get(0) == null) {
@@ -63,19 +124,37 @@ public class P4BranchScanner {
 				return;
 			}
 
+			// check all parent paths with one 'p4 files' command
+			List<String> candidates = new ArrayList<>();
 			for (int n = parts.length - 1; n >= 1; n--) {
 				String[] sub = Arrays.copyOfRange(parts, 0, n);
-				String subPath = "//" + String.join("/", sub) + "/" + file;
-				if (p4.hasFile(subPath)) {
-					branch = sub[n - 1];
+				candidates.add("//" + String.join("/", sub) + "/" + file);
+			}
+			List<String> found = p4.findFiles(candidates);
+
+			// use the deepest match
+			for (int n = parts.length - 1; n >= 1; n--) {
+				String subPath = candidates.get(parts.length - 1 - n);
+				if (contains(found, subPath)) {
+					result.branch = parts[n - 1];
 					String[] projectSub = Arrays.copyOfRange(parts, 0, n - 1);
-					projectRoot = "//" + String.join("/", projectSub);
+					result.projectRoot = "//" + String.join("/", projectSub);
 					return;
 				}
 			}
 		}
 	}
 
+	private static boolean contains(List<String> found, String path) {
+		for (String f : found) {
+			// case may differ on case-insensitive servers
+			if (f.equalsIgnoreCase(path)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
 	private TaskListener getListener() {
 		Level level;
 		try {
@@ -85,4 +164,35 @@ public class P4BranchScanner {
 		}
 		return new LogTaskListener(Logger.getLogger(getClass().getName()), level);
 	}
+
+	private static final class Result {
+
+		private final long created = System.currentTimeMillis();
+
+		private boolean scanned = false;
+		private boolean failed = false;
+
+		private String branch = null;
+		private String projectRoot = null;
+
+		private boolean isExpired() {
+			return System.currentTimeMillis() - created >= ttl;
+		}
+
+		/**
+		 * @return false if the scan failed
+		 */
+		private synchronized boolean scan(P4BranchScanner scanner) {
+			if (!scanned) {
+				try {
+					scanner.scan(this);
+				} catch (Exception e) {
+					logger.severe(e.getMessage());
+					failed = true;
+				}
+				scanned = true;
+			}
+			return !failed;
+		}
+	}
 }
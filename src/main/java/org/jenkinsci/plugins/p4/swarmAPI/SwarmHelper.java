@@ -1,21 +1,110 @@
 package org.jenkinsci.plugins.p4.swarmAPI;
 
 import com.google.gson.Gson;
-import com.mashape.unirest.http.HttpResponse;
-import com.mashape.unirest.http.JsonNode;
-import com.mashape.unirest.http.Unirest;
 import org.apache.commons.collections.map.HashedMap;
 import org.apache.commons.lang.StringUtils;
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpHeaders;
+import org.apache.http.NameValuePair;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.entity.UrlEncodedFormEntity;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpEntityEnclosingRequestBase;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPatch;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.client.utils.URIBuilder;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.message.BasicNameValuePair;
+import org.apache.http.util.EntityUtils;
 import org.jenkinsci.plugins.p4.client.ConnectionHelper;
 import org.jenkinsci.plugins.p4.review.ApproveState;
 import org.json.JSONArray;
-
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Swarm REST API calls.
+ * <p>
+ * All helpers share one pooled, keep-alive HTTP client that accepts gzip
+ * responses; the client is private to this class, so no JVM-wide HTTP
+ * settings are changed. Read-only lookups (API versions, project branches, review
+ * details and project lists) are cached per URL and user for a short time,
+ * then revalidated with the ETag Swarm returned, so a scan asks for the
+ * project once however many reviews and events refer to it.
+ */
 public class SwarmHelper {
 
+	private static Logger logger = Logger.getLogger(SwarmHelper.class.getName());
+
+	private static final String PREFIX = SwarmHelper.class.getName();
+
+	private static final int MAX_CONNECTIONS = Integer.getInteger(PREFIX + ".maxConnections", 20);
+
+	private static final int TIMEOUT = (int) TimeUnit.SECONDS.toMillis(Integer.getInteger(PREFIX + ".timeout", 60));
+
+	private static final int MAX_SIZE = Integer.getInteger(PREFIX + ".maxSize", 256);
+
+	// Reviews per page of the review list
+	private static final int PAGE_SIZE = Integer.getInteger(PREFIX + ".pageSize", 100);
+
+	// Stop listing reviews after this many
+	private static final int MAX_REVIEWS = Integer.getInteger(PREFIX + ".maxReviews", 10000);
+
+	public static final String REVIEW_FIELDS = "id,state,changes,author,projects,updated";
+
+	// enough to tell which reviews changed
+	public static final String REVIEW_UPDATES = "id,updated";
+
+	// How long responses are reused before they are revalidated
+	private static long ttl = TimeUnit.SECONDS.toMillis(Long.getLong(PREFIX + ".ttl", 60L));
+
+	private static final Map<String, Cached> cache = new LinkedHashMap<String, Cached>(16, 0.75f, true) {
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, Cached> eldest) {
+			return size() > MAX_SIZE;
+		}
+	};
+
+	private static final CloseableHttpClient client;
+
+	static {
+		PoolingHttpClientConnectionManager pool = new PoolingHttpClientConnectionManager();
+		pool.setMaxTotal(MAX_CONNECTIONS);
+		pool.setDefaultMaxPerRoute(MAX_CONNECTIONS);
+
+		RequestConfig config = RequestConfig.custom()
+				.setConnectTimeout(TIMEOUT)
+				.setSocketTimeout(TIMEOUT)
+				.build();
+
+		// content compression (gzip) and keep-alive are on by default
+		client = HttpClients.custom()
+				.setConnectionManager(pool)
+				.setDefaultRequestConfig(config)
+				.evictExpiredConnections()
+				.evictIdleConnections(30, TimeUnit.SECONDS)
+				.build();
+	}
+
 	private final ConnectionHelper p4;
 	private final String version;
 	private final String base;
@@ -46,15 +135,8 @@ public class SwarmHelper {
 
 		String url = base + "/api/version";
 
-		HttpResponse<JsonNode> res = Unirest.get(url)
-				.basicAuth(user, ticket)
-				.asJson();
-
-		if (res.getStatus() != 200) {
-			throw new SwarmException(res);
-		}
-
-		JSONArray json = res.getBody().getObject().getJSONArray("apiVersions");
+		String body = getCached(url, new HashMap<>());
+		JSONArray json = new JSONObject(body).getJSONArray("apiVersions");
 		for (int i = 0; i < json.length(); i++) {
 			String v = String.valueOf(json.get(i));
 			if (ver.equals(v)) {
@@ -106,17 +188,14 @@ public class SwarmHelper {
 		}
 
 		// Send PATCH request to Swarm
-		HttpResponse<JsonNode> res = Unirest.patch(url)
-				.basicAuth(user, ticket)
-				.fields(parameters)
-				.asJson();
+		Response res = execute(withFields(new HttpPatch(url), parameters));
 
-		if (res.getStatus() == 200) {
+		if (res.status == 200) {
 			p4.log("Swarm review id: " + id + " updated: " + state.getDescription());
 			return true;
 		} else {
-			p4.log("Swarm Error - url: " + url + " code: " + res.getStatus());
-			String error = res.getBody().getObject().getString("error");
+			p4.log("Swarm Error - url: " + url + " code: " + res.status);
+			String error = res.getError();
 			p4.log("Swarm error message: " + error);
 			throw new SwarmException(res);
 		}
@@ -134,17 +213,14 @@ public class SwarmHelper {
 		parameters.put("body", description);
 
 		// Send COMMENT request to Swarm
-		HttpResponse<JsonNode> res = Unirest.post(url)
-				.basicAuth(user, ticket)
-				.fields(parameters)
-				.asJson();
+		Response res = execute(withFields(new HttpPost(url), parameters));
 
-		if (res.getStatus() == 200) {
+		if (res.status == 200) {
 			p4.log("Swarm review id: " + id + " comment: " + description);
 			return true;
 		} else {
-			p4.log("Swarm Error - url: " + url + " code: " + res.getStatus());
-			String error = res.getBody().getObject().getString("error");
+			p4.log("Swarm Error - url: " + url + " code: " + res.status);
+			String error = res.getError();
 			p4.log("Swarm error message: " + error);
 			throw new SwarmException(res);
 		}
@@ -156,64 +232,120 @@ public class SwarmHelper {
 		String url = getBaseUrl() + "/reviews/" + id + "/vote/" + vote;
 
 		// Send VOTE request to Swarm
-		HttpResponse<JsonNode> res = Unirest.post(url)
-				.basicAuth(user, ticket)
-				.asJson();
+		Response res = execute(new HttpPost(url));
 
-		if (res.getStatus() == 200) {
+		if (res.status == 200) {
 			p4.log("Swarm review id: " + id + " voted: " + vote);
 			return postComment(id, description);
 		} else {
-			p4.log("Swarm Error - url: " + url + " code: " + res.getStatus());
-			String error = res.getBody().getObject().getString("error");
+			p4.log("Swarm Error - url: " + url + " code: " + res.status);
+			String error = res.getError();
 			p4.log("Swarm error message: " + error);
 			throw new SwarmException(res);
 		}
 	}
 
 	public List<SwarmReviewsAPI.Reviews> getActiveReviews(String project) throws Exception {
+		return getActiveReviews(project, REVIEW_FIELDS);
+	}
+
+	/**
+	 * List the open reviews of a project, following Swarm's pagination.
+	 * Reviews updated while paging can appear on two pages and are only
+	 * listed once.
+	 *
+	 * @param project Swarm project ID
+	 * @param fields  review fields to return, e.g. {@link #REVIEW_FIELDS}
+	 * @return reviews, newest first
+	 * @throws Exception API or connection errors
+	 */
+	public List<SwarmReviewsAPI.Reviews> getActiveReviews(String project, String fields) throws Exception {
+
+		Map<Long, SwarmReviewsAPI.Reviews> reviews = new LinkedHashMap<>();
+		Long after = null;
+		while (reviews.size() < MAX_REVIEWS) {
+			SwarmReviewsAPI api = getReviewsPage(project, fields, after);
+			List<SwarmReviewsAPI.Reviews> page = api.getReviews();
+			if (page == null) {
+				break;
+			}
+			for (SwarmReviewsAPI.Reviews review : page) {
+				reviews.putIfAbsent(review.getId(), review);
+			}
+
+			// only a missing marker ends the list; Swarm may return short pages
+			if (api.getLastSeen() == null) {
+				break;
+			}
+
+			// a marker that does not move would fetch the same page forever
+			if (api.getLastSeen().equals(after)) {
+				logger.warning("Swarm: project " + project + " review list did not advance past " + after + "; listing truncated.");
+				break;
+			}
+			after = api.getLastSeen();
+		}
+
+		if (reviews.size() >= MAX_REVIEWS) {
+			logger.warning("Swarm: project " + project + " has more than " + MAX_REVIEWS + " open reviews; listing truncated.");
+		}
+		return new ArrayList<>(reviews.values());
+	}
+
+	/**
+	 * Fetch one page of the open reviews of a project.
+	 *
+	 * @param project Swarm project ID
+	 * @param fields  review fields to return
+	 * @param after   ID of the last review of the previous page, or null
+	 * @return page of reviews with the marker for the next page
+	 * @throws Exception API or connection errors
+	 */
+	SwarmReviewsAPI getReviewsPage(String project, String fields, Long after) throws Exception {
 
 		String url = getApiUrl() + "/reviews";
 
 		Map<String, Object> query = new HashMap<>();
-		query.put("max", "10");
-		query.put("fields", "id,state,changes,author");
+		query.put("max", String.valueOf(PAGE_SIZE));
+		query.put("fields", fields);
 		query.put("project", project);
+		if (after != null) {
+			query.put("after", String.valueOf(after));
+		}
 
-		HttpResponse<String> res = Unirest.get(url)
-				.basicAuth(user, ticket)
-				.queryString(query)
-				.queryString("state[]", "needsReview")
-				.queryString("state[]", "needsRevision")
-				.asString();
+		URIBuilder uri = new URIBuilder(getUri(url, query));
+		uri.addParameter("state[]", "needsReview");
+		uri.addParameter("state[]", "needsRevision");
+		Response res = execute(new HttpGet(uri.build()));
 
-		if (res.getStatus() != 200) {
+		if (res.status != 200) {
 			throw new SwarmException(res);
 		}
 
 		Gson gson = new Gson();
-		SwarmReviewsAPI api = gson.fromJson(res.getBody(), SwarmReviewsAPI.class);
-		return api.getReviews();
+		return gson.fromJson(res.body, SwarmReviewsAPI.class);
 	}
 
 	public SwarmReviewAPI getSwarmReview(String review) throws Exception {
+		return getSwarmReview(review, false);
+	}
+
+	/**
+	 * @param review     review ID
+	 * @param revalidate true to check a cached response with Swarm, e.g. for
+	 *                   a review known to be updated
+	 * @return review details
+	 * @throws Exception API or connection errors
+	 */
+	public SwarmReviewAPI getSwarmReview(String review, boolean revalidate) throws Exception {
 
 		String url = getApiUrl() + "/reviews/" + review;
 
 		Map<String, Object> query = new HashMap<>();
 		query.put("fields", "projects,changes,commits,author");
 
-		HttpResponse<String> res = Unirest.get(url)
-				.basicAuth(user, ticket)
-				.queryString(query)
-				.asString();
-
-		if (res.getStatus() != 200) {
-			throw new SwarmException(res);
-		}
-
 		Gson gson = new Gson();
-		SwarmReviewAPI api = gson.fromJson(res.getBody(), SwarmReviewAPI.class);
+		SwarmReviewAPI api = gson.fromJson(getCached(url, query, revalidate), SwarmReviewAPI.class);
 		return api;
 	}
 
@@ -224,17 +356,8 @@ public class SwarmHelper {
 		Map<String, Object> query = new HashMap<>();
 		query.put("fields", "branches");
 
-		HttpResponse<String> res = Unirest.get(url)
-				.basicAuth(user, ticket)
-				.queryString(query)
-				.asString();
-
-		if (res.getStatus() != 200) {
-			throw new SwarmException(res);
-		}
-
 		Gson gson = new Gson();
-		SwarmProjectAPI api = gson.fromJson(res.getBody(), SwarmProjectAPI.class);
+		SwarmProjectAPI api = gson.fromJson(getCached(url, query), SwarmProjectAPI.class);
 
 		List<SwarmProjectAPI.Branch> branches = api.getProject().getBranches();
 		return branches;
@@ -253,27 +376,161 @@ public class SwarmHelper {
 		Map<String, Object> query = new HashMap<>();
 		query.put("fields", "id,members,owners");
 
-		HttpResponse<String> res = Unirest.get(url)
-				.basicAuth(user, ticket)
-				.queryString(query)
-				.asString();
+		Gson gson = new Gson();
+		SwarmProjectsAPI api = gson.fromJson(getCached(url, query), SwarmProjectsAPI.class);
+
+		List<String> projects = api.getIDsByUser(user);
+		return projects;
+	}
+
+	private String getCached(String url, Map<String, Object> query) throws Exception {
+		return getCached(url, query, false);
+	}
 
-		if (res.getStatus() != 200) {
+	/**
+	 * GET a read-only resource, reusing a recent response or revalidating
+	 * an older one with its ETag.
+	 *
+	 * @param url        resource URL
+	 * @param query      query parameters
+	 * @param revalidate true to revalidate even a recent response
+	 * @return response body
+	 * @throws Exception push up stack
+	 */
+	private String getCached(String url, Map<String, Object> query, boolean revalidate) throws Exception {
+		String key = user + "@" + url + "?" + new TreeMap<>(query);
+		Cached cached;
+		synchronized (cache) {
+			cached = cache.get(key);
+		}
+		if (cached != null && !revalidate && System.currentTimeMillis() - cached.fetched < ttl) {
+			return cached.body;
+		}
+
+		HttpGet request = new HttpGet(getUri(url, query));
+		if (cached != null && cached.etag != null) {
+			request.setHeader(HttpHeaders.IF_NONE_MATCH, cached.etag);
+		}
+		Response res = execute(request);
+
+		Cached response;
+		if (res.status == 304 && cached != null) {
+			logger.fine("Swarm: not modified: " + url);
+			response = new Cached(cached.etag, cached.body);
+		} else if (res.status == 200) {
+			response = new Cached(res.etag, res.body);
+		} else {
 			throw new SwarmException(res);
 		}
 
-		Gson gson = new Gson();
-		SwarmProjectsAPI api = gson.fromJson(res.getBody(), SwarmProjectsAPI.class);
+		if (ttl > 0) {
+			synchronized (cache) {
+				cache.put(key, response);
+			}
+		}
+		return response.body;
+	}
 
-		List<String> projects = api.getIDsByUser(user);
-		return projects;
+	/**
+	 * Send a request as the Perforce user, authenticated with the ticket.
+	 *
+	 * @param request request to send
+	 * @return status and body of the response
+	 * @throws IOException push up stack
+	 */
+	private Response execute(HttpRequestBase request) throws IOException {
+		String auth = user + ":" + ticket;
+		request.setHeader(HttpHeaders.AUTHORIZATION,
+				"Basic " + Base64.getEncoder().encodeToString(auth.getBytes(StandardCharsets.UTF_8)));
+
+		try (CloseableHttpResponse res = client.execute(request)) {
+			HttpEntity entity = res.getEntity();
+			String body = (entity == null) ? null : EntityUtils.toString(entity, StandardCharsets.UTF_8);
+			Header etag = res.getFirstHeader(HttpHeaders.ETAG);
+			return new Response(res.getStatusLine().getStatusCode(), res.getStatusLine().getReasonPhrase(),
+					(etag == null) ? null : etag.getValue(), body);
+		}
+	}
+
+	private static URI getUri(String url, Map<String, Object> query) throws URISyntaxException {
+		URIBuilder uri = new URIBuilder(url);
+		for (Map.Entry<String, Object> entry : query.entrySet()) {
+			uri.addParameter(entry.getKey(), String.valueOf(entry.getValue()));
+		}
+		return uri.build();
+	}
+
+	private static HttpEntityEnclosingRequestBase withFields(HttpEntityEnclosingRequestBase request, Map<String, Object> fields) {
+		List<NameValuePair> form = new ArrayList<>();
+		for (Map.Entry<String, Object> entry : fields.entrySet()) {
+			form.add(new BasicNameValuePair(entry.getKey(), String.valueOf(entry.getValue())));
+		}
+		request.setEntity(new UrlEncodedFormEntity(form, StandardCharsets.UTF_8));
+		return request;
+	}
+
+	/**
+	 * Set how long responses are reused before they are revalidated (for
+	 * tests and the script console).
+	 *
+	 * @param seconds time to live, 0 to disable the cache
+	 */
+	public static void setTtl(long seconds) {
+		ttl = TimeUnit.SECONDS.toMillis(seconds);
+	}
+
+	public static void clear() {
+		synchronized (cache) {
+			cache.clear();
+		}
+	}
+
+	private static final class Cached {
+
+		private final long fetched = System.currentTimeMillis();
+		private final String etag;
+		private final String body;
+
+		private Cached(String etag, String body) {
+			this.etag = etag;
+			this.body = body;
+		}
+	}
+
+	private static final class Response {
+
+		private final int status;
+		private final String reason;
+		private final String etag;
+		private final String body;
+
+		private Response(int status, String reason, String etag, String body) {
+			this.status = status;
+			this.reason = reason;
+			this.etag = etag;
+			this.body = body;
+		}
+
+		/**
+		 * @return the error message of a Swarm JSON error, else the body.
+		 */
+		private String getError() {
+			if (body == null) {
+				return null;
+			}
+			try {
+				return new JSONObject(body).optString("error", body);
+			} catch (JSONException e) {
+				return body;
+			}
+		}
 	}
 
 	private static class SwarmException extends Exception {
 		static final long serialVersionUID = 1;
 
-		public SwarmException(HttpResponse<?> res) {
-			super("Swarm error - code: " + res.getStatus() + "\n error: " + res.getStatusText());
+		public SwarmException(Response res) {
+			super("Swarm error - code: " + res.status + "\n error: " + res.reason);
 		}
 	}
 }
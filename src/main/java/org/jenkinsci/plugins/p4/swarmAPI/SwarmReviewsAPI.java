@@ -1,15 +1,19 @@
 package org.jenkinsci.plugins.p4.swarmAPI;
 
+import java.util.HashMap;
 import java.util.List;
 
 public class SwarmReviewsAPI {
 
 	private List<Reviews> reviews;
+	private Long lastSeen;
 
 	public static class Reviews {
 		private long id;
 		private List<Long> changes;
 		private String author;
+		private HashMap<String, List<String>> projects;
+		private long updated;
 
 		public long getId() {
 			return id;
@@ -23,11 +27,31 @@ public class SwarmReviewsAPI {
 			return author;
 		}
 
+		/**
+		 * @return branches in the review by project, or null if not fetched.
+		 */
+		public HashMap<String, List<String>> getProjects() {
+			return projects;
+		}
+
+		/**
+		 * @return time of the last update (seconds since the epoch), or 0 if not fetched.
+		 */
+		public long getUpdated() {
+			return updated;
+		}
+
 		public Reviews(long id, List<Long> changes, String author) {
 			this.id = id;
 			this.changes = changes;
 			this.author = author;
 		}
+
+		public Reviews(long id, List<Long> changes, String author, HashMap<String, List<String>> projects, long updated) {
+			this(id, changes, author);
+			this.projects = projects;
+			this.updated = updated;
+		}
 	}
 
 	public SwarmReviewsAPI() {
@@ -37,7 +61,19 @@ public class SwarmReviewsAPI {
 		this.reviews = reviews;
 	}
 
+	public SwarmReviewsAPI(List<Reviews> reviews, Long lastSeen) {
+		this.reviews = reviews;
+		this.lastSeen = lastSeen;
+	}
+
 	public List<Reviews> getReviews() {
 		return reviews;
 	}
+
+	/**
+	 * @return ID of the last review in the page, to fetch the next page, or null.
+	 */
+	public Long getLastSeen() {
+		return lastSeen;
+	}
 }
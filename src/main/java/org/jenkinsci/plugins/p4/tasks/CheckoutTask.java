@@ -2,6 +2,7 @@ package org.jenkinsci.plugins.p4.tasks;
 
 import com.perforce.p4java.core.IChangelistSummary;
 import com.perforce.p4java.core.IRepo;
+import com.perforce.p4java.exception.P4JavaException;
 import com.perforce.p4java.impl.generic.core.Label;
 import com.perforce.p4java.server.IOptionsServer;
 import com.perforce.p4java.server.callback.ICommandCallback;
@@ -11,6 +12,7 @@ import hudson.model.Run;
 import hudson.model.TaskListener;
 import hudson.remoting.VirtualChannel;
 import jenkins.security.Roles;
+import org.jenkinsci.plugins.p4.changes.P4ChangeBatch;
 import org.jenkinsci.plugins.p4.changes.P4ChangeEntry;
 import org.jenkinsci.plugins.p4.changes.P4ChangeRef;
 import org.jenkinsci.plugins.p4.changes.P4LabelRef;
@@ -28,8 +30,10 @@ import org.jenkinsci.remoting.RoleSensitive;
 import java.io.File;
 import java.io.IOException;
 import java.io.Serializable;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.function.Consumer;
 import java.util.logging.Logger;
 
 public class CheckoutTask extends AbstractTask implements FileCallable<Boolean>, Serializable {
@@ -44,6 +48,7 @@ public class CheckoutTask extends AbstractTask implements FileCallable<Boolean>,
 	private long head;
 	private List<P4Ref> builds;
 	private long review;
+	private String swarm;
 
 	/**
 	 * Constructor
@@ -143,6 +148,9 @@ public class CheckoutTask extends AbstractTask implements FileCallable<Boolean>,
 				}
 			}
 
+			// Record Swarm URL for the changelog (avoids a lookup per changelog parse)
+			swarm = getSwarm(p4);
+
 			// Generate build report
 			StringBuffer buildReport = new StringBuffer("P4: builds: ");
 			for (P4Ref build : builds) {
@@ -156,6 +164,16 @@ public class CheckoutTask extends AbstractTask implements FileCallable<Boolean>,
 		}
 	}
 
+	private String getSwarm(ClientHelper p4) {
+		try {
+			return p4.getSwarm();
+		} catch (P4JavaException e) {
+			// not supported by older P4 versions
+			logger.fine("P4: unable to get Swarm URL: " + e.getMessage());
+			return null;
+		}
+	}
+
 	/**
 	 * Invoke sync on build node (master or remote node).
 	 *
@@ -292,8 +310,20 @@ public class CheckoutTask extends AbstractTask implements FileCallable<Boolean>,
 	}
 
 	public List<P4ChangeEntry> getChangesFull(List<P4Ref> lastRefs) {
-
 		List<P4ChangeEntry> changesFull = new ArrayList<>();
+		getChangesFull(lastRefs, changesFull::add);
+		return changesFull;
+	}
+
+	/**
+	 * Fetch all changes for this build, passing each entry to the consumer as
+	 * soon as it has been fetched.
+	 *
+	 * @param lastRefs changes built by the previous build
+	 * @param consumer receives each change entry, may throw
+	 *                 {@link UncheckedIOException} which is passed up
+	 */
+	public void getChangesFull(List<P4Ref> lastRefs, Consumer<P4ChangeEntry> consumer) {
 
 		// Add changes to this build.
 		try (ClientHelper p4 = new ClientHelper(getCredential(), getListener(), getWorkspace())) {
@@ -301,7 +331,7 @@ public class CheckoutTask extends AbstractTask implements FileCallable<Boolean>,
 				P4ChangeEntry cl = new P4ChangeEntry();
 				IChangelistSummary pending = p4.getChange(review);
 				cl.setChange(p4, pending);
-				changesFull.add(cl);
+				consumer.accept(cl);
 			}
 
 			// add all changes to list
@@ -311,24 +341,23 @@ public class CheckoutTask extends AbstractTask implements FileCallable<Boolean>,
 					List<P4Ref> commits = p4.listCommits(lastRefs, build);
 					for (P4Ref ref : commits) {
 						P4ChangeEntry cl = ref.getChangeEntry(p4);
-						changesFull.add(cl);
+						consumer.accept(cl);
 					}
 				} else {
-					// add classic changes
+					// add classic changes (batched describe/fixes)
 					List<P4Ref> changes = p4.listChanges(lastRefs, build);
-					for (P4Ref change : changes) {
-						P4ChangeEntry cl = change.getChangeEntry(p4);
-						changesFull.add(cl);
-					}
+					P4ChangeBatch batch = new P4ChangeBatch(p4);
+					batch.getChangeEntries(changes, consumer);
 				}
 			}
+		} catch (UncheckedIOException e) {
+			// the consumer failed to save an entry, the changelog is incomplete
+			throw e;
 		} catch (Exception e) {
 			String err = "Unable to get full changes: " + e;
 			logger.severe(err);
 			e.printStackTrace();
 		}
-
-		return changesFull;
 	}
 
 	public P4ChangeEntry getCurrentChange() {
@@ -384,6 +413,10 @@ public class CheckoutTask extends AbstractTask implements FileCallable<Boolean>,
 		return review;
 	}
 
+	public String getSwarm() {
+		return swarm;
+	}
+
 	public void checkRoles(RoleChecker checker) throws SecurityException {
 		checker.check((RoleSensitive) this, Roles.SLAVE);
 	}
@@ -1,9 +1,8 @@
 package org.jenkinsci.plugins.p4.tasks;
 
+import com.perforce.p4java.core.IChangelistSummary;
 import com.perforce.p4java.core.IRepo;
 import com.perforce.p4java.core.file.IFileSpec;
-import com.perforce.p4java.exception.AccessException;
-import com.perforce.p4java.exception.RequestException;
 import com.perforce.p4java.impl.generic.core.Changelist;
 import hudson.FilePath.FileCallable;
 import hudson.model.Run;
@@ -15,10 +14,7 @@ import org.jenkinsci.plugins.p4.changes.P4LabelRef;
 import org.jenkinsci.plugins.p4.changes.P4Ref;
 import org.jenkinsci.plugins.p4.client.ClientHelper;
 import org.jenkinsci.plugins.p4.filters.Filter;
-import org.jenkinsci.plugins.p4.filters.FilterPathImpl;
-import org.jenkinsci.plugins.p4.filters.FilterPatternListImpl;
-import org.jenkinsci.plugins.p4.filters.FilterUserImpl;
-import org.jenkinsci.plugins.p4.filters.FilterViewMaskImpl;
+import org.jenkinsci.plugins.p4.filters.FilterEngine;
 import org.jenkinsci.remoting.RoleChecker;
 import org.jenkinsci.remoting.RoleSensitive;
 
@@ -26,14 +22,18 @@ import java.io.File;
 import java.io.IOException;
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.Map;
 
 public class PollTask extends AbstractTask implements FileCallable<List<P4Ref>>, Serializable {
 
 	private static final long serialVersionUID = 1L;
 
+	// Number of changes described per 'p4 describe -s' command
+	private static final int CHUNK = Integer.getInteger(PollTask.class.getName() + ".chunk", 50);
+
 	private final List<Filter> filter;
 	private final List<P4Ref> lastRefs;
 
@@ -62,19 +62,7 @@ public class PollTask extends AbstractTask implements FileCallable<List<P4Ref>>,
 		}
 
 		// filter changes...
-		List<P4Ref> remainder = new ArrayList<P4Ref>();
-		for (P4Ref c : changes) {
-			long change = c.getChange();
-			if (change > 0) {
-				Changelist changelist = p4.getChange(change);
-				// add unfiltered changes to remainder list
-				if (!filterChange(changelist, filter)) {
-					remainder.add(new P4ChangeRef(changelist.getId()));
-					p4.log("... found change: " + changelist.getId());
-				}
-			}
-		}
-		changes = remainder;
+		changes = filterChanges(p4, changes, new FilterEngine(filter));
 
 		// Poll Graph commit changes
 		if (p4.checkVersion(20171)) {
@@ -98,113 +86,127 @@ public class PollTask extends AbstractTask implements FileCallable<List<P4Ref>>,
 	}
 
 	/**
-	 * Returns true if change should be filtered
+	 * Returns the changes not excluded by the filters, in the same order.
+	 * <p>
+	 * User filters are checked first against a single 'p4 changes' over the
+	 * candidate range; the files for the remaining changes are fetched with a
+	 * 'p4 describe -s' per chunk. Changes missing from either result are
+	 * described individually.
 	 *
-	 * @param changelist
-	 * @throws AccessException
-	 * @throws RequestException
-	 * @throws Exception
+	 * @param p4      Perforce connection
+	 * @param changes candidate changes
+	 * @param engine  compiled filters
+	 * @return unfiltered changes
+	 * @throws Exception push up stack
 	 */
-	private boolean filterChange(Changelist changelist, List<Filter> scmFilter) throws Exception {
-		// exit early if no filters
-		if (scmFilter == null) {
-			return false;
+	private List<P4Ref> filterChanges(ClientHelper p4, List<P4Ref> changes, FilterEngine engine) throws Exception {
+		List<Long> ids = new ArrayList<>();
+		for (P4Ref c : changes) {
+			if (c.getChange() > 0) {
+				ids.add(c.getChange());
+			}
 		}
 
-		String user = changelist.getUsername();
-		List<IFileSpec> files = changelist.getFiles(true);
-
-		for (Filter f : scmFilter) {
-			// Scan through User filters
-			if (f instanceof FilterUserImpl) {
-				// return is user matches filter
-				String u = ((FilterUserImpl) f).getUser();
-				if (u.equalsIgnoreCase(user)) {
-					return true;
-				}
-			}
+		List<P4Ref> remainder = new ArrayList<P4Ref>();
 
-			// Scan through Path filters
-			if (f instanceof FilterPathImpl) {
-				// add unmatched files to remainder list
-				List<IFileSpec> remainder = new ArrayList<IFileSpec>();
-				String path = ((FilterPathImpl) f).getPath();
-				for (IFileSpec s : files) {
-					String p = s.getDepotPathString();
-					if (!p.startsWith(path)) {
-						remainder.add(s);
-					}
-				}
+		// exit early if no filters
+		if (engine.isEmpty()) {
+			for (Long change : ids) {
+				remainder.add(new P4ChangeRef(change));
+				p4.log("... found change: " + change);
+			}
+			return remainder;
+		}
 
-				// update files with remainder
-				files = remainder;
+		if (ids.size() < 2) {
+			for (Long change : ids) {
+				filterChange(p4, change, engine, remainder);
+			}
+			return remainder;
+		}
 
-				// add if all files are removed then remove change
-				if (files.isEmpty()) {
-					return true;
+		// users: one 'p4 changes' over the candidate range
+		Map<Long, String> users = new HashMap<>();
+		if (engine.hasUserFilter()) {
+			long min = Collections.min(ids);
+			long max = Collections.max(ids);
+			String path = "//" + p4.getClient().getName() + "/...@" + min + "," + max;
+			for (IChangelistSummary summary : p4.getChangeSummaries(path, 0, false)) {
+				if (summary != null) {
+					users.put((long) summary.getId(), summary.getUsername());
 				}
 			}
+		}
 
-			// Scan through View Mask filters
-			if (f instanceof FilterViewMaskImpl) {
-				// at least one file in the change must be contained in the view mask
-				List<IFileSpec> included = new ArrayList<IFileSpec>();
-
-				String viewMask = ((FilterViewMaskImpl) f).getViewMask();
-				String[] maskPaths = viewMask.split("\\R");
-				for (IFileSpec s : files) {
-					boolean isFileInViewMask = false;
-					String p = s.getDepotPathString();
-					for (String maskPath : maskPaths) {
-						if (p.startsWith(maskPath)) {
-							isFileInViewMask = true;
-						}
-
-						if (maskPath.startsWith("-")) {
-							String excludedMaskPath = maskPath.substring(maskPath.indexOf("-") + 1);
-							if (p.startsWith(excludedMaskPath)) {
-								isFileInViewMask = false;
-							}
-						}
-					}
+		for (int i = 0; i < ids.size(); i += CHUNK) {
+			List<Long> chunk = ids.subList(i, Math.min(i + CHUNK, ids.size()));
 
-					if (isFileInViewMask) {
-						included.add(s);
-					}
+			// files: one 'p4 describe -s' per chunk, skipping changes excluded by user
+			List<Long> describe = new ArrayList<>();
+			for (Long change : chunk) {
+				if (engine.hasUserFilter() && !users.containsKey(change)) {
+					continue;
 				}
-
-				if (included.isEmpty()) {
-					return true;
+				if (engine.hasUserFilter() && engine.isUserFiltered(users.get(change))) {
+					continue;
 				}
+				describe.add(change);
+			}
+			Map<Long, List<IFileSpec>> files = new HashMap<>();
+			if (engine.hasFileFilter() && !describe.isEmpty()) {
+				files = p4.getChangeFiles(describe, 0);
 			}
 
-			// Scan through Pattern List filters
-			if (f instanceof FilterPatternListImpl) {
-				List<Pattern> patterns = ((FilterPatternListImpl) f).getPatternList();
-				boolean foundMatchingChange = false;
-
-				for (IFileSpec s : files) {
-					String p = s.getDepotPathString();
-					
-					for (Pattern pattern : patterns) {
-						Matcher matcher = pattern.matcher(p);
-						if(matcher.matches()) {
-							foundMatchingChange = true;
-							break;
-						}
+			for (Long change : chunk) {
+				if (engine.hasUserFilter() && !users.containsKey(change)) {
+					filterChange(p4, change, engine, remainder);
+					continue;
+				}
+				if (!describe.contains(change)) {
+					continue;
+				}
+				if (engine.hasFileFilter()) {
+					if (!files.containsKey(change)) {
+						filterChange(p4, change, engine, remainder);
+						continue;
 					}
-					
-					if (foundMatchingChange) {
-						break;
+					if (engine.isFileFiltered(getPaths(files.get(change)))) {
+						continue;
 					}
 				}
-				
-				// If we've found a change matching one of our patterns, do not filter!
-				return !foundMatchingChange;
+				remainder.add(new P4ChangeRef(change));
+				p4.log("... found change: " + change);
 			}
+		}
+		return remainder;
+	}
 
+	/**
+	 * Describe a single change and apply the filters, adding the change to
+	 * the remainder list if it is not filtered.
+	 */
+	private void filterChange(ClientHelper p4, long change, FilterEngine engine, List<P4Ref> remainder)
+			throws Exception {
+		Changelist changelist = p4.getChange(change);
+		String user = changelist.getUsername();
+		if (engine.isUserFiltered(user)) {
+			return;
+		}
+		if (engine.hasFileFilter() && engine.isFileFiltered(getPaths(changelist.getFiles(true)))) {
+			return;
+		}
+		remainder.add(new P4ChangeRef(changelist.getId()));
+		p4.log("... found change: " + changelist.getId());
+	}
+
+	private List<String> getPaths(List<IFileSpec> files) {
+		List<String> paths = new ArrayList<>();
+		if (files != null) {
+			for (IFileSpec s : files) {
+				paths.add(s.getDepotPathString());
+			}
 		}
-		return false;
+		return paths;
 	}
 
 	public void checkRoles(RoleChecker checker) throws SecurityException {
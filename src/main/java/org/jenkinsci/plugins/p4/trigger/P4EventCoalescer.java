@@ -0,0 +1,286 @@
+package org.jenkinsci.plugins.p4.trigger;
+
+import jenkins.model.Jenkins;
+import jenkins.scm.api.SCMEvent;
+import jenkins.scm.api.SCMHeadEvent;
+import jenkins.util.Timer;
+import net.sf.json.JSONObject;
+import org.acegisecurity.Authentication;
+import org.jenkinsci.plugins.p4.review.ReviewProp;
+import org.jenkinsci.plugins.p4.scm.events.P4BranchSCMHeadEvent;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Merges bursts of P4Hook events before they reach the trigger dispatcher
+ * or the multibranch sources.
+ * <p>
+ * Events are held for a quiet period; each new event for the same key
+ * restarts the wait (up to a maximum delay), then one event is emitted.
+ * '/p4/change' events are merged per P4PORT into a single poll sweep with
+ * all their changes. '/p4/event' events are merged per P4PORT, event type
+ * and payload (other than the change) into one {@link P4BranchSCMHeadEvent}
+ * for the range of changes, so each branch is looked up once with its
+ * highest change.
+ */
+public final class P4EventCoalescer {
+
+	private static Logger logger = Logger.getLogger(P4EventCoalescer.class.getName());
+
+	private static final String PREFIX = P4EventCoalescer.class.getName();
+
+	// Wait for this long without events before emitting
+	private static long quietPeriod = TimeUnit.SECONDS.toMillis(Long.getLong(PREFIX + ".quietPeriod", 2L));
+
+	// Never hold an event for longer than this during a storm
+	private static long maxDelay = TimeUnit.SECONDS.toMillis(Long.getLong(PREFIX + ".maxDelay", 30L));
+
+	private static final Map<String, Window> windows = new HashMap<>();
+
+	private P4EventCoalescer() {
+	}
+
+	/**
+	 * Set the quiet period (for tests and the script console).
+	 *
+	 * @param seconds quiet period, 0 to emit every event immediately
+	 */
+	public static void setQuietPeriod(long seconds) {
+		quietPeriod = TimeUnit.SECONDS.toMillis(seconds);
+	}
+
+	/**
+	 * Set the maximum time an event is held (for tests and the script
+	 * console).
+	 *
+	 * @param seconds maximum delay
+	 */
+	public static void setMaxDelay(long seconds) {
+		maxDelay = TimeUnit.SECONDS.toMillis(seconds);
+	}
+
+	/**
+	 * A change was submitted; poll the triggered jobs on the P4PORT that
+	 * the current user can read.
+	 *
+	 * @param port   P4PORT from the trigger event
+	 * @param change submitted change, or 0 if not known
+	 */
+	public static void change(String port, long change) {
+		change(port, change, Jenkins.getAuthentication());
+	}
+
+	/**
+	 * A change was submitted; poll the triggered jobs on the P4PORT that
+	 * the caller can read.
+	 *
+	 * @param port   P4PORT from the trigger event
+	 * @param change submitted change, or 0 if not known
+	 * @param caller user that sent the event, captured on the request thread
+	 */
+	public static void change(String port, long change, Authentication caller) {
+		ChangeWindow window = new ChangeWindow(port, change, caller);
+		if (quietPeriod <= 0) {
+			window.emit();
+			return;
+		}
+		add("change:" + port, window);
+	}
+
+	/**
+	 * A multibranch event; fire a {@link P4BranchSCMHeadEvent}.
+	 *
+	 * @param type    event type
+	 * @param payload JSON payload
+	 * @param origin  event origin
+	 */
+	public static void event(SCMEvent.Type type, JSONObject payload, String origin) {
+		EventWindow window = new EventWindow(type, payload, origin);
+
+		// labels and unknown changes are not merged
+		if (quietPeriod <= 0 || window.change <= 0) {
+			window.emit();
+			return;
+		}
+		add("event:" + type + ":" + getKey(payload), window);
+	}
+
+	/**
+	 * Emit all waiting events now.
+	 */
+	public static void flush() {
+		List<Window> list;
+		synchronized (windows) {
+			list = new ArrayList<>(windows.values());
+			windows.clear();
+		}
+		for (Window window : list) {
+			window.emit();
+		}
+	}
+
+	private static void add(String key, Window window) {
+		long now = System.currentTimeMillis();
+		synchronized (windows) {
+			Window current = windows.get(key);
+			if (current != null) {
+				current.merge(window);
+				current.deadline = Math.min(now + quietPeriod, current.started + maxDelay);
+				return;
+			}
+			window.started = now;
+			window.deadline = now + quietPeriod;
+			windows.put(key, window);
+		}
+		schedule(key, window, quietPeriod);
+	}
+
+	private static void schedule(String key, Window window, long delay) {
+		Timer.get().schedule(() -> expire(key, window), delay, TimeUnit.MILLISECONDS);
+	}
+
+	private static void expire(String key, Window window) {
+		synchronized (windows) {
+			if (windows.get(key) != window) {
+				// already flushed
+				return;
+			}
+			long remaining = window.deadline - System.currentTimeMillis();
+			if (remaining > 0) {
+				schedule(key, window, remaining);
+				return;
+			}
+			windows.remove(key);
+		}
+
+		try {
+			window.emit();
+		} catch (RuntimeException e) {
+			logger.severe("P4: unable to emit trigger event: " + e);
+		}
+	}
+
+	/**
+	 * @return the payload without its change, with sorted keys.
+	 */
+	private static String getKey(JSONObject payload) {
+		Map<String, Object> map = new TreeMap<>();
+		for (Object k : payload.keySet()) {
+			String key = String.valueOf(k);
+			if (!ReviewProp.P4_CHANGE.getProp().equals(key)) {
+				map.put(key, payload.get(key));
+			}
+		}
+		return map.toString();
+	}
+
+	private static long parseChange(String change) {
+		if (change == null) {
+			return 0;
+		}
+		try {
+			return Long.parseLong(change.trim());
+		} catch (NumberFormatException e) {
+			return 0;
+		}
+	}
+
+	private static abstract class Window {
+
+		private long started;
+		private long deadline;
+
+		abstract void merge(Window next);
+
+		abstract void emit();
+	}
+
+	private static final class ChangeWindow extends Window {
+
+		private final String port;
+
+		// users that sent the merged events, by name
+		private final Map<String, Authentication> callers = new LinkedHashMap<>();
+
+		// null once any event had no change
+		private Set<Long> changes = new HashSet<>();
+
+		private ChangeWindow(String port, long change, Authentication caller) {
+			this.port = port;
+			this.callers.put(caller.getName(), caller);
+			add(change);
+		}
+
+		private void add(long change) {
+			if (change <= 0) {
+				changes = null;
+			} else if (changes != null) {
+				changes.add(change);
+			}
+		}
+
+		@Override
+		void merge(Window next) {
+			ChangeWindow window = (ChangeWindow) next;
+			window.callers.forEach(callers::putIfAbsent);
+			if (window.changes == null) {
+				changes = null;
+			} else {
+				for (Long change : window.changes) {
+					add(change);
+				}
+			}
+		}
+
+		@Override
+		void emit() {
+			if (changes != null && changes.size() > 1) {
+				logger.fine("P4: coalesced " + changes.size() + " trigger events for: " + port);
+			}
+			P4TriggerDispatcher.get().dispatch(port, changes, callers.values());
+		}
+	}
+
+	private static final class EventWindow extends Window {
+
+		private final SCMEvent.Type type;
+		private final String origin;
+		private final long change;
+
+		// change to payload
+		private final TreeMap<Long, JSONObject> payloads = new TreeMap<>(Comparator.reverseOrder());
+
+		private EventWindow(SCMEvent.Type type, JSONObject payload, String origin) {
+			this.type = type;
+			this.origin = origin;
+			this.change = parseChange(payload.optString(ReviewProp.P4_CHANGE.getProp(), null));
+			payloads.put(change, payload);
+		}
+
+		@Override
+		void merge(Window next) {
+			EventWindow window = (EventWindow) next;
+			payloads.putAll(window.payloads);
+		}
+
+		@Override
+		void emit() {
+			List<JSONObject> list = new ArrayList<>(payloads.values());
+			if (list.size() > 1) {
+				logger.fine("P4: coalesced " + list.size() + " events, changes "
+						+ payloads.lastKey() + " to " + payloads.firstKey());
+			}
+			SCMHeadEvent.fireNow(new P4BranchSCMHeadEvent(type, list, origin));
+		}
+	}
+}
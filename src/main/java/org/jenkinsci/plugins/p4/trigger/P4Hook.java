@@ -1,29 +1,22 @@
 package org.jenkinsci.plugins.p4.trigger;
 
-import edu.umd.cs.findbugs.annotations.CheckForNull;
 import hudson.Extension;
 import hudson.model.Item;
-import hudson.model.Job;
 import hudson.model.UnprotectedRootAction;
 import jenkins.model.Jenkins;
-import jenkins.model.ParameterizedJobMixIn;
 import jenkins.scm.api.SCMEvent;
-import jenkins.scm.api.SCMHeadEvent;
 import net.sf.json.JSONObject;
 import org.apache.commons.io.IOUtils;
 import org.jenkinsci.plugins.p4.review.ReviewProp;
-import org.jenkinsci.plugins.p4.scm.events.P4BranchSCMHeadEvent;
 import org.kohsuke.stapler.StaplerRequest;
 import org.kohsuke.stapler.StaplerResponse;
+import org.kohsuke.stapler.verb.GET;
 import org.kohsuke.stapler.verb.POST;
 
 import javax.servlet.ServletException;
 import java.io.IOException;
 import java.net.URLDecoder;
 import java.nio.charset.Charset;
-import java.util.List;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.logging.Logger;
 
 import static hudson.Functions.checkPermission;
@@ -31,8 +24,6 @@ import static hudson.Functions.checkPermission;
 @Extension
 public class P4Hook implements UnprotectedRootAction {
 
-	ExecutorService executorService = Executors.newSingleThreadExecutor();
-
 	public static final String URLNAME = "p4";
 
 	@Override
@@ -70,7 +61,8 @@ public class P4Hook implements UnprotectedRootAction {
 		String typeString = payload.getString(ReviewProp.EVENT_TYPE.getProp());
 		SCMEvent.Type eventType = SCMEvent.Type.valueOf(typeString);
 
-		SCMHeadEvent.fireNow(new P4BranchSCMHeadEvent(eventType, payload, SCMEvent.originOf(req)));
+		// Bursts of events are merged before they reach the sources
+		P4EventCoalescer.event(eventType, payload, SCMEvent.originOf(req));
 	}
 
 	@POST
@@ -88,28 +80,17 @@ public class P4Hook implements UnprotectedRootAction {
 			JSONObject payload = JSONObject.fromObject(body);
 
 			final String port = payload.getString("p4port");
-			//final String change = payload.getString("change");
-			final List<Job> jobs = getJobs();
+			final long change = parseChange(payload.optString("change"));
 
-			LOGGER.info("Received trigger event for: " + port);
+			LOGGER.info("Received trigger event for: " + port + " change: " + change);
 			if (port == null) {
 				LOGGER.warning("p4port must be specified");
 				return;
 			}
 
-			// Use an executor to prevent blocking the trigger during polling
-			executorService.submit(new Runnable() {
-
-				@Override
-				public void run() {
-					try {
-						probeJobs(port, jobs);
-					} catch (IOException e) {
-						LOGGER.severe("Error on Polling Thread.");
-						e.printStackTrace();
-					}
-				}
-			});
+			// Polls are merged and queued on the dispatcher to prevent blocking the trigger;
+			// only jobs the caller can read are polled
+			P4EventCoalescer.change(port, change, Jenkins.getAuthentication());
 		}
 	}
 
@@ -121,12 +102,11 @@ public class P4Hook implements UnprotectedRootAction {
 		JSONObject formData = req.getSubmittedForm();
 		if (!formData.isEmpty()) {
 			String port = req.getParameter("_.p4port");
-			//String change = req.getParameter("_.change");
-			List<Job> jobs = getJobs();
+			long change = parseChange(req.getParameter("_.change"));
 
 			LOGGER.info("Manual trigger event: ");
 			if (port != null) {
-				probeJobs(port, jobs);
+				P4EventCoalescer.change(port, change, Jenkins.getAuthentication());
 			} else {
 				LOGGER.warning("p4port must be specified");
 			}
@@ -136,36 +116,36 @@ public class P4Hook implements UnprotectedRootAction {
 		}
 	}
 
-	private void probeJobs(@CheckForNull String port, List<Job> jobs) throws IOException {
-		for (Job<?, ?> job : jobs) {
-			if (!job.isBuildable()) {
-				continue;
-			}
-			LOGGER.fine("P4: trying: " + job.getName());
-
-			P4Trigger trigger = null;
-			if (job instanceof ParameterizedJobMixIn.ParameterizedJob) {
-				ParameterizedJobMixIn.ParameterizedJob pJob = (ParameterizedJobMixIn.ParameterizedJob) job;
-				for (Object t : pJob.getTriggers().values()) {
-					if (t instanceof P4Trigger) {
-						trigger = (P4Trigger) t;
-						break;
-					}
-				}
-			}
+	/**
+	 * Trigger pool metrics (queue depth, latency and counters) as JSON.
+	 *
+	 * @param rsp response
+	 * @throws IOException push up stack
+	 */
+	@GET
+	public void doMetrics(StaplerResponse rsp) throws IOException {
 
-			if (trigger != null) {
-				LOGGER.info("P4: probing: " + job.getName());
-				trigger.poke(job, port);
-			} else {
-				LOGGER.fine("P4: trigger not set: " + job.getName());
-			}
-		}
+		checkPermission(Jenkins.ADMINISTER);
+
+		JSONObject json = JSONObject.fromObject(P4TriggerDispatcher.get().getMetrics());
+		rsp.setContentType("application/json;charset=UTF-8");
+		rsp.getWriter().print(json.toString());
 	}
 
-	private List<Job> getJobs() {
-		Jenkins j = Jenkins.getInstance();
-		return j.getAllItems(Job.class);
+	/**
+	 * @param change change number from the trigger, may be empty
+	 * @return the change, or 0 if missing or invalid (polls all jobs)
+	 */
+	private static long parseChange(String change) {
+		if (change == null || change.trim().isEmpty()) {
+			return 0;
+		}
+		try {
+			return Long.parseLong(change.trim());
+		} catch (NumberFormatException e) {
+			LOGGER.fine("Ignoring invalid change: " + change);
+			return 0;
+		}
 	}
 
 	final static Logger LOGGER = Logger.getLogger(P4Hook.class.getName());
@@ -0,0 +1,271 @@
+package org.jenkinsci.plugins.p4.trigger;
+
+import com.perforce.p4java.client.IClient;
+import com.perforce.p4java.core.IRepo;
+import com.perforce.p4java.core.file.IFileSpec;
+import hudson.model.Job;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+import hudson.util.LogTaskListener;
+import org.jenkinsci.plugins.p4.client.ConnectionHelper;
+import org.jenkinsci.plugins.p4.client.ViewMatcher;
+import org.jenkinsci.plugins.p4.credentials.P4BaseCredentials;
+import org.jenkinsci.plugins.p4.tagging.TagAction;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Decides if submitted changes can affect a job, by matching the files in
+ * each change against the client views used by the job's last build.
+ * <p>
+ * The files of a change are fetched once per credential and shared by all
+ * jobs; client views are cached per job until its next build or
+ * configuration change. When anything is unknown (no previous build, a
+ * configuration saved since the last build, a change view, graph repos, a
+ * truncated file list or a server error) the job is treated as affected and
+ * polls as before.
+ */
+public final class P4TriggerChangeFilter {
+
+	private static Logger logger = Logger.getLogger(P4TriggerChangeFilter.class.getName());
+
+	private static final String PREFIX = P4TriggerChangeFilter.class.getName();
+
+	// Changes with more files are not filtered
+	private static final int FILE_LIMIT = Integer.getInteger(PREFIX + ".fileLimit", 10000);
+
+	// How long change files and client views are kept
+	private static final long TTL = TimeUnit.SECONDS.toMillis(Long.getLong(PREFIX + ".ttl", 300L));
+
+	private static final int MAX_SIZE = Integer.getInteger(PREFIX + ".maxSize", 2048);
+
+	// credential@port:change to files
+	private static final Map<String, Files> files = new LinkedHashMap<String, Files>(16, 0.75f, true) {
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, Files> eldest) {
+			return size() > MAX_SIZE;
+		}
+	};
+
+	// job#build to client views
+	private static final Map<String, Views> views = new LinkedHashMap<String, Views>(16, 0.75f, true) {
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, Views> eldest) {
+			return size() > MAX_SIZE;
+		}
+	};
+
+	private P4TriggerChangeFilter() {
+	}
+
+	/**
+	 * @param job     triggered job
+	 * @param port    P4PORT from the trigger event
+	 * @param changes submitted changes
+	 * @return false only if none of the changes touch the job's views.
+	 */
+	static boolean isAffected(Job<?, ?> job, String port, Collection<Long> changes) {
+		Run<?, ?> run = job.getLastBuild();
+		if (run == null || changes.isEmpty()) {
+			return true;
+		}
+
+		// The client is only updated by the next build; its view may be stale
+		if (isConfigChanged(job, run)) {
+			return true;
+		}
+
+		List<View> list = getViews(job, run, port);
+		if (list.isEmpty()) {
+			return true;
+		}
+
+		for (View view : list) {
+			if (view.matcher == null) {
+				return true;
+			}
+			for (Long change : changes) {
+				Files f = getFiles(view.credentials, change);
+				if (f.paths == null || f.truncated || view.matcher.matchesAny(f.paths)) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Forget cached views for a job (e.g. after a configuration change).
+	 *
+	 * @param name job full name
+	 */
+	static void invalidate(String name) {
+		synchronized (views) {
+			views.keySet().removeIf(k -> k.startsWith(name + "#"));
+		}
+	}
+
+	public static void clear() {
+		synchronized (files) {
+			files.clear();
+		}
+		synchronized (views) {
+			views.clear();
+		}
+	}
+
+	private static boolean isConfigChanged(Job<?, ?> job, Run<?, ?> run) {
+		File config = job.getConfigFile().getFile();
+		return !config.exists() || config.lastModified() >= run.getStartTimeInMillis();
+	}
+
+	private static List<View> getViews(Job<?, ?> job, Run<?, ?> run, String port) {
+		String key = job.getFullName() + "#" + run.getNumber();
+		Views entry;
+		synchronized (views) {
+			entry = views.get(key);
+			if (entry == null || entry.isExpired()) {
+				entry = new Views();
+				views.put(key, entry);
+			}
+		}
+
+		List<View> list = entry.get(run);
+		List<View> result = new ArrayList<>();
+		for (View view : list) {
+			String fullPort = view.credentials.getFullP4port();
+			if (fullPort != null && fullPort.contains(port)) {
+				result.add(view);
+			}
+		}
+		return result;
+	}
+
+	private static Files getFiles(P4BaseCredentials credentials, long change) {
+		String key = credentials.getId() + "@" + credentials.getFullP4port() + ":" + change;
+		Files entry;
+		synchronized (files) {
+			entry = files.get(key);
+			if (entry == null || entry.isExpired()) {
+				entry = new Files();
+				files.put(key, entry);
+			}
+		}
+		entry.fetch(credentials, change);
+		return entry;
+	}
+
+	private static TaskListener getListener() {
+		return new LogTaskListener(logger, Level.FINE);
+	}
+
+	private static final class Files {
+
+		private final long created = System.currentTimeMillis();
+
+		private boolean fetched = false;
+		private List<String> paths = null;
+		private boolean truncated = false;
+
+		private boolean isExpired() {
+			return System.currentTimeMillis() - created > TTL;
+		}
+
+		private synchronized void fetch(P4BaseCredentials credentials, long change) {
+			if (fetched) {
+				return;
+			}
+			fetched = true;
+
+			try (ConnectionHelper p4 = new ConnectionHelper(credentials, getListener())) {
+				List<IFileSpec> specs = p4.getChangeFiles(change, FILE_LIMIT + 1);
+				if (specs == null) {
+					return;
+				}
+				List<String> list = new ArrayList<>();
+				for (IFileSpec spec : specs) {
+					if (spec != null && spec.getDepotPathString() != null) {
+						list.add(spec.getDepotPathString());
+					}
+				}
+				truncated = specs.size() > FILE_LIMIT;
+				paths = list;
+			} catch (Exception e) {
+				logger.fine("P4: unable to fetch files for change " + change + ": " + e.getMessage());
+			}
+		}
+	}
+
+	private static final class Views {
+
+		private final long created = System.currentTimeMillis();
+
+		private List<View> list = null;
+
+		private boolean isExpired() {
+			return System.currentTimeMillis() - created > TTL;
+		}
+
+		private synchronized List<View> get(Run<?, ?> run) {
+			if (list == null) {
+				list = new ArrayList<>();
+				for (TagAction tag : run.getActions(TagAction.class)) {
+					P4BaseCredentials credentials = ConnectionHelper.findCredential(tag.getCredential(), run);
+					if (credentials != null) {
+						list.add(new View(credentials, getMatcher(credentials, tag.getClient())));
+					}
+				}
+			}
+			return list;
+		}
+
+		/**
+		 * @return view of the client or null if it cannot be used to filter changes.
+		 */
+		private static ViewMatcher getMatcher(P4BaseCredentials credentials, String clientName) {
+			if (clientName == null) {
+				return null;
+			}
+			try (ConnectionHelper p4 = new ConnectionHelper(credentials, getListener())) {
+				IClient client = p4.getConnection().getClient(clientName);
+				if (client == null) {
+					return null;
+				}
+				List<String> changeView = client.getChangeView();
+				if (changeView != null && !changeView.isEmpty()) {
+					return null;
+				}
+				if (p4.checkVersion(20171)) {
+					List<IRepo> repos = client.getRepos();
+					if (repos != null && !repos.isEmpty()) {
+						return null;
+					}
+				}
+				ViewMatcher matcher = new ViewMatcher(client.getClientView(), p4.getConnection().isCaseSensitive());
+				return (matcher.isEmpty()) ? null : matcher;
+			} catch (Exception e) {
+				logger.fine("P4: unable to fetch client " + clientName + ": " + e.getMessage());
+				return null;
+			}
+		}
+	}
+
+	private static final class View {
+
+		private final P4BaseCredentials credentials;
+		private final ViewMatcher matcher;
+
+		private View(P4BaseCredentials credentials, ViewMatcher matcher) {
+			this.credentials = credentials;
+			this.matcher = matcher;
+		}
+	}
+}
@@ -0,0 +1,523 @@
+package org.jenkinsci.plugins.p4.trigger;
+
+import hudson.Extension;
+import hudson.XmlFile;
+import hudson.model.Item;
+import hudson.model.Job;
+import hudson.model.Run;
+import hudson.model.Saveable;
+import hudson.model.TaskListener;
+import hudson.model.listeners.ItemListener;
+import hudson.model.listeners.RunListener;
+import hudson.model.listeners.SaveableListener;
+import hudson.scm.SCM;
+import hudson.security.ACL;
+import hudson.security.ACLContext;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+import jenkins.model.Jenkins;
+import jenkins.model.ParameterizedJobMixIn;
+import jenkins.triggers.SCMTriggerItem;
+import org.acegisecurity.Authentication;
+import org.jenkinsci.plugins.p4.PerforceScm;
+import org.jenkinsci.plugins.p4.client.ConnectionHelper;
+import org.jenkinsci.plugins.p4.credentials.P4BaseCredentials;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+/**
+ * Dispatches P4Hook trigger events to jobs with a {@link P4Trigger}.
+ * <p>
+ * Jobs are indexed by the P4PORT of their Perforce credentials and the
+ * index is kept current by item, save and run listeners, so an event only
+ * visits the jobs on that server. Polls run on a bounded pool and a job is
+ * queued at most once; a poke for a job that is already waiting is merged
+ * into the waiting one.
+ * <p>
+ * When the event names the submitted change, jobs whose last client view
+ * does not include any of its files are skipped (see
+ * {@link P4TriggerChangeFilter}).
+ * <p>
+ * The index is kept as SYSTEM, but an event only polls the jobs the user that
+ * sent it can read; the user is captured before the event is queued and only
+ * the jobs found in the index are checked.
+ */
+public final class P4TriggerDispatcher {
+
+	private static Logger logger = Logger.getLogger(P4TriggerDispatcher.class.getName());
+
+	private static final String PREFIX = P4TriggerDispatcher.class.getName();
+
+	// Concurrent polls
+	private static final int THREADS = Integer.getInteger(PREFIX + ".threads", 4);
+
+	// Maximum polls waiting for a thread
+	private static final int QUEUE_SIZE = Integer.getInteger(PREFIX + ".queueSize", 1000);
+
+	// Full re-index interval, picks up credential changes
+	private static final long REINDEX = TimeUnit.SECONDS.toMillis(Long.getLong(PREFIX + ".reindex", 300L));
+
+	private static final P4TriggerDispatcher INSTANCE = new P4TriggerDispatcher();
+
+	// P4PORT to job names
+	private final Map<String, Set<String>> ports = new HashMap<>();
+
+	// job name to P4PORTs; empty if not known yet (e.g. a Pipeline that has not run)
+	private final Map<String, Set<String>> jobs = new HashMap<>();
+
+	private long indexed = 0;
+
+	// job name to queued poke
+	private final ConcurrentMap<String, Poke> pending = new ConcurrentHashMap<>();
+
+	private final ThreadPoolExecutor executor;
+
+	private final AtomicLong events = new AtomicLong();
+	private final AtomicLong submitted = new AtomicLong();
+	private final AtomicLong dropped = new AtomicLong();
+	private final AtomicLong rejected = new AtomicLong();
+	private final AtomicLong skipped = new AtomicLong();
+	private final AtomicLong failed = new AtomicLong();
+	private final AtomicLong completed = new AtomicLong();
+	private final AtomicLong waitTotal = new AtomicLong();
+	private final AtomicLong waitMax = new AtomicLong();
+	private final AtomicLong pollTotal = new AtomicLong();
+	private final AtomicLong pollMax = new AtomicLong();
+
+	private P4TriggerDispatcher() {
+		int threads = Math.max(1, THREADS);
+		executor = new ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS,
+				new LinkedBlockingQueue<>(Math.max(1, QUEUE_SIZE)),
+				new NamingThreadFactory(new DaemonThreadFactory(), "P4 trigger"));
+		executor.allowCoreThreadTimeOut(true);
+	}
+
+	public static P4TriggerDispatcher get() {
+		return INSTANCE;
+	}
+
+	/**
+	 * Queue a poll for every triggered job using the given P4PORT and
+	 * visible to the current user.
+	 *
+	 * @param port P4PORT from the trigger event
+	 * @return number of polls queued
+	 */
+	public int dispatch(String port) {
+		return dispatch(port, 0);
+	}
+
+	/**
+	 * Queue a poll for every triggered job using the given P4PORT, visible
+	 * to the current user, that may be affected by the submitted change.
+	 *
+	 * @param port   P4PORT from the trigger event
+	 * @param change submitted change, or 0 if not known (polls all jobs)
+	 * @return number of polls queued
+	 */
+	public int dispatch(String port, long change) {
+		Set<Long> changes = (change > 0) ? Collections.singleton(change) : null;
+		return dispatch(port, changes, Collections.singletonList(Jenkins.getAuthentication()));
+	}
+
+	/**
+	 * Queue a poll for every triggered job using the given P4PORT, readable
+	 * by any of the callers, that may be affected by any of the submitted
+	 * changes.
+	 * <p>
+	 * The job index is built as SYSTEM, so callers pass the users that sent
+	 * the events (captured with {@link Jenkins#getAuthentication()} on the
+	 * request thread); only the poll itself runs as SYSTEM.
+	 *
+	 * @param port    P4PORT from the trigger event
+	 * @param changes submitted changes, or null if not known (polls all jobs)
+	 * @param callers users that sent the events
+	 * @return number of polls queued
+	 */
+	public int dispatch(String port, Set<Long> changes, Collection<Authentication> callers) {
+		events.incrementAndGet();
+
+		int count = 0;
+		for (String name : getJobs(port)) {
+			if (!isVisible(name, callers)) {
+				continue;
+			}
+			if (submit(name, port, changes)) {
+				count++;
+			}
+		}
+		logger.fine("P4: trigger queued " + count + " polls for: " + port);
+		return count;
+	}
+
+	/**
+	 * @return true if any of the callers can read the job.
+	 */
+	private static boolean isVisible(String name, Collection<Authentication> callers) {
+		try (ACLContext ctx = ACL.as(ACL.SYSTEM)) {
+			Job<?, ?> job = getJob(name);
+			if (job == null) {
+				return false;
+			}
+			ACL acl = job.getACL();
+			for (Authentication caller : callers) {
+				if (acl.hasPermission(caller, Item.READ)) {
+					return true;
+				}
+			}
+			return false;
+		}
+	}
+
+	/**
+	 * @return queue depth, latency and counters for the trigger pool.
+	 */
+	public Map<String, Object> getMetrics() {
+		long done = completed.get();
+		Map<String, Object> metrics = new LinkedHashMap<>();
+		metrics.put("queueDepth", executor.getQueue().size());
+		metrics.put("active", executor.getActiveCount());
+		metrics.put("pending", pending.size());
+		metrics.put("indexedJobs", getIndexedCount());
+		metrics.put("events", events.get());
+		metrics.put("submitted", submitted.get());
+		metrics.put("dropped", dropped.get());
+		metrics.put("rejected", rejected.get());
+		metrics.put("skipped", skipped.get());
+		metrics.put("failed", failed.get());
+		metrics.put("completed", done);
+		metrics.put("waitAvgMs", (done > 0) ? waitTotal.get() / done : 0);
+		metrics.put("waitMaxMs", waitMax.get());
+		metrics.put("pollAvgMs", (done > 0) ? pollTotal.get() / done : 0);
+		metrics.put("pollMaxMs", pollMax.get());
+		return metrics;
+	}
+
+	/**
+	 * Wait for queued polls to finish (for tests).
+	 *
+	 * @param timeout maximum time to wait
+	 * @param unit    time unit
+	 * @return true if idle
+	 * @throws InterruptedException if interrupted while waiting
+	 */
+	public boolean awaitIdle(long timeout, TimeUnit unit) throws InterruptedException {
+		long end = System.currentTimeMillis() + unit.toMillis(timeout);
+		while (System.currentTimeMillis() < end) {
+			if (pending.isEmpty() && executor.getActiveCount() == 0 && executor.getQueue().isEmpty()) {
+				return true;
+			}
+			TimeUnit.MILLISECONDS.sleep(50);
+		}
+		return false;
+	}
+
+	private boolean submit(String name, String port, Set<Long> changes) {
+		Poke poke = new Poke(changes);
+		Poke current = pending.compute(name, (k, v) -> (v == null) ? poke : v.add(changes));
+		if (current != poke) {
+			dropped.incrementAndGet();
+			logger.fine("P4: poll already pending: " + name);
+			return false;
+		}
+
+		try {
+			executor.execute(() -> run(name, port, poke));
+			submitted.incrementAndGet();
+			return true;
+		} catch (RejectedExecutionException e) {
+			pending.remove(name, poke);
+			rejected.incrementAndGet();
+			logger.warning("P4: trigger queue full, skipping poll: " + name);
+			return false;
+		}
+	}
+
+	private void run(String name, String port, Poke poke) {
+		// pokes from now on queue another poll
+		pending.remove(name, poke);
+
+		long start = System.currentTimeMillis();
+		record(waitTotal, waitMax, start - poke.queued);
+
+		// the caller's access was checked when the poll was queued
+		try (ACLContext ctx = ACL.as(ACL.SYSTEM)) {
+			Job<?, ?> job = getJob(name);
+			if (job == null || !job.isBuildable()) {
+				return;
+			}
+			P4Trigger trigger = getTrigger(job);
+			if (trigger != null) {
+				Set<Long> changes = poke.getChanges();
+				if (changes != null && !P4TriggerChangeFilter.isAffected(job, port, changes)) {
+					skipped.incrementAndGet();
+					logger.fine("P4: skipping " + name + ", not affected by: " + changes);
+					return;
+				}
+				logger.info("P4: probing: " + job.getName());
+				trigger.poke(job, port);
+			}
+		} catch (Exception e) {
+			failed.incrementAndGet();
+			logger.severe("P4: trigger poll failed for " + name + ": " + e);
+		} finally {
+			record(pollTotal, pollMax, System.currentTimeMillis() - start);
+			completed.incrementAndGet();
+		}
+	}
+
+	private static void record(AtomicLong total, AtomicLong max, long value) {
+		total.addAndGet(value);
+		max.accumulateAndGet(value, Math::max);
+	}
+
+	private List<String> getJobs(String port) {
+		if (System.currentTimeMillis() - getIndexed() > REINDEX) {
+			reindex();
+		}
+
+		Set<String> names = new LinkedHashSet<>();
+		synchronized (this) {
+			for (Map.Entry<String, Set<String>> entry : ports.entrySet()) {
+				// same match as P4Trigger
+				if (entry.getKey().contains(port)) {
+					names.addAll(entry.getValue());
+				}
+			}
+			for (Map.Entry<String, Set<String>> entry : jobs.entrySet()) {
+				if (entry.getValue().isEmpty()) {
+					names.add(entry.getKey());
+				}
+			}
+		}
+		return new ArrayList<>(names);
+	}
+
+	private synchronized long getIndexed() {
+		return indexed;
+	}
+
+	private synchronized int getIndexedCount() {
+		return jobs.size();
+	}
+
+	/**
+	 * A queued poll and the changes it was queued for. Pokes for the same
+	 * job are merged while waiting; once any poke has no change the poll
+	 * is not filtered.
+	 */
+	private static final class Poke {
+
+		private final long queued = System.currentTimeMillis();
+
+		// null once any poke had no change
+		private Set<Long> changes;
+
+		private Poke(Set<Long> changes) {
+			this.changes = (changes == null || changes.isEmpty()) ? null : new HashSet<>(changes);
+		}
+
+		private synchronized Poke add(Set<Long> more) {
+			if (more == null || more.isEmpty()) {
+				changes = null;
+			} else if (changes != null) {
+				changes.addAll(more);
+			}
+			return this;
+		}
+
+		/**
+		 * @return submitted changes, or null to poll without filtering.
+		 */
+		private synchronized Set<Long> getChanges() {
+			return (changes == null) ? null : new HashSet<>(changes);
+		}
+	}
+
+	private void reindex() {
+		Map<String, Set<String>> found = new HashMap<>();
+		try (ACLContext ctx = ACL.as(ACL.SYSTEM)) {
+			Jenkins j = Jenkins.getInstance();
+			if (j == null) {
+				return;
+			}
+			for (Job<?, ?> job : j.getAllItems(Job.class)) {
+				Set<String> p = getPorts(job);
+				if (p != null) {
+					found.put(job.getFullName(), p);
+				}
+			}
+		}
+
+		synchronized (this) {
+			ports.clear();
+			jobs.clear();
+			for (Map.Entry<String, Set<String>> entry : found.entrySet()) {
+				put(entry.getKey(), entry.getValue());
+			}
+			indexed = System.currentTimeMillis();
+		}
+		logger.fine("P4: trigger index rebuilt: " + found.size() + " jobs");
+	}
+
+	private void update(Job<?, ?> job) {
+		Set<String> p;
+		try (ACLContext ctx = ACL.as(ACL.SYSTEM)) {
+			p = getPorts(job);
+		}
+		synchronized (this) {
+			remove(job.getFullName());
+			if (p != null) {
+				put(job.getFullName(), p);
+			}
+		}
+	}
+
+	private synchronized void invalidate() {
+		indexed = 0;
+	}
+
+	private synchronized void put(String name, Set<String> p) {
+		jobs.put(name, p);
+		for (String port : p) {
+			ports.computeIfAbsent(port, k -> new HashSet<>()).add(name);
+		}
+	}
+
+	private synchronized void remove(String name) {
+		Set<String> p = jobs.remove(name);
+		if (p == null) {
+			return;
+		}
+		for (String port : p) {
+			Set<String> names = ports.get(port);
+			if (names != null) {
+				names.remove(name);
+				if (names.isEmpty()) {
+					ports.remove(port);
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return P4PORTs used by a triggered job, or null if the job has no P4Trigger.
+	 */
+	private static Set<String> getPorts(Job<?, ?> job) {
+		if (getTrigger(job) == null) {
+			return null;
+		}
+
+		SCMTriggerItem item = SCMTriggerItem.SCMTriggerItems.asSCMTriggerItem(job);
+		if (item == null) {
+			return Collections.emptySet();
+		}
+
+		Set<String> p = new HashSet<>();
+		for (SCM scm : item.getSCMs()) {
+			PerforceScm p4scm = PerforceScm.convertToPerforceScm(scm);
+			if (p4scm != null) {
+				P4BaseCredentials credential = ConnectionHelper.findCredential(p4scm.getCredential(), job);
+				if (credential != null && credential.getFullP4port() != null) {
+					p.add(credential.getFullP4port());
+				}
+			}
+		}
+		return p;
+	}
+
+	private static P4Trigger getTrigger(Job<?, ?> job) {
+		if (job instanceof ParameterizedJobMixIn.ParameterizedJob) {
+			ParameterizedJobMixIn.ParameterizedJob pJob = (ParameterizedJobMixIn.ParameterizedJob) job;
+			for (Object t : pJob.getTriggers().values()) {
+				if (t instanceof P4Trigger) {
+					return (P4Trigger) t;
+				}
+			}
+		}
+		return null;
+	}
+
+	private static Job<?, ?> getJob(String name) {
+		Jenkins j = Jenkins.getInstance();
+		if (j == null) {
+			return null;
+		}
+		return j.getItemByFullName(name, Job.class);
+	}
+
+	/**
+	 * Rebuild the index when items are loaded, and drop deleted or moved jobs.
+	 */
+	@Extension
+	public static class ItemListenerImpl extends ItemListener {
+
+		@Override
+		public void onLoaded() {
+			get().invalidate();
+		}
+
+		@Override
+		public void onDeleted(Item item) {
+			if (item instanceof Job) {
+				P4TriggerChangeFilter.invalidate(item.getFullName());
+				get().remove(item.getFullName());
+			}
+		}
+
+		@Override
+		public void onLocationChanged(Item item, String oldFullName, String newFullName) {
+			if (item instanceof Job) {
+				get().remove(oldFullName);
+				get().update((Job<?, ?>) item);
+			}
+		}
+	}
+
+	/**
+	 * Re-index a job when its configuration is saved (including created or
+	 * updated jobs); its workspace view may have changed.
+	 */
+	@Extension
+	public static class SaveableListenerImpl extends SaveableListener {
+
+		@Override
+		public void onChange(Saveable o, XmlFile file) {
+			if (o instanceof Job) {
+				Job<?, ?> job = (Job<?, ?>) o;
+				P4TriggerChangeFilter.invalidate(job.getFullName());
+				get().update(job);
+			}
+		}
+	}
+
+	/**
+	 * Re-index a job after a build, as Pipeline jobs only report their SCMs
+	 * from the last build.
+	 */
+	@Extension
+	public static class RunListenerImpl extends RunListener<Run<?, ?>> {
+
+		@Override
+		public void onCompleted(Run<?, ?> run, TaskListener listener) {
+			get().update(run.getParent());
+		}
+	}
+}
@@ -2,12 +2,12 @@ package org.jenkinsci.plugins.p4.workflow.source;
 
 import com.perforce.p4java.core.ILabelSummary;
 import com.perforce.p4java.option.server.GetLabelsOptions;
-import com.perforce.p4java.server.IOptionsServer;
 import hudson.model.AutoCompletionCandidates;
 import hudson.model.Descriptor;
-import org.jenkinsci.plugins.p4.client.ConnectionFactory;
+import org.jenkinsci.plugins.p4.client.ConnectionRegistry;
 import org.kohsuke.stapler.QueryParameter;
 
+import java.util.ArrayList;
 import java.util.List;
 
 public abstract class P4SyncDescriptor extends Descriptor<AbstractSource> {
@@ -23,15 +23,21 @@ public abstract class P4SyncDescriptor extends Descriptor<AbstractSource> {
 			@QueryParameter String value) {
 		AutoCompletionCandidates c = new AutoCompletionCandidates();
 		try {
-			IOptionsServer iserver = ConnectionFactory.getConnection();
-			if (iserver != null && value.length() > 0) {
-				List<ILabelSummary> list;
-				GetLabelsOptions opts = new GetLabelsOptions();
-				opts.setMaxResults(10);
-				opts.setNameFilter(value + "*");
-				list = iserver.getLabels(null, opts);
-				for (ILabelSummary l : list) {
-					c.add(l.getName());
+			if (value.length() > 0) {
+				List<String> names = ConnectionRegistry.cached("labels", value, p4 -> {
+					GetLabelsOptions opts = new GetLabelsOptions();
+					opts.setMaxResults(10);
+					opts.setNameFilter(value + "*");
+					List<String> found = new ArrayList<>();
+					for (ILabelSummary l : p4.getLabels(null, opts)) {
+						found.add(l.getName());
+					}
+					return found;
+				});
+				if (names != null) {
+					for (String name : names) {
+						c.add(name);
+					}
 				}
 			}
 		} catch (Exception e) {
@@ -6,7 +6,6 @@ import com.perforce.p4java.client.IClientViewMapping;
 import com.perforce.p4java.core.file.FileSpecBuilder;
 import com.perforce.p4java.core.file.IFileSpec;
 import com.perforce.p4java.option.server.GetFileContentsOptions;
-import com.perforce.p4java.exception.P4JavaException;
 import com.perforce.p4java.impl.generic.client.ClientOptions;
 import com.perforce.p4java.impl.generic.client.ClientView;
 import com.perforce.p4java.impl.generic.client.ClientView.ClientViewMapping;
@@ -19,7 +18,7 @@ import hudson.util.FormValidation;
 import org.apache.commons.io.IOUtils;
 import net.sf.json.JSONObject;
 import org.jenkinsci.Symbol;
-import org.jenkinsci.plugins.p4.client.ConnectionFactory;
+import org.jenkinsci.plugins.p4.client.ConnectionRegistry;
 import org.kohsuke.stapler.DataBoundConstructor;
 import org.kohsuke.stapler.QueryParameter;
 import org.kohsuke.stapler.bind.JavaScriptMethod;
@@ -279,8 +278,10 @@ public class ManualWorkspaceImpl extends Workspace implements Serializable {
 	@JavaScriptMethod
 	public JSONObject getSpecJSON(String client) {
 		try {
-			IOptionsServer p4 = ConnectionFactory.getConnection();
-			IClient c = p4.getClient(client);
+			IClient c = ConnectionRegistry.query(p4 -> p4.getClient(client));
+			if (c == null) {
+				return getDefaultSpecJSON();
+			}
 
 			StringBuffer sb = new StringBuffer();
 			for (IClientViewMapping view : c.getClientView()) {
@@ -302,21 +303,25 @@ public class ManualWorkspaceImpl extends Workspace implements Serializable {
 			spec.put("view", sb.toString());
 			spec.put("options", option);
 			return spec;
-		} catch (P4JavaException e) {
-			JSONObject option = new JSONObject();
-			option.put("allwrite", false);
-			option.put("clobber", true);
-			option.put("compress", false);
-			option.put("locked", false);
-			option.put("modtime", false);
-			option.put("rmdir", false);
-
-			JSONObject spec = new JSONObject();
-			spec.put("stream", "");
-			spec.put("line", "LOCAL");
-			spec.put("view", "please define view...");
-			spec.put("options", option);
-			return spec;
+		} catch (Exception e) {
+			return getDefaultSpecJSON();
 		}
 	}
+
+	private static JSONObject getDefaultSpecJSON() {
+		JSONObject option = new JSONObject();
+		option.put("allwrite", false);
+		option.put("clobber", true);
+		option.put("compress", false);
+		option.put("locked", false);
+		option.put("modtime", false);
+		option.put("rmdir", false);
+
+		JSONObject spec = new JSONObject();
+		spec.put("stream", "");
+		spec.put("line", "LOCAL");
+		spec.put("view", "please define view...");
+		spec.put("options", option);
+		return spec;
+	}
 }
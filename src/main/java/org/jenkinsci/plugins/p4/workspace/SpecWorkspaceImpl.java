@@ -10,7 +10,7 @@ import hudson.model.AutoCompletionCandidates;
 import hudson.util.FormValidation;
 import org.apache.commons.io.IOUtils;
 import org.jenkinsci.Symbol;
-import org.jenkinsci.plugins.p4.client.ConnectionFactory;
+import org.jenkinsci.plugins.p4.client.ConnectionRegistry;
 import org.jenkinsci.plugins.p4.client.NavigateHelper;
 import org.kohsuke.stapler.DataBoundConstructor;
 import org.kohsuke.stapler.QueryParameter;
@@ -130,12 +130,15 @@ public class SpecWorkspaceImpl extends Workspace implements Serializable {
 
 		public FormValidation doCheckSpecPath(@QueryParameter String value) {
 			try {
-				IOptionsServer p4 = ConnectionFactory.getConnection();
-				List<IFileSpec> file = FileSpecBuilder.makeFileSpecList(value);
-				GetFileContentsOptions printOpts = new GetFileContentsOptions();
-				InputStream ins = p4.getFileContents(file, printOpts);
-
-				if (ins != null) {
+				Boolean found = ConnectionRegistry.query(p4 -> {
+					List<IFileSpec> file = FileSpecBuilder.makeFileSpecList(value);
+					GetFileContentsOptions printOpts = new GetFileContentsOptions();
+					try (InputStream ins = p4.getFileContents(file, printOpts)) {
+						return ins != null;
+					}
+				});
+
+				if (found == null || found) {
 					return FormValidation.ok();
 				}
 				return FormValidation.error("Unknown file: " + value);
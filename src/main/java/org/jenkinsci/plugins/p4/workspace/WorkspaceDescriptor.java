@@ -6,12 +6,11 @@ import com.perforce.p4java.core.IStream;
 import com.perforce.p4java.core.IStreamSummary;
 import com.perforce.p4java.option.server.GetClientsOptions;
 import com.perforce.p4java.option.server.GetStreamsOptions;
-import com.perforce.p4java.server.IOptionsServer;
 import hudson.model.AutoCompletionCandidates;
 import hudson.model.Descriptor;
 import hudson.util.FormValidation;
 import hudson.util.ListBoxModel;
-import org.jenkinsci.plugins.p4.client.ConnectionFactory;
+import org.jenkinsci.plugins.p4.client.ConnectionRegistry;
 import org.kohsuke.stapler.QueryParameter;
 
 import java.util.ArrayList;
@@ -30,15 +29,14 @@ public abstract class WorkspaceDescriptor extends Descriptor<Workspace> {
 
 	static public FormValidation checkClientName(String value) {
 		try {
-			IOptionsServer p4 = ConnectionFactory.getConnection();
-			if (p4 == null) {
+			Boolean found = ConnectionRegistry.query(p4 -> {
+				IClient client = p4.getClient(value);
+				return client != null && client.getAccessed() != null;
+			});
+			if (found == null || found) {
 				// refresh issue; sometimes not available
 				return FormValidation.ok();
 			}
-			IClient client = p4.getClient(value);
-			if (client != null && client.getAccessed() != null) {
-				return FormValidation.ok();
-			}
 			return FormValidation.warning("Unknown Client: " + value);
 		} catch (Exception e) {
 			return FormValidation.error(e.getMessage());
@@ -50,14 +48,15 @@ public abstract class WorkspaceDescriptor extends Descriptor<Workspace> {
 
 		AutoCompletionCandidates c = new AutoCompletionCandidates();
 		try {
-			IOptionsServer iserver = ConnectionFactory.getConnection();
-			if (iserver != null && value.length() > 0) {
-				String user = iserver.getUserName();
-				List<IClientSummary> list;
-				list = iserver.getClients(user, value + "*", 10);
-				for (IClientSummary l : list) {
-					c.add(l.getName());
-				}
+			if (value.length() > 0) {
+				List<String> names = ConnectionRegistry.cached("userClients", value, p4 -> {
+					List<String> found = new ArrayList<>();
+					for (IClientSummary l : p4.getClients(p4.getUserName(), value + "*", 10)) {
+						found.add(l.getName());
+					}
+					return found;
+				});
+				add(c, names);
 			}
 		} catch (Exception e) {
 		}
@@ -68,9 +67,17 @@ public abstract class WorkspaceDescriptor extends Descriptor<Workspace> {
 	static public ListBoxModel doFillCharsetItems() {
 		ListBoxModel list = new ListBoxModel();
 		try {
-			IOptionsServer p4 = ConnectionFactory.getConnection();
-			for (String set : p4.getKnownCharsets()) {
-				list.add(set);
+			List<String> sets = ConnectionRegistry.cached("charsets", "", p4 -> {
+				List<String> found = new ArrayList<>();
+				for (String set : p4.getKnownCharsets()) {
+					found.add(set);
+				}
+				return found;
+			});
+			if (sets != null) {
+				for (String set : sets) {
+					list.add(set);
+				}
 			}
 		} catch (Exception e) {
 		}
@@ -85,17 +92,19 @@ public abstract class WorkspaceDescriptor extends Descriptor<Workspace> {
 
 		AutoCompletionCandidates c = new AutoCompletionCandidates();
 		try {
-			IOptionsServer iserver = ConnectionFactory.getConnection();
-			if (iserver != null && value.length() > 1) {
-				List<String> streamPaths = new ArrayList<String>();
-				streamPaths.add(value + "...");
-				GetStreamsOptions opts = new GetStreamsOptions();
-				opts.setMaxResults(10);
-				List<IStreamSummary> list = iserver.getStreams(streamPaths,
-						opts);
-				for (IStreamSummary l : list) {
-					c.add(l.getStream());
-				}
+			if (value.length() > 1) {
+				List<String> names = ConnectionRegistry.cached("streams", value, p4 -> {
+					List<String> streamPaths = new ArrayList<String>();
+					streamPaths.add(value + "...");
+					GetStreamsOptions opts = new GetStreamsOptions();
+					opts.setMaxResults(10);
+					List<String> found = new ArrayList<>();
+					for (IStreamSummary l : p4.getStreams(streamPaths, opts)) {
+						found.add(l.getStream());
+					}
+					return found;
+				});
+				add(c, names);
 			}
 		} catch (Exception e) {
 		}
@@ -115,16 +124,18 @@ public abstract class WorkspaceDescriptor extends Descriptor<Workspace> {
 
 		AutoCompletionCandidates c = new AutoCompletionCandidates();
 		try {
-			IOptionsServer iserver = ConnectionFactory.getConnection();
-			if (iserver != null && value.length() > 0) {
-				List<IClientSummary> list;
-				GetClientsOptions opts = new GetClientsOptions();
-				opts.setMaxResults(10);
-				opts.setNameFilter(value + "*");
-				list = iserver.getClients(opts);
-				for (IClientSummary l : list) {
-					c.add(l.getName());
-				}
+			if (value.length() > 0) {
+				List<String> names = ConnectionRegistry.cached("clients", value, p4 -> {
+					GetClientsOptions opts = new GetClientsOptions();
+					opts.setMaxResults(10);
+					opts.setNameFilter(value + "*");
+					List<String> found = new ArrayList<>();
+					for (IClientSummary l : p4.getClients(opts)) {
+						found.add(l.getName());
+					}
+					return found;
+				});
+				add(c, names);
 			}
 		} catch (Exception e) {
 		}
@@ -135,9 +146,11 @@ public abstract class WorkspaceDescriptor extends Descriptor<Workspace> {
 	static public FormValidation doCheckStreamName(
 			@QueryParameter final String value) {
 		try {
-			IOptionsServer p4 = ConnectionFactory.getConnection();
-			IStream stream = p4.getStream(value);
-			if (stream != null && stream.getAccessed() != null) {
+			Boolean found = ConnectionRegistry.query(p4 -> {
+				IStream stream = p4.getStream(value);
+				return stream != null && stream.getAccessed() != null;
+			});
+			if (found == null || found) {
 				return FormValidation.ok();
 			}
 			return FormValidation.warning("Unknown Stream: " + value);
@@ -146,6 +159,14 @@ public abstract class WorkspaceDescriptor extends Descriptor<Workspace> {
 		}
 	}
 
+	static void add(AutoCompletionCandidates c, List<String> names) {
+		if (names != null) {
+			for (String name : names) {
+				c.add(name);
+			}
+		}
+	}
+
 	static public FormValidation doCheckFormat(
 			@QueryParameter final String value) {
 		if (value == null || value.isEmpty()) {
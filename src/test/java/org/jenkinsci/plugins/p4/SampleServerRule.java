@@ -1,5 +1,15 @@
 package org.jenkinsci.plugins.p4;
 
+import org.jenkinsci.plugins.p4.changes.P4ChangeCounter;
+import org.jenkinsci.plugins.p4.changes.P4ChangeFeed;
+import org.jenkinsci.plugins.p4.client.ClientSpecCache;
+import org.jenkinsci.plugins.p4.client.ConnectionPool;
+import org.jenkinsci.plugins.p4.client.ConnectionRegistry;
+import org.jenkinsci.plugins.p4.client.DirectoryTreeCache;
+import org.jenkinsci.plugins.p4.client.ScanClientPool;
+import org.jenkinsci.plugins.p4.scm.P4ContentCache;
+import org.jenkinsci.plugins.p4.scm.events.P4BranchScanner;
+import org.jenkinsci.plugins.p4.trigger.P4TriggerChangeFilter;
 import org.junit.rules.TestRule;
 import org.junit.runner.Description;
 import org.junit.runners.model.Statement;
@@ -32,8 +42,23 @@ public class SampleServerRule extends SimpleTestServer implements TestRule {
 			restore(new File(getResources() + "/checkpoint.gz"));
 			upgrade();
 
+			// polls must see changes submitted during the test
+			P4ChangeFeed.setInterval(0);
+			P4ChangeCounter.setInterval(0);
+
 			statement.evaluate();
 
+			// drop pooled connections and cached state for this server before it is removed
+			ConnectionPool.clear();
+			P4ChangeFeed.clear();
+			P4ChangeCounter.clear();
+			ClientSpecCache.clear();
+			P4BranchScanner.clear();
+			P4TriggerChangeFilter.clear();
+			ConnectionRegistry.clear();
+			DirectoryTreeCache.clear();
+			ScanClientPool.clear();
+			P4ContentCache.clear();
 			destroy();
 		}
 	}
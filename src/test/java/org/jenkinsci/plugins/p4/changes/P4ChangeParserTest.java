@@ -0,0 +1,110 @@
+package org.jenkinsci.plugins.p4.changes;
+
+import com.perforce.p4java.core.IFix;
+import com.perforce.p4java.core.file.FileAction;
+import com.perforce.p4java.impl.generic.core.Fix;
+import org.jenkinsci.plugins.p4.DefaultEnvironment;
+import org.jenkinsci.plugins.p4.browsers.SwarmBrowser;
+import org.junit.ClassRule;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.jvnet.hudson.test.JenkinsRule;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class P4ChangeParserTest extends DefaultEnvironment {
+
+	@ClassRule
+	public static JenkinsRule jenkins = new JenkinsRule();
+
+	@Rule
+	public TemporaryFolder tmp = new TemporaryFolder();
+
+	@Test
+	public void testParseWithoutServer() throws Exception {
+
+		P4ChangeEntry entry = new P4ChangeEntry(null);
+		entry.setId(new P4ChangeRef(42));
+		entry.setAuthor("bob");
+		entry.setClientId("bob.ws");
+		entry.setMsg("Fix <all> the & things");
+		entry.setDate("2020-01-02 03:04:05");
+		entry.setFileLimit(true);
+		entry.addAffectedFiles(new P4AffectedFile("//depot/a b/%file.txt", "#3", FileAction.EDIT));
+		IFix fix = new Fix();
+		fix.setJobId("job000001");
+		fix.setStatus("closed");
+		entry.addJob(fix);
+
+		P4ChangeEntry label = new P4ChangeEntry(null);
+		label.setId(new P4LabelRef("my-label"));
+		label.setAuthor("alice");
+
+		List<P4ChangeEntry> changes = new ArrayList<>();
+		changes.add(entry);
+		changes.add(label);
+
+		File file = tmp.newFile("changelog.xml");
+		P4ChangeSet.store(file, changes, "http://swarm.local");
+
+		// Credential does not exist; a server lookup would fail the parse.
+		P4ChangeParser parser = new P4ChangeParser("missing");
+		P4ChangeSet set = (P4ChangeSet) parser.parse(null, null, file);
+
+		assertTrue(set.getBrowser() instanceof SwarmBrowser);
+		assertEquals(2, set.getHistory().size());
+
+		P4ChangeEntry parsed = set.getHistory().get(0);
+		assertEquals("42", parsed.getChangeNumber());
+		assertEquals("bob", parsed.getAuthor().getId());
+		assertEquals("bob.ws", parsed.getClientId());
+		assertEquals("Fix <all> the & things", parsed.getMsg());
+		assertEquals("2020-01-02 03:04:05", parsed.getChangeTime());
+		assertTrue(parsed.isFileLimit());
+		assertEquals(1, parsed.getAffectedFiles().size());
+		assertEquals("//depot/a b/%file.txt", parsed.getAffectedPaths().iterator().next());
+		assertEquals(1, parsed.getJobs().size());
+		assertEquals("job000001", parsed.getJobs().get(0).getJobId());
+
+		P4ChangeEntry parsedLabel = set.getHistory().get(1);
+		assertTrue(parsedLabel.isLabel());
+		assertEquals("my-label", parsedLabel.getChangeNumber());
+	}
+
+	@Test
+	public void testFailedWriteKeepsChangelog() throws Exception {
+
+		File file = tmp.newFile("changelog.xml");
+		P4ChangeSet.store(file, new ArrayList<>(), null);
+		long length = file.length();
+
+		P4ChangeEntry good = new P4ChangeEntry(null);
+		good.setId(new P4ChangeRef(1));
+		good.setAuthor("bob");
+
+		// a file without a revision cannot be written
+		P4ChangeEntry bad = new P4ChangeEntry(null);
+		bad.setId(new P4ChangeRef(2));
+		bad.setAuthor("bob");
+		bad.addAffectedFiles(new P4AffectedFile("//depot/file.txt", null, FileAction.EDIT));
+
+		try (P4ChangeWriter writer = new P4ChangeWriter(file, null)) {
+			writer.write(good);
+			writer.write(bad);
+			fail("write should fail");
+		} catch (RuntimeException e) {
+			// expected
+		}
+
+		// the truncated changelog is not moved into place, nor left behind
+		assertEquals(length, file.length());
+		assertEquals(1, tmp.getRoot().list().length);
+	}
+}
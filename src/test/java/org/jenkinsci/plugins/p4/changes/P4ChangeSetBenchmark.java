@@ -0,0 +1,191 @@
+package org.jenkinsci.plugins.p4.changes;
+
+import com.perforce.p4java.core.IFix;
+import com.perforce.p4java.core.file.FileAction;
+import hudson.model.User;
+import org.apache.commons.lang.StringEscapeUtils;
+import org.kohsuke.stapler.framework.io.WriterOutputStream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.net.URLEncoder;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Compares the streaming P4ChangeWriter with the original locked PrintStream
+ * implementation of P4ChangeSet.store for changes with 10k files.
+ * <p>
+ * Run with: mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=org.jenkinsci.plugins.p4.changes.P4ChangeSetBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class P4ChangeSetBenchmark {
+
+	private static final Object lock = new Object();
+
+	@Param({"10000"})
+	private int files;
+
+	@Param({"4"})
+	private int changes;
+
+	private List<P4ChangeEntry> entries;
+	private File dir;
+
+	@Setup
+	public void setup() throws IOException {
+		User user = mock(User.class);
+		when(user.getId()).thenReturn("bench");
+		when(user.getDisplayName()).thenReturn("Bench User");
+
+		entries = new ArrayList<>();
+		for (int c = 0; c < changes; c++) {
+			P4ChangeEntry entry = new BenchEntry(user);
+			entry.setId(new P4ChangeRef(1000 + c));
+			entry.setClientId("bench.ws");
+			entry.setMsg("Benchmark change " + c);
+			for (int f = 0; f < files; f++) {
+				String path = "//depot/project/module" + (f % 100) + "/src/File" + f + ".java";
+				entry.addAffectedFiles(new P4AffectedFile(path, "#" + (f % 7 + 1), FileAction.EDIT));
+			}
+			entries.add(entry);
+		}
+
+		dir = File.createTempFile("p4bench", "");
+		dir.delete();
+		dir.mkdirs();
+	}
+
+	@TearDown
+	public void tearDown() {
+		File[] list = dir.listFiles();
+		if (list != null) {
+			for (File f : list) {
+				f.delete();
+			}
+		}
+		dir.delete();
+	}
+
+	@Benchmark
+	@Threads(4)
+	public void legacyStore() throws IOException {
+		File file = File.createTempFile("changelog", ".xml", dir);
+		legacy(file, entries);
+		file.delete();
+	}
+
+	@Benchmark
+	@Threads(4)
+	public void streamingStore() throws IOException {
+		File file = File.createTempFile("changelog", ".xml", dir);
+		P4ChangeSet.store(file, entries, null);
+		file.delete();
+	}
+
+	public static void main(String[] args) throws Exception {
+		Options opt = new OptionsBuilder()
+				.include(P4ChangeSetBenchmark.class.getSimpleName())
+				.build();
+		new Runner(opt).run();
+	}
+
+	// The original P4ChangeSet.store implementation (global lock, PrintStream stack).
+	private static void legacy(File file, List<P4ChangeEntry> changes) throws IOException {
+		synchronized (lock) {
+			FileOutputStream o = new FileOutputStream(file);
+			BufferedOutputStream b = new BufferedOutputStream(o);
+			Charset c = Charset.forName("UTF-8");
+			OutputStreamWriter w = new OutputStreamWriter(b, c);
+			WriterOutputStream s = new WriterOutputStream(w);
+			PrintStream stream = new PrintStream(s, true, "UTF-8");
+
+			stream.println("<?xml version='1.0' encoding='UTF-8'?>");
+			stream.println("<changelog>");
+			for (P4ChangeEntry cl : changes) {
+				stream.println("\t<entry>");
+				stream.println("\t\t<changenumber><changeInfo>" + cl.getId() + "</changeInfo>");
+				stream.println("\t\t<clientId>" + cl.getClientId() + "</clientId>");
+				stream.println("\t\t<msg>" + P4Escaper.filter().translate(StringEscapeUtils.escapeXml(cl.getMsg())) + "</msg>");
+				stream.println("\t\t<changeUser>" + StringEscapeUtils.escapeXml(cl.getAuthor().getDisplayName())
+						+ "</changeUser>");
+				stream.println("\t\t<changeTime>" + StringEscapeUtils.escapeXml(cl.getChangeTime()) + "</changeTime>");
+				stream.println("\t\t<shelved>" + cl.isShelved() + "</shelved>");
+
+				stream.println("\t\t<files>");
+				Collection<P4AffectedFile> files = cl.getAffectedFiles();
+				if (files != null) {
+					for (P4AffectedFile f : files) {
+						String safePath = URLEncoder.encode(f.getPath(), "UTF-8");
+						stream.println("\t\t<file endRevision=\"" + f.getRevision() + "\" action=\"" + f.getAction()
+								+ "\" depot=\"" + safePath + "\" />");
+					}
+				}
+				stream.println("\t\t</files>");
+
+				stream.println("\t\t<jobs>");
+				List<IFix> jobs = cl.getJobs();
+				if (jobs != null) {
+					for (IFix job : jobs) {
+						stream.println("\t\t<job id=\"" + job.getJobId() + "\" status=\"" + job.getStatus() + "\" />");
+					}
+				}
+				stream.println("\t\t</jobs>");
+				stream.println("\t\t</changenumber>");
+				stream.println("\t</entry>");
+			}
+			stream.println("</changelog>");
+			stream.flush();
+			stream.close();
+			o.close();
+		}
+	}
+
+	// Entry with a fixed author, so the benchmark runs without a Jenkins instance.
+	private static class BenchEntry extends P4ChangeEntry {
+
+		private final User user;
+
+		BenchEntry(User user) {
+			super(null);
+			this.user = user;
+		}
+
+		@Override
+		public User getAuthor() {
+			return user;
+		}
+	}
+}
@@ -1,5 +1,6 @@
 package org.jenkinsci.plugins.p4.client;
 
+import com.perforce.p4java.core.IChangelistSummary;
 import hudson.matrix.Axis;
 import hudson.matrix.AxisList;
 import hudson.matrix.MatrixBuild;
@@ -17,7 +18,12 @@ import jenkins.branch.BranchSource;
 import org.jenkinsci.plugins.p4.DefaultEnvironment;
 import org.jenkinsci.plugins.p4.PerforceScm;
 import org.jenkinsci.plugins.p4.SampleServerRule;
+import org.jenkinsci.plugins.p4.changes.P4ChangeBatch;
+import org.jenkinsci.plugins.p4.changes.P4ChangeEntry;
+import org.jenkinsci.plugins.p4.changes.P4ChangeRef;
 import org.jenkinsci.plugins.p4.changes.P4ChangeSet;
+import org.jenkinsci.plugins.p4.changes.P4LabelRef;
+import org.jenkinsci.plugins.p4.changes.P4Ref;
 import org.jenkinsci.plugins.p4.populate.AutoCleanImpl;
 import org.jenkinsci.plugins.p4.populate.Populate;
 import org.jenkinsci.plugins.p4.review.ReviewProp;
@@ -38,6 +44,7 @@ import org.junit.Test;
 import org.jvnet.hudson.test.Issue;
 import org.jvnet.hudson.test.JenkinsRule;
 
+import java.io.File;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -67,6 +74,50 @@ public class CheckoutTest extends DefaultEnvironment {
 		createCredentials("jenkins", "jenkins", p4d.getRshPort(), CREDENTIAL);
 	}
 
+	@Test
+	public void testChangeBatchMatchesSingleLookups() throws Exception {
+		String client = "ChangeBatch.ws";
+		String view = "//depot/Data/... //" + client + "/...";
+		WorkspaceSpec spec = new WorkspaceSpec(view, null);
+		ManualWorkspaceImpl workspace = new ManualWorkspaceImpl("none", false, client, spec, false);
+		workspace.setExpand(new HashMap<String, String>());
+		workspace.setRootPath(new File("target/" + client).getAbsolutePath());
+
+		try (ClientHelper p4 = new ClientHelper(jenkins.getInstance(), CREDENTIAL, null, workspace)) {
+			// changes outside the client view and labels are fetched one at a time
+			List<P4Ref> refs = new ArrayList<>();
+			for (IChangelistSummary summary : p4.getChangeSummaries("//depot/...@1,20", 0)) {
+				refs.add(new P4ChangeRef(summary.getId()));
+			}
+			refs.add(new P4LabelRef("auto15"));
+
+			List<P4ChangeEntry> entries = new P4ChangeBatch(p4).getChangeEntries(refs);
+			assertEquals(refs.size(), entries.size());
+			for (int i = 0; i < refs.size(); i++) {
+				P4ChangeEntry single = refs.get(i).getChangeEntry(p4);
+				P4ChangeEntry batch = entries.get(i);
+				assertEquals(single.getId().toString(), batch.getId().toString());
+				assertEquals(single.getAuthor(), batch.getAuthor());
+				assertEquals(single.getMsg(), batch.getMsg());
+				assertEquals(single.getAffectedPaths(), batch.getAffectedPaths());
+			}
+
+			// chunks split the range without changing the entries
+			P4ChangeBatch.setChunkSize(7);
+			try {
+				List<P4ChangeEntry> chunked = new P4ChangeBatch(p4).getChangeEntries(refs);
+				assertEquals(entries.size(), chunked.size());
+				for (int i = 0; i < entries.size(); i++) {
+					assertEquals(entries.get(i).getId().toString(), chunked.get(i).getId().toString());
+					assertEquals(entries.get(i).getMsg(), chunked.get(i).getMsg());
+					assertEquals(entries.get(i).getAffectedPaths(), chunked.get(i).getAffectedPaths());
+				}
+			} finally {
+				P4ChangeBatch.setChunkSize(50);
+			}
+		}
+	}
+
 	@Test
 	public void testCheckoutUnrestrictedView() throws Exception {
 		String client = "CheckoutUnrestrictedView.ws";
@@ -6,6 +6,8 @@ import com.cloudbees.plugins.credentials.CredentialsScope;
 import com.cloudbees.plugins.credentials.SystemCredentialsProvider;
 import com.perforce.p4java.Metadata;
 import com.perforce.p4java.client.IClient;
+import com.perforce.p4java.server.IOptionsServer;
+import hudson.AbortException;
 import hudson.model.Cause;
 import hudson.model.Cause.UserIdCause;
 import hudson.model.Fingerprint;
@@ -21,6 +23,7 @@ import org.jenkinsci.plugins.p4.PerforceScm.DescriptorImpl;
 import org.jenkinsci.plugins.p4.SampleServerRule;
 import org.jenkinsci.plugins.p4.credentials.P4BaseCredentials;
 import org.jenkinsci.plugins.p4.credentials.P4PasswordImpl;
+import org.jenkinsci.plugins.p4.email.P4UserCache;
 import org.jenkinsci.plugins.p4.populate.AutoCleanImpl;
 import org.jenkinsci.plugins.p4.populate.Populate;
 import org.jenkinsci.plugins.p4.workspace.ManualWorkspaceImpl;
@@ -35,6 +38,7 @@ import org.jvnet.hudson.test.JenkinsRule;
 
 import java.io.File;
 import java.net.InetAddress;
+import java.util.Collections;
 import java.util.List;
 import java.util.logging.Logger;
 
@@ -45,7 +49,10 @@ import static org.hamcrest.core.IsNull.notNullValue;
 import static org.hamcrest.core.IsNull.nullValue;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 public class ConnectionTest extends DefaultEnvironment {
 
@@ -249,4 +256,85 @@ public class ConnectionTest extends DefaultEnvironment {
 		long epoch = file.lastModified();
 		assertEquals(1397049803000L, epoch);
 	}
+
+	@Test
+	public void testUserEmailCached() throws Exception {
+
+		P4UserCache.clear();
+		try (ConnectionHelper p4 = new ConnectionHelper(auth)) {
+			String email = P4UserCache.getEmail(p4, "jenkins");
+			assertNotNull(email);
+
+			// the second lookup is served from the cache
+			assertEquals(email, P4UserCache.getEmail(p4, "jenkins"));
+			assertEquals(1, P4UserCache.getMisses());
+			assertEquals(1, P4UserCache.getHits());
+
+			// cached users are not fetched again by a prefill
+			P4UserCache.prefill(p4, Collections.singletonList("jenkins"));
+			assertEquals(1, P4UserCache.size());
+			assertEquals(email, P4UserCache.findEmail("jenkins"));
+		} finally {
+			P4UserCache.clear();
+		}
+	}
+
+	@Test
+	public void testPooledConnection() throws Exception {
+
+		IOptionsServer first;
+		try (ConnectionHelper p4 = new ConnectionHelper(auth)) {
+			assertTrue(p4.isConnected());
+			first = p4.getConnection();
+		}
+		assertTrue(ConnectionPool.getIdleCount() > 0);
+
+		// Second helper for the same credential reuses the idle connection
+		try (ConnectionHelper p4 = new ConnectionHelper(auth)) {
+			assertTrue(p4.isConnected());
+			assertSame(first, p4.getConnection());
+			assertNull(p4.getConnection().getCurrentClient());
+		}
+	}
+
+	@Test
+	public void testPoolConnectionLimit() throws Exception {
+
+		ConnectionPool.setMaxTotal(1);
+		ConnectionPool.setWaitTimeout(1);
+		try {
+			try (ConnectionHelper p4 = new ConnectionHelper(auth)) {
+				assertTrue(p4.isConnected());
+
+				// a second helper for the same credential waits, then gives up
+				try {
+					new ConnectionHelper(auth);
+					fail("Expected to time out waiting for a connection");
+				} catch (AbortException e) {
+					assertTrue(e.getMessage().contains("timed out"));
+				}
+			}
+
+			// the released connection is borrowed
+			try (ConnectionHelper p4 = new ConnectionHelper(auth)) {
+				assertTrue(p4.isConnected());
+			}
+		} finally {
+			ConnectionPool.setMaxTotal(32);
+			ConnectionPool.setWaitTimeout(300);
+		}
+	}
+
+	@Test
+	public void testPoolEvictedOnCredentialSave() throws Exception {
+
+		try (ConnectionHelper p4 = new ConnectionHelper(auth)) {
+			assertTrue(p4.isConnected());
+		}
+		assertTrue(ConnectionPool.getIdleCount() > 0);
+
+		// updating or removing a credential saves the store
+		SystemCredentialsProvider.getInstance().save();
+		assertEquals(0, ConnectionPool.getIdleCount());
+	}
 }
@@ -22,6 +22,7 @@ import org.jenkinsci.plugins.p4.PerforceScm;
 import org.jenkinsci.plugins.p4.SampleServerRule;
 import org.jenkinsci.plugins.p4.browsers.P4WebBrowser;
 import org.jenkinsci.plugins.p4.browsers.SwarmBrowser;
+import org.jenkinsci.plugins.p4.credentials.P4CredentialsImpl;
 import org.jenkinsci.plugins.p4.populate.AutoCleanImpl;
 import org.jenkinsci.plugins.p4.populate.Populate;
 import org.jenkinsci.plugins.p4.review.ReviewProp;
@@ -97,13 +98,13 @@ public class FreeStyleTest extends DefaultEnvironment {
 		WorkspaceDescriptor desc = workspace.getDescriptor();
 		assertNotNull(desc);
 		assertEquals("Static (static view, master only)", desc.getDisplayName());
+		// Select the credential for the next set of tests...
+		FormValidation check = P4CredentialsImpl.doCheckCredential(project, CREDENTIAL);
+		assertEquals(FormValidation.Kind.OK, check.kind);
+
 		ListBoxModel charsets = WorkspaceDescriptor.doFillCharsetItems();
 		assertTrue(charsets.size() > 1);
 
-		// Log in for next set of tests...
-		ConnectionHelper p4 = new ConnectionHelper(project, CREDENTIAL, null);
-		p4.login();
-
 		StaticWorkspaceImpl.DescriptorImpl impl = (StaticWorkspaceImpl.DescriptorImpl) desc;
 		FormValidation form = impl.doCheckName("test.ws");
 		assertEquals(FormValidation.Kind.OK, form.kind);
@@ -1,5 +1,7 @@
 package org.jenkinsci.plugins.p4.client;
 
+import com.perforce.p4java.server.CmdSpec;
+import com.perforce.p4java.server.IOptionsServer;
 import hudson.model.Action;
 import hudson.model.Cause;
 import hudson.model.FreeStyleBuild;
@@ -9,14 +11,20 @@ import hudson.model.Result;
 import hudson.model.Run;
 import hudson.model.StringParameterValue;
 import hudson.scm.PollingResult;
+import hudson.security.AuthorizationStrategy;
 import hudson.triggers.SCMTrigger;
 import hudson.triggers.TimerTrigger;
 import hudson.util.LogTaskListener;
 import jenkins.branch.BranchSource;
+import jenkins.model.Jenkins;
 import org.jenkinsci.plugins.p4.DefaultEnvironment;
 import org.jenkinsci.plugins.p4.ExtendedJenkinsRule;
 import org.jenkinsci.plugins.p4.PerforceScm;
 import org.jenkinsci.plugins.p4.SampleServerRule;
+import org.jenkinsci.plugins.p4.changes.P4ChangeCounter;
+import org.jenkinsci.plugins.p4.changes.P4ChangeFeed;
+import org.jenkinsci.plugins.p4.changes.P4ChangeRef;
+import org.jenkinsci.plugins.p4.changes.P4Ref;
 import org.jenkinsci.plugins.p4.filters.Filter;
 import org.jenkinsci.plugins.p4.filters.FilterPatternListImpl;
 import org.jenkinsci.plugins.p4.filters.FilterPerChangeImpl;
@@ -25,8 +33,11 @@ import org.jenkinsci.plugins.p4.populate.AutoCleanImpl;
 import org.jenkinsci.plugins.p4.populate.Populate;
 import org.jenkinsci.plugins.p4.review.ReviewProp;
 import org.jenkinsci.plugins.p4.review.SafeParametersAction;
+import org.jenkinsci.plugins.p4.tasks.PollTask;
 import org.jenkinsci.plugins.p4.scm.BranchesScmSource;
+import org.jenkinsci.plugins.p4.trigger.P4EventCoalescer;
 import org.jenkinsci.plugins.p4.trigger.P4Trigger;
+import org.jenkinsci.plugins.p4.trigger.P4TriggerDispatcher;
 import org.jenkinsci.plugins.p4.workspace.ManualWorkspaceImpl;
 import org.jenkinsci.plugins.p4.workspace.StaticWorkspaceImpl;
 import org.jenkinsci.plugins.p4.workspace.WorkspaceSpec;
@@ -40,19 +51,25 @@ import org.junit.ClassRule;
 import org.junit.Rule;
 import org.junit.Test;
 import org.jvnet.hudson.test.JenkinsRule;
+import org.jvnet.hudson.test.MockAuthorizationStrategy;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import static org.hamcrest.Matchers.containsInAnyOrder;
 import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.hasItem;
 import static org.hamcrest.Matchers.not;
 import static org.hamcrest.core.IsNull.notNullValue;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
 
@@ -144,6 +161,169 @@ public class PollingTest extends DefaultEnvironment {
 		assertThat(pollHandler.getLogBuffer(), containsString("found change: 15"));
 	}
 
+	@Test
+	public void testPollingChangeCounter() throws Exception {
+
+		String client = "PollingChangeCounter.ws";
+		String view = "//depot/... //" + client + "/...";
+		WorkspaceSpec spec = new WorkspaceSpec(view, null);
+
+		FreeStyleProject project = jenkins.createFreeStyleProject("PollingChangeCounter");
+		ManualWorkspaceImpl workspace = new ManualWorkspaceImpl("none", false, client, spec, false);
+		PerforceScm scm = new PerforceScm(CREDENTIAL, workspace, new AutoCleanImpl());
+		project.setScm(scm);
+		project.save();
+
+		// Build at the latest change
+		FreeStyleBuild build = project.scheduleBuild2(0, new Cause.UserIdCause()).get();
+		assertEquals(Result.SUCCESS, build.getResult());
+
+		// Nothing submitted since, the counter answers the poll
+		Logger polling = Logger.getLogger("Polling");
+		TestHandler pollHandler = new TestHandler();
+		polling.addHandler(pollHandler);
+		LogTaskListener listener = new LogTaskListener(polling, Level.INFO);
+		assertEquals(PollingResult.NO_CHANGES, project.poll(listener));
+		assertThat(pollHandler.getLogBuffer(), containsString("no changes found (change counter)"));
+
+		// A cached counter hides a new change until the interval expires
+		P4ChangeCounter.setInterval(600);
+		try {
+			assertEquals(PollingResult.NO_CHANGES, project.poll(listener));
+			submitFile(jenkins, "//depot/Data/counter.txt", "content");
+			assertEquals(PollingResult.NO_CHANGES, project.poll(listener));
+		} finally {
+			P4ChangeCounter.setInterval(0);
+		}
+		assertEquals(PollingResult.BUILD_NOW, project.poll(listener));
+	}
+
+	@Test
+	public void testChangeFeedMatchesPollTask() throws Exception {
+
+		String client = "ChangeFeedPollTask.ws";
+		String view = "//depot/... //" + client + "/...";
+		WorkspaceSpec spec = new WorkspaceSpec(view, null);
+		FreeStyleBuild build = buildAtChange("ChangeFeedPollTask", client, spec, "3");
+
+		ManualWorkspaceImpl ws = new ManualWorkspaceImpl("none", false, client, spec, false);
+		ws.setExpand(new HashMap<String, String>());
+		List<P4Ref> lastRefs = Collections.singletonList(new P4ChangeRef(3));
+		List<Filter> filter = new ArrayList<>();
+		LogTaskListener listener = new LogTaskListener(logger, Level.INFO);
+
+		// the first poll after a configuration change is left to the server
+		assertNull(P4ChangeFeed.poll(build, CREDENTIAL, ws, lastRefs, filter, listener));
+		List<P4Ref> feed = P4ChangeFeed.poll(build, CREDENTIAL, ws, lastRefs, filter, listener);
+		assertNotNull(feed);
+		assertTrue(feed.size() > 0);
+
+		PollTask task = new PollTask(CREDENTIAL, build, listener, filter, lastRefs);
+		task.setWorkspace(ws);
+		List<P4Ref> poll = task.invoke(null, null);
+		assertThat(toStrings(feed), containsInAnyOrder(toStrings(poll).toArray()));
+	}
+
+	@Test
+	public void testChangeFeedLateChange() throws Exception {
+
+		String client = "ChangeFeedLate.ws";
+		String view = "//depot/... //" + client + "/...";
+		WorkspaceSpec spec = new WorkspaceSpec(view, null);
+		FreeStyleBuild build = buildAtChange("ChangeFeedLate", client, spec, "3");
+
+		ManualWorkspaceImpl ws = new ManualWorkspaceImpl("none", false, client, spec, false);
+		ws.setExpand(new HashMap<String, String>());
+		List<P4Ref> lastRefs = Collections.singletonList(new P4ChangeRef(3));
+		List<Filter> filter = new ArrayList<>();
+		LogTaskListener listener = new LogTaskListener(logger, Level.INFO);
+
+		assertNull(P4ChangeFeed.poll(build, CREDENTIAL, ws, lastRefs, filter, listener));
+		assertNotNull(P4ChangeFeed.poll(build, CREDENTIAL, ws, lastRefs, filter, listener));
+
+		// the window moves forward with new submits
+		String change = submitFile(jenkins, "//depot/Data/feed.txt", "content");
+		List<P4Ref> feed = P4ChangeFeed.poll(build, CREDENTIAL, ws, lastRefs, filter, listener);
+		assertThat(toStrings(feed), hasItem(change));
+
+		// a change numbered before the head is found when its submit completes
+		String shelf = shelveFile(jenkins, "//depot/Data/late.txt", "content");
+		feed = P4ChangeFeed.poll(build, CREDENTIAL, ws, lastRefs, filter, listener);
+		assertThat(toStrings(feed), not(hasItem(shelf)));
+
+		try (ConnectionHelper p4 = new ConnectionHelper(CREDENTIAL, null)) {
+			IOptionsServer server = p4.getConnection();
+			server.setCurrentClient(server.getClient("submit.ws"));
+			server.execMapCmdList(CmdSpec.REVERT, new String[]{"-k", "-c", shelf, "//..."}, null);
+			String submitted = null;
+			for (Map<String, Object> map : server.execMapCmdList(CmdSpec.SUBMIT, new String[]{"-e", shelf}, null)) {
+				if (map.containsKey("submittedChange")) {
+					submitted = map.get("submittedChange").toString();
+				}
+			}
+			// the newest pending change keeps its number
+			assertEquals(shelf, submitted);
+		}
+		feed = P4ChangeFeed.poll(build, CREDENTIAL, ws, lastRefs, filter, listener);
+		assertThat(toStrings(feed), hasItem(shelf));
+	}
+
+	@Test
+	public void testChangeFeedBeforeBase() throws Exception {
+
+		String client = "ChangeFeedBase.ws";
+		String view = "//depot/... //" + client + "/...";
+		WorkspaceSpec spec = new WorkspaceSpec(view, null);
+		FreeStyleBuild build = buildAtChange("ChangeFeedBase", client, spec, "3");
+
+		ManualWorkspaceImpl ws = new ManualWorkspaceImpl("none", false, client, spec, false);
+		ws.setExpand(new HashMap<String, String>());
+		List<P4Ref> lastRefs = Collections.singletonList(new P4ChangeRef(3));
+		List<Filter> filter = new ArrayList<>();
+		LogTaskListener listener = new LogTaskListener(logger, Level.INFO);
+
+		// a window that starts after the last build cannot answer the poll
+		P4ChangeFeed.setBackfill(10);
+		try {
+			assertNull(P4ChangeFeed.poll(build, CREDENTIAL, ws, lastRefs, filter, listener));
+			assertNull(P4ChangeFeed.poll(build, CREDENTIAL, ws, lastRefs, filter, listener));
+		} finally {
+			P4ChangeFeed.setBackfill(500);
+		}
+
+		// the job still finds its changes by polling the server
+		Logger polling = Logger.getLogger("Polling");
+		TestHandler pollHandler = new TestHandler();
+		polling.addHandler(pollHandler);
+		assertEquals(PollingResult.BUILD_NOW, build.getProject().poll(new LogTaskListener(polling, Level.INFO)));
+		assertThat(pollHandler.getLogBuffer(), not(containsString("Polling with change feed")));
+	}
+
+	private FreeStyleBuild buildAtChange(String name, String client, WorkspaceSpec spec, String change) throws Exception {
+		FreeStyleProject project = jenkins.createFreeStyleProject(name);
+		ManualWorkspaceImpl workspace = new ManualWorkspaceImpl("none", false, client, spec, false);
+		PerforceScm scm = new PerforceScm(CREDENTIAL, workspace, new AutoCleanImpl());
+		project.setScm(scm);
+		project.save();
+
+		List<ParameterValue> list = new ArrayList<>();
+		list.add(new StringParameterValue(ReviewProp.SWARM_STATUS.toString(), "submitted"));
+		list.add(new StringParameterValue(ReviewProp.P4_CHANGE.toString(), change));
+		Action actions = new SafeParametersAction(new ArrayList<ParameterValue>(), list);
+
+		FreeStyleBuild build = project.scheduleBuild2(0, new Cause.UserIdCause(), actions).get();
+		assertEquals(Result.SUCCESS, build.getResult());
+		return build;
+	}
+
+	private List<String> toStrings(List<P4Ref> refs) {
+		List<String> list = new ArrayList<>();
+		for (P4Ref ref : refs) {
+			list.add(ref.toString());
+		}
+		return list;
+	}
+
 	@Test
 	public void testPollingInc() throws Exception {
 
@@ -544,6 +724,175 @@ public class PollingTest extends DefaultEnvironment {
 		assertEquals("Should have triggered a build on change", 2, project.getLastBuild().getNumber());
 	}
 
+	@Test
+	public void shouldDispatchTriggerToIndexedJob() throws Exception {
+		String client = "DispatchTriggerJob.ws";
+		String view = "//depot/... //" + client + "/...";
+		WorkspaceSpec spec = new WorkspaceSpec(view, null);
+		FreeStyleProject project = jenkins.createFreeStyleProject("DispatchTriggerJob");
+		ManualWorkspaceImpl workspace = new ManualWorkspaceImpl("none", false, client, spec, false);
+		Populate populate = new AutoCleanImpl();
+		PerforceScm scm = new PerforceScm(CREDENTIAL, workspace, populate);
+		project.setScm(scm);
+		P4Trigger trigger = new P4Trigger();
+		trigger.start(project, false);
+		project.addTrigger(trigger);
+		project.save();
+
+		// Checkout at commit 9
+		List<ParameterValue> list = new ArrayList<ParameterValue>();
+		list.add(new StringParameterValue(ReviewProp.SWARM_STATUS.toString(), "committed"));
+		list.add(new StringParameterValue(ReviewProp.P4_CHANGE.toString(), "9"));
+		Action actions = new SafeParametersAction(new ArrayList<>(), list);
+		jenkins.assertBuildStatusSuccess(project.scheduleBuild2(0, new Cause.UserIdCause(), actions));
+		jenkins.waitUntilNoActivity();
+
+		// Test trigger through the dispatcher (other jobs may share the server)
+		assertTrue(P4TriggerDispatcher.get().dispatch(p4d.getRshPort()) >= 1);
+		assertTrue(P4TriggerDispatcher.get().awaitIdle(60, TimeUnit.SECONDS));
+
+		TimeUnit.SECONDS.sleep(project.getQuietPeriod());
+		jenkins.waitUntilNoActivity();
+
+		assertEquals("Should have triggered a build on change", 2, project.getLastBuild().getNumber());
+	}
+
+	@Test
+	public void shouldNotDispatchTriggerToHiddenJob() throws Exception {
+		String client = "HiddenTriggerJob.ws";
+		String view = "//depot/... //" + client + "/...";
+		WorkspaceSpec spec = new WorkspaceSpec(view, null);
+		FreeStyleProject project = jenkins.createFreeStyleProject("HiddenTriggerJob");
+		ManualWorkspaceImpl workspace = new ManualWorkspaceImpl("none", false, client, spec, false);
+		Populate populate = new AutoCleanImpl();
+		PerforceScm scm = new PerforceScm(CREDENTIAL, workspace, populate);
+		project.setScm(scm);
+		P4Trigger trigger = new P4Trigger();
+		trigger.start(project, false);
+		project.addTrigger(trigger);
+		project.save();
+
+		// Checkout at commit 9
+		List<ParameterValue> list = new ArrayList<ParameterValue>();
+		list.add(new StringParameterValue(ReviewProp.SWARM_STATUS.toString(), "committed"));
+		list.add(new StringParameterValue(ReviewProp.P4_CHANGE.toString(), "9"));
+		Action actions = new SafeParametersAction(new ArrayList<>(), list);
+		jenkins.assertBuildStatusSuccess(project.scheduleBuild2(0, new Cause.UserIdCause(), actions));
+		jenkins.waitUntilNoActivity();
+
+		// A caller that cannot read the job does not poll it
+		jenkins.jenkins.setAuthorizationStrategy(new MockAuthorizationStrategy());
+		try {
+			assertEquals(0, P4TriggerDispatcher.get().dispatch(p4d.getRshPort(), null, Collections.singletonList(Jenkins.ANONYMOUS)));
+			assertTrue(P4TriggerDispatcher.get().awaitIdle(60, TimeUnit.SECONDS));
+		} finally {
+			jenkins.jenkins.setAuthorizationStrategy(AuthorizationStrategy.UNSECURED);
+		}
+
+		TimeUnit.SECONDS.sleep(project.getQuietPeriod());
+		jenkins.waitUntilNoActivity();
+
+		assertEquals("Should not trigger a hidden job", 1, project.getLastBuild().getNumber());
+	}
+
+	@Test
+	public void shouldSkipTriggerOutsideView() throws Exception {
+		String client = "SkipTriggerJob.ws";
+		String view = "//depot/main/... //" + client + "/...";
+		WorkspaceSpec spec = new WorkspaceSpec(view, null);
+		FreeStyleProject project = jenkins.createFreeStyleProject("SkipTriggerJob");
+		ManualWorkspaceImpl workspace = new ManualWorkspaceImpl("none", false, client, spec, false);
+		Populate populate = new AutoCleanImpl();
+		PerforceScm scm = new PerforceScm(CREDENTIAL, workspace, populate);
+		project.setScm(scm);
+		P4Trigger trigger = new P4Trigger();
+		trigger.start(project, false);
+		project.addTrigger(trigger);
+		project.save();
+
+		// Checkout at commit 9
+		List<ParameterValue> list = new ArrayList<ParameterValue>();
+		list.add(new StringParameterValue(ReviewProp.SWARM_STATUS.toString(), "committed"));
+		list.add(new StringParameterValue(ReviewProp.P4_CHANGE.toString(), "9"));
+		Action actions = new SafeParametersAction(new ArrayList<>(), list);
+		jenkins.assertBuildStatusSuccess(project.scheduleBuild2(0, new Cause.UserIdCause(), actions));
+		jenkins.waitUntilNoActivity();
+
+		// Change 18 only touches //depot/Data/file-1.dat
+		long skipped = (Long) P4TriggerDispatcher.get().getMetrics().get("skipped");
+		P4TriggerDispatcher.get().dispatch(p4d.getRshPort(), 18);
+		assertTrue(P4TriggerDispatcher.get().awaitIdle(60, TimeUnit.SECONDS));
+
+		TimeUnit.SECONDS.sleep(project.getQuietPeriod());
+		jenkins.waitUntilNoActivity();
+
+		assertTrue((Long) P4TriggerDispatcher.get().getMetrics().get("skipped") > skipped);
+		assertEquals("Should not trigger a build outside the view", 1, project.getLastBuild().getNumber());
+	}
+
+	@Test
+	public void shouldTriggerAfterViewChange() throws Exception {
+		String client = "ViewChangeTriggerJob.ws";
+		WorkspaceSpec spec = new WorkspaceSpec("//depot/main/... //" + client + "/...", null);
+		FreeStyleProject project = jenkins.createFreeStyleProject("ViewChangeTriggerJob");
+		ManualWorkspaceImpl workspace = new ManualWorkspaceImpl("none", false, client, spec, false);
+		Populate populate = new AutoCleanImpl();
+		project.setScm(new PerforceScm(CREDENTIAL, workspace, populate));
+		P4Trigger trigger = new P4Trigger();
+		trigger.start(project, false);
+		project.addTrigger(trigger);
+		project.save();
+
+		// Checkout at commit 9
+		List<ParameterValue> list = new ArrayList<ParameterValue>();
+		list.add(new StringParameterValue(ReviewProp.SWARM_STATUS.toString(), "committed"));
+		list.add(new StringParameterValue(ReviewProp.P4_CHANGE.toString(), "9"));
+		Action actions = new SafeParametersAction(new ArrayList<>(), list);
+		jenkins.assertBuildStatusSuccess(project.scheduleBuild2(0, new Cause.UserIdCause(), actions));
+		jenkins.waitUntilNoActivity();
+
+		// Move the view to //depot/Data/... without building; the client on the server is unchanged
+		spec = new WorkspaceSpec("//depot/Data/... //" + client + "/...", null);
+		workspace = new ManualWorkspaceImpl("none", false, client, spec, false);
+		project.setScm(new PerforceScm(CREDENTIAL, workspace, populate));
+		project.save();
+
+		// Change 18 only touches //depot/Data/file-1.dat
+		long skipped = (Long) P4TriggerDispatcher.get().getMetrics().get("skipped");
+		P4TriggerDispatcher.get().dispatch(p4d.getRshPort(), 18);
+		assertTrue(P4TriggerDispatcher.get().awaitIdle(60, TimeUnit.SECONDS));
+
+		TimeUnit.SECONDS.sleep(project.getQuietPeriod());
+		jenkins.waitUntilNoActivity();
+
+		assertEquals(skipped, (long) (Long) P4TriggerDispatcher.get().getMetrics().get("skipped"));
+		assertEquals("Should trigger a build in the new view", 2, project.getLastBuild().getNumber());
+	}
+
+	@Test
+	public void shouldCoalesceTriggerEvents() throws Exception {
+		String port = p4d.getRshPort();
+		long events = (Long) P4TriggerDispatcher.get().getMetrics().get("events");
+
+		// long enough that only the flush emits the events
+		P4EventCoalescer.setQuietPeriod(600);
+		try {
+			P4EventCoalescer.change(port, 16);
+			P4EventCoalescer.change(port, 17);
+			P4EventCoalescer.change(port, 18);
+			assertEquals(events, P4TriggerDispatcher.get().getMetrics().get("events"));
+
+			P4EventCoalescer.flush();
+			assertTrue(P4TriggerDispatcher.get().awaitIdle(60, TimeUnit.SECONDS));
+			jenkins.waitUntilNoActivity();
+		} finally {
+			P4EventCoalescer.flush();
+			P4EventCoalescer.setQuietPeriod(2);
+		}
+
+		assertEquals("Should dispatch one sweep", events + 1, P4TriggerDispatcher.get().getMetrics().get("events"));
+	}
+
 	@Test
 	public void testShouldTriggerPipelineJobIfChanges() throws Exception {
 
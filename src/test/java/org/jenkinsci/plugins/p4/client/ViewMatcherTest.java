@@ -0,0 +1,49 @@
+package org.jenkinsci.plugins.p4.client;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ViewMatcherTest {
+
+	@Test
+	public void testIncludeExclude() {
+		ViewMatcher view = new ViewMatcher(Arrays.asList(
+				"//depot/main/...",
+				"-//depot/main/docs/...",
+				"//depot/main/docs/api/...",
+				"\"//depot/with space/...\""), true);
+
+		assertTrue(view.matches("//depot/main/src/a.c"));
+		assertFalse(view.matches("//depot/main/docs/a.txt"));
+		assertTrue(view.matches("//depot/main/docs/api/a.txt"));
+		assertTrue(view.matches("//depot/with space/a.txt"));
+		assertFalse(view.matches("//depot/other/a.c"));
+		assertFalse(view.matches("//depot/Main/src/a.c"));
+	}
+
+	@Test
+	public void testWildcards() {
+		ViewMatcher view = new ViewMatcher(Arrays.asList(
+				"//depot/*/src/...",
+				"//depot/%%1/bin/%%2.exe",
+				"-//depot/.../*.tmp"), true);
+
+		assertTrue(view.matches("//depot/proj/src/a/b.c"));
+		assertFalse(view.matches("//depot/proj/x/src/a.c"));
+		assertTrue(view.matches("//depot/proj/bin/app.exe"));
+		assertFalse(view.matches("//depot/proj/bin/sub/app.exe"));
+		assertFalse(view.matches("//depot/proj/src/a.tmp"));
+	}
+
+	@Test
+	public void testCaseInsensitive() {
+		ViewMatcher view = new ViewMatcher(Arrays.asList("//Depot/Main/..."), false);
+
+		assertTrue(view.matches("//depot/main/a.c"));
+		assertTrue(view.matchesAny(Arrays.asList("//other/a.c", "//DEPOT/MAIN/b.c")));
+	}
+}
@@ -4,6 +4,7 @@ import com.perforce.p4java.client.IClient;
 import com.perforce.p4java.core.IMapEntry;
 import com.perforce.p4java.impl.generic.client.ClientView;
 import hudson.model.Result;
+import hudson.scm.ChangeLogSet;
 import org.jenkinsci.plugins.p4.DefaultEnvironment;
 import org.jenkinsci.plugins.p4.ExtendedJenkinsRule;
 import org.jenkinsci.plugins.p4.SampleServerRule;
@@ -31,6 +32,7 @@ import java.util.logging.Logger;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
 
 public class WorkflowTest extends DefaultEnvironment {
 
@@ -317,6 +319,22 @@ public class WorkflowTest extends DefaultEnvironment {
 		assertEquals(Result.SUCCESS, job.getBuildByNumber(1).getResult());
 		assertEquals(Result.SUCCESS, job.getBuildByNumber(2).getResult());
 
+		// library synced once into the cache, then copied
+		WorkflowRun run = job.scheduleBuild2(0).get();
+		jenkins.assertLogContains("found in cache.", run);
+
+		// library changes from the cache are recorded in the changelog
+		submitFile(jenkins, "//depot/library/vars/sayHello.groovy", content + "\n", "Library change");
+		run = job.scheduleBuild2(0).get();
+		jenkins.assertLogContains("updating library cache", run);
+		boolean found = false;
+		for (ChangeLogSet<? extends ChangeLogSet.Entry> set : run.getChangeSets()) {
+			for (ChangeLogSet.Entry entry : set) {
+				found |= entry.getMsg().contains("Library change");
+			}
+		}
+		assertTrue(found);
+
 		// Clear Global Libraries for other Jobs
 		globalLib.setLibraries(new ArrayList<LibraryConfiguration>());
 	}
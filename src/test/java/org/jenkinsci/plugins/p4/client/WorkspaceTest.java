@@ -1,5 +1,9 @@
 package org.jenkinsci.plugins.p4.client;
 
+import com.cloudbees.plugins.credentials.CredentialsScope;
+import com.perforce.p4java.client.IClient;
+import com.perforce.p4java.impl.generic.client.ClientView;
+import com.perforce.p4java.impl.generic.client.ClientView.ClientViewMapping;
 import hudson.model.Action;
 import hudson.model.AutoCompletionCandidates;
 import hudson.model.Cause;
@@ -15,6 +19,8 @@ import net.sf.json.JSONObject;
 import org.jenkinsci.plugins.p4.DefaultEnvironment;
 import org.jenkinsci.plugins.p4.PerforceScm;
 import org.jenkinsci.plugins.p4.SampleServerRule;
+import org.jenkinsci.plugins.p4.credentials.P4CredentialsImpl;
+import org.jenkinsci.plugins.p4.credentials.P4PasswordImpl;
 import org.jenkinsci.plugins.p4.populate.AutoCleanImpl;
 import org.jenkinsci.plugins.p4.populate.Populate;
 import org.jenkinsci.plugins.p4.review.ReviewProp;
@@ -31,7 +37,9 @@ import org.junit.Rule;
 import org.junit.Test;
 import org.jvnet.hudson.test.JenkinsRule;
 
+import java.io.File;
 import java.util.ArrayList;
+import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -85,33 +93,93 @@ public class WorkspaceTest extends DefaultEnvironment {
 		assertNotNull(descSpec);
 		assertEquals("Perforce Client Spec", descSpec.getDisplayName());
 
-		// Log in for next set of tests...
-		try(ConnectionHelper p4 = new ConnectionHelper(project, CREDENTIAL, null)) {
-			WorkspaceSpec.DescriptorImpl implSpec = (WorkspaceSpec.DescriptorImpl) descSpec;
-			AutoCompletionCandidates list = implSpec.doAutoCompleteStreamName("//");
-			assertTrue(list.getValues().contains("//stream/main"));
+		// Select the credential for the next set of tests...
+		FormValidation check = P4CredentialsImpl.doCheckCredential(project, CREDENTIAL);
+		assertEquals(FormValidation.Kind.OK, check.kind);
 
-			ListBoxModel lineItems = implSpec.doFillLineItems();
-			assertFalse(lineItems.isEmpty());
+		WorkspaceSpec.DescriptorImpl implSpec = (WorkspaceSpec.DescriptorImpl) descSpec;
+		AutoCompletionCandidates list = implSpec.doAutoCompleteStreamName("//");
+		assertTrue(list.getValues().contains("//stream/main"));
 
-			ListBoxModel typeItems = implSpec.doFillTypeItems();
-			assertFalse(typeItems.isEmpty());
+		ListBoxModel lineItems = implSpec.doFillLineItems();
+		assertFalse(lineItems.isEmpty());
 
-			ManualWorkspaceImpl.DescriptorImpl impl = (ManualWorkspaceImpl.DescriptorImpl) desc;
-			FormValidation form = impl.doCheckName("test.ws");
-			assertEquals(FormValidation.Kind.OK, form.kind);
+		ListBoxModel typeItems = implSpec.doFillTypeItems();
+		assertFalse(typeItems.isEmpty());
 
-			list = impl.doAutoCompleteName("m");
-			assertTrue(list.getValues().contains(client));
+		ManualWorkspaceImpl.DescriptorImpl impl = (ManualWorkspaceImpl.DescriptorImpl) desc;
+		FormValidation form = impl.doCheckName("test.ws");
+		assertEquals(FormValidation.Kind.OK, form.kind);
 
-			JSONObject json = workspace.getSpecJSON("test.ws");
-			assertEquals("//depot/... //test.ws/...\n", json.getString("view"));
-		}
+		list = impl.doAutoCompleteName("m");
+		assertTrue(list.getValues().contains(client));
 
 		JSONObject json = workspace.getSpecJSON("test.ws");
+		assertEquals("//depot/... //test.ws/...\n", json.getString("view"));
+
+		// Without a selected credential
+		ConnectionRegistry.clear();
+		json = workspace.getSpecJSON("test.ws");
 		assertEquals("please define view...", json.getString("view"));
 	}
 
+	@Test
+	public void testRegistryCachePerUser() throws Exception {
+		String port = p4d.getRshPort();
+		P4PasswordImpl user = new P4PasswordImpl(CredentialsScope.GLOBAL, "ui", "desc", port, null, "jenkins", "0", "0", null, "jenkins");
+		P4PasswordImpl admin = new P4PasswordImpl(CredentialsScope.GLOBAL, "ui", "desc", port, null, "admin", "0", "0", null, "Password");
+
+		// The same credential ID edited to log in as another user
+		ConnectionRegistry.select(user);
+		assertEquals("jenkins", ConnectionRegistry.cached("user", "", p4 -> p4.getUserName()));
+		ConnectionRegistry.select(admin);
+		assertEquals("admin", ConnectionRegistry.cached("user", "", p4 -> p4.getUserName()));
+	}
+
+	@Test
+	public void testClientSpecUnchanged() throws Exception {
+
+		String client = "cached.ws";
+		String view = "//depot/Data/... //" + client + "/...";
+		WorkspaceSpec spec = new WorkspaceSpec(view, null);
+		ManualWorkspaceImpl workspace = new ManualWorkspaceImpl("none", false, client, spec, false);
+		workspace.setExpand(new HashMap<String, String>());
+		workspace.setRootPath(new File("target/cached.ws").getAbsolutePath());
+
+		try (ClientHelper p4 = new ClientHelper(jenkins.getInstance(), CREDENTIAL, null, workspace)) {
+			assertNotNull(p4.getClient());
+		}
+		Date updated = getClient(client).getUpdated();
+		Thread.sleep(1100);
+
+		// the same spec is not saved again
+		for (int i = 0; i < 2; i++) {
+			try (ClientHelper p4 = new ClientHelper(jenkins.getInstance(), CREDENTIAL, null, workspace)) {
+				assertNotNull(p4.getClient());
+			}
+			assertEquals(updated, getClient(client).getUpdated());
+		}
+
+		// a spec edited on the server is saved again
+		try (ConnectionHelper p4 = new ConnectionHelper(CREDENTIAL, null)) {
+			IClient iclient = p4.getConnection().getClient(client);
+			ClientView edited = new ClientView();
+			edited.addEntry(new ClientViewMapping(0, "//depot/Main/...", "//" + client + "/..."));
+			iclient.setClientView(edited);
+			iclient.update();
+		}
+		try (ClientHelper p4 = new ClientHelper(jenkins.getInstance(), CREDENTIAL, null, workspace)) {
+			assertNotNull(p4.getClient());
+		}
+		assertEquals("//depot/Data/...", getClient(client).getClientView().getEntry(0).getLeft());
+	}
+
+	private IClient getClient(String client) throws Exception {
+		try (ConnectionHelper p4 = new ConnectionHelper(CREDENTIAL, null)) {
+			return p4.getConnection().getClient(client);
+		}
+	}
+
 	@Test
 	public void testFreeStyleProject_TemplateWs() throws Exception {
 
@@ -134,9 +202,9 @@ public class WorkspaceTest extends DefaultEnvironment {
 		assertNotNull(desc);
 		assertEquals("Template (view generated for each node)", desc.getDisplayName());
 
-		// Log in for next set of tests...
-		ConnectionHelper p4 = new ConnectionHelper(project, CREDENTIAL, null);
-		p4.login();
+		// Select the credential for the next set of tests...
+		FormValidation check = P4CredentialsImpl.doCheckCredential(project, CREDENTIAL);
+		assertEquals(FormValidation.Kind.OK, check.kind);
 
 		TemplateWorkspaceImpl.DescriptorImpl impl = (TemplateWorkspaceImpl.DescriptorImpl) desc;
 		FormValidation form = impl.doCheckTemplateName("test.ws");
@@ -171,9 +239,9 @@ public class WorkspaceTest extends DefaultEnvironment {
 		assertNotNull(desc);
 		assertEquals("Streams (view generated by Perforce for each node)", desc.getDisplayName());
 
-		// Log in for next set of tests...
-		ConnectionHelper p4 = new ConnectionHelper(project, CREDENTIAL, null);
-		p4.login();
+		// Select the credential for the next set of tests...
+		FormValidation check = P4CredentialsImpl.doCheckCredential(project, CREDENTIAL);
+		assertEquals(FormValidation.Kind.OK, check.kind);
 
 		FormValidation form = WorkspaceDescriptor.doCheckStreamName("//stream/main");
 		assertEquals(FormValidation.Kind.OK, form.kind);
@@ -0,0 +1,53 @@
+package org.jenkinsci.plugins.p4.email;
+
+import org.jenkinsci.plugins.p4.client.ConnectionHelper;
+import org.junit.After;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class P4UserCacheTest {
+
+	@After
+	public void clearCache() {
+		P4UserCache.clear();
+	}
+
+	@Test
+	public void testFindEmailByUser() throws Exception {
+		ConnectionHelper p4 = server("ssl:one:1666");
+		when(p4.fetchEmail("bob")).thenReturn("bob@example.com");
+		P4UserCache.getEmail(p4, "bob");
+
+		assertEquals("bob@example.com", P4UserCache.findEmail("bob"));
+		assertNull(P4UserCache.findEmail("alice"));
+	}
+
+	@Test
+	public void testFindEmailAmbiguous() throws Exception {
+		ConnectionHelper one = server("ssl:one:1666");
+		when(one.fetchEmail("bob")).thenReturn("bob@one.example.com");
+		P4UserCache.getEmail(one, "bob");
+
+		// same address on another server
+		ConnectionHelper two = server("ssl:two:1666");
+		when(two.fetchEmail("bob")).thenReturn("bob@one.example.com");
+		P4UserCache.getEmail(two, "bob");
+		assertEquals("bob@one.example.com", P4UserCache.findEmail("bob"));
+
+		// a different 'bob' on a third server
+		ConnectionHelper three = server("ssl:three:1666");
+		when(three.fetchEmail("bob")).thenReturn("bob@three.example.com");
+		P4UserCache.getEmail(three, "bob");
+		assertNull(P4UserCache.findEmail("bob"));
+	}
+
+	private static ConnectionHelper server(String port) {
+		ConnectionHelper p4 = mock(ConnectionHelper.class);
+		when(p4.getPort()).thenReturn(port);
+		return p4;
+	}
+}
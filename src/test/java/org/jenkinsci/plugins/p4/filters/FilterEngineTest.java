@@ -0,0 +1,183 @@
+package org.jenkinsci.plugins.p4.filters;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class FilterEngineTest {
+
+	@Test
+	public void testNoFilters() {
+		FilterEngine engine = new FilterEngine(null);
+		assertTrue(engine.isEmpty());
+		assertFalse(engine.isFiltered("bob", paths("//depot/a.txt")));
+	}
+
+	@Test
+	public void testUserFilter() {
+		FilterEngine engine = new FilterEngine(filters(new FilterUserImpl("Bob")));
+		assertTrue(engine.hasUserFilter());
+		assertFalse(engine.hasFileFilter());
+		assertTrue(engine.isUserFiltered("bob"));
+		assertFalse(engine.isUserFiltered("alice"));
+	}
+
+	@Test
+	public void testPathFilter() {
+		FilterEngine engine = new FilterEngine(filters(
+				new FilterPathImpl("//depot/docs/"),
+				new FilterPathImpl("//depot/tests/")));
+
+		assertTrue(engine.isFileFiltered(paths("//depot/docs/a.txt", "//depot/tests/b.txt")));
+		assertFalse(engine.isFileFiltered(paths("//depot/docs/a.txt", "//depot/src/b.txt")));
+		assertTrue(engine.isFileFiltered(new ArrayList<String>()));
+	}
+
+	@Test
+	public void testViewMaskFilter() {
+		String mask = "//depot/main/\n-//depot/main/docs/\n//depot/main/docs/api/";
+		FilterEngine engine = new FilterEngine(filters(new FilterViewMaskImpl(mask)));
+
+		assertFalse(engine.isFileFiltered(paths("//depot/main/src/a.c")));
+		assertTrue(engine.isFileFiltered(paths("//depot/main/docs/a.txt")));
+		assertFalse(engine.isFileFiltered(paths("//depot/main/docs/api/a.txt")));
+		assertTrue(engine.isFileFiltered(paths("//depot/other/a.c")));
+	}
+
+	@Test
+	public void testPatternFilterDecides() {
+		// the user filter after the pattern list is never reached
+		FilterEngine engine = new FilterEngine(filters(
+				new FilterPatternListImpl(".*\\.c", true),
+				new FilterUserImpl("bob")));
+
+		assertFalse(engine.isFiltered("bob", paths("//depot/a.c")));
+		assertTrue(engine.isFiltered("alice", paths("//depot/a.txt")));
+	}
+
+	@Test
+	public void testPathThenPattern() {
+		// the pattern list sees only files not removed by the path filter
+		FilterEngine engine = new FilterEngine(filters(
+				new FilterPathImpl("//depot/gen/"),
+				new FilterPatternListImpl(".*\\.c", false)));
+
+		assertTrue(engine.isFileFiltered(paths("//depot/gen/a.c", "//depot/src/b.txt")));
+		assertFalse(engine.isFileFiltered(paths("//depot/gen/a.c", "//depot/src/B.C")));
+	}
+
+	@Test
+	public void testPatternListMatcher() {
+		FilterPatternListImpl f = new FilterPatternListImpl("//depot/main/.*\n.*\\.(c|h)\n(a)\\1.*\n[", true);
+		PatternListMatcher matcher = f.getMatcher();
+
+		assertTrue(matcher.matches("//depot/main/a.txt"));
+		assertTrue(matcher.matches("//depot/other/a.c"));
+		assertTrue(matcher.matches("aa/b"));
+		assertFalse(matcher.matches("//depot/other/a.txt"));
+		assertFalse(matcher.matches("//depot/main/a\nb"));
+		assertTrue(f.getMatcher() == new FilterPatternListImpl(f.getPatternText(), true).getMatcher());
+	}
+
+	@Test
+	public void testCompiledMatchesLegacy() {
+		String[] dirs = {"//depot/", "//depot/main/", "//depot/main/src/", "//depot/main/docs/", "//depot/rel/", ""};
+		Random random = new Random(42);
+
+		for (int run = 0; run < 200; run++) {
+			StringBuilder mask = new StringBuilder();
+			for (int i = 0; i < 1 + random.nextInt(5); i++) {
+				mask.append(random.nextBoolean() ? "-" : "").append(dirs[random.nextInt(dirs.length)]).append("\n");
+			}
+			String patterns = dirs[random.nextInt(dirs.length)] + ".*\n.*\\.TXT\n//depot/rel/[0-9]+/.*";
+
+			List<Filter> filters = new ArrayList<>();
+			filters.add(new FilterPathImpl(dirs[random.nextInt(dirs.length - 1)]));
+			filters.add(new FilterPathImpl(dirs[random.nextInt(dirs.length - 1)]));
+			filters.add(new FilterViewMaskImpl(mask.toString()));
+			filters.add(new FilterPatternListImpl(patterns, random.nextBoolean()));
+			if (random.nextBoolean()) {
+				filters.add(0, filters.remove(3));
+			}
+
+			List<String> files = new ArrayList<>();
+			for (int i = 0; i < 1 + random.nextInt(4); i++) {
+				String ext = random.nextBoolean() ? ".txt" : ".c";
+				files.add(dirs[random.nextInt(dirs.length - 1)] + random.nextInt(3) + "/f" + ext);
+			}
+
+			FilterEngine engine = new FilterEngine(filters);
+			assertEquals(mask + " " + files, legacy(files, filters), engine.isFileFiltered(files));
+		}
+	}
+
+	// The original PollTask.filterChange for file based filters.
+	private boolean legacy(List<String> files, List<Filter> scmFilter) {
+		for (Filter f : scmFilter) {
+			if (f instanceof FilterPathImpl) {
+				List<String> remainder = new ArrayList<>();
+				String path = ((FilterPathImpl) f).getPath();
+				for (String p : files) {
+					if (!p.startsWith(path)) {
+						remainder.add(p);
+					}
+				}
+				files = remainder;
+				if (files.isEmpty()) {
+					return true;
+				}
+			}
+			if (f instanceof FilterViewMaskImpl) {
+				List<String> included = new ArrayList<>();
+				String[] maskPaths = ((FilterViewMaskImpl) f).getViewMask().split("\\R");
+				for (String p : files) {
+					boolean isFileInViewMask = false;
+					for (String maskPath : maskPaths) {
+						if (p.startsWith(maskPath)) {
+							isFileInViewMask = true;
+						}
+						if (maskPath.startsWith("-")) {
+							String excludedMaskPath = maskPath.substring(maskPath.indexOf("-") + 1);
+							if (p.startsWith(excludedMaskPath)) {
+								isFileInViewMask = false;
+							}
+						}
+					}
+					if (isFileInViewMask) {
+						included.add(p);
+					}
+				}
+				if (included.isEmpty()) {
+					return true;
+				}
+			}
+			if (f instanceof FilterPatternListImpl) {
+				for (String p : files) {
+					for (Pattern pattern : ((FilterPatternListImpl) f).getPatternList()) {
+						if (pattern.matcher(p).matches()) {
+							return false;
+						}
+					}
+				}
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private List<Filter> filters(Filter... filters) {
+		return Arrays.asList(filters);
+	}
+
+	private List<String> paths(String... paths) {
+		return Arrays.asList(paths);
+	}
+}
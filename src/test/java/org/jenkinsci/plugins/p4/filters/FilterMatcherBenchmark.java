@@ -0,0 +1,134 @@
+package org.jenkinsci.plugins.p4.filters;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * Compares the compiled view mask and pattern list matchers with the
+ * original per-file, per-line checks for a 20k file change.
+ * <p>
+ * Run with: mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=org.jenkinsci.plugins.p4.filters.FilterMatcherBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class FilterMatcherBenchmark {
+
+	@Param({"20000"})
+	private int files;
+
+	@Param({"200"})
+	private int masks;
+
+	private List<String> paths;
+	private FilterViewMaskImpl viewMask;
+	private FilterPatternListImpl patternList;
+
+	@Setup
+	public void setup() {
+		// no file is in the view mask or matches a pattern: the worst case
+		paths = new ArrayList<>();
+		for (int i = 0; i < files; i++) {
+			paths.add("//depot/project/module" + (i % 500) + "/src/main/java/File" + i + ".java");
+		}
+
+		StringBuilder mask = new StringBuilder();
+		StringBuilder patterns = new StringBuilder();
+		for (int i = 0; i < masks; i++) {
+			mask.append("//depot/other").append(i).append("/...\n");
+			mask.append("-//depot/project/module").append(i).append("/\n");
+			patterns.append("//depot/other").append(i).append("/.*\n");
+			if (i % 10 == 0) {
+				patterns.append(".*/gen").append(i).append("/.*\\.xml\n");
+			}
+		}
+		viewMask = new FilterViewMaskImpl(mask.toString());
+		patternList = new FilterPatternListImpl(patterns.toString(), true);
+	}
+
+	@Benchmark
+	public boolean legacyViewMask() {
+		String[] maskPaths = viewMask.getViewMask().split("\\R");
+		for (String p : paths) {
+			boolean isFileInViewMask = false;
+			for (String maskPath : maskPaths) {
+				if (p.startsWith(maskPath)) {
+					isFileInViewMask = true;
+				}
+				if (maskPath.startsWith("-")) {
+					String excludedMaskPath = maskPath.substring(maskPath.indexOf("-") + 1);
+					if (p.startsWith(excludedMaskPath)) {
+						isFileInViewMask = false;
+					}
+				}
+			}
+			if (isFileInViewMask) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	@Benchmark
+	public boolean compiledViewMask() {
+		ViewMaskMatcher matcher = viewMask.getMatcher();
+		for (String p : paths) {
+			if (matcher.contains(p)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	@Benchmark
+	public boolean legacyPatternList() {
+		List<Pattern> list = patternList.getPatternList();
+		for (String p : paths) {
+			for (Pattern pattern : list) {
+				if (pattern.matcher(p).matches()) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	@Benchmark
+	public boolean compiledPatternList() {
+		PatternListMatcher matcher = patternList.getMatcher();
+		for (String p : paths) {
+			if (matcher.matches(p)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	public static void main(String[] args) throws Exception {
+		Options opt = new OptionsBuilder()
+				.include(FilterMatcherBenchmark.class.getSimpleName())
+				.build();
+		new Runner(opt).run();
+	}
+}
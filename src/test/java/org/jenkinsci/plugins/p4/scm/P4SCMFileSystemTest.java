@@ -1,6 +1,9 @@
 package org.jenkinsci.plugins.p4.scm;
 
+import com.cloudbees.plugins.credentials.CredentialsScope;
 import hudson.model.AutoCompletionCandidates;
+import hudson.model.FreeStyleProject;
+import hudson.util.FormValidation;
 import jenkins.model.Jenkins;
 import jenkins.scm.api.SCMFile;
 import jenkins.scm.api.SCMFileSystem;
@@ -8,9 +11,15 @@ import jenkins.scm.api.SCMSourceOwner;
 import org.jenkinsci.plugins.p4.DefaultEnvironment;
 import org.jenkinsci.plugins.p4.PerforceScm;
 import org.jenkinsci.plugins.p4.SampleServerRule;
+import org.jenkinsci.plugins.p4.changes.P4ChangeRef;
 import org.jenkinsci.plugins.p4.client.ConnectionHelper;
+import org.jenkinsci.plugins.p4.client.ConnectionRegistry;
+import org.jenkinsci.plugins.p4.client.DirectoryTreeCache;
 import org.jenkinsci.plugins.p4.client.NavigateHelper;
+import org.jenkinsci.plugins.p4.client.ScanClientPool;
 import org.jenkinsci.plugins.p4.client.TempClientHelper;
+import org.jenkinsci.plugins.p4.credentials.P4CredentialsImpl;
+import org.jenkinsci.plugins.p4.credentials.P4PasswordImpl;
 import org.jenkinsci.plugins.p4.populate.AutoCleanImpl;
 import org.jenkinsci.plugins.p4.populate.Populate;
 import org.jenkinsci.plugins.p4.workspace.ManualWorkspaceImpl;
@@ -18,13 +27,13 @@ import org.jenkinsci.plugins.p4.workspace.WorkspaceSpec;
 import org.jenkinsci.plugins.workflow.cps.CpsScmFlowDefinition;
 import org.jenkinsci.plugins.workflow.job.WorkflowJob;
 import org.jenkinsci.plugins.workflow.multibranch.WorkflowMultiBranchProject;
+import org.junit.After;
 import org.junit.Before;
 import org.junit.ClassRule;
 import org.junit.Rule;
 import org.junit.Test;
 import org.jvnet.hudson.test.JenkinsRule;
 
-import java.io.IOException;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
@@ -32,7 +41,9 @@ import java.util.List;
 import static junit.framework.TestCase.assertEquals;
 import static org.hamcrest.Matchers.is;
 import static org.hamcrest.Matchers.notNullValue;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
 
@@ -59,14 +70,24 @@ public class P4SCMFileSystemTest extends DefaultEnvironment {
 		workspace.setExpand(new HashMap<String, String>());
 	}
 
+	@After
+	public void resetScanClientPool() {
+		ScanClientPool.setMaxClients(32);
+		ScanClientPool.setIdleTimeout(3600);
+		ScanClientPool.setAccessLag(43200);
+	}
+
 	@Test
-	public void testAutoComplete() throws IOException {
+	public void testAutoComplete() throws Exception {
 
 		SCMSourceOwner owner = new WorkflowMultiBranchProject(Jenkins.getInstance(), "autoComplete");
 
-		// Clear login cache then initialise default connection
-		ConnectionHelper p4 = new ConnectionHelper(owner, CREDENTIAL, null);
-		p4.invalidateSession();
+		// Clear login cache then select the credential for auto-completion
+		try (ConnectionHelper p4 = new ConnectionHelper(owner, CREDENTIAL, null)) {
+			p4.invalidateSession();
+		}
+		FormValidation check = P4CredentialsImpl.doCheckCredential(owner, CREDENTIAL);
+		assertEquals(FormValidation.Kind.OK, check.kind);
 
 		NavigateHelper nav = new NavigateHelper(5);
 
@@ -85,6 +106,14 @@ public class P4SCMFileSystemTest extends DefaultEnvironment {
 		results = nav.getCandidates("//depot/Data/");
 		assertNotNull(results);
 		assertEquals("//depot/Data/file-0.dat", results.getValues().get(0));
+
+		// listing is cached; narrower matches do not need the server
+		String scope = DirectoryTreeCache.getScope(ConnectionRegistry.getSelected());
+		assertNotNull(DirectoryTreeCache.get(scope, "//depot/Data/"));
+
+		results = nav.getCandidates("//depot/Data/file-1");
+		assertNotNull(results);
+		assertTrue(results.getValues().get(0).startsWith("//depot/Data/file-1"));
 	}
 
 	@Test
@@ -105,6 +134,130 @@ public class P4SCMFileSystemTest extends DefaultEnvironment {
 		assertEquals("file-0.dat", results.get(0).getName());
 	}
 
+	@Test
+	public void testScanClientReuse() throws Exception {
+
+		String first;
+		try (TempClientHelper p4 = new TempClientHelper(null, CREDENTIAL, null, workspace)) {
+			first = p4.getClientUUID();
+			assertTrue(first.startsWith(ScanClientPool.CLIENT_PREFIX));
+		}
+
+		// same view leases the same client, which is kept on the server
+		WorkspaceSpec spec = new WorkspaceSpec("//depot/... //${P4_CLIENT}/...", null);
+		ManualWorkspaceImpl ws = new ManualWorkspaceImpl("none", false, "testNavigation.ws", spec, false);
+		ws.setExpand(new HashMap<String, String>());
+		try (TempClientHelper p4 = new TempClientHelper(null, CREDENTIAL, null, ws)) {
+			assertEquals(first, p4.getClientUUID());
+		}
+		assertEquals(1, ScanClientPool.getCount());
+
+		try (ConnectionHelper p4 = new ConnectionHelper(CREDENTIAL, null)) {
+			assertNotNull(p4.getConnection().getClient(first));
+		}
+	}
+
+	@Test
+	public void testScanClientPerUser() throws Exception {
+		String port = p4d.getRshPort();
+		P4PasswordImpl user = new P4PasswordImpl(CredentialsScope.GLOBAL, "scan", "desc", port, null, "jenkins", "0", "0", null, "jenkins");
+		P4PasswordImpl admin = new P4PasswordImpl(CredentialsScope.GLOBAL, "scan", "desc", port, null, "admin", "0", "0", null, "Password");
+
+		// the same credential ID edited to log in as another user gets its own clients
+		ScanClientPool.Lease first = ScanClientPool.lease(user, null);
+		ScanClientPool.Lease second = ScanClientPool.lease(admin, null);
+		assertFalse(first.getName().equals(second.getName()));
+		ScanClientPool.release(first);
+		ScanClientPool.release(second);
+		assertEquals(2, ScanClientPool.getCount());
+	}
+
+	@Test
+	public void testScanClientExpired() throws Exception {
+
+		String name;
+		try (TempClientHelper p4 = new TempClientHelper(null, CREDENTIAL, null, workspace)) {
+			name = p4.getClientUUID();
+		}
+
+		// idle for less than the timeout
+		ScanClientPool.sweep();
+		assertEquals(1, ScanClientPool.getCount());
+
+		ScanClientPool.setIdleTimeout(0);
+		Thread.sleep(10);
+		ScanClientPool.sweep();
+		assertEquals(0, ScanClientPool.getCount());
+
+		try (ConnectionHelper p4 = new ConnectionHelper(CREDENTIAL, null)) {
+			assertNull(p4.getConnection().getClient(name));
+		}
+	}
+
+	@Test
+	public void testScanClientUnknownAfterRestart() throws Exception {
+
+		String first;
+		String second;
+		try (TempClientHelper p4 = new TempClientHelper(null, CREDENTIAL, null, workspace);
+			 TempClientHelper p4b = new TempClientHelper(null, CREDENTIAL, null, newWorkspace())) {
+			first = p4.getClientUUID();
+			second = p4b.getClientUUID();
+		}
+
+		// a restart forgets the pool; the first name is leased again
+		ScanClientPool.clear();
+		try (TempClientHelper p4 = new TempClientHelper(null, CREDENTIAL, null, newWorkspace())) {
+			assertEquals(first, p4.getClientUUID());
+			ScanClientPool.setIdleTimeout(0);
+			Thread.sleep(1100);
+
+			// the server's Access time may lag, so a recent client is kept
+			ScanClientPool.sweep();
+			try (ConnectionHelper p4c = new ConnectionHelper(CREDENTIAL, null)) {
+				assertNotNull(p4c.getConnection().getClient(second));
+			}
+
+			// the unknown client is deleted, the leased client is kept
+			ScanClientPool.setAccessLag(0);
+			ScanClientPool.sweep();
+			try (ConnectionHelper p4c = new ConnectionHelper(CREDENTIAL, null)) {
+				assertNull(p4c.getConnection().getClient(second));
+				assertNotNull(p4c.getConnection().getClient(first));
+			}
+		}
+	}
+
+	@Test
+	public void testScanClientReleaseWhenFull() throws Exception {
+
+		ScanClientPool.setMaxClients(1);
+		String first;
+		String second;
+		TempClientHelper p4 = new TempClientHelper(null, CREDENTIAL, null, workspace);
+		try (TempClientHelper p4b = new TempClientHelper(null, CREDENTIAL, null, newWorkspace())) {
+			first = p4.getClientUUID();
+			second = p4b.getClientUUID();
+
+			// the pool is full, so the first client is deleted
+			p4.close();
+			assertEquals(1, ScanClientPool.getCount());
+		}
+		assertEquals(1, ScanClientPool.getCount());
+
+		try (ConnectionHelper p4c = new ConnectionHelper(CREDENTIAL, null)) {
+			assertNull(p4c.getConnection().getClient(first));
+			assertNotNull(p4c.getConnection().getClient(second));
+		}
+	}
+
+	private static ManualWorkspaceImpl newWorkspace() {
+		WorkspaceSpec spec = new WorkspaceSpec("//depot/... //${P4_CLIENT}/...", null);
+		ManualWorkspaceImpl ws = new ManualWorkspaceImpl("none", false, "testNavigation.ws", spec, false);
+		ws.setExpand(new HashMap<String, String>());
+		return ws;
+	}
+
 	@Test
 	public void ofSource_Smokes() throws Exception {
 
@@ -143,6 +296,91 @@ public class P4SCMFileSystemTest extends DefaultEnvironment {
 		file = fs.getRoot().child("Main").child("file-12.txt");
 		assertThat(file.getName(), is("file-12.txt"));
 		assertTrue(file.contentAsString().startsWith("filename: file-12.txt"));
+
+		// metadata for the directory is fetched once and reused
+		assertThat(file.getType(), is(SCMFile.Type.REGULAR_FILE));
+		assertTrue(file.lastModified() > 0);
+		SCMFile missing = fs.getRoot().child("Main").child("missing.txt");
+		assertThat(missing.getType(), is(SCMFile.Type.NONEXISTENT));
+		fs.close();
+	}
+
+	@Test
+	public void testRenamedByView() throws Exception {
+
+		String view = "//depot/Main/... //${P4_CLIENT}/Main/...\n"
+				+ "//depot/Main/file-12.txt //${P4_CLIENT}/Main/renamed.txt";
+		WorkspaceSpec spec = new WorkspaceSpec(view, null);
+		ManualWorkspaceImpl ws = new ManualWorkspaceImpl("none", false, "testRenamed.ws", spec, false);
+		ws.setExpand(new HashMap<String, String>());
+		Populate populate = new AutoCleanImpl();
+		PerforceScm scm = new PerforceScm(CREDENTIAL, ws, populate);
+
+		FreeStyleProject project = jenkins.createFreeStyleProject("renamedByView");
+		try (SCMFileSystem fs = SCMFileSystem.of(project, scm)) {
+			assertThat(fs, notNullValue());
+
+			// the directory batch is keyed by client name, not depot name
+			SCMFile renamed = fs.getRoot().child("Main").child("renamed.txt");
+			SCMFile original = fs.getRoot().child("Main").child("file-12.txt");
+			assertThat(original.getType(), is(SCMFile.Type.NONEXISTENT));
+			assertThat(renamed.getType(), is(SCMFile.Type.REGULAR_FILE));
+			assertTrue(renamed.contentAsString().startsWith("filename: file-12.txt"));
+		}
+	}
+
+	@Test
+	public void testContentCache() throws Exception {
+
+		String change = submitFile(jenkins, "//depot/Main/cached.txt", "Version 1");
+		submitFile(jenkins, "//depot/Main/cached.txt", "Version 2");
+
+		String format = workspace.getName();
+
+		BranchesScmSource source = new BranchesScmSource(CREDENTIAL, "//depot/...", null, format);
+		source.setPattern(BranchesScmSource.DescriptorImpl.defaultPattern);
+		source.setMappings(BranchesScmSource.DescriptorImpl.defaultPath);
+
+		SCMSourceOwner owner = new WorkflowMultiBranchProject(Jenkins.getInstance(), "multi2");
+		source.setOwner(owner);
+
+		P4SCMHead head = new P4SCMHead("main", new P4Path("//depot"));
+		P4SCMRevision rev = new P4SCMRevision(head, new P4ChangeRef(Long.parseLong(change)));
+
+		// read at the pinned change, then again from the content cache
+		for (int i = 0; i < 2; i++) {
+			try (SCMFileSystem fs = SCMFileSystem.of(source, head, rev)) {
+				assertThat(fs, notNullValue());
+				SCMFile file = fs.getRoot().child("Main").child("cached.txt");
+				assertEquals("Version 1", file.contentAsString());
+			}
+		}
+
+		// head is not pinned
+		try (SCMFileSystem fs = SCMFileSystem.of(source, head)) {
+			SCMFile file = fs.getRoot().child("Main").child("cached.txt");
+			assertEquals("Version 2", file.contentAsString());
+		}
+	}
+
+	@Test
+	public void testContentCacheEvictsLeastRecentlyUsed() throws Exception {
+		P4ContentCache.setMaxBytes(20);
+		try {
+			P4ContentCache.put("a", "012345678a".getBytes("UTF-8"));
+			P4ContentCache.put("b", "012345678b".getBytes("UTF-8"));
+
+			// reading 'a' makes 'b' the eldest
+			assertNotNull(P4ContentCache.get("a"));
+			P4ContentCache.put("c", "012345678c".getBytes("UTF-8"));
+
+			assertNotNull(P4ContentCache.get("a"));
+			assertNull(P4ContentCache.get("b"));
+			assertNotNull(P4ContentCache.get("c"));
+		} finally {
+			P4ContentCache.clear();
+			P4ContentCache.setMaxBytes(64L * 1024 * 1024);
+		}
 	}
 
 	@Test
@@ -6,6 +6,9 @@ import com.cloudbees.plugins.credentials.CredentialsProvider;
 import com.cloudbees.plugins.credentials.CredentialsScope;
 import com.cloudbees.plugins.credentials.CredentialsStore;
 import com.cloudbees.plugins.credentials.domains.Domain;
+import com.perforce.p4java.client.IClient;
+import com.perforce.p4java.client.IClientSummary;
+import com.perforce.p4java.client.IClientViewMapping;
 import com.perforce.p4java.core.IStream;
 import com.perforce.p4java.core.IStreamSummary;
 import com.perforce.p4java.core.IStreamViewMapping;
@@ -13,17 +16,27 @@ import com.perforce.p4java.core.ViewMap;
 import com.perforce.p4java.exception.P4JavaException;
 import com.perforce.p4java.impl.generic.core.Stream;
 import com.perforce.p4java.impl.generic.core.StreamSummary;
+import com.perforce.p4java.option.server.GetClientsOptions;
 import com.perforce.p4java.server.IOptionsServer;
 import hudson.model.Result;
+import hudson.model.TaskListener;
 import jenkins.branch.BranchSource;
 import jenkins.scm.api.SCMEvent;
+import jenkins.scm.api.SCMFile;
+import jenkins.scm.api.SCMHead;
 import jenkins.scm.api.SCMHeadEvent;
+import jenkins.scm.api.SCMHeadObserver;
+import jenkins.scm.api.SCMRevision;
 import jenkins.scm.api.SCMSource;
+import jenkins.scm.api.SCMSourceCriteria;
 import net.sf.json.JSONObject;
 import org.jenkinsci.plugins.p4.DefaultEnvironment;
 import org.jenkinsci.plugins.p4.SampleServerRule;
+import org.jenkinsci.plugins.p4.changes.P4ChangeRef;
 import org.jenkinsci.plugins.p4.changes.P4ChangeSet;
+import org.jenkinsci.plugins.p4.changes.P4Ref;
 import org.jenkinsci.plugins.p4.client.ConnectionHelper;
+import org.jenkinsci.plugins.p4.client.TempClientHelper;
 import org.jenkinsci.plugins.p4.credentials.P4BaseCredentials;
 import org.jenkinsci.plugins.p4.credentials.P4PasswordImpl;
 import org.jenkinsci.plugins.p4.filters.Filter;
@@ -31,6 +44,7 @@ import org.jenkinsci.plugins.p4.filters.FilterPerChangeImpl;
 import org.jenkinsci.plugins.p4.populate.AutoCleanImpl;
 import org.jenkinsci.plugins.p4.review.ReviewProp;
 import org.jenkinsci.plugins.p4.scm.events.P4BranchSCMHeadEvent;
+import org.jenkinsci.plugins.p4.scm.events.P4BranchScanner;
 import org.jenkinsci.plugins.p4.swarmAPI.SwarmHelper;
 import org.jenkinsci.plugins.p4.swarmAPI.SwarmProjectAPI;
 import org.jenkinsci.plugins.p4.swarmAPI.SwarmReviewAPI;
@@ -50,6 +64,9 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Logger;
 
 import static org.hamcrest.Matchers.containsInAnyOrder;
@@ -57,12 +74,16 @@ import static org.hamcrest.Matchers.is;
 import static org.hamcrest.Matchers.not;
 import static org.hamcrest.core.IsNull.notNullValue;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.anyBoolean;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 public class PerforceSCMSourceTest extends DefaultEnvironment {
@@ -419,6 +440,52 @@ public class PerforceSCMSourceTest extends DefaultEnvironment {
 		assertEquals(Result.SUCCESS, build.getResult());
 	}
 
+	@Test
+	public void testHeadRevisionFromDepotPaths() throws Exception {
+
+		String base = "//depot/headpaths";
+		submitFile(jenkins, base + "/A/Jenkinsfile", "node {}");
+		String mapped = submitFile(jenkins, base + "/A/src/fileA", "content");
+
+		String format = "jenkins-${NODE_NAME}-${JOB_NAME}";
+		BranchesScmSource source = new BranchesScmSource(CREDENTIAL, base + "/...", null, format);
+		source.setMappings("src/...");
+
+		WorkflowMultiBranchProject multi = jenkins.jenkins.createProject(WorkflowMultiBranchProject.class, "head-paths");
+		multi.getSourcesList().add(new BranchSource(source));
+		SCMSourceCriteria criteria = (probe, listener) -> probe.stat("Jenkinsfile").exists();
+
+		assertEquals(Long.parseLong(mapped), getHeadChange(source, criteria, "A"));
+
+		// changes outside the mappings are not counted
+		submitFile(jenkins, base + "/A/other/fileB", "content");
+		assertEquals(Long.parseLong(mapped), getHeadChange(source, criteria, "A"));
+
+		String update = submitFile(jenkins, base + "/A/src/fileA", "update");
+		assertEquals(Long.parseLong(update), getHeadChange(source, criteria, "A"));
+
+		// the revisions were found without writing the view to a scan client
+		try (ConnectionHelper p4 = new ConnectionHelper(CREDENTIAL, null)) {
+			for (IClientSummary summary : p4.getConnection().getClients(new GetClientsOptions())) {
+				IClient client = p4.getConnection().getClient(summary.getName());
+				for (IClientViewMapping entry : client.getClientView()) {
+					assertFalse(entry.getLeft().startsWith(base));
+				}
+			}
+		}
+	}
+
+	private long getHeadChange(SCMSource source, SCMSourceCriteria criteria, String name) throws Exception {
+		SCMHeadObserver.Collector collector = SCMHeadObserver.collect();
+		source.fetch(criteria, collector, TaskListener.NULL);
+		for (Map.Entry<SCMHead, SCMRevision> entry : collector.result().entrySet()) {
+			if (name.equals(entry.getKey().getName())) {
+				return ((P4SCMRevision) entry.getValue()).getRef().getChange();
+			}
+		}
+		return -1;
+	}
+
 	@Test
 	public void testMappingDefaultsClassic() throws Exception {
 
@@ -675,6 +742,76 @@ public class PerforceSCMSourceTest extends DefaultEnvironment {
 		jenkins.assertLogContains("P4 Task: syncing files at change: " + change, runMain);
 	}
 
+	@Test
+	public void testBranchScannerTtl() throws Exception {
+
+		String base = "//depot/scanner";
+		submitFile(jenkins, base + "/Main/Jenkinsfile", "node {}");
+		String change = submitFile(jenkins, base + "/Main/src/fileA", "content");
+		P4BaseCredentials credential = ConnectionHelper.findCredential(CREDENTIAL, jenkins.jenkins);
+		P4Ref ref = new P4ChangeRef(Long.parseLong(change));
+
+		P4BranchScanner.clear();
+		P4BranchScanner.setTtl(60);
+		try {
+			P4BranchScanner scanner = new P4BranchScanner(credential, ref, "Jenkinsfile");
+			assertEquals("Main", scanner.getBranch());
+			assertEquals(base, scanner.getProjectRoot());
+
+			// a deeper Jenkinsfile is not seen while the result is shared
+			submitFile(jenkins, base + "/Main/src/Jenkinsfile", "node {}");
+			assertEquals("Main", new P4BranchScanner(credential, ref, "Jenkinsfile").getBranch());
+
+			// an expired result is scanned again
+			P4BranchScanner.setTtl(0);
+			assertEquals("src", new P4BranchScanner(credential, ref, "Jenkinsfile").getBranch());
+		} finally {
+			P4BranchScanner.setTtl(60);
+			P4BranchScanner.clear();
+		}
+	}
+
+	@Test
+	public void testCoalescedEventHeads() throws Exception {
+
+		// Setup sample Multi Branch Project
+		String base = "//depot/coalesced";
+		String baseChange = sampleProject(base, new String[]{"Main", "Dev"}, "Jenkinsfile");
+		assertNotNull(baseChange);
+
+		String format = "jenkins-${NODE_NAME}-${JOB_NAME}";
+		String includes = base + "/...";
+		BranchesScmSource source = new BranchesScmSource(CREDENTIAL, includes, null, format);
+
+		WorkflowMultiBranchProject multi = jenkins.jenkins.createProject(WorkflowMultiBranchProject.class, "coalesced-heads");
+		multi.getSourcesList().add(new BranchSource(source));
+
+		// two changes on 'Main' and one on 'Dev'
+		String main1 = submitFile(jenkins, base + "/Main/src/fileA", "edit1");
+		String main2 = submitFile(jenkins, base + "/Main/src/fileB", "edit2");
+		String dev = submitFile(jenkins, base + "/Dev/src/fileA", "edit3");
+
+		// payloads as merged by the coalescer, highest change first
+		List<JSONObject> payloads = new ArrayList<>();
+		for (String change : new String[]{dev, main2, main1}) {
+			HashMap<String, String> map = new HashMap<>();
+			map.put(ReviewProp.P4_PORT.getProp(), p4d.getRshPort());
+			map.put(ReviewProp.P4_CHANGE.getProp(), change);
+			payloads.add(JSONObject.fromObject(map));
+		}
+
+		P4BranchSCMHeadEvent event = new P4BranchSCMHeadEvent(SCMEvent.Type.UPDATED, payloads, "testCoalescedEventHeads");
+		Map<SCMHead, SCMRevision> heads = event.heads(source);
+		assertEquals(2, heads.size());
+
+		Map<String, String> changes = new HashMap<>();
+		for (Map.Entry<SCMHead, SCMRevision> entry : heads.entrySet()) {
+			changes.put(entry.getKey().getName(), ((P4SCMRevision) entry.getValue()).getRef().toString());
+		}
+		assertEquals("Main is at its highest change", main2, changes.get("Main"));
+		assertEquals(dev, changes.get("Dev"));
+	}
+
 	@Test
 	public void testMultiBranchSwarmCommittedTriggerEvent() throws Exception {
 
@@ -1279,10 +1416,198 @@ public class PerforceSCMSourceTest extends DefaultEnvironment {
 		assertEquals(change2, changes2.getHistory().get(0).getId().toString());
 	}
 
+	@Test
+	public void testSwarmIncrementalReviews() throws Exception {
+
+		String project = "SwarmIncremental";
+		String base = "//depot/SwarmIncremental";
+		String[] branches = new String[]{"Main"};
+
+		SwarmHelper mockSwarm = sampleSwarmProject(project, base, branches);
+
+		// Mock review details
+		List<Long> changes = new ArrayList<>();
+		changes.add(100L);
+		HashMap<String, List<String>> projects = new HashMap<>();
+		projects.put(project, Arrays.asList("Main"));
+		SwarmReviewAPI.Review mockReview = new SwarmReviewAPI.Review(changes, changes, projects, "author");
+		when(mockSwarm.getSwarmReview(anyString(), anyBoolean())).thenReturn(new SwarmReviewAPI(mockReview));
+
+		// Mock review list with update times only
+		List<SwarmReviewsAPI.Reviews> updates = new ArrayList<>();
+		updates.add(new SwarmReviewsAPI.Reviews(42L, null, null, null, 1000L));
+		when(mockSwarm.getActiveReviews(project, SwarmHelper.REVIEW_UPDATES)).thenReturn(updates);
+
+		SwarmScmSource source = new SwarmScmSource(CREDENTIAL, null, "jenkins-${NODE_NAME}-${JOB_NAME}");
+		source.setProject(project);
+		source.setSwarm(mockSwarm);
+		source.setIncremental(true);
+
+		List<P4SCMHead> tags = source.getTags(TaskListener.NULL);
+		assertEquals(1, tags.size());
+		assertEquals("42", tags.get(0).getName());
+
+		// an unchanged review is not fetched again
+		tags = source.getTags(TaskListener.NULL);
+		assertEquals(1, tags.size());
+		verify(mockSwarm, times(1)).getSwarmReview("42", true);
+
+		// an updated review is
+		updates.set(0, new SwarmReviewsAPI.Reviews(42L, null, null, null, 2000L));
+		tags = source.getTags(TaskListener.NULL);
+		assertEquals(1, tags.size());
+		verify(mockSwarm, times(2)).getSwarmReview("42", true);
+	}
+
+	@Test
+	public void testSwarmIncrementalReviewFetchFails() throws Exception {
+
+		String project = "SwarmIncrementalFail";
+		String base = "//depot/SwarmIncrementalFail";
+		String[] branches = new String[]{"Main"};
+
+		SwarmHelper mockSwarm = sampleSwarmProject(project, base, branches);
+
+		// Mock review details
+		List<Long> changes = new ArrayList<>();
+		changes.add(100L);
+		HashMap<String, List<String>> projects = new HashMap<>();
+		projects.put(project, Arrays.asList("Main"));
+		SwarmReviewAPI.Review mockReview = new SwarmReviewAPI.Review(changes, changes, projects, "author");
+		when(mockSwarm.getSwarmReview(anyString(), anyBoolean())).thenReturn(new SwarmReviewAPI(mockReview));
+
+		List<SwarmReviewsAPI.Reviews> updates = new ArrayList<>();
+		updates.add(new SwarmReviewsAPI.Reviews(42L, null, null, null, 1000L));
+		when(mockSwarm.getActiveReviews(project, SwarmHelper.REVIEW_UPDATES)).thenReturn(updates);
+
+		SwarmScmSource source = new SwarmScmSource(CREDENTIAL, null, "jenkins-${NODE_NAME}-${JOB_NAME}");
+		source.setProject(project);
+		source.setSwarm(mockSwarm);
+		source.setIncremental(true);
+
+		assertEquals(1, source.getTags(TaskListener.NULL).size());
+
+		// an updated review that cannot be fetched keeps its last entry
+		updates.set(0, new SwarmReviewsAPI.Reviews(42L, null, null, null, 2000L));
+		when(mockSwarm.getSwarmReview(anyString(), anyBoolean())).thenThrow(new Exception("unavailable"));
+		List<P4SCMHead> tags = source.getTags(TaskListener.NULL);
+		assertEquals(1, tags.size());
+		assertEquals("42", tags.get(0).getName());
+
+		// and is fetched again by the next scan
+		source.getTags(TaskListener.NULL);
+		verify(mockSwarm, times(3)).getSwarmReview("42", true);
+	}
+
+	@Test
+	public void testSwarmTagsFetchProjectOnce() throws Exception {
+
+		String project = "SwarmTags";
+		String base = "//depot/SwarmTags";
+		String[] branches = new String[]{"Main", "Dev"};
+
+		SwarmHelper mockSwarm = sampleSwarmProject(project, base, branches);
+
+		// Mock review list with projects and branches
+		HashMap<String, List<String>> projects = new HashMap<>();
+		projects.put(project, Arrays.asList("Main", "Dev"));
+		List<SwarmReviewsAPI.Reviews> reviews = new ArrayList<>();
+		for (long id = 40; id < 45; id++) {
+			reviews.add(new SwarmReviewsAPI.Reviews(id, Arrays.asList(id * 10), "author", projects, 1000L));
+		}
+		when(mockSwarm.getActiveReviews(project)).thenReturn(reviews);
+
+		SwarmScmSource source = new SwarmScmSource(CREDENTIAL, null, "jenkins-${NODE_NAME}-${JOB_NAME}");
+		source.setProject(project);
+		source.setSwarm(mockSwarm);
+
+		List<P4SCMHead> tags = source.getTags(TaskListener.NULL);
+		assertEquals(10, tags.size());
+
+		// one project lookup for all reviews and no review details
+		verify(mockSwarm, times(1)).getBranchesInProject(project);
+		verify(mockSwarm, times(0)).getSwarmReview(anyString());
+		verify(mockSwarm, times(0)).getSwarmReview(anyString(), anyBoolean());
+	}
+
 	/* ------------------------------------------------------------------------------------------------------------- */
 	/*	Helper methods                                                                                               */
 	/* ------------------------------------------------------------------------------------------------------------- */
 
+	@Test
+	public void testParallelScanStopsEarly() throws Exception {
+
+		String base = "//depot/parallel";
+		String[] branches = new String[]{"B1", "B2", "B3", "B4", "B5", "B6"};
+		assertNotNull(sampleProject(base, branches, "Jenkinsfile"));
+
+		String format = "jenkins-${NODE_NAME}-${JOB_NAME}";
+		BranchesScmSource source = new BranchesScmSource(CREDENTIAL, base + "/...", null, format);
+		source.setScanThreads(3);
+
+		WorkflowMultiBranchProject multi = jenkins.jenkins.createProject(WorkflowMultiBranchProject.class, "parallel-stop");
+		multi.getSourcesList().add(new BranchSource(source));
+
+		// stop after the first head
+		List<String> observed = new ArrayList<>();
+		SCMHeadObserver first = new SCMHeadObserver() {
+			@Override
+			public void observe(SCMHead head, SCMRevision revision) {
+				observed.add(head.getName());
+			}
+
+			@Override
+			public boolean isObserving() {
+				return observed.isEmpty();
+			}
+		};
+		SCMSourceCriteria criteria = (probe, listener) -> probe.stat("Jenkinsfile").exists();
+		source.fetch(criteria, first, TaskListener.NULL);
+		assertEquals(1, observed.size());
+
+		// the scan clients were returned, a full scan still finds every head
+		SCMHeadObserver.Collector all = SCMHeadObserver.collect();
+		source.fetch(criteria, all, TaskListener.NULL);
+		assertEquals(branches.length, all.result().size());
+	}
+
+	@Test
+	public void testProbeSnapshot() throws Exception {
+
+		String base = "//depot/probe";
+		submitFile(jenkins, base + "/Main/Jenkinsfile", "node {}");
+		submitFile(jenkins, base + "/Dev/fileA", "content");
+
+		P4SCMHead main = new P4SCMHead("Main", new P4Path(base + "/Main"));
+		P4SCMHead dev = new P4SCMHead("Dev", new P4Path(base + "/Dev"));
+		List<P4Path> paths = Arrays.asList(main.getPath(), dev.getPath());
+
+		try (TempClientHelper p4 = new TempClientHelper(null, CREDENTIAL, null, null)) {
+			Set<String> names = ConcurrentHashMap.newKeySet();
+			names.add("Jenkinsfile");
+			P4ProbeSnapshot snapshot = new P4ProbeSnapshot(names);
+			snapshot.prefetch(p4, paths);
+
+			// known names are answered from the snapshot, not the server
+			submitFile(jenkins, base + "/Dev/Jenkinsfile", "node {}");
+			assertEquals(SCMFile.Type.REGULAR_FILE, new P4SCMProbe(p4, main, 1L, snapshot).stat("Jenkinsfile").getType());
+			assertEquals(SCMFile.Type.NONEXISTENT, new P4SCMProbe(p4, dev, 1L, snapshot).stat("Jenkinsfile").getType());
+
+			// unknown names fall back to the server
+			submitFile(jenkins, base + "/Main/marker.txt", "content");
+			assertNull(snapshot.exists(base + "/Main/marker.txt"));
+			assertEquals(SCMFile.Type.REGULAR_FILE, new P4SCMProbe(p4, main, 1L, snapshot).stat("marker.txt").getType());
+
+			// and are prefetched by the next scan
+			assertTrue(names.contains("marker.txt"));
+			snapshot = new P4ProbeSnapshot(names);
+			snapshot.prefetch(p4, paths);
+			assertTrue(snapshot.exists(base + "/Main/marker.txt"));
+			assertFalse(snapshot.exists(base + "/Dev/marker.txt"));
+			assertTrue(snapshot.exists(base + "/Dev/Jenkinsfile"));
+		}
+	}
+
 	private CredentialsStore getFolderStore(AbstractFolder f) {
 		Iterable<CredentialsStore> stores = CredentialsProvider.lookupStores(f);
 		CredentialsStore folderStore = null;
@@ -0,0 +1,174 @@
+package org.jenkinsci.plugins.p4.swarmAPI;
+
+import com.sun.net.httpserver.HttpServer;
+import org.jenkinsci.plugins.p4.client.ConnectionHelper;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class SwarmHelperTest {
+
+	private static final int PAGE_SIZE = 100;
+
+	private HttpServer server;
+
+	// review served by the test server
+	private volatile String etag = "\"1\"";
+	private volatile String body = review(5);
+	private final AtomicInteger requests = new AtomicInteger();
+
+	@Before
+	public void startServer() throws Exception {
+		SwarmHelper.clear();
+		server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		server.createContext("/api/version", exchange -> {
+			byte[] bytes = "{\"apiVersions\":[9]}".getBytes(StandardCharsets.UTF_8);
+			exchange.sendResponseHeaders(200, bytes.length);
+			try (OutputStream out = exchange.getResponseBody()) {
+				out.write(bytes);
+			}
+		});
+		server.createContext("/api/v9/reviews/1", exchange -> {
+			requests.incrementAndGet();
+			if (etag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+				exchange.sendResponseHeaders(304, -1);
+				exchange.close();
+				return;
+			}
+			byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+			exchange.getResponseHeaders().set("ETag", etag);
+			exchange.sendResponseHeaders(200, bytes.length);
+			try (OutputStream out = exchange.getResponseBody()) {
+				out.write(bytes);
+			}
+		});
+		server.start();
+	}
+
+	@After
+	public void stopServer() {
+		server.stop(0);
+		SwarmHelper.setTtl(60);
+		SwarmHelper.clear();
+	}
+
+	@Test
+	public void testReviewNotModified() throws Exception {
+		SwarmHelper swarm = new SwarmHelper(connection(), "9");
+
+		assertEquals(Arrays.asList(5L), swarm.getSwarmReview("1", true).getReview().getChanges());
+
+		// revalidated with the ETag; the 304 reuses the cached body
+		assertEquals(Arrays.asList(5L), swarm.getSwarmReview("1", true).getReview().getChanges());
+		assertEquals(2, requests.get());
+	}
+
+	@Test
+	public void testReviewTtlExpired() throws Exception {
+		SwarmHelper.setTtl(1);
+		SwarmHelper swarm = new SwarmHelper(connection(), "9");
+
+		assertEquals(Arrays.asList(5L), swarm.getSwarmReview("1").getReview().getChanges());
+
+		// within the TTL the cached body is used, even if the review changed
+		etag = "\"2\"";
+		body = review(6);
+		assertEquals(Arrays.asList(5L), swarm.getSwarmReview("1").getReview().getChanges());
+		assertEquals(1, requests.get());
+
+		Thread.sleep(1100);
+		assertEquals(Arrays.asList(6L), swarm.getSwarmReview("1").getReview().getChanges());
+		assertEquals(2, requests.get());
+	}
+
+	@Test
+	public void testActiveReviewsPaged() throws Exception {
+		SwarmHelper swarm = swarm();
+
+		// review 101 was updated between pages and is listed on both
+		when(swarm.getReviewsPage("proj", SwarmHelper.REVIEW_FIELDS, null)).thenReturn(page(200, PAGE_SIZE, 101L));
+		when(swarm.getReviewsPage("proj", SwarmHelper.REVIEW_FIELDS, 101L)).thenReturn(page(101, 50, null));
+
+		List<SwarmReviewsAPI.Reviews> reviews = swarm.getActiveReviews("proj", SwarmHelper.REVIEW_FIELDS);
+		assertEquals(149, reviews.size());
+
+		Set<Long> ids = new HashSet<>();
+		for (SwarmReviewsAPI.Reviews review : reviews) {
+			ids.add(review.getId());
+		}
+		assertEquals(149, ids.size());
+		assertEquals(200L, reviews.get(0).getId());
+	}
+
+	@Test
+	public void testActiveReviewsShortPage() throws Exception {
+		SwarmHelper swarm = swarm();
+
+		// a page shorter than asked for is not the last page while it has a marker
+		when(swarm.getReviewsPage("proj", SwarmHelper.REVIEW_FIELDS, null)).thenReturn(page(200, 10, 191L));
+		when(swarm.getReviewsPage("proj", SwarmHelper.REVIEW_FIELDS, 191L)).thenReturn(page(190, 20, null));
+
+		List<SwarmReviewsAPI.Reviews> reviews = swarm.getActiveReviews("proj", SwarmHelper.REVIEW_FIELDS);
+		assertEquals(30, reviews.size());
+		verify(swarm, times(1)).getReviewsPage("proj", SwarmHelper.REVIEW_FIELDS, 191L);
+	}
+
+	@Test(timeout = 10000)
+	public void testActiveReviewsMarkerNotAdvancing() throws Exception {
+		SwarmHelper swarm = swarm();
+
+		// every page returns the same full page and marker
+		when(swarm.getReviewsPage(anyString(), anyString(), isNull())).thenReturn(page(200, PAGE_SIZE, 101L));
+		when(swarm.getReviewsPage(anyString(), anyString(), any(Long.class))).thenReturn(page(200, PAGE_SIZE, 101L));
+
+		List<SwarmReviewsAPI.Reviews> reviews = swarm.getActiveReviews("proj", SwarmHelper.REVIEW_FIELDS);
+		assertEquals(PAGE_SIZE, reviews.size());
+		verify(swarm, times(1)).getReviewsPage("proj", SwarmHelper.REVIEW_FIELDS, 101L);
+	}
+
+	private static SwarmHelper swarm() throws Exception {
+		SwarmHelper swarm = mock(SwarmHelper.class);
+		when(swarm.getActiveReviews(anyString(), anyString())).thenCallRealMethod();
+		return swarm;
+	}
+
+	private ConnectionHelper connection() throws Exception {
+		ConnectionHelper p4 = mock(ConnectionHelper.class);
+		when(p4.getSwarm()).thenReturn("http://localhost:" + server.getAddress().getPort());
+		when(p4.getUser()).thenReturn("jenkins");
+		when(p4.getTicket()).thenReturn("ticket");
+		return p4;
+	}
+
+	private static String review(long change) {
+		return "{\"review\":{\"changes\":[" + change + "],\"commits\":[],\"projects\":{},\"author\":\"author\"}}";
+	}
+
+	// reviews with descending IDs from 'first'
+	private static SwarmReviewsAPI page(long first, int size, Long lastSeen) {
+		List<SwarmReviewsAPI.Reviews> reviews = new ArrayList<>();
+		for (int i = 0; i < size; i++) {
+			reviews.add(new SwarmReviewsAPI.Reviews(first - i, new ArrayList<>(), "author"));
+		}
+		return new SwarmReviewsAPI(reviews, lastSeen);
+	}
+}